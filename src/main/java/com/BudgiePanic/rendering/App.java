@@ -53,6 +53,7 @@ public class App
         entry("-spotlight", ()-> new SpotLightDemo()),
         entry("-anti_alias_demo", ()-> new AntiAliasingDemo()),
         entry("-bvh_test", ()-> new BoundingVolumeHierarchyTest()),
+        entry("-accelerator_benchmark", ()-> new AcceleratorBenchmark()),
         entry("-dragon_demo", ()-> new LargeModelDemo()),
         entry("-big_scene_demo", ()-> new BigSceneDemo()),
         entry("-normal_bump_demo", ()-> new NormalBumpDemo()),
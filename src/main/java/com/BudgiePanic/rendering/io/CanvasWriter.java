@@ -57,8 +57,22 @@ public final class CanvasWriter {
     }
 
     private static List<String> buildPPMHeader(Canvas canvas) {
+        return buildPPMHeader(canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Creates the lines of a PPM header.
+     * 
+     * @param width
+     *     The width of the image.
+     * @param height
+     *     The height of the image.
+     * @return
+     *     The PPM header lines.
+     */
+    static List<String> buildPPMHeader(int width, int height) {
         final String magic = "P3";
-        String widthHeight = String.format("%d %d", canvas.getWidth(), canvas.getHeight());
+        String widthHeight = String.format("%d %d", width, height);
         final String maxColorValue = "255";
         return List.of(magic, widthHeight, maxColorValue);
     }
@@ -106,19 +120,33 @@ public final class CanvasWriter {
     private static List<String> writePixelsToPPM(Canvas canvas) {
         List<String> result = new LinkedList<>();
         for (int row = 0; row < canvas.getHeight(); row++) {
-            StringBuilder rowPixels = new StringBuilder();
-            for (int column = 0; column < canvas.getWidth(); column++) {
-                var pixel = canvas.getPixel(column, row);
-                rowPixels = writeColor(rowPixels, pixel.getRed(), result);
-                rowPixels = writeColor(rowPixels, pixel.getGreen(), result);
-                rowPixels = writeColor(rowPixels, pixel.getBlue(), result);  
-            }
-            rowPixels.deleteCharAt(0); // remove space at position 0
-            result.add(rowPixels.toString());
+            writeRowToPPM(canvas, row, result);
         }
         return result;
     } 
 
+    /**
+     * Converts one row of a canvas into lines of PPM text.
+     * 
+     * @param canvas
+     *     The canvas containing the row.
+     * @param row
+     *     The row to convert.
+     * @param lines
+     *     The lines to add the row's text to.
+     */
+    static void writeRowToPPM(Canvas canvas, int row, List<String> lines) {
+        StringBuilder rowPixels = new StringBuilder();
+        for (int column = 0; column < canvas.getWidth(); column++) {
+            var pixel = canvas.getPixel(column, row);
+            rowPixels = writeColor(rowPixels, pixel.getRed(), lines);
+            rowPixels = writeColor(rowPixels, pixel.getGreen(), lines);
+            rowPixels = writeColor(rowPixels, pixel.getBlue(), lines);  
+        }
+        rowPixels.deleteCharAt(0); // remove space at position 0
+        lines.add(rowPixels.toString());
+    }
+
     /**
      * Writes a canvas to a file on the user's computer.
      *
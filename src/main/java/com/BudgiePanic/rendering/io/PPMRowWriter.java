@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.BudgiePanic.rendering.util.Canvas;
+
+/**
+ * Streams an image to a PPM file one row at a time, so the whole image never has to be held in memory.
+ * Rows must be written in order, from the top of the image to the bottom.
+ * The file is identical to the file CanvasWriter would write for the whole image.
+ * 
+ * @author BudgiePanic
+ */
+public class PPMRowWriter implements Closeable {
+
+    /**
+     * The width of the image.
+     */
+    protected final int width;
+
+    /**
+     * The height of the image.
+     */
+    protected final int height;
+
+    /**
+     * The file being written to.
+     */
+    protected final BufferedWriter writer;
+
+    /**
+     * The number of rows written so far.
+     */
+    protected int rowsWritten;
+
+    /**
+     * Create a new row writer and write the PPM header.
+     * 
+     * @param file
+     *     The file to write the image to.
+     * @param width
+     *     The width of the image.
+     * @param height
+     *     The height of the image.
+     * @throws IOException
+     *     If the file could not be opened.
+     */
+    public PPMRowWriter(Path file, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("invalid image dimensions " + width + " " + height);
+        this.width = width;
+        this.height = height;
+        this.rowsWritten = 0;
+        this.writer = Files.newBufferedWriter(file, Charset.defaultCharset());
+        writeLines(CanvasWriter.buildPPMHeader(width, height));
+    }
+
+    /**
+     * Get the number of rows written so far.
+     * 
+     * @return
+     *     The number of rows written.
+     */
+    public int rowsWritten() { return rowsWritten; }
+
+    /**
+     * Write the first rows of a canvas to the image, directly after the rows that have already been written.
+     * 
+     * @param band
+     *     A canvas holding the next rows of the image. Must be as wide as the image.
+     * @param rows
+     *     The number of rows of the canvas to write.
+     * @throws IOException
+     *     If the rows could not be written.
+     */
+    public void writeRows(Canvas band, int rows) throws IOException {
+        if (band.getWidth() != width || rows > band.getHeight()) throw new IllegalArgumentException("band does not match the image");
+        if (rowsWritten + rows > height) throw new IllegalArgumentException("too many rows written to image");
+        final List<String> lines = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            CanvasWriter.writeRowToPPM(band, row, lines);
+        }
+        writeLines(lines);
+        rowsWritten += rows;
+    }
+
+    private void writeLines(List<String> lines) throws IOException {
+        for (final var line : lines) {
+            writer.write(line);
+            writer.write(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Finish the image and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                System.out.println("WARN: closing image after writing " + rowsWritten + " of " + height + " rows");
+            }
+            writeLines(List.of("\n"));
+        } finally {
+            writer.close();
+        }
+    }
+}
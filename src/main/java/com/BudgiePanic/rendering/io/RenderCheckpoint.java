@@ -0,0 +1,345 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Optional;
+
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+
+/**
+ * A render checkpoint records the tiles of an image that have finished rendering, and the colors of their pixels.
+ * Checkpoints are saved to a compact binary file so an interrupted render can be resumed.
+ * The file is written to a temporary file first, flushed to the disk, and then renamed over the old checkpoint, 
+ * so a crash while saving never leaves a corrupt checkpoint behind.
+ * Each checkpoint stores a fingerprint of the scene and camera it was rendered from, so a checkpoint left behind by a 
+ * different render of the same size is not resumed.
+ *
+ * @author BudgiePanic
+ */
+public class RenderCheckpoint {
+
+    /**
+     * Identifies checkpoint files.
+     */
+    protected static final int magic = 0x50504350; // 'PPCP'
+
+    /**
+     * The version of the checkpoint file format.
+     */
+    protected static final int version = 2;
+
+    /**
+     * The number of color channels stored per pixel.
+     */
+    private static final int channels = 3;
+
+    /**
+     * The width of the image in pixels.
+     */
+    protected final int width;
+
+    /**
+     * The height of the image in pixels.
+     */
+    protected final int height;
+
+    /**
+     * The width and height of the tiles.
+     */
+    protected final int tileSize;
+
+    /**
+     * Identifies the scene and camera the checkpoint was rendered from.
+     */
+    protected final long fingerprint;
+
+    /**
+     * The tiles that have finished rendering, tiles are numbered in row major order.
+     */
+    protected final BitSet completed;
+
+    /**
+     * The colors of every pixel in the image in row major order, only pixels in completed tiles are meaningful.
+     */
+    protected final float[] pixels;
+
+    /**
+     * Create a new checkpoint with no completed tiles.
+     *
+     * @param width
+     *   The width of the image in pixels.
+     * @param height
+     *   The height of the image in pixels.
+     * @param tileSize
+     *   The width and height of the tiles.
+     * @param fingerprint
+     *   Identifies the scene and camera being rendered.
+     */
+    public RenderCheckpoint(int width, int height, int tileSize, long fingerprint) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) throw new IllegalArgumentException("invalid checkpoint dimensions");
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.fingerprint = fingerprint;
+        this.completed = new BitSet();
+        this.pixels = new float[width * height * channels];
+    }
+
+    /**
+     * Get the number of tile columns in the image.
+     *
+     * @return
+     *   The number of tiles in each row of tiles.
+     */
+    public int tileColumns() { return (width + tileSize - 1) / tileSize; }
+
+    /**
+     * Get the number of tile rows in the image.
+     *
+     * @return
+     *   The number of rows of tiles.
+     */
+    public int tileRows() { return (height + tileSize - 1) / tileSize; }
+
+    /**
+     * Get the number of tiles in the image.
+     *
+     * @return
+     *   The number of tiles.
+     */
+    public int tiles() { return tileColumns() * tileRows(); }
+
+    /**
+     * Check if a checkpoint belongs to an image.
+     *
+     * @param width
+     *   The width of the image in pixels.
+     * @param height
+     *   The height of the image in pixels.
+     * @param tileSize
+     *   The width and height of the tiles.
+     * @param fingerprint
+     *   Identifies the scene and camera of the image.
+     * @return
+     *   True if the checkpoint has the same dimensions, tiles, scene and camera as the image.
+     */
+    public boolean matches(int width, int height, int tileSize, long fingerprint) {
+        return this.width == width && this.height == height && this.tileSize == tileSize && this.fingerprint == fingerprint;
+    }
+
+    /**
+     * Check if a tile has finished rendering.
+     *
+     * @param tile
+     *   The index of the tile.
+     * @return
+     *   True if the tile is complete.
+     */
+    public synchronized boolean isComplete(int tile) { return completed.get(tile); }
+
+    /**
+     * Get the number of tiles that have finished rendering.
+     *
+     * @return
+     *   The number of completed tiles.
+     */
+    public synchronized int completedTiles() { return completed.cardinality(); }
+
+    /**
+     * Record that a tile has finished rendering, copying the tile's pixels from a canvas.
+     *
+     * @param tile
+     *   The index of the tile.
+     * @param canvas
+     *   The canvas being rendered to.
+     */
+    public synchronized void complete(int tile, Canvas canvas) {
+        final int minCol = (tile % tileColumns()) * tileSize;
+        final int minRow = (tile / tileColumns()) * tileSize;
+        for (int row = minRow; row < Math.min(minRow + tileSize, height); row++) {
+            for (int col = minCol; col < Math.min(minCol + tileSize, width); col++) {
+                final var color = canvas.getPixel(col, row);
+                final int index = (row * width + col) * channels;
+                pixels[index] = (float) color.getRed();
+                pixels[index + 1] = (float) color.getGreen();
+                pixels[index + 2] = (float) color.getBlue();
+            }
+        }
+        completed.set(tile);
+    }
+
+    /**
+     * Write the pixels of every completed tile into a canvas.
+     *
+     * @param canvas
+     *   The canvas being rendered to.
+     */
+    public synchronized void restore(Canvas canvas) {
+        for (int tile = completed.nextSetBit(0); tile >= 0; tile = completed.nextSetBit(tile + 1)) {
+            final int minCol = (tile % tileColumns()) * tileSize;
+            final int minRow = (tile / tileColumns()) * tileSize;
+            for (int row = minRow; row < Math.min(minRow + tileSize, height); row++) {
+                for (int col = minCol; col < Math.min(minCol + tileSize, width); col++) {
+                    final int index = (row * width + col) * channels;
+                    canvas.writePixel(col, row, new Color(pixels[index], pixels[index + 1], pixels[index + 2]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Atomically save this checkpoint to a file. Only the pixels of completed tiles are written.
+     * The completed tiles are copied while the checkpoint is locked, the copy is written and flushed to the disk after the lock
+     * is released, so tiles can keep completing while the file is written.
+     *
+     * @param file
+     *   The checkpoint file.
+     * @throws IOException
+     *   If the checkpoint could not be written.
+     */
+    public void save(Path file) throws IOException {
+        final long[] bits;
+        final float[] data;
+        synchronized (this) {
+            bits = completed.toLongArray();
+            data = completedPixels();
+        }
+        write(file, bits, data);
+    }
+
+    /**
+     * Copy the pixels of the completed tiles, in the order they are stored in the checkpoint file.
+     *
+     * @return
+     *   The colors of the pixels of every completed tile, tile by tile.
+     */
+    private float[] completedPixels() {
+        int count = 0;
+        for (int tile = completed.nextSetBit(0); tile >= 0; tile = completed.nextSetBit(tile + 1)) {
+            final int minCol = (tile % tileColumns()) * tileSize;
+            final int minRow = (tile / tileColumns()) * tileSize;
+            count += (Math.min(minCol + tileSize, width) - minCol) * (Math.min(minRow + tileSize, height) - minRow);
+        }
+        final float[] data = new float[count * channels];
+        int offset = 0;
+        for (int tile = completed.nextSetBit(0); tile >= 0; tile = completed.nextSetBit(tile + 1)) {
+            final int minCol = (tile % tileColumns()) * tileSize;
+            final int minRow = (tile / tileColumns()) * tileSize;
+            final int length = (Math.min(minCol + tileSize, width) - minCol) * channels;
+            for (int row = minRow; row < Math.min(minRow + tileSize, height); row++) {
+                System.arraycopy(pixels, (row * width + minCol) * channels, data, offset, length);
+                offset += length;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Write a copy of the checkpoint to a temporary file, flush it to the disk, and rename it over the checkpoint file.
+     *
+     * @param file
+     *   The checkpoint file.
+     * @param bits
+     *   The completed tiles.
+     * @param data
+     *   The pixels of the completed tiles.
+     * @throws IOException
+     *   If the checkpoint could not be written.
+     */
+    private void write(Path file, long[] bits, float[] data) throws IOException {
+        final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(tileSize);
+            out.writeLong(fingerprint);
+            out.writeInt(bits.length);
+            for (final long word : bits) {
+                out.writeLong(word);
+            }
+            for (final float value : data) {
+                out.writeFloat(value);
+            }
+            // the temporary file must be on the disk before it replaces the old checkpoint, or a crash could leave an empty file behind
+            out.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Load a checkpoint from a file.
+     *
+     * @param file
+     *   The checkpoint file.
+     * @return
+     *   The checkpoint, or EMPTY if the file does not exist or is not a valid checkpoint.
+     */
+    public static Optional<RenderCheckpoint> load(Path file) {
+        if (!Files.exists(file)) { return Optional.empty(); }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != magic || in.readInt() != version) {
+                System.out.println("WARN: " + file + " is not a render checkpoint");
+                return Optional.empty();
+            }
+            final var checkpoint = new RenderCheckpoint(in.readInt(), in.readInt(), in.readInt(), in.readLong());
+            final long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            checkpoint.completed.or(BitSet.valueOf(bits));
+            final var completed = checkpoint.completed;
+            for (int tile = completed.nextSetBit(0); tile >= 0; tile = completed.nextSetBit(tile + 1)) {
+                final int minCol = (tile % checkpoint.tileColumns()) * checkpoint.tileSize;
+                final int minRow = (tile / checkpoint.tileColumns()) * checkpoint.tileSize;
+                for (int row = minRow; row < Math.min(minRow + checkpoint.tileSize, checkpoint.height); row++) {
+                    for (int col = minCol; col < Math.min(minCol + checkpoint.tileSize, checkpoint.width); col++) {
+                        final int index = (row * checkpoint.width + col) * channels;
+                        checkpoint.pixels[index] = in.readFloat();
+                        checkpoint.pixels[index + 1] = in.readFloat();
+                        checkpoint.pixels[index + 2] = in.readFloat();
+                    }
+                }
+            }
+            return Optional.of(checkpoint);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("WARN: could not read render checkpoint " + file + " " + e);
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+import com.BudgiePanic.rendering.io.PPMRowWriter;
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Film;
+import com.BudgiePanic.rendering.util.ReconstructionFilter;
+
+/**
+ * Renders an image in horizontal bands, streaming each finished band to disk.
+ * Only one band is held in memory at a time, so memory use does not depend on the height of the image.
+ * When a reconstruction filter is used, the rows just below each band are also sampled so samples can splat across band boundaries.
+ * The samples near a band boundary are kept for the next band, so every row is only traced once and the image matches a whole-image film.
+ *
+ * @author BudgiePanic
+ */
+public class BandedRenderer {
+
+    /**
+     * Rough estimate of the memory needed per pixel of a band, a Color object plus the film accumulators.
+     */
+    protected static final long bytesPerPixel = 96;
+
+    protected final Camera camera;
+
+    /**
+     * The number of image rows in each band.
+     */
+    protected final int bandHeight;
+
+    /**
+     * The reconstruction filter used to combine samples, if EMPTY each pixel's exposure is written directly.
+     */
+    protected final Optional<ReconstructionFilter> filter;
+
+    /**
+     * Canonical constructor.
+     *
+     * @param camera
+     *   The camera that renders the image.
+     * @param bandHeight
+     *   The number of image rows in each band.
+     * @param filter
+     *   The reconstruction filter used to combine samples. EMPTY to write each pixel's exposure directly.
+     */
+    public BandedRenderer(Camera camera, int bandHeight, Optional<ReconstructionFilter> filter) {
+        if (camera == null || filter == null) throw new IllegalArgumentException("camera and filter cannot be null");
+        if (bandHeight <= 0) throw new IllegalArgumentException("band height must be positive");
+        this.camera = camera;
+        this.bandHeight = Math.min(bandHeight, camera.height());
+        this.filter = filter;
+    }
+
+    /**
+     * Create a banded renderer whose bands fit within a memory budget.
+     *
+     * @param camera
+     *   The camera that renders the image.
+     * @param memoryBudget
+     *   The approximate number of bytes a band may use.
+     * @param filter
+     *   The reconstruction filter used to combine samples. EMPTY to write each pixel's exposure directly.
+     * @return
+     *   A new banded renderer.
+     */
+    public static BandedRenderer withMemoryBudget(Camera camera, long memoryBudget, Optional<ReconstructionFilter> filter) {
+        return new BandedRenderer(camera, bandHeight(camera.width(), memoryBudget), filter);
+    }
+
+    /**
+     * Determine how many rows of an image fit within a memory budget.
+     *
+     * @param width
+     *   The width of the image.
+     * @param memoryBudget
+     *   The approximate number of bytes a band may use.
+     * @return
+     *   The number of rows in a band, at least one.
+     */
+    public static int bandHeight(int width, long memoryBudget) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / (bytesPerPixel * width)));
+    }
+
+    /**
+     * Get the number of image rows in each band.
+     *
+     * @return
+     *   The band height.
+     */
+    public int bandHeight() { return bandHeight; }
+
+    /**
+     * Render the world to a PPM file in the user's working directory.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param fileName
+     *   The name of the produced file.
+     * @throws IOException
+     *   If the image could not be written.
+     */
+    public void render(World world, String fileName) throws IOException {
+        render(world, new File(System.getProperty("user.dir"), fileName).toPath());
+    }
+
+    /**
+     * Render the world to a PPM file.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param file
+     *   The file to write the image to.
+     * @throws IOException
+     *   If the image could not be written.
+     */
+    public void render(World world, Path file) throws IOException {
+        final int width = camera.width(), height = camera.height();
+        final int bands = (height + bandHeight - 1) / bandHeight;
+        System.out.println("INFO: rendering " + width + "x" + height + " image in " + bands + " bands of " + bandHeight + " rows");
+        final Canvas band = new ArrayCanvas(width, bandHeight);
+        try (var writer = new PPMRowWriter(file, width, height)) {
+            BandFilm previous = null;
+            for (int origin = 0; origin < height; origin += bandHeight) {
+                final int rows = Math.min(bandHeight, height - origin);
+                previous = renderBand(world, band, origin, rows, previous);
+                writer.writeRows(band, rows);
+            }
+        }
+    }
+
+    /**
+     * A sample splatted into a band film.
+     *
+     * @param x
+     *   The horizontal position of the sample on the image plane.
+     * @param y
+     *   The vertical position of the sample on the image plane.
+     * @param color
+     *   The color of the sample.
+     */
+    protected static record Sample(double x, double y, Color color) {}
+
+    /**
+     * A film covering one band of the image that carries samples over from the band above it.
+     * Rows that were already traced for the band above are not traced again, instead their samples are replayed into the film.
+     * Samples that can reach the band below are kept so they can be replayed into its film.
+     */
+    protected static class BandFilm extends Film {
+
+        /**
+         * The first image row that has not been traced by an earlier band.
+         */
+        protected final int firstUntracedRow;
+
+        /**
+         * The first image row whose samples can reach the band below.
+         */
+        protected final int firstKeptRow;
+
+        /**
+         * The samples that can reach the band below.
+         */
+        protected final ConcurrentLinkedQueue<Sample> kept = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Create a new band film.
+         *
+         * @param width
+         *   The number of columns in the film.
+         * @param height
+         *   The number of rows in the film.
+         * @param filter
+         *   The reconstruction filter used to splat samples into pixels.
+         * @param originRow
+         *   The image row of the first row of the film.
+         * @param firstUntracedRow
+         *   The first image row that has not been traced by an earlier band.
+         */
+        protected BandFilm(int width, int height, ReconstructionFilter filter, int originRow, int firstUntracedRow) {
+            super(width, height, filter, originRow);
+            this.firstUntracedRow = firstUntracedRow;
+            this.firstKeptRow = Math.max(0, originRow + height - (int) Math.ceil(filter.radius()));
+        }
+
+        /**
+         * Splat the samples kept by the band above into this film.
+         *
+         * @param previous
+         *   The film of the band above.
+         */
+        protected void replay(BandFilm previous) {
+            for (var sample : previous.kept) {
+                addSample(sample.x(), sample.y(), sample.color());
+            }
+        }
+
+        @Override
+        public int firstSampleRow() { return Math.max(super.firstSampleRow(), firstUntracedRow); }
+
+        @Override
+        public void addSample(double x, double imageY, Color color) {
+            super.addSample(x, imageY, color);
+            if (Math.floor(imageY) >= firstKeptRow) {
+                kept.add(new Sample(x, imageY, color));
+            }
+        }
+    }
+
+    /**
+     * Render one band of the image.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param band
+     *   The canvas the band is written to, row 0 of the canvas is the first row of the band.
+     * @param origin
+     *   The image row of the first row of the band.
+     * @param rows
+     *   The number of rows in the band.
+     * @param previous
+     *   The film of the band above, null if this is the first band or no filter is used.
+     * @return
+     *   The film of this band, null if no filter is used.
+     */
+    protected BandFilm renderBand(World world, Canvas band, int origin, int rows, BandFilm previous) {
+        if (filter.isPresent()) {
+            final int firstUntracedRow = previous == null ? 0 : previous.lastSampleRow(camera.height());
+            final var film = new BandFilm(camera.width(), rows, filter.get(), origin, firstUntracedRow);
+            if (previous != null) film.replay(previous);
+            camera.takePicture(world, film).develop(band);
+            return film;
+        }
+        IntStream.range(0, rows).parallel().forEach(row -> {
+            for (int col = 0; col < camera.width(); col++) {
+                band.writePixel(col, row, camera.pixelExposureAt(world, col, origin + row));
+            }
+        });
+        return null;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Canvas;
+
+/**
+ * Renders one world from many cameras in a single batch.
+ * The tiles of every view are scheduled together in one parallel stream, so all views share the same pool of worker threads and
+ * the world's hierarchies stay warm, instead of each view being a separate render that competes for cores.
+ * Tiles are rendered with Camera::renderTile, so supersampled and wrapped views are split into tiles too.
+ * Cameras that cannot render tiles, such as cameras that normalize the whole image, are scheduled as a single job,
+ * their internal parallel work runs in the same pool.
+ * The world should be assembled, divided and compiled before the batch is rendered.
+ *
+ * @author BudgiePanic
+ */
+public class BatchRenderer {
+
+    /**
+     * The default width and height of the tiles in pixels.
+     */
+    public static final int defaultTileSize = 16;
+
+    /**
+     * The time spent on one view of a batch.
+     *
+     * @param view
+     *   The index of the view's camera.
+     * @param busyMillis
+     *   The total time spent rendering the view's tiles, summed over all threads.
+     * @param finishedMillis
+     *   The time from the start of the batch until the view's last tile was finished.
+     */
+    public static record ViewTiming(int view, long busyMillis, long finishedMillis) {}
+
+    /**
+     * A unit of work in the batch.
+     *
+     * @param view
+     *   The index of the camera.
+     * @param tile
+     *   The index of the tile in the camera's image, or -1 to take the whole picture with the camera.
+     */
+    protected static record Job(int view, int tile) {}
+
+    /**
+     * The cameras of the batch.
+     */
+    protected final List<Camera> cameras;
+
+    /**
+     * The width and height of the tiles in pixels.
+     */
+    protected final int tileSize;
+
+    /**
+     * The timing of each view in the last batch rendered.
+     */
+    protected volatile List<ViewTiming> timings;
+
+    /**
+     * Create a batch renderer with the default tile size.
+     *
+     * @param cameras
+     *   The cameras to render the world with.
+     */
+    public BatchRenderer(List<Camera> cameras) {
+        this(cameras, defaultTileSize);
+    }
+
+    /**
+     * Canonical constructor.
+     *
+     * @param cameras
+     *   The cameras to render the world with.
+     * @param tileSize
+     *   The width and height of the tiles in pixels.
+     */
+    public BatchRenderer(List<Camera> cameras, int tileSize) {
+        if (cameras == null || cameras.stream().anyMatch(camera -> camera == null)) throw new IllegalArgumentException("cameras cannot be null");
+        if (tileSize <= 0) throw new IllegalArgumentException("tile size must be positive");
+        this.cameras = List.copyOf(cameras);
+        this.tileSize = tileSize;
+        this.timings = List.of();
+    }
+
+    /**
+     * Get the timing of each view in the last batch rendered.
+     *
+     * @return
+     *   The view timings, in the same order as the cameras.
+     */
+    public List<ViewTiming> timings() { return timings; }
+
+    /**
+     * Render the world from every camera.
+     *
+     * @param world
+     *   The world to take images of.
+     * @return
+     *   The images, in the same order as the cameras.
+     */
+    public List<Canvas> render(World world) {
+        if (world == null) throw new IllegalArgumentException("world cannot be null");
+        final int views = cameras.size();
+        final List<Canvas> images = new ArrayList<>(views);
+        final List<Job> jobs = new ArrayList<>();
+        final LongAdder[] busy = new LongAdder[views];
+        final AtomicLong[] finished = new AtomicLong[views];
+        final AtomicInteger[] remaining = new AtomicInteger[views];
+        for (int view = 0; view < views; view++) {
+            final var camera = cameras.get(view);
+            images.add(new ArrayCanvas(camera.width(), camera.height()));
+            busy[view] = new LongAdder();
+            finished[view] = new AtomicLong();
+            if (camera.supportsTiles()) {
+                final int tiles = tileColumns(camera) * ((camera.height() + tileSize - 1) / tileSize);
+                remaining[view] = new AtomicInteger(tiles);
+                for (int tile = 0; tile < tiles; tile++) { jobs.add(new Job(view, tile)); }
+            } else {
+                remaining[view] = new AtomicInteger(1);
+                jobs.add(new Job(view, -1));
+            }
+        }
+        System.out.println("INFO: rendering " + views + " views in " + jobs.size() + " jobs");
+        final long start = System.nanoTime();
+        jobs.parallelStream().forEach(job -> {
+            final long begin = System.nanoTime();
+            final var camera = cameras.get(job.view);
+            final var canvas = images.get(job.view);
+            if (job.tile < 0) {
+                camera.takePicture(world, canvas);
+            } else {
+                final int columns = tileColumns(camera);
+                final int minCol = (job.tile % columns) * tileSize;
+                final int minRow = (job.tile / columns) * tileSize;
+                camera.renderTile(world, canvas, minCol, minRow, Math.min(tileSize, camera.width() - minCol), Math.min(tileSize, camera.height() - minRow));
+            }
+            final long end = System.nanoTime();
+            busy[job.view].add(end - begin);
+            if (remaining[job.view].decrementAndGet() == 0) { finished[job.view].set(end - start); }
+        });
+        final List<ViewTiming> result = new ArrayList<>(views);
+        for (int view = 0; view < views; view++) {
+            final var timing = new ViewTiming(view, busy[view].sum() / 1_000_000, finished[view].get() / 1_000_000);
+            System.out.println("INFO: view " + view + " took " + timing.busyMillis() + " milliseconds of rendering and finished after " + timing.finishedMillis() + " milliseconds");
+            result.add(timing);
+        }
+        this.timings = List.copyOf(result);
+        return images;
+    }
+
+    /**
+     * Get the number of tile columns in a camera's image.
+     *
+     * @param camera
+     *   The camera.
+     * @return
+     *   The number of tiles across the image.
+     */
+    protected int tileColumns(Camera camera) {
+        return (camera.width() + tileSize - 1) / tileSize;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Canvas;
+
+/**
+ * Low resolution previews that take one sample per block of pixels and fill the block with the sample color.
+ * Shared by the progressive renderer's coarse pass and the render governor's warm up pass.
+ *
+ * @author BudgiePanic
+ */
+final class BlockPreview {
+
+    private BlockPreview() {}
+
+    /**
+     * Take one sample through the center of each block of pixels. Rows of blocks are rendered in parallel.
+     *
+     * @param camera
+     *   The camera that takes the samples.
+     * @param world
+     *   The world being imaged.
+     * @param blockSize
+     *   The width and height of the blocks in pixels.
+     * @param rowRunner
+     *   Runs the work of one row of blocks on the calling worker thread, such as under lowered world limits.
+     * @return
+     *   A low resolution preview of the image.
+     */
+    static Canvas render(Camera camera, World world, int blockSize, Consumer<Runnable> rowRunner) {
+        final int width = camera.width(), height = camera.height();
+        final var preview = new ArrayCanvas(width, height);
+        IntStream.range(0, (height + blockSize - 1) / blockSize).parallel().forEach(blockRow -> rowRunner.accept(() -> {
+            final int row = blockRow * blockSize;
+            for (int col = 0; col < width; col += blockSize) {
+                final double x = Math.min(col + blockSize * 0.5, width);
+                final double y = Math.min(row + blockSize * 0.5, height);
+                final var color = camera.pixelAt(world, x, y, 0.0);
+                for (int r = row; r < Math.min(row + blockSize, height); r++) {
+                    for (int c = col; c < Math.min(col + blockSize, width); c++) {
+                        preview.writePixel(c, r, color);
+                    }
+                }
+            }
+        }));
+        return preview;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.BudgiePanic.rendering.io.RenderCheckpoint;
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+
+/**
+ * Renders an image tile by tile, periodically saving the completed tiles to a checkpoint file.
+ * If a checkpoint for the same image already exists, its completed tiles are restored and only the remaining tiles are rendered.
+ * The checkpoint file is deleted once the whole image has been rendered.
+ * Tiles are rendered with Camera::renderTile, so cameras that can only render the whole image at once, such as a DepthCamera, are rejected.
+ * A checkpoint is only resumed if it was rendered from the same scene and camera, see CheckpointCameraWrapper::fingerprint.
+ *
+ * @author BudgiePanic
+ */
+public class CheckpointCameraWrapper implements Camera {
+
+    /**
+     * The width and height of the tiles that are checkpointed.
+     */
+    public static final int defaultTileSize = 32;
+
+    /**
+     * The fingerprint traces a grid of 8 by 8 primary rays into the world.
+     */
+    protected static final int fingerprintProbes = 8;
+
+    protected final Camera camera;
+
+    /**
+     * The checkpoint file.
+     */
+    protected final Path checkpointFile;
+
+    /**
+     * The minimum time between checkpoint saves, in milliseconds.
+     */
+    protected final long interval;
+
+    /**
+     * The width and height of the tiles.
+     */
+    protected final int tileSize;
+
+    /**
+     * The time the last checkpoint was saved.
+     */
+    private volatile long lastSave;
+
+    /**
+     * Set when a tile of the current render fails, tiles that are still running must not overwrite the final checkpoint.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * Held by the thread saving the checkpoint. Workers that find it held skip the save instead of waiting for it.
+     */
+    protected final ReentrantLock saveLock = new ReentrantLock();
+
+    /**
+     * Canonical constructor.
+     *
+     * @param camera
+     *   The camera that renders the image.
+     * @param checkpointFile
+     *   The file to save checkpoints to and resume from.
+     * @param interval
+     *   The minimum time between checkpoint saves, in milliseconds. Use 0 to save after every tile.
+     * @param tileSize
+     *   The width and height of the tiles.
+     */
+    public CheckpointCameraWrapper(Camera camera, Path checkpointFile, long interval, int tileSize) {
+        if (camera == null || checkpointFile == null) throw new IllegalArgumentException("camera and checkpoint file cannot be null");
+        if (interval < 0 || tileSize <= 0) throw new IllegalArgumentException("invalid checkpoint interval or tile size");
+        if (!supports(camera)) throw new IllegalArgumentException(camera.getClass().getSimpleName() + " cannot render tiles and cannot be checkpointed tile by tile");
+        this.camera = camera;
+        this.checkpointFile = checkpointFile;
+        this.interval = interval;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Create a checkpointing camera with the default tile size.
+     *
+     * @param camera
+     *   The camera that renders the image.
+     * @param checkpointFile
+     *   The file to save checkpoints to and resume from.
+     * @param interval
+     *   The minimum time between checkpoint saves, in milliseconds.
+     */
+    public CheckpointCameraWrapper(Camera camera, Path checkpointFile, long interval) {
+        this(camera, checkpointFile, interval, defaultTileSize);
+    }
+
+    /**
+     * Check if a camera can be checkpointed.
+     *
+     * @param camera
+     *   The camera that renders the image.
+     * @return
+     *   True if the camera can render its image one tile at a time.
+     */
+    public static boolean supports(Camera camera) { return camera.supportsTiles(); }
+
+    /**
+     * Identify the scene and view of a render, so checkpoints left behind by a different render are not resumed.
+     * The fingerprint covers the image size, the bounds of the world's shapes, the world's lights, and the rays and first hits
+     * of a coarse grid of pixels. Cameras that jitter their rays, such as a FocusCamera, are identified without their rays.
+     *
+     * @param camera
+     *   The camera that renders the image.
+     * @param world
+     *   The world being imaged.
+     * @return
+     *   The fingerprint of the render.
+     */
+    protected static long fingerprint(Camera camera, World world) {
+        long hash = mix(camera.width(), camera.height());
+        for (final var shape : world.getShapes()) {
+            final var bounds = shape.bounds(shape.transform());
+            hash = mix(hash, bounds.minimum());
+            hash = mix(hash, bounds.maximum());
+        }
+        for (final var light : world.getLights()) {
+            hash = mix(hash, light.position());
+            hash = mix(hash, Double.doubleToLongBits(light.color().getRed()));
+            hash = mix(hash, Double.doubleToLongBits(light.color().getGreen()));
+            hash = mix(hash, Double.doubleToLongBits(light.color().getBlue()));
+        }
+        final var center = camera.createRay(camera.width() * 0.5, camera.height() * 0.5, 0);
+        if (!center.equals(camera.createRay(camera.width() * 0.5, camera.height() * 0.5, 0))) { return hash; }
+        for (int row = 0; row < fingerprintProbes; row++) {
+            for (int col = 0; col < fingerprintProbes; col++) {
+                final var ray = camera.createRay((col + 0.5) * camera.width() / fingerprintProbes, (row + 0.5) * camera.height() / fingerprintProbes, 0);
+                hash = mix(hash, ray.origin());
+                hash = mix(hash, ray.direction());
+                final var hit = world.intersect(ray).flatMap(Intersection::Hit);
+                hash = mix(hash, Double.doubleToLongBits(hit.map(Intersection::a).orElse(-1.0)));
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) { return hash * 31 + value; }
+
+    private static long mix(long hash, Tuple tuple) {
+        hash = mix(hash, Double.doubleToLongBits(tuple.x));
+        hash = mix(hash, Double.doubleToLongBits(tuple.y));
+        return mix(hash, Double.doubleToLongBits(tuple.z));
+    }
+
+    @Override
+    public int width() { return camera.width(); }
+
+    @Override
+    public int height() { return camera.height(); }
+
+    @Override
+    public Ray createRay(double pixelColumn, double pixelRow, double time) { return camera.createRay(pixelColumn, pixelRow, time); }
+
+    @Override
+    public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) { return camera.pixelAt(world, pixelColumn, pixelRow, time); }
+
+    @Override
+    public Color pixelExposureAt(World world, double pixelColumn, double pixelRow) { return camera.pixelExposureAt(world, pixelColumn, pixelRow); }
+
+    /**
+     * Only whole pictures are checkpointed, rendering this camera's tiles separately would bypass the checkpoint.
+     */
+    @Override
+    public boolean supportsTiles() { return false; }
+
+    @Override
+    public Canvas takePicture(World world, Canvas canvas) {
+        if (canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        final int width = width(), height = height();
+        final long fingerprint = fingerprint(camera, world);
+        final var checkpoint = RenderCheckpoint.load(checkpointFile).
+            filter(c -> c.matches(width, height, tileSize, fingerprint)).
+            orElseGet(() -> new RenderCheckpoint(width, height, tileSize, fingerprint));
+        if (checkpoint.completedTiles() > 0) {
+            System.out.println("INFO: resuming render from " + checkpointFile + " with " + checkpoint.completedTiles() + " of " + checkpoint.tiles() + " tiles complete");
+            checkpoint.restore(canvas);
+        }
+        final List<Integer> remaining = new ArrayList<>();
+        for (int tile = 0; tile < checkpoint.tiles(); tile++) {
+            if (!checkpoint.isComplete(tile)) { remaining.add(tile); }
+        }
+        final int tileColumns = checkpoint.tileColumns();
+        lastSave = System.currentTimeMillis();
+        aborted = false;
+        try {
+            remaining.parallelStream().forEach(tile -> {
+                final int minCol = (tile % tileColumns) * tileSize;
+                final int minRow = (tile / tileColumns) * tileSize;
+                camera.renderTile(world, canvas, minCol, minRow, Math.min(tileSize, width - minCol), Math.min(tileSize, height - minRow));
+                checkpoint.complete(tile, canvas);
+                saveIfDue(checkpoint);
+            });
+        } catch (RuntimeException e) {
+            abort(checkpoint);
+            throw e;
+        }
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            System.out.println("WARN: could not delete render checkpoint " + checkpointFile + " " + e);
+        }
+        return canvas;
+    }
+
+    /**
+     * Save the checkpoint if enough time has passed since the last save.
+     * Only one thread saves at a time, a worker that finds another worker saving goes back to rendering instead of waiting.
+     *
+     * @param checkpoint
+     *   The checkpoint to save.
+     */
+    protected void saveIfDue(RenderCheckpoint checkpoint) {
+        if (aborted || System.currentTimeMillis() - lastSave < interval || !saveLock.tryLock()) { return; }
+        try {
+            final long now = System.currentTimeMillis();
+            // another worker may have saved, or a tile may have failed, while this worker was taking the lock
+            if (aborted || now - lastSave < interval) { return; }
+            checkpoint.save(checkpointFile);
+            lastSave = now;
+        } catch (IOException e) {
+            System.out.println("WARN: could not save render checkpoint " + checkpointFile + " " + e);
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    /**
+     * Save the checkpoint one last time after a tile failed, and stop tiles that are still running from saving it again.
+     * Waits for a save that is already running, so it cannot finish after the final save.
+     *
+     * @param checkpoint
+     *   The checkpoint to save.
+     */
+    protected void abort(RenderCheckpoint checkpoint) {
+        aborted = true;
+        saveLock.lock();
+        try {
+            checkpoint.save(checkpointFile);
+        } catch (IOException e) {
+            System.out.println("WARN: could not save render checkpoint " + checkpointFile + " " + e);
+        } finally {
+            saveLock.unlock();
+        }
+    }
+}
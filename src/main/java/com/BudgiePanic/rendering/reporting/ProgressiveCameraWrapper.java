@@ -0,0 +1,230 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import com.BudgiePanic.rendering.io.CanvasWriter;
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Film;
+import com.BudgiePanic.rendering.util.RandomSuppliers;
+import com.BudgiePanic.rendering.util.ReconstructionFilter;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+
+/**
+ * Renders an image progressively. 
+ * A coarse pass first takes one sample per block of pixels, then each refinement pass adds one more sample to every pixel.
+ * After every pass a snapshot of the image so far is handed to a snapshot consumer, such as a file writer, 
+ * so the framing and lighting of long renders can be checked within seconds.
+ * Rendering stops after a set number of passes, or once a pass changes the image by less than a target amount.
+ * The wrapped camera should take a single sample per call to pixelAt, such as a pinhole or focus camera.
+ *
+ * @author BudgiePanic
+ */
+public class ProgressiveCameraWrapper implements Camera {
+
+    /**
+     * The coarse pass takes one sample per 4x4 block of pixels.
+     */
+    public static final int defaultBlockSize = 4;
+
+    /**
+     * The default number of refinement passes.
+     */
+    public static final int defaultPasses = 16;
+
+    /**
+     * Target error that never stops rendering early.
+     */
+    public static final double noTarget = 0.0;
+
+    /**
+     * Snapshot consumer that discards snapshots.
+     */
+    public static final Consumer<Canvas> noSnapshots = (canvas) -> {};
+
+    protected final Camera camera;
+
+    /**
+     * The maximum number of refinement passes.
+     */
+    protected final int passes;
+
+    /**
+     * The root mean square color change between two passes below which rendering stops.
+     */
+    protected final double targetError;
+
+    /**
+     * Receives a snapshot of the image after every pass.
+     */
+    protected final Consumer<Canvas> snapshots;
+
+    /**
+     * Jitters the sample positions of the refinement passes.
+     */
+    protected final Supplier<Double> random;
+
+    /**
+     * The number of refinement passes completed by the last picture taken by this camera.
+     */
+    protected volatile int passesCompleted;
+
+    /**
+     * Canonical constructor.
+     *
+     * @param camera
+     *   The camera that casts the rays.
+     * @param passes
+     *   The maximum number of refinement passes.
+     * @param targetError
+     *   The root mean square color change between two passes below which rendering stops. Use noTarget to always render every pass.
+     * @param snapshots
+     *   Receives a snapshot of the image after every pass.
+     * @param random
+     *   Random number source used to jitter sample positions.
+     */
+    public ProgressiveCameraWrapper(Camera camera, int passes, double targetError, Consumer<Canvas> snapshots, Supplier<Double> random) {
+        if (camera == null || snapshots == null || random == null) throw new IllegalArgumentException("camera, snapshots and random cannot be null");
+        if (passes < 1) throw new IllegalArgumentException("at least one refinement pass is required");
+        if (targetError < 0) throw new IllegalArgumentException("target error cannot be negative");
+        this.camera = camera;
+        this.passes = passes;
+        this.targetError = targetError;
+        this.snapshots = snapshots;
+        this.random = random;
+        this.passesCompleted = 0;
+    }
+
+    /**
+     * Creates a progressive camera that saves its snapshots to a file.
+     *
+     * @param camera
+     *   The camera that casts the rays.
+     * @param passes
+     *   The maximum number of refinement passes.
+     * @param targetError
+     *   The root mean square color change between two passes below which rendering stops.
+     * @param snapshotFileName
+     *   The file that is overwritten with the image after every pass.
+     */
+    public ProgressiveCameraWrapper(Camera camera, int passes, double targetError, String snapshotFileName) {
+        this(camera, passes, targetError, (canvas) -> CanvasWriter.saveImageToFile(canvas, snapshotFileName), RandomSuppliers.threadSafeRandomSupplier);
+    }
+
+    @Override
+    public int width() { return camera.width(); }
+
+    @Override
+    public int height() { return camera.height(); }
+
+    @Override
+    public Ray createRay(double pixelColumn, double pixelRow, double time) { return camera.createRay(pixelColumn, pixelRow, time); }
+
+    @Override
+    public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) { return camera.pixelAt(world, pixelColumn, pixelRow, time); }
+
+    /**
+     * Get the number of refinement passes completed by the last picture taken by this camera.
+     *
+     * @return
+     *   The number of refinement passes.
+     */
+    public int passesCompleted() { return passesCompleted; }
+
+    /**
+     * Every pass covers the whole image, so it cannot be rendered one tile at a time.
+     */
+    @Override
+    public boolean supportsTiles() { return false; }
+
+    @Override
+    public Canvas takePicture(World world, Canvas canvas) {
+        if (canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        final int width = width(), height = height();
+        snapshots.accept(coarsePass(world));
+        final var film = new Film(width, height, ReconstructionFilter.box);
+        Canvas previous = null;
+        int pass = 0;
+        while (pass < passes) {
+            // the first pass samples pixel centers, later passes sample random points within each pixel
+            final boolean jitter = pass > 0;
+            IntStream.range(0, height).parallel().forEach(row -> {
+                for (int col = 0; col < width; col++) {
+                    final double x = col + (jitter ? random.get() : 0.5);
+                    final double y = row + (jitter ? random.get() : 0.5);
+                    film.addSample(x, y, camera.pixelAt(world, x, y, 0.0));
+                }
+            });
+            pass++;
+            final var current = film.develop();
+            snapshots.accept(current);
+            if (previous != null && targetError > noTarget) {
+                final double error = difference(previous, current);
+                if (error < targetError) {
+                    System.out.println("INFO: progressive render converged after " + pass + " passes, change " + error);
+                    break;
+                }
+            }
+            previous = current;
+        }
+        this.passesCompleted = pass;
+        return film.develop(canvas);
+    }
+
+    /**
+     * Take one sample per block of pixels and fill the block with the sample color.
+     *
+     * @param world
+     *   The world being imaged.
+     * @return
+     *   A low resolution preview of the image.
+     */
+    protected Canvas coarsePass(World world) {
+        return BlockPreview.render(camera, world, defaultBlockSize, Runnable::run);
+    }
+
+    /**
+     * Get the root mean square color difference between two images.
+     *
+     * @param a
+     *   The first image.
+     * @param b
+     *   The second image, must be the same size as the first.
+     * @return
+     *   The root mean square euclidean distance between the colors of each pixel.
+     */
+    protected static double difference(Canvas a, Canvas b) {
+        double sum = 0.0;
+        for (int row = 0; row < a.getHeight(); row++) {
+            for (int col = 0; col < a.getWidth(); col++) {
+                final var ca = a.getPixel(col, row);
+                final var cb = b.getPixel(col, row);
+                final double red = ca.getRed() - cb.getRed();
+                final double green = ca.getGreen() - cb.getGreen();
+                final double blue = ca.getBlue() - cb.getBlue();
+                sum += (red * red) + (green * green) + (blue * blue);
+            }
+        }
+        return Math.sqrt(sum / (a.getWidth() * a.getHeight()));
+    }
+}
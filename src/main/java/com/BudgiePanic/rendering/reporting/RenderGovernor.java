@@ -0,0 +1,295 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Film;
+import com.BudgiePanic.rendering.util.RandomSuppliers;
+import com.BudgiePanic.rendering.util.ReconstructionFilter;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+
+/**
+ * Renders an image within a wall clock time budget.
+ * A warm up pass measures how long samples take, and the governor lowers the recursion depth and light sample count 
+ * until at least one sample per pixel fits in the budget. The lowered limits only apply to the governor's own render threads,
+ * the world itself is not modified, so it can be shared with other renders. The image is then rendered in passes of one sample per pixel, 
+ * the number of passes each tile receives is chosen from the tile's measured cost so that the render finishes on time.
+ * The wrapped camera should take a single sample per call to pixelAt, such as a pinhole or focus camera.
+ *
+ * @author BudgiePanic
+ */
+public class RenderGovernor implements Camera {
+
+    /**
+     * A quality setting for a render.
+     *
+     * @param recursionDepth
+     *   The reflection and refraction recursion limit.
+     * @param lightSamples
+     *   The maximum number of samples per light.
+     */
+    public static record Quality(int recursionDepth, int lightSamples) {}
+
+    /**
+     * Quality settings the governor can choose from, best first.
+     */
+    public static final List<Quality> qualities = List.of(
+        new Quality(World.defaultRecursionDepth, World.allLightSamples),
+        new Quality(2, 16),
+        new Quality(1, 4),
+        new Quality(0, 1)
+    );
+
+    /**
+     * The warm up pass takes one sample per 8x8 block of pixels.
+     */
+    protected static final int warmUpBlockSize = 8;
+
+    /**
+     * The width and height of the tiles whose cost is measured.
+     */
+    protected static final int tileSize = 16;
+
+    /**
+     * The default maximum number of samples per pixel.
+     */
+    public static final int defaultMaxSamples = 16;
+
+    protected final Camera camera;
+
+    /**
+     * The time budget for a picture, in nanoseconds.
+     */
+    protected final long budget;
+
+    /**
+     * The maximum number of samples per pixel.
+     */
+    protected final int maxSamples;
+
+    /**
+     * Jitters the sample positions after the first pass.
+     */
+    protected final Supplier<Double> random;
+
+    /**
+     * The time source, in nanoseconds.
+     */
+    protected final LongSupplier clock;
+
+    /**
+     * The quality used by the last picture taken by this camera.
+     */
+    protected volatile Quality quality;
+
+    /**
+     * The number of samples each tile received in the last picture taken by this camera.
+     */
+    protected volatile int[] tileSamples;
+
+    /**
+     * Canonical constructor.
+     *
+     * @param camera
+     *   The camera that casts the rays.
+     * @param budgetMillis
+     *   The time budget for a picture, in milliseconds.
+     * @param maxSamples
+     *   The maximum number of samples per pixel.
+     * @param random
+     *   Random number source used to jitter sample positions.
+     * @param clock
+     *   The time source, in nanoseconds.
+     */
+    public RenderGovernor(Camera camera, long budgetMillis, int maxSamples, Supplier<Double> random, LongSupplier clock) {
+        if (camera == null || random == null || clock == null) throw new IllegalArgumentException("camera, random and clock cannot be null");
+        if (budgetMillis < 0 || maxSamples < 1) throw new IllegalArgumentException("invalid budget or sample count");
+        this.camera = camera;
+        this.budget = budgetMillis * 1_000_000L;
+        this.maxSamples = maxSamples;
+        this.random = random;
+        this.clock = clock;
+        this.quality = qualities.get(0);
+        this.tileSamples = new int[0];
+    }
+
+    /**
+     * Create a render governor with the default maximum sample count.
+     *
+     * @param camera
+     *   The camera that casts the rays.
+     * @param budgetMillis
+     *   The time budget for a picture, in milliseconds.
+     */
+    public RenderGovernor(Camera camera, long budgetMillis) {
+        this(camera, budgetMillis, defaultMaxSamples, RandomSuppliers.threadSafeRandomSupplier, System::nanoTime);
+    }
+
+    @Override
+    public int width() { return camera.width(); }
+
+    @Override
+    public int height() { return camera.height(); }
+
+    @Override
+    public Ray createRay(double pixelColumn, double pixelRow, double time) { return camera.createRay(pixelColumn, pixelRow, time); }
+
+    @Override
+    public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) { return camera.pixelAt(world, pixelColumn, pixelRow, time); }
+
+    /**
+     * Get the quality chosen for the last picture taken by this camera.
+     *
+     * @return
+     *   The world quality settings.
+     */
+    public Quality quality() { return quality; }
+
+    /**
+     * Get the number of samples per pixel each tile received in the last picture, tiles are numbered in row major order.
+     *
+     * @return
+     *   The per tile sample counts.
+     */
+    public int[] tileSamples() { return tileSamples.clone(); }
+
+    /**
+     * The time budget is shared by the whole image, so it cannot be rendered one tile at a time.
+     */
+    @Override
+    public boolean supportsTiles() { return false; }
+
+    @Override
+    public Canvas takePicture(World world, Canvas canvas) {
+        if (canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        final long deadline = clock.getAsLong() + budget;
+        // warm up, lower the quality until at least one sample per pixel is affordable
+        final int workers = Runtime.getRuntime().availableProcessors();
+        final long pixels = (long) width() * height();
+        Canvas preview = null;
+        Quality chosen = null;
+        for (final var candidate : qualities) {
+            final long start = clock.getAsLong();
+            preview = warmUp(world, candidate);
+            final long warmUpSamples = (long) ((width() + warmUpBlockSize - 1) / warmUpBlockSize) * ((height() + warmUpBlockSize - 1) / warmUpBlockSize);
+            // the warm up pass runs in parallel, so the elapsed time per sample already accounts for the workers
+            final double sampleCost = (clock.getAsLong() - start) / (double) warmUpSamples;
+            final double affordable = (deadline - clock.getAsLong()) / sampleCost;
+            chosen = candidate;
+            if (affordable >= pixels) { break; }
+        }
+        this.quality = chosen;
+        System.out.println("INFO: render governor chose " + chosen);
+        return refine(world, canvas, preview, deadline, workers, chosen);
+    }
+
+    /**
+     * Take one sample per block of pixels and fill the block with the sample color.
+     *
+     * @param world
+     *   The world being imaged.
+     * @param quality
+     *   The quality to sample the world with.
+     * @return
+     *   A low resolution preview of the image, used for pixels that run out of time.
+     */
+    protected Canvas warmUp(World world, Quality quality) {
+        return BlockPreview.render(camera, world, warmUpBlockSize, row -> world.withLimits(quality.recursionDepth(), quality.lightSamples(), row));
+    }
+
+    /**
+     * Render passes of one sample per pixel, choosing how many passes each tile gets from the measured cost of the tile.
+     *
+     * @param world
+     *   The world being imaged.
+     * @param canvas
+     *   The canvas to write the image to.
+     * @param preview
+     *   The warm up image, used for tiles that did not receive any samples.
+     * @param deadline
+     *   The time the render must finish by.
+     * @param workers
+     *   The number of tiles that can be rendered at once.
+     * @param quality
+     *   The quality to sample the world with.
+     * @return
+     *   The canvas.
+     */
+    protected Canvas refine(World world, Canvas canvas, Canvas preview, long deadline, int workers, Quality quality) {
+        final int width = width(), height = height();
+        final int tileColumns = (width + tileSize - 1) / tileSize;
+        final int tiles = tileColumns * ((height + tileSize - 1) / tileSize);
+        final var film = new Film(width, height, ReconstructionFilter.box);
+        final int[] samples = new int[tiles];
+        final AtomicLong[] costs = new AtomicLong[tiles];
+        for (int tile = 0; tile < tiles; tile++) { costs[tile] = new AtomicLong(); }
+        // every tile gets at least one pass, until more is known about its cost
+        final int[] targets = new int[tiles];
+        Arrays.fill(targets, 1);
+        for (int pass = 0; pass < maxSamples; pass++) {
+            final int currentPass = pass;
+            final List<Integer> work = new ArrayList<>();
+            for (int tile = 0; tile < tiles; tile++) {
+                if (targets[tile] > currentPass) { work.add(tile); }
+            }
+            if (work.isEmpty()) { break; }
+            work.parallelStream().forEach(tile -> {
+                if (clock.getAsLong() >= deadline) { return; }
+                final long start = clock.getAsLong();
+                final int minCol = (tile % tileColumns) * tileSize;
+                final int minRow = (tile / tileColumns) * tileSize;
+                world.withLimits(quality.recursionDepth(), quality.lightSamples(), () -> {
+                    for (int row = minRow; row < Math.min(minRow + tileSize, height); row++) {
+                        for (int col = minCol; col < Math.min(minCol + tileSize, width); col++) {
+                            // the first pass samples pixel centers, later passes sample random points within each pixel
+                            final double x = col + (currentPass == 0 ? 0.5 : random.get());
+                            final double y = row + (currentPass == 0 ? 0.5 : random.get());
+                            film.addSample(x, y, camera.pixelAt(world, x, y, 0.0));
+                        }
+                    }
+                });
+                costs[tile].addAndGet(clock.getAsLong() - start);
+                samples[tile]++;
+            });
+            // share the remaining time equally between tiles, cheap tiles can afford more passes than expensive tiles
+            final double share = Math.max(0, deadline - clock.getAsLong()) * workers / (double) tiles;
+            for (int tile = 0; tile < tiles; tile++) {
+                if (samples[tile] == 0) { targets[tile] = samples[tile]; continue; }
+                final double passCost = Math.max(1.0, costs[tile].get() / (double) samples[tile]);
+                targets[tile] = (int) Math.min(maxSamples, samples[tile] + Math.floor(share / passCost));
+            }
+        }
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                final int tile = (row / tileSize) * tileColumns + (col / tileSize);
+                canvas.writePixel(col, row, samples[tile] > 0 ? film.getPixel(col, row) : preview.getPixel(col, row));
+            }
+        }
+        this.tileSamples = samples;
+        return canvas;
+    }
+}
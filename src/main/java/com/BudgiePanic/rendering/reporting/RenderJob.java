@@ -0,0 +1,466 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Canvas;
+
+/**
+ * A handle to a render that runs in the background.
+ * The image is split into tiles that worker threads take one at a time, so the job can report each finished tile,
+ * estimate the time remaining, pause between tiles, and stop within one tile of being cancelled.
+ * Tiles are rendered with Camera::renderTile, so supersampled and wrapped cameras are tiled too.
+ * Cameras that cannot render tiles are rendered as a single tile with Camera::takePicture.
+ *
+ * @author BudgiePanic
+ */
+public class RenderJob {
+
+    /**
+     * A rectangular region of the image.
+     *
+     * @param index
+     *   The index of the tile, in row major order.
+     * @param column
+     *   The left most column of the tile.
+     * @param row
+     *   The top most row of the tile.
+     * @param width
+     *   The number of columns in the tile.
+     * @param height
+     *   The number of rows in the tile.
+     */
+    public static record Tile(int index, int column, int row, int width, int height) {}
+
+    protected final World world;
+
+    protected final Camera camera;
+
+    /**
+     * The image being rendered.
+     */
+    protected final Canvas canvas;
+
+    /**
+     * Completes with the image once every tile is rendered.
+     */
+    protected final CompletableFuture<Canvas> result;
+
+    /**
+     * Called on the worker threads each time a tile is finished. Guarded by the list itself, together with finishedTiles.
+     */
+    protected final List<Consumer<Tile>> listeners;
+
+    /**
+     * The tiles that have been finished, replayed to listeners that are added late.
+     */
+    protected final List<Tile> finishedTiles;
+
+    /**
+     * The width and height of the tiles in pixels.
+     */
+    protected final int tileSize;
+
+    /**
+     * The number of tiles across the image.
+     */
+    protected final int tileColumns;
+
+    /**
+     * The number of tiles in the image.
+     */
+    protected final int tiles;
+
+    /**
+     * True if the image is split into tiles, false if the camera takes the whole picture at once.
+     */
+    protected final boolean tiled;
+
+    /**
+     * The index of the next tile a worker should render.
+     */
+    protected final AtomicInteger nextTile;
+
+    protected final AtomicInteger completedTiles;
+
+    protected final AtomicLong completedPixels;
+
+    /**
+     * The number of workers that have not stopped yet, plus one while RenderJob::start is still submitting workers.
+     */
+    protected final AtomicInteger activeWorkers;
+
+    /**
+     * Guards the pause state, workers wait on it while the job is paused.
+     */
+    protected final Object lock;
+
+    /**
+     * Set when the job is cancelled or fails, workers stop before taking another tile.
+     */
+    protected volatile boolean stopped;
+
+    protected boolean paused;
+
+    /**
+     * The time the job started.
+     */
+    protected long startTime;
+
+    /**
+     * The time the job was most recently paused.
+     */
+    protected long pauseTime;
+
+    /**
+     * The total time the job has spent paused, not counting the current pause.
+     */
+    protected long pausedDuration;
+
+    /**
+     * Create a new render job. The job does not start until RenderJob::start is called.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param camera
+     *   The camera that takes the image.
+     * @param tileSize
+     *   The width and height of the tiles in pixels.
+     */
+    protected RenderJob(World world, Camera camera, int tileSize) {
+        this.world = world;
+        this.camera = camera;
+        this.canvas = new ArrayCanvas(camera.width(), camera.height());
+        this.result = new CompletableFuture<>();
+        this.listeners = new ArrayList<>();
+        this.finishedTiles = new ArrayList<>();
+        this.tiled = camera.supportsTiles();
+        this.tileSize = tiled ? tileSize : Math.max(camera.width(), camera.height());
+        this.tileColumns = (camera.width() + this.tileSize - 1) / this.tileSize;
+        this.tiles = tileColumns * ((camera.height() + this.tileSize - 1) / this.tileSize);
+        this.nextTile = new AtomicInteger();
+        this.completedTiles = new AtomicInteger();
+        this.completedPixels = new AtomicLong();
+        this.activeWorkers = new AtomicInteger();
+        this.lock = new Object();
+        this.stopped = false;
+        this.paused = false;
+    }
+
+    /**
+     * Start rendering an image in the background.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param camera
+     *   The camera that takes the image.
+     * @param options
+     *   The tiling and threading settings of the job.
+     * @return
+     *   A handle to the running job.
+     */
+    public static RenderJob renderAsync(World world, Camera camera, RenderOptions options) {
+        if (world == null || camera == null || options == null) throw new IllegalArgumentException("world, camera and options cannot be null");
+        final var job = new RenderJob(world, camera, options.tileSize());
+        job.start(options);
+        return job;
+    }
+
+    /**
+     * Start the job's workers.
+     *
+     * @param options
+     *   The threading settings of the job.
+     */
+    protected void start(RenderOptions options) {
+        final int workers = Math.min(options.threads(), tiles);
+        final ExecutorService ownThreads = options.executor().isPresent() ? null : Executors.newFixedThreadPool(workers);
+        final var executor = options.executor().orElse(ownThreads);
+        // cancelling the future directly, or a failure, stops the workers too
+        result.whenComplete((image, error) -> { if (error != null) { stop(); } });
+        if (ownThreads != null) { result.whenComplete((image, error) -> ownThreads.shutdown()); }
+        synchronized (lock) { startTime = System.nanoTime(); }
+        // hold a count for this thread, so workers that finish early cannot complete the job before every worker is submitted
+        activeWorkers.set(1);
+        for (int i = 0; i < workers; i++) {
+            activeWorkers.incrementAndGet();
+            try {
+                executor.execute(this::work);
+            } catch (RejectedExecutionException e) {
+                activeWorkers.decrementAndGet();
+                result.completeExceptionally(e);
+                break;
+            }
+        }
+        workerStopped();
+    }
+
+    /**
+     * Render tiles until there are none left or the job is stopped.
+     */
+    protected void work() {
+        try {
+            while (awaitRunning()) {
+                final int tile = nextTile.getAndIncrement();
+                if (tile >= tiles) { break; }
+                render(tile);
+            }
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        } finally {
+            workerStopped();
+        }
+    }
+
+    /**
+     * Finish the job once the last worker has stopped, completing the result if every tile was rendered or cancelling it otherwise.
+     * Does nothing if the result was already completed, for example by a failed tile.
+     */
+    protected void workerStopped() {
+        if (activeWorkers.decrementAndGet() == 0) {
+            if (completedTiles.get() == tiles) {
+                result.complete(canvas);
+            } else {
+                result.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Block while the job is paused.
+     *
+     * @return
+     *   False if the job has been stopped.
+     */
+    protected boolean awaitRunning() {
+        synchronized (lock) {
+            while (paused && !stopped) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return !stopped;
+    }
+
+    /**
+     * Render a tile and tell the listeners about it.
+     *
+     * @param index
+     *   The index of the tile.
+     */
+    protected void render(int index) {
+        final var tile = tile(index);
+        if (tiled) {
+            camera.renderTile(world, canvas, tile.column(), tile.row(), tile.width(), tile.height());
+        } else {
+            camera.takePicture(world, canvas);
+        }
+        completedPixels.addAndGet((long) tile.width() * tile.height());
+        completedTiles.incrementAndGet();
+        final List<Consumer<Tile>> notify;
+        synchronized (listeners) {
+            finishedTiles.add(tile);
+            notify = List.copyOf(listeners);
+        }
+        notify.forEach(listener -> tellListener(listener, tile));
+    }
+
+    /**
+     * Pass a finished tile to a listener. A listener that throws is reported and does not stop the render or the other listeners.
+     *
+     * @param listener
+     *   The listener.
+     * @param tile
+     *   The finished tile.
+     */
+    protected static void tellListener(Consumer<Tile> listener, Tile tile) {
+        try {
+            listener.accept(tile);
+        } catch (RuntimeException e) {
+            System.out.println("WARN: tile listener failed on tile " + tile.index() + " " + e);
+        }
+    }
+
+    /**
+     * Get the region of the image covered by a tile.
+     *
+     * @param index
+     *   The index of the tile.
+     * @return
+     *   The tile.
+     */
+    public Tile tile(int index) {
+        if (index < 0 || index >= tiles) throw new IllegalArgumentException("invalid tile " + index);
+        final int column = (index % tileColumns) * tileSize;
+        final int row = (index / tileColumns) * tileSize;
+        return new Tile(index, column, row, Math.min(tileSize, camera.width() - column), Math.min(tileSize, camera.height() - row));
+    }
+
+    /**
+     * Get the future that completes with the image when every tile is rendered.
+     * The future is cancelled if the job is cancelled, and completes exceptionally if a tile fails.
+     *
+     * @return
+     *   The image future.
+     */
+    public CompletableFuture<Canvas> result() { return result; }
+
+    /**
+     * Get the image being rendered. Tiles that have not been reported as finished may be blank or partly rendered.
+     *
+     * @return
+     *   The image.
+     */
+    public Canvas canvas() { return canvas; }
+
+    /**
+     * Call a listener once for every finished tile. Tiles that finished before the listener was added are passed to it immediately
+     * on the calling thread, later tiles are passed to it on the worker thread that rendered them.
+     *
+     * @param listener
+     *   The listener.
+     */
+    public void onTileComplete(Consumer<Tile> listener) {
+        if (listener == null) throw new IllegalArgumentException("listener cannot be null");
+        final List<Tile> finished;
+        synchronized (listeners) {
+            listeners.add(listener);
+            finished = List.copyOf(finishedTiles);
+        }
+        finished.forEach(tile -> tellListener(listener, tile));
+    }
+
+    /**
+     * Get the number of tiles in the image.
+     *
+     * @return
+     *   The number of tiles.
+     */
+    public int tiles() { return tiles; }
+
+    /**
+     * Get the number of tiles that have been rendered.
+     *
+     * @return
+     *   The number of finished tiles.
+     */
+    public int completedTiles() { return completedTiles.get(); }
+
+    /**
+     * Get the fraction of the image that has been rendered.
+     *
+     * @return
+     *   A value between zero and one.
+     */
+    public double progress() {
+        return completedPixels.get() / (double) ((long) camera.width() * camera.height());
+    }
+
+    /**
+     * Estimate how long the job will take to finish, based on the rate tiles have been finished at so far. Time spent paused is not counted.
+     *
+     * @return
+     *   The estimated time remaining, or EMPTY if no tiles have been finished yet.
+     */
+    public Optional<Duration> eta() {
+        final long done = completedPixels.get();
+        if (done == 0) { return Optional.empty(); }
+        final long total = (long) camera.width() * camera.height();
+        return Optional.of(Duration.ofNanos((long) (runningTime() * ((total - done) / (double) done))));
+    }
+
+    /**
+     * Get the time the job has spent running, not counting the time it spent paused.
+     *
+     * @return
+     *   The running time in nanoseconds.
+     */
+    protected long runningTime() {
+        synchronized (lock) {
+            final long now = System.nanoTime();
+            return now - startTime - pausedDuration - (paused ? now - pauseTime : 0);
+        }
+    }
+
+    /**
+     * Stop taking new tiles until RenderJob::resume is called. Tiles that are being rendered are finished.
+     */
+    public void pause() {
+        synchronized (lock) {
+            if (paused) { return; }
+            paused = true;
+            pauseTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Resume a paused job.
+     */
+    public void resume() {
+        synchronized (lock) {
+            if (!paused) { return; }
+            paused = false;
+            pausedDuration += System.nanoTime() - pauseTime;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Determine if the job is paused.
+     *
+     * @return
+     *   True if the job is paused.
+     */
+    public boolean isPaused() {
+        synchronized (lock) { return paused; }
+    }
+
+    /**
+     * Cancel the job. Workers finish the tile they are rendering and then stop, after which the result future is cancelled.
+     */
+    public void cancel() {
+        stop();
+    }
+
+    /**
+     * Tell the workers to stop, waking any that are waiting for the job to resume.
+     */
+    protected void stop() {
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+    }
+}
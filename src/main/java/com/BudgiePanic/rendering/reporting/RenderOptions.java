@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Settings for an asynchronous render job.
+ *
+ * @param tileSize
+ *   The width and height of the tiles the image is split into. Progress is reported, and cancellation takes effect, one tile at a time.
+ * @param threads
+ *   The number of tiles rendered at the same time.
+ * @param executor
+ *   The executor that runs the job's workers. If EMPTY the job creates its own threads and stops them when it finishes.
+ *
+ * @author BudgiePanic
+ */
+public record RenderOptions(int tileSize, int threads, Optional<Executor> executor) {
+
+    /**
+     * The default width and height of a tile in pixels.
+     */
+    public static final int defaultTileSize = 32;
+
+    /**
+     * Canonical constructor.
+     */
+    public RenderOptions {
+        if (tileSize <= 0) throw new IllegalArgumentException("tile size must be positive");
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive");
+        if (executor == null) throw new IllegalArgumentException("executor cannot be null");
+    }
+
+    /**
+     * Create render options with the default tile size, one thread per processor and the job's own threads.
+     *
+     * @return
+     *   The default render options.
+     */
+    public static RenderOptions defaultOptions() {
+        return new RenderOptions(defaultTileSize, Runtime.getRuntime().availableProcessors(), Optional.empty());
+    }
+
+    /**
+     * Create a copy of these options with the tile size adjusted.
+     *
+     * @param tileSize
+     *   The new tile size.
+     * @return
+     *   A copy of these options with the tile size set to tileSize.
+     */
+    public RenderOptions setTileSize(int tileSize) {
+        return new RenderOptions(tileSize, this.threads(), this.executor());
+    }
+
+    /**
+     * Create a copy of these options with the number of threads adjusted.
+     *
+     * @param threads
+     *   The new number of threads.
+     * @return
+     *   A copy of these options with the number of threads set to threads.
+     */
+    public RenderOptions setThreads(int threads) {
+        return new RenderOptions(this.tileSize(), threads, this.executor());
+    }
+
+    /**
+     * Create a copy of these options that runs the job's workers on an executor.
+     *
+     * @param executor
+     *   The executor.
+     * @return
+     *   A copy of these options with the executor set to executor.
+     */
+    public RenderOptions setExecutor(Executor executor) {
+        return new RenderOptions(this.tileSize(), this.threads(), Optional.of(executor));
+    }
+}
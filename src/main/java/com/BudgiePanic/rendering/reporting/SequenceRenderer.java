@@ -0,0 +1,572 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import com.BudgiePanic.rendering.io.CanvasWriter;
+import com.BudgiePanic.rendering.scene.PinHoleCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.transform.TransformCurve;
+
+/**
+ * Renders the frames of an animation from one world.
+ * The shapes already in the world are static, they are kept between frames so their bounding volume hierarchies are only built once.
+ * Moving shapes are described by tracks. Before each frame the previous frame's moving shapes are removed from the world
+ * and each track builds its shape again with its transform at the frame's time. Compiling the world for the frame only 
+ * compiles the new moving shapes, the static shapes keep their compiled shadow hierarchies (see World::compile).
+ * The camera follows its own transform curve.
+ * 
+ * With reprojection enabled, pixels that saw a static, view independent surface in the previous frame are projected into the next frame.
+ * A reprojected sample is reused only if it lands close to a pixel center, its neighbours agree with it, and no moving shape
+ * could block its view ray or shadow rays. Shadow rays of lights with many samples, such as area lights, can end anywhere on the 
+ * light, so moving shapes near the space between the point and the light's bounds block reuse. All other pixels are traced again.
+ * Frames are handed to the output on a separate thread, so the next frame is traced while the previous one is being saved.
+ *
+ * @author BudgiePanic
+ */
+public class SequenceRenderer {
+
+    /**
+     * Reprojected samples further than this many pixels from the center of the pixel they land in are discarded.
+     */
+    public static final double defaultTolerance = 0.5;
+
+    /**
+     * Neighbouring samples lie on the same surface when the line between them is within ~15 degrees of both of their tangent planes.
+     */
+    protected static final double surfaceThreshold = 0.25;
+
+    /**
+     * A moving shape.
+     *
+     * @param curve
+     *   The transform of the shape over time.
+     * @param shape
+     *   Builds the shape with a given transform. Wrap meshes in a new group with the transform to keep the mesh's hierarchy between frames.
+     */
+    public static record Track(TransformCurve curve, Function<Matrix4, Shape> shape) {}
+
+    /**
+     * The center sample of every pixel in a frame, stored in row major order.
+     * Pixels whose ray missed have a null shape, point and normal.
+     *
+     * @param width
+     *   The number of columns in the frame.
+     * @param height
+     *   The number of rows in the frame.
+     * @param colors
+     *   The color of each pixel.
+     * @param points
+     *   The world space point seen through each pixel.
+     * @param shapes
+     *   The shape seen through each pixel.
+     * @param normals
+     *   The surface normal seen through each pixel.
+     * @param reusable
+     *   True for pixels that may be reprojected into the next frame.
+     */
+    protected static record Frame(int width, int height, Color[] colors, Tuple[] points, Shape[] shapes, Tuple[] normals, boolean[] reusable) {
+        Frame(int width, int height) {
+            this(width, height, new Color[width * height], new Tuple[width * height], new Shape[width * height], new Tuple[width * height], new boolean[width * height]);
+        }
+        int index(int column, int row) { return row * width + column; }
+    }
+
+    protected final int width;
+
+    protected final int height;
+
+    /**
+     * The field of view of the camera in radians.
+     */
+    protected final double fov;
+
+    /**
+     * The view transform of the camera over time.
+     */
+    protected final TransformCurve camera;
+
+    /**
+     * The number of frames in the sequence.
+     */
+    protected final int frames;
+
+    /**
+     * The number of frames per second of animation time.
+     */
+    protected final double frameRate;
+
+    /**
+     * Whether samples of the previous frame are reused.
+     */
+    protected final boolean reprojection;
+
+    /**
+     * The maximum distance in pixels between a reprojected sample and the center of the pixel it is reused in.
+     */
+    protected final double tolerance;
+
+    /**
+     * The moving shapes of the animation.
+     */
+    protected final List<Track> tracks;
+
+    /**
+     * The number of pixels that were reused in the last sequence rendered.
+     */
+    protected volatile long reusedPixels;
+
+    /**
+     * The number of pixels that were traced in the last sequence rendered.
+     */
+    protected volatile long tracedPixels;
+
+    /**
+     * Create a sequence renderer with the default reprojection tolerance.
+     *
+     * @param width
+     *   The width of the frames.
+     * @param height
+     *   The height of the frames.
+     * @param fov
+     *   The field of view of the camera in radians.
+     * @param camera
+     *   The view transform of the camera over time.
+     * @param frames
+     *   The number of frames to render.
+     * @param frameRate
+     *   The number of frames per second of animation time.
+     * @param reprojection
+     *   Whether samples of the previous frame should be reused.
+     */
+    public SequenceRenderer(int width, int height, double fov, TransformCurve camera, int frames, double frameRate, boolean reprojection) {
+        this(width, height, fov, camera, frames, frameRate, reprojection, defaultTolerance);
+    }
+
+    /**
+     * Canonical constructor.
+     *
+     * @param width
+     *   The width of the frames.
+     * @param height
+     *   The height of the frames.
+     * @param fov
+     *   The field of view of the camera in radians.
+     * @param camera
+     *   The view transform of the camera over time.
+     * @param frames
+     *   The number of frames to render.
+     * @param frameRate
+     *   The number of frames per second of animation time.
+     * @param reprojection
+     *   Whether samples of the previous frame should be reused.
+     * @param tolerance
+     *   The maximum distance in pixels between a reprojected sample and the center of the pixel it is reused in.
+     */
+    public SequenceRenderer(int width, int height, double fov, TransformCurve camera, int frames, double frameRate, boolean reprojection, double tolerance) {
+        if (camera == null) throw new IllegalArgumentException("camera curve cannot be null");
+        if (width <= 0 || height <= 0 || frames <= 0) throw new IllegalArgumentException("width, height and frames must be positive");
+        if (frameRate <= 0) throw new IllegalArgumentException("frame rate must be positive");
+        if (tolerance < 0) throw new IllegalArgumentException("tolerance cannot be negative");
+        this.width = width;
+        this.height = height;
+        this.fov = fov;
+        this.camera = camera;
+        this.frames = frames;
+        this.frameRate = frameRate;
+        this.reprojection = reprojection;
+        this.tolerance = tolerance;
+        this.tracks = new ArrayList<>();
+        this.reusedPixels = 0;
+        this.tracedPixels = 0;
+    }
+
+    /**
+     * Add a moving shape to the animation.
+     *
+     * @param curve
+     *   The transform of the shape over time.
+     * @param shape
+     *   Builds the shape with a given transform.
+     */
+    public void addTrack(TransformCurve curve, Function<Matrix4, Shape> shape) {
+        if (curve == null || shape == null) throw new IllegalArgumentException("curve and shape cannot be null");
+        this.tracks.add(new Track(curve, shape));
+    }
+
+    /**
+     * Get the number of pixels that were reused from previous frames in the last sequence rendered.
+     *
+     * @return
+     *   The number of reused pixels.
+     */
+    public long reusedPixels() { return reusedPixels; }
+
+    /**
+     * Get the number of pixels that were traced in the last sequence rendered.
+     *
+     * @return
+     *   The number of traced pixels.
+     */
+    public long tracedPixels() { return tracedPixels; }
+
+    /**
+     * Get the camera used to take a frame.
+     *
+     * @param frame
+     *   The frame number.
+     * @return
+     *   The camera at the frame's time.
+     */
+    public PinHoleCamera cameraAt(int frame) {
+        return new PinHoleCamera(width, height, fov, camera.at(frame / frameRate));
+    }
+
+    /**
+     * Render the sequence to numbered PPM files in the user's working directory.
+     *
+     * @param world
+     *   The world containing the static shapes and the lights.
+     * @param fileName
+     *   The name of the produced files, the frame number is inserted before the extension.
+     */
+    public void render(World world, String fileName) {
+        final String name = fileName.endsWith(".ppm") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        render(world, (frame, canvas) -> CanvasWriter.saveImageToFile(canvas, String.format("%s_%04d.ppm", name, frame)));
+    }
+
+    /**
+     * Render the sequence. The moving shapes are removed from the world when the sequence is complete.
+     *
+     * @param world
+     *   The world containing the static shapes and the lights.
+     * @param output
+     *   Receives each frame number and image, in order, on a separate thread.
+     */
+    public void render(World world, BiConsumer<Integer, Canvas> output) {
+        if (world == null || output == null) throw new IllegalArgumentException("world and output cannot be null");
+        final var writer = Executors.newSingleThreadExecutor();
+        final List<Shape> moving = new ArrayList<>();
+        CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+        Frame previous = null;
+        List<BoundingBox> previousBounds = List.of();
+        long reused = 0;
+        try {
+            for (int frame = 0; frame < frames; frame++) {
+                final double time = frame / frameRate;
+                moving.forEach(world::removeShape);
+                moving.clear();
+                for (final var track : tracks) {
+                    final var shape = track.shape().apply(track.curve().at(time));
+                    moving.add(shape);
+                    world.addShape(shape);
+                }
+                // only the moving shapes added for this frame are compiled, the static shapes were compiled by an earlier frame
+                if (!tracks.isEmpty()) { world.compile(); }
+                final var camera = cameraAt(frame);
+                final var bounds = bounds(moving);
+                final var current = new Frame(width, height);
+                boolean[] done = new boolean[width * height];
+                if (reprojection && previous != null) {
+                    final List<BoundingBox> blockers = new ArrayList<>(previousBounds);
+                    blockers.addAll(bounds);
+                    done = reproject(world, previous, camera, blockers, current);
+                }
+                final int reusedInFrame = trace(world, camera, current, done, moving);
+                reused += reusedInFrame;
+                markEdges(current);
+                final var canvas = new ArrayCanvas(width, height);
+                for (int index = 0; index < width * height; index++) {
+                    canvas.writePixel(index % width, index / width, current.colors[index]);
+                }
+                pending.join();
+                final int number = frame;
+                pending = CompletableFuture.runAsync(() -> output.accept(number, canvas), writer);
+                System.out.println("INFO: rendered frame " + (frame + 1) + " of " + frames + ", reused " + reusedInFrame + " pixels");
+                previous = current;
+                previousBounds = bounds;
+            }
+            pending.join();
+        } finally {
+            writer.shutdown();
+            moving.forEach(world::removeShape);
+            this.reusedPixels = reused;
+            this.tracedPixels = (long) frames * width * height - reused;
+        }
+    }
+
+    /**
+     * Get the world space bounding boxes of shapes.
+     *
+     * @param shapes
+     *   Top level shapes.
+     * @return
+     *   The bounds of each shape in world space.
+     */
+    protected static List<BoundingBox> bounds(List<Shape> shapes) {
+        final List<BoundingBox> result = new ArrayList<>(shapes.size());
+        for (final var shape : shapes) {
+            result.add(shape.bounds(shape.transform()));
+        }
+        return result;
+    }
+
+    /**
+     * Project the reusable samples of the previous frame into the current frame, copying the ones that pass the confidence test.
+     *
+     * @param world
+     *   The world being imaged.
+     * @param previous
+     *   The previous frame.
+     * @param camera
+     *   The camera of the current frame.
+     * @param blockers
+     *   The world space bounds of the moving shapes in the previous and current frames.
+     * @param current
+     *   The current frame.
+     * @return
+     *   True for each pixel of the current frame that was filled by a reprojected sample.
+     */
+    protected boolean[] reproject(World world, Frame previous, PinHoleCamera camera, List<BoundingBox> blockers, Frame current) {
+        final int size = width * height;
+        final int[] source = new int[size];
+        final double[] depths = new double[size];
+        Arrays.fill(source, -1);
+        Arrays.fill(depths, Double.POSITIVE_INFINITY);
+        final var origin = camera.createRay(width * 0.5, height * 0.5, 0.0).origin();
+        final double toleranceSquared = tolerance * tolerance;
+        // scatter the previous samples into the current frame, keeping the nearest sample in each pixel
+        for (int i = 0; i < previous.reusable.length; i++) {
+            if (!previous.reusable[i]) { continue; }
+            final var position = camera.pixelOf(previous.points[i]);
+            if (position.isEmpty()) { continue; }
+            final double column = position.get().a(), row = position.get().b();
+            if (column < 0 || row < 0 || column >= width || row >= height) { continue; }
+            final int col = (int) column, r = (int) row;
+            final double dx = column - (col + 0.5), dy = row - (r + 0.5);
+            if (dx * dx + dy * dy > toleranceSquared) { continue; }
+            final int index = current.index(col, r);
+            final double depth = previous.points[i].subtract(origin).magnitude();
+            if (depth < depths[index]) {
+                depths[index] = depth;
+                source[index] = i;
+            }
+        }
+        final var lights = world.getLights();
+        final boolean[] done = new boolean[size];
+        IntStream.range(0, size).parallel().forEach(index -> {
+            final int i = source[index];
+            if (i < 0) { return; }
+            final int col = index % width, row = index / width;
+            // neighbouring samples must lie on the same surface, otherwise the pixel may be disoccluded
+            if (col > 0 && !agrees(previous, i, source[index - 1])) { return; }
+            if (col + 1 < width && !agrees(previous, i, source[index + 1])) { return; }
+            if (row > 0 && !agrees(previous, i, source[index - width])) { return; }
+            if (row + 1 < height && !agrees(previous, i, source[index + width])) { return; }
+            // moving shapes could hide the point or shadow it
+            final var point = previous.points[i];
+            if (!blockers.isEmpty()) {
+                final var view = new Ray(origin, point.subtract(origin).normalize());
+                for (final var box : blockers) {
+                    if (box.intersect(view, depths[index])) { return; }
+                }
+                for (final var light : lights) {
+                    if (light.resolution() > 1) {
+                        // shadow rays end anywhere on the light, so the box around the point and the light's bounds covers all of them
+                        final var extent = light.bounds().box();
+                        final var volume = extent.contains(point) ? extent : extent.grow(point);
+                        for (final var box : blockers) {
+                            if (box.overlaps(volume)) { return; }
+                        }
+                        continue;
+                    }
+                    final var toLight = light.position().subtract(point);
+                    final var shadow = new Ray(point, toLight.normalize());
+                    final double distance = toLight.magnitude();
+                    for (final var box : blockers) {
+                        if (box.intersect(shadow, distance)) { return; }
+                    }
+                }
+            }
+            current.colors[index] = previous.colors[i];
+            current.points[index] = point;
+            current.shapes[index] = previous.shapes[i];
+            current.normals[index] = previous.normals[i];
+            current.reusable[index] = true;
+            done[index] = true;
+        });
+        return done;
+    }
+
+    /**
+     * Determine if the samples reprojected into two neighbouring pixels lie on the same surface.
+     * A pixel that received no sample does not disagree with its neighbours.
+     *
+     * @param previous
+     *   The previous frame.
+     * @param a
+     *   The index of the first sample in the previous frame.
+     * @param b
+     *   The index of the second sample in the previous frame, or -1 if there is no sample.
+     * @return
+     *   True unless the samples lie on different surfaces.
+     */
+    protected static boolean agrees(Frame previous, int a, int b) {
+        return b < 0 || !isEdge(previous, a, b);
+    }
+
+    /**
+     * Trace the pixels of a frame that were not filled by reprojection.
+     *
+     * @param world
+     *   The world being imaged.
+     * @param camera
+     *   The camera of the frame.
+     * @param frame
+     *   The frame to fill.
+     * @param done
+     *   True for each pixel that was already filled.
+     * @param moving
+     *   The moving shapes in the world.
+     * @return
+     *   The number of pixels that were already filled.
+     */
+    protected int trace(World world, PinHoleCamera camera, Frame frame, boolean[] done, List<Shape> moving) {
+        final Set<Shape> movingShapes = Collections.newSetFromMap(new IdentityHashMap<>());
+        movingShapes.addAll(moving);
+        IntStream.range(0, width * height).parallel().filter(index -> !done[index]).forEach(index -> {
+            final var ray = camera.createRay((index % width) + 0.5, (index / width) + 0.5, 0.0);
+            final var intersections = world.intersect(ray);
+            final var hit = intersections.flatMap(Intersection::Hit);
+            if (hit.isEmpty()) {
+                frame.colors[index] = Colors.black;
+                return;
+            }
+            final var info = hit.get().computeShadingInfo(ray, intersections);
+            frame.colors[index] = world.shadeHit(info);
+            frame.points[index] = info.point();
+            frame.shapes[index] = info.shape();
+            frame.normals[index] = info.normalVector();
+            frame.reusable[index] = isViewIndependent(info.shape().material()) && !movingShapes.contains(root(info.shape()));
+        });
+        int count = 0;
+        for (final boolean filled : done) { if (filled) { count++; } }
+        return count;
+    }
+
+    /**
+     * Stop pixels on silhouettes and creases from being reprojected into the next frame.
+     * Samples at these pixels move relative to their neighbours when the view changes.
+     *
+     * @param frame
+     *   A completed frame.
+     */
+    protected static void markEdges(Frame frame) {
+        final boolean[] edges = new boolean[frame.reusable.length];
+        for (int row = 0; row < frame.height; row++) {
+            for (int col = 0; col < frame.width; col++) {
+                final int index = frame.index(col, row);
+                if (col + 1 < frame.width && isEdge(frame, index, index + 1)) {
+                    edges[index] = true;
+                    edges[index + 1] = true;
+                }
+                if (row + 1 < frame.height && isEdge(frame, index, index + frame.width)) {
+                    edges[index] = true;
+                    edges[index + frame.width] = true;
+                }
+            }
+        }
+        for (int index = 0; index < edges.length; index++) {
+            if (edges[index]) { frame.reusable[index] = false; }
+        }
+    }
+
+    /**
+     * Determine if there is a discontinuity between two samples of a frame.
+     * Samples on the same shape are on different surfaces when the line between them leaves the tangent plane of either sample,
+     * which happens where a shape occludes itself or bends sharply.
+     *
+     * @param frame
+     *   The frame.
+     * @param a
+     *   The index of the first sample.
+     * @param b
+     *   The index of the second sample.
+     * @return
+     *   True if the samples see different shapes or different surfaces of a shape.
+     */
+    protected static boolean isEdge(Frame frame, int a, int b) {
+        if (frame.shapes[a] != frame.shapes[b]) { return true; }
+        if (frame.shapes[a] == null) { return false; }
+        final var offset = frame.points[b].subtract(frame.points[a]);
+        final double limit = surfaceThreshold * offset.magnitude();
+        return Math.abs(frame.normals[a].dot(offset)) > limit || Math.abs(frame.normals[b].dot(offset)) > limit;
+    }
+
+    /**
+     * Determine if a material looks the same from every direction.
+     * Specular highlights, reflections and refractions move when the view changes, so they can not be reprojected.
+     *
+     * @param material
+     *   The material.
+     * @return
+     *   True if the material only has ambient and diffuse lighting.
+     */
+    protected static boolean isViewIndependent(Material material) {
+        return material.specular() == 0 && material.reflectivity() == 0 && material.transparency() == 0;
+    }
+
+    /**
+     * Find the top level shape that contains a shape.
+     *
+     * @param shape
+     *   A shape in the world.
+     * @return
+     *   The top most parent of the shape, or the shape itself if it has no parent.
+     */
+    protected static Shape root(Shape shape) {
+        Shape root = shape;
+        var parent = shape.parent();
+        while (parent.isPresent()) {
+            root = parent.get();
+            parent = root.parent();
+        }
+        return root;
+    }
+}
@@ -50,6 +50,17 @@ public class TimingWrapper implements Camera {
         return result;
     }
 
+    @Override
+    public boolean supportsTiles() { return internal.supportsTiles(); }
+
+    /**
+     * Renders the tile with the internal camera. Only whole pictures are timed.
+     */
+    @Override
+    public void renderTile(World world, Canvas canvas, int column, int row, int columns, int rows) {
+        internal.renderTile(world, canvas, column, row, columns, rows);
+    }
+
     @Override
     public int width() { return internal.width(); }
 
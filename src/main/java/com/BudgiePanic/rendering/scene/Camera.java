@@ -22,6 +22,7 @@ import java.util.List;
 import com.BudgiePanic.rendering.util.ArrayCanvas;
 import com.BudgiePanic.rendering.util.Canvas;
 import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Film;
 import com.BudgiePanic.rendering.util.Pair;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 
@@ -93,6 +94,44 @@ public interface Camera {
         return canvas;
     }
 
+    /**
+     * Check if the camera's image can be rendered one tile at a time with Camera::renderTile.
+     * Cameras whose pixels depend on the whole image, such as cameras that normalize the image, cannot be tiled.
+     *
+     * @return
+     *   True if rendering every tile of the image with Camera::renderTile gives the same image as Camera::takePicture.
+     */
+    default boolean supportsTiles() { return true; }
+
+    /**
+     * Cast rays out of the camera into a rectangular tile of the image. Overwrites the tile's pixels in the canvas.
+     * Renderers call this to checkpoint, schedule, pause or report progress on an image one tile at a time.
+     * By default each pixel's exposure is written in turn. Cameras that replace Camera::takePicture should replace this method
+     * with the tile version of their picture, and wrapper cameras should pass it on to the camera they wrap.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param canvas
+     *   The canvas to write the colors to.
+     * @param column
+     *   The first column of the tile.
+     * @param row
+     *   The first row of the tile.
+     * @param columns
+     *   The number of columns in the tile.
+     * @param rows
+     *   The number of rows in the tile.
+     */
+    default void renderTile(World world, Canvas canvas, int column, int row, int columns, int rows) {
+        if (world == null || canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        if (column < 0 || row < 0 || columns < 0 || rows < 0 || column + columns > this.width() || row + rows > this.height()) throw new IllegalArgumentException("tile must lie within the image");
+        for (int y = row; y < row + rows; y++) {
+            for (int x = column; x < column + columns; x++) {
+                canvas.writePixel(x, y, pixelExposureAt(world, x, y));
+            }
+        }
+    }
+
     /**
      * Get the color for pixel [column, row] taken by this camera when imaging a world.
      *
@@ -141,6 +180,25 @@ public interface Camera {
      */
     default Color pixelExposureAt(World world, int pixelColumn, int pixelRow) { return pixelExposureAt(world, pixelColumn + 0.5, pixelRow + 0.5); }
     
+    /**
+     * Creates a list of the pixels whose samples can reach a film.
+     * @param film
+     *   The film being exposed, must be at least as wide as the camera and fit within the camera's rows.
+     * @return
+     *   The rows and columns that should be imaged to expose the film.
+     */
+    default List<Pair<Integer, Integer>> generateJobs(Film film) {
+        if (film == null || film.getWidth() < this.width() || film.originRow() + film.getHeight() > this.height()) throw new IllegalArgumentException();
+        final int firstRow = film.firstSampleRow(), lastRow = film.lastSampleRow(this.height());
+        List<Pair<Integer, Integer>> jobs = new ArrayList<>((lastRow - firstRow) * this.width());
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = 0; col < this.width(); col++) {
+                jobs.add(new Pair<Integer,Integer>(col, row));
+            }
+        }
+        return jobs;
+    }
+
     /**
      * Cast rays out of the camera into the scene. Fills a new canvas with colors from the rays.
      *
@@ -152,4 +210,22 @@ public interface Camera {
     default Canvas takePicture(World world) {
         return takePicture(world, new ArrayCanvas(width(), height()));
     }
+
+    /**
+     * Cast rays out of the camera into the scene. Splats the colors from the rays into the film.
+     * By default, each pixel's exposure is added as a single sample at the center of the pixel.
+     * Films that cover a band of the image only receive the samples of pixels that are close enough to reach the band.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param film
+     *   The film to add the samples to.
+     * @return
+     *   The film, containing an image of the world taken from the camera's perspective.
+     */
+    default Film takePicture(World world, Film film) {
+        List<Pair<Integer, Integer>> jobs = generateJobs(film);
+        jobs.parallelStream().forEach(pixel -> film.addSample(pixel.a() + 0.5, pixel.b() + 0.5, pixelExposureAt(world, pixel.a(), pixel.b())));
+        return film;
+    }
 }
@@ -239,6 +239,12 @@ public class DepthCamera implements Camera {
         return depthInfo;
     }
 
+    /**
+     * The image is normalized by its minimum and maximum values, so it cannot be rendered one tile at a time.
+     */
+    @Override
+    public boolean supportsTiles() { return false; }
+
     @Override
     public Canvas takePicture(final World world, final Canvas canvas) {
         final var rawImage = Camera.super.takePicture(world, canvas); // TODO if a wrapper camera is storing this depth camera as its internal camera, will they call this method?
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * Two pass anti-aliasing camera.
+ * The first pass takes one sample per pixel and records the surface, normal and depth seen through each pixel.
+ * The second pass only supersamples pixels that lie on an edge in those buffers, or on a sharp change in color.
+ * A surface is a material on a top level shape of the world, so the many shapes that make up one surface, such as
+ * the triangles of a smooth mesh, are only split by the normal, depth and color thresholds.
+ * Pixels away from edges keep their single sample, so most of the image costs one ray per pixel.
+ *
+ * @author BudgiePanic
+ */
+public class EdgeAdaptiveCamera implements Camera {
+
+    /**
+     * Neighbouring normals that are more than ~25 degrees apart are an edge.
+     */
+    public static final double defaultNormalThreshold = 0.9;
+
+    /**
+     * Neighbouring depths that differ by more than 5% are an edge.
+     */
+    public static final double defaultDepthThreshold = 0.05;
+
+    /**
+     * Neighbouring colors that are further apart than this euclidean distance are an edge.
+     */
+    public static final double defaultColorThreshold = 0.1;
+
+    /**
+     * The results of the first single sample pass over the image.
+     * The buffers are stored in row major order. Pixels whose ray missed have a null owner and material, infinite depth and a zero normal.
+     *
+     * @param width
+     *   The number of columns in the buffers.
+     * @param height
+     *   The number of rows in the buffers.
+     * @param owners
+     *   The top level shape of the world that owns the shape seen through each pixel.
+     * @param materials
+     *   The material of the shape seen through each pixel.
+     * @param normals
+     *   The surface normal seen through each pixel.
+     * @param depths
+     *   The distance to the surface seen through each pixel.
+     * @param colors
+     *   The single sample color of each pixel.
+     */
+    protected static record FirstPass(int width, int height, Shape[] owners, Material[] materials, Tuple[] normals, double[] depths, Color[] colors) {
+        FirstPass(int width, int height) {
+            this(width, height, new Shape[width * height], new Material[width * height], new Tuple[width * height], new double[width * height], new Color[width * height]);
+        }
+        int index(int column, int row) { return row * width + column; }
+    }
+
+    /**
+     * Internal camera that provides the actual image taking functionality.
+     */
+    protected final Camera camera;
+
+    /**
+     * The sampling mode used on pixels that lie on an edge.
+     */
+    protected final SuperSamplingCamera.SampleMode mode;
+
+    /**
+     * The minimum cosine between two neighbouring normals before they are considered an edge.
+     */
+    protected final double normalThreshold;
+
+    /**
+     * The maximum relative difference between two neighbouring depths before they are considered an edge.
+     */
+    protected final double depthThreshold;
+
+    /**
+     * The squared color distance between two neighbouring pixels before they are considered an edge.
+     */
+    protected final double colorThresholdSquared;
+
+    /**
+     * The number of pixels that were supersampled in the last picture taken by this camera.
+     */
+    protected volatile int edgePixels;
+
+    /**
+     * Creates a new edge adaptive camera with the default edge thresholds.
+     *
+     * @param camera
+     *   The camera that casts the rays.
+     * @param mode
+     *   The sampling mode used on pixels that lie on an edge.
+     */
+    public EdgeAdaptiveCamera(Camera camera, SuperSamplingCamera.SampleMode mode) {
+        this(camera, mode, defaultNormalThreshold, defaultDepthThreshold, defaultColorThreshold);
+    }
+
+    /**
+     * Canonical constructor.
+     *
+     * @param camera
+     *   The camera that casts the rays.
+     * @param mode
+     *   The sampling mode used on pixels that lie on an edge.
+     * @param normalThreshold
+     *   The minimum cosine between two neighbouring normals before they are considered an edge.
+     * @param depthThreshold
+     *   The maximum relative difference between two neighbouring depths before they are considered an edge.
+     * @param colorThreshold
+     *   The maximum euclidean distance between two neighbouring colors before they are considered an edge.
+     */
+    public EdgeAdaptiveCamera(Camera camera, SuperSamplingCamera.SampleMode mode, double normalThreshold, double depthThreshold, double colorThreshold) {
+        if (camera == null || mode == null) throw new IllegalArgumentException("camera and mode cannot be null");
+        if (depthThreshold < 0 || colorThreshold < 0) throw new IllegalArgumentException("thresholds cannot be negative");
+        this.camera = camera;
+        this.mode = mode;
+        this.normalThreshold = normalThreshold;
+        this.depthThreshold = depthThreshold;
+        this.colorThresholdSquared = colorThreshold * colorThreshold;
+        this.edgePixels = 0;
+    }
+
+    @Override
+    public int width() { return camera.width(); }
+
+    @Override
+    public int height() { return camera.height(); }
+
+    @Override
+    public Ray createRay(double pixelColumn, double pixelRow, double time) {
+        return camera.createRay(pixelColumn, pixelRow, time);
+    }
+
+    /**
+     * Get the color of a pixel using the edge sampling mode.
+     * Used to sample pixels on edges, calling this method directly always supersamples the pixel.
+     */
+    @Override
+    public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
+        return mode.pixelAt(world, camera, pixelColumn, pixelRow, time);
+    }
+
+    /**
+     * Get the number of pixels that were supersampled in the last picture taken by this camera.
+     *
+     * @return
+     *   The number of edge pixels in the last picture.
+     */
+    public int edgePixels() { return edgePixels; }
+
+    @Override
+    public Canvas takePicture(World world, Canvas canvas) {
+        if (canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        final var firstPass = firstPass(world);
+        final var edges = findEdges(firstPass);
+        final List<Pair<Integer, Integer>> jobs = new ArrayList<>();
+        for (int row = 0; row < firstPass.height; row++) {
+            for (int col = 0; col < firstPass.width; col++) {
+                if (edges[firstPass.index(col, row)]) {
+                    jobs.add(new Pair<>(col, row));
+                } else {
+                    canvas.writePixel(col, row, firstPass.colors[firstPass.index(col, row)]);
+                }
+            }
+        }
+        this.edgePixels = jobs.size();
+        System.out.println("INFO: supersampling " + jobs.size() + " of " + (firstPass.width * firstPass.height) + " pixels on edges");
+        jobs.parallelStream().forEach(pixel -> canvas.writePixel(pixel.a(), pixel.b(), pixelAt(world, pixel.a() + 0.5, pixel.b() + 0.5, 0.0)));
+        return canvas;
+    }
+
+    /**
+     * Runs the first pass over the tile and the pixels bordering it, so edges along the tile's sides are found as they would be in a whole picture.
+     * Does not change the edge pixel count of the last picture.
+     */
+    @Override
+    public void renderTile(World world, Canvas canvas, int column, int row, int columns, int rows) {
+        if (world == null || canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        if (column < 0 || row < 0 || columns < 0 || rows < 0 || column + columns > this.width() || row + rows > this.height()) throw new IllegalArgumentException("tile must lie within the image");
+        final int left = Math.max(0, column - 1), top = Math.max(0, row - 1);
+        final int right = Math.min(width(), column + columns + 1), bottom = Math.min(height(), row + rows + 1);
+        final var firstPass = firstPass(world, left, top, right - left, bottom - top);
+        final var edges = findEdges(firstPass);
+        for (int y = row; y < row + rows; y++) {
+            for (int x = column; x < column + columns; x++) {
+                final int index = firstPass.index(x - left, y - top);
+                canvas.writePixel(x, y, edges[index] ? pixelAt(world, x + 0.5, y + 0.5, 0.0) : firstPass.colors[index]);
+            }
+        }
+    }
+
+    /**
+     * Take one sample through the center of every pixel, recording what the ray hit.
+     *
+     * @param world
+     *   The world being imaged.
+     * @return
+     *   The shape, normal, depth and color buffers of the image.
+     */
+    protected FirstPass firstPass(World world) {
+        return firstPass(world, 0, 0, width(), height());
+    }
+
+    /**
+     * Take one sample through the center of every pixel in a region of the image, recording what the ray hit.
+     *
+     * @param world
+     *   The world being imaged.
+     * @param column
+     *   The first column of the region.
+     * @param row
+     *   The first row of the region.
+     * @param columns
+     *   The number of columns in the region.
+     * @param rows
+     *   The number of rows in the region.
+     * @return
+     *   The shape, normal, depth and color buffers of the region, indexed from the region's top left pixel.
+     */
+    protected FirstPass firstPass(World world, int column, int row, int columns, int rows) {
+        final var pass = new FirstPass(columns, rows);
+        IntStream.range(0, pass.width * pass.height).parallel().forEach(index -> {
+            final int x = column + index % pass.width;
+            final int y = row + index / pass.width;
+            final var ray = camera.createRay(x + 0.5, y + 0.5, 0.0);
+            final var intersections = world.intersect(ray);
+            final var hit = intersections.flatMap(Intersection::Hit);
+            if (hit.isEmpty()) {
+                pass.normals[index] = Tuple.makeVector();
+                pass.depths[index] = Double.POSITIVE_INFINITY;
+                pass.colors[index] = Colors.black;
+                return;
+            }
+            final var info = hit.get().computeShadingInfo(ray, intersections);
+            pass.owners[index] = owner(info.shape());
+            pass.materials[index] = info.shape().material();
+            pass.normals[index] = info.normalVector();
+            pass.depths[index] = info.a();
+            pass.colors[index] = world.shadeHit(info);
+        });
+        return pass;
+    }
+
+    /**
+     * Find the top level shape of the world that a shape belongs to.
+     *
+     * @param shape
+     *   The shape that was hit.
+     * @return
+     *   The shape's outermost parent, or the shape itself if it has no parent.
+     */
+    protected static Shape owner(Shape shape) {
+        Shape owner = shape;
+        for (var parent = owner.parent(); parent.isPresent(); parent = owner.parent()) {
+            owner = parent.get();
+        }
+        return owner;
+    }
+
+    /**
+     * Find the pixels that lie on a surface, normal, depth or color discontinuity.
+     * Both pixels either side of a discontinuity are marked.
+     *
+     * @param pass
+     *   The first pass buffers.
+     * @return
+     *   True for each pixel that should be supersampled, in row major order.
+     */
+    protected boolean[] findEdges(FirstPass pass) {
+        final boolean[] edges = new boolean[pass.width * pass.height];
+        for (int row = 0; row < pass.height; row++) {
+            for (int col = 0; col < pass.width; col++) {
+                final int index = pass.index(col, row);
+                if (col + 1 < pass.width && isEdge(pass, index, index + 1)) {
+                    edges[index] = true;
+                    edges[index + 1] = true;
+                }
+                if (row + 1 < pass.height && isEdge(pass, index, index + pass.width)) {
+                    edges[index] = true;
+                    edges[index + pass.width] = true;
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Determine if there is a discontinuity between two pixels.
+     *
+     * @param pass
+     *   The first pass buffers.
+     * @param a
+     *   The index of the first pixel.
+     * @param b
+     *   The index of the second pixel.
+     * @return
+     *   True if the two pixels see different surfaces, surfaces that face different ways, surfaces at different depths or different colors.
+     */
+    protected boolean isEdge(FirstPass pass, int a, int b) {
+        if (pass.owners[a] != pass.owners[b]) { return true; }
+        if (pass.owners[a] == null) { return false; } // both rays missed
+        if (!pass.materials[a].equals(pass.materials[b])) { return true; }
+        if (pass.normals[a].dot(pass.normals[b]) < normalThreshold) { return true; }
+        final double depthA = pass.depths[a], depthB = pass.depths[b];
+        if (Math.abs(depthA - depthB) > depthThreshold * Math.min(depthA, depthB)) { return true; }
+        return SuperSamplingCamera.DynamicSampler.squaredDistance(pass.colors[a], pass.colors[b]) > colorThresholdSquared;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.BudgiePanic.rendering.util.FloatHelp;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.light.Light;
+import com.BudgiePanic.rendering.util.shape.Parent;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.composite.Group;
+
+/**
+ * Remembers the last shape that blocked a shadow ray, for each thread and each light.
+ * Neighbouring points usually find the same blocker when they test a light, so the remembered shape is tested
+ * before falling back to a full intersection test against the world.
+ * 
+ * @author BudgiePanic
+ */
+public class OccluderCache {
+
+    /**
+     * The occluders of one rendering thread.
+     */
+    private static final class Occluders {
+        final Map<Light, Shape> shapes = new IdentityHashMap<>();
+        int generation;
+    }
+
+    /**
+     * Last blocking shape per light, one map per rendering thread to avoid lock contention.
+     */
+    protected final ThreadLocal<Occluders> occluders = ThreadLocal.withInitial(Occluders::new);
+
+    /**
+     * Incremented to discard every thread's remembered shapes, for example when shapes are added to the world.
+     */
+    protected volatile int generation = 0;
+
+    /**
+     * The number of shadow tests answered by a remembered shape.
+     */
+    protected final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of shadow tests that needed a full intersection test against the world.
+     */
+    protected final LongAdder misses = new LongAdder();
+
+    /**
+     * Test if the shape last remembered for the light blocks the ray.
+     *
+     * @param light
+     *   The light the ray is travelling towards.
+     * @param ray
+     *   The shadow ray in world space.
+     * @param distance
+     *   The distance from the ray origin to the light sample.
+     * @return
+     *   True if the remembered shape blocks the ray. False if there is no remembered shape or it does not block the ray.
+     */
+    protected boolean blocks(Light light, Ray ray, double distance) {
+        final var local = occluders.get();
+        if (local.generation != generation) {
+            local.shapes.clear();
+            local.generation = generation;
+        }
+        final var shape = local.shapes.get(light);
+        if (shape != null) {
+            final var intersections = shape.intersect(toParentSpace(shape, ray));
+            if (intersections.isPresent()) {
+                for (final var intersection : intersections.get()) {
+                    if (FloatHelp.compareFloat(intersection.a(), 0) > 0 && FloatHelp.compareFloat(intersection.a(), distance) < 0) {
+                        hits.increment();
+                        return true;
+                    }
+                }
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Remember the shape that blocked a shadow ray travelling towards a light.
+     * Shapes that can't be tested on their own are ignored.
+     *
+     * @param light
+     *   The light the ray was travelling towards.
+     * @param shape
+     *   The shape that blocked the ray.
+     */
+    protected void remember(Light light, Shape shape) {
+        if (isCacheable(shape)) {
+            occluders.get().shapes.put(light, shape);
+        }
+    }
+
+    /**
+     * Check if a shape gives the same intersections when tested on its own as it does when tested as part of the world.
+     * Compound shapes and motion shapes change the intersections of their children, so their children can't be remembered.
+     *
+     * @param shape
+     *   The shape to check.
+     * @return
+     *   True if the shape can be tested on its own.
+     */
+    protected static boolean isCacheable(Shape shape) {
+        if (shape instanceof Parent) { return false; }
+        var parent = shape.parent();
+        while (parent.isPresent()) {
+            if (!(parent.get() instanceof Group)) { return false; }
+            parent = parent.get().parent();
+        }
+        return true;
+    }
+
+    /**
+     * Move a world space ray into the space of a shape's parent, passing it through the transforms of the shape's groups.
+     *
+     * @param shape
+     *   The shape.
+     * @param ray
+     *   The world space ray.
+     * @return
+     *   The ray in the same space the shape's parent would test the shape in.
+     */
+    protected static Ray toParentSpace(Shape shape, Ray ray) {
+        final var parent = shape.parent();
+        if (parent.isEmpty()) { return ray; }
+        return toParentSpace(parent.get(), ray).transform(parent.get().transform().inverse());
+    }
+
+    /**
+     * Forget every remembered shape on every thread.
+     */
+    public void invalidate() { generation++; }
+
+    /**
+     * Get the number of shadow tests that were answered by a remembered shape.
+     *
+     * @return
+     *   The number of cache hits.
+     */
+    public long hits() { return hits.sum(); }
+
+    /**
+     * Get the number of shadow tests that needed a full intersection test against the world.
+     *
+     * @return
+     *   The number of cache misses.
+     */
+    public long misses() { return misses.sum(); }
+
+    /**
+     * Get the fraction of shadow tests that were answered by a remembered shape.
+     *
+     * @return
+     *   The cache hit rate, between 0 and 1.
+     */
+    public double hitRate() {
+        final long hits = hits(), total = hits + misses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Reset the hit and miss counters.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OccluderCache[hits=%d, misses=%d, hitRate=%.3f]", hits(), misses(), hitRate());
+    }
+}
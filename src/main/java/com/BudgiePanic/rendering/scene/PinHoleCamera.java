@@ -16,7 +16,10 @@
  */
 package com.BudgiePanic.rendering.scene;
 
+import java.util.Optional;
+
 import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Pair;
 import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
@@ -76,4 +79,22 @@ public class PinHoleCamera extends BasePerspectiveCamera {
         return world.computeColor(createRay(pixelColumn, pixelRow, time));
     }
 
+    /**
+     * Find the position on the imaging plane whose ray passes through a point, the inverse of PinHoleCamera::createRay.
+     * The position may lie outside of the image.
+     *
+     * @param worldPoint
+     *   A point in world space.
+     * @return
+     *   The [column, row] position the point projects onto, or EMPTY if the point is not in front of the camera.
+     */
+    public Optional<Pair<Double, Double>> pixelOf(Tuple worldPoint) {
+        final var localPoint = this.transform.multiply(worldPoint);
+        if (localPoint.z >= 0) { return Optional.empty(); }
+        final double scale = -focalDistance / localPoint.z;
+        final double column = (this.halfWidth - localPoint.x * scale) / this.pixelSize;
+        final double row = (this.halfHeight - localPoint.y * scale) / this.pixelSize;
+        return Optional.of(new Pair<>(column, row));
+    }
+
 }
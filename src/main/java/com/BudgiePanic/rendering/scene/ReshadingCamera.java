@@ -0,0 +1,238 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.intersect.ShadingInfo;
+
+/**
+ * Camera that caches the primary ray hits of the image (a geometry buffer) so the image can be re-shaded without re-tracing.
+ * The first picture traces every primary ray and keeps the shading information of each hit.
+ * Later pictures of the same world only re-run shading on the cached hits, so material and lighting changes are cheap to preview.
+ * The cache is rebuilt automatically when the camera is pointed at a different world or shapes are added to the world.
+ * Changes the cache cannot see, such as moving a shape or swapping in a material with a different normal bump or refractive index,
+ * require a call to ReshadingCamera::invalidate.
+ *
+ * @author BudgiePanic
+ */
+public class ReshadingCamera implements Camera {
+
+    /**
+     * A single sample through the center of each pixel.
+     */
+    protected static final List<Pair<Double, Double>> centerSample = List.of(new Pair<>(0.0, 0.0));
+
+    /**
+     * Internal camera that provides the primary rays.
+     */
+    protected final Camera camera;
+
+    /**
+     * The sample positions within each pixel, offset from the pixel center.
+     */
+    protected final List<Pair<Double, Double>> sampleLocations;
+
+    /**
+     * The cached hits, sampleLocations.size() entries per pixel in row major order. Samples that missed every shape are null.
+     */
+    protected ShadingInfo[] buffer;
+
+    /**
+     * The world the buffer was captured from.
+     */
+    protected World capturedWorld;
+
+    /**
+     * The geometry version of the world when the buffer was captured.
+     */
+    protected long capturedVersion;
+
+    /**
+     * The number of times the geometry buffer has been captured.
+     */
+    protected int captures;
+
+    /**
+     * Create a new reshading camera that takes one sample through the center of each pixel.
+     *
+     * @param camera
+     *   The camera that provides the primary rays.
+     */
+    public ReshadingCamera(Camera camera) {
+        if (camera == null) throw new IllegalArgumentException("camera cannot be null");
+        this.camera = camera;
+        this.sampleLocations = centerSample;
+        this.buffer = null;
+        this.capturedWorld = null;
+        this.captures = 0;
+    }
+
+    /**
+     * Create a new reshading camera that caches every sub pixel sample of a fixed sampling pattern.
+     *
+     * @param camera
+     *   The camera that provides the primary rays.
+     * @param mode
+     *   The sampling pattern. Must be one of the fixed patterns, adaptive modes choose their samples from the shaded colors.
+     */
+    public ReshadingCamera(Camera camera, SuperSamplingCamera.SampleMode mode) {
+        if (camera == null || mode == null) throw new IllegalArgumentException("camera and mode cannot be null");
+        if (!(mode instanceof SuperSamplingCamera.FixedPattern)) throw new IllegalArgumentException("only fixed sampling patterns can be cached");
+        this.camera = camera;
+        this.sampleLocations = ((SuperSamplingCamera.FixedPattern) mode).subPixelLocations();
+        this.buffer = null;
+        this.capturedWorld = null;
+        this.captures = 0;
+    }
+
+    @Override
+    public int width() { return camera.width(); }
+
+    @Override
+    public int height() { return camera.height(); }
+
+    @Override
+    public Ray createRay(double pixelColumn, double pixelRow, double time) {
+        return camera.createRay(pixelColumn, pixelRow, time);
+    }
+
+    /**
+     * Trace and shade a single sample, bypassing the geometry buffer.
+     */
+    @Override
+    public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
+        return camera.pixelAt(world, pixelColumn, pixelRow, time);
+    }
+
+    /**
+     * Get the number of times the geometry buffer has been captured.
+     *
+     * @return
+     *   The number of captures.
+     */
+    public int captures() { return captures; }
+
+    /**
+     * Discard the geometry buffer, the next picture will re-trace every primary ray.
+     */
+    public synchronized void invalidate() {
+        this.buffer = null;
+        this.capturedWorld = null;
+    }
+
+    /**
+     * Re-shades the cached geometry buffer, capturing it first if it is missing or stale.
+     */
+    @Override
+    public Canvas takePicture(World world, Canvas canvas) {
+        if (world == null || canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        final var samples = geometryBuffer(world);
+        final int width = width();
+        IntStream.range(0, width * height()).parallel().forEach(pixel -> canvas.writePixel(pixel % width, pixel / width, shade(world, samples, pixel)));
+        return canvas;
+    }
+
+    /**
+     * Re-shades the tile's pixels from the cached geometry buffer, capturing the whole buffer first if it is missing or stale.
+     */
+    @Override
+    public void renderTile(World world, Canvas canvas, int column, int row, int columns, int rows) {
+        if (world == null || canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        if (column < 0 || row < 0 || columns < 0 || rows < 0 || column + columns > this.width() || row + rows > this.height()) throw new IllegalArgumentException("tile must lie within the image");
+        final var samples = geometryBuffer(world);
+        for (int y = row; y < row + rows; y++) {
+            for (int x = column; x < column + columns; x++) {
+                canvas.writePixel(x, y, shade(world, samples, y * width() + x));
+            }
+        }
+    }
+
+    /**
+     * Shade the cached samples of a pixel and average them.
+     *
+     * @param world
+     *   The world being imaged.
+     * @param samples
+     *   The geometry buffer.
+     * @param pixel
+     *   The row major index of the pixel.
+     * @return
+     *   The color of the pixel.
+     */
+    protected Color shade(World world, ShadingInfo[] samples, int pixel) {
+        final int perPixel = sampleLocations.size();
+        double red = 0, green = 0, blue = 0;
+        for (int i = pixel * perPixel; i < (pixel + 1) * perPixel; i++) {
+            if (samples[i] == null) { continue; }
+            final var color = world.shadeHit(samples[i]);
+            red += color.getRed();
+            green += color.getGreen();
+            blue += color.getBlue();
+        }
+        return new Color(red / perPixel, green / perPixel, blue / perPixel);
+    }
+
+    /**
+     * Get the geometry buffer of a world, capturing it if the cached buffer is missing or stale.
+     *
+     * @param world
+     *   The world being imaged.
+     * @return
+     *   The shading information of every sample.
+     */
+    protected synchronized ShadingInfo[] geometryBuffer(World world) {
+        final long version = world.geometryVersion();
+        if (buffer == null || capturedWorld != world || capturedVersion != version) {
+            this.buffer = capture(world);
+            this.capturedWorld = world;
+            this.capturedVersion = version;
+            this.captures++;
+        }
+        return buffer;
+    }
+
+    /**
+     * Trace every primary ray of the image and record what it hit.
+     *
+     * @param world
+     *   The world being imaged.
+     * @return
+     *   The shading information of every sample, null where the sample missed.
+     */
+    protected ShadingInfo[] capture(World world) {
+        final int width = width(), perPixel = sampleLocations.size();
+        final var samples = new ShadingInfo[width * height() * perPixel];
+        IntStream.range(0, width * height()).parallel().forEach(pixel -> {
+            final double pixelColumn = (pixel % width) + 0.5, pixelRow = (pixel / width) + 0.5;
+            for (int i = 0; i < perPixel; i++) {
+                final var offset = sampleLocations.get(i);
+                final var ray = camera.createRay(pixelColumn + offset.a(), pixelRow + offset.b(), 0.0);
+                final var intersections = world.intersect(ray);
+                final var hit = intersections.flatMap(Intersection::Hit);
+                samples[pixel * perPixel + i] = hit.isEmpty() ? null : hit.get().computeShadingInfo(ray, intersections);
+            }
+        });
+        return samples;
+    }
+}
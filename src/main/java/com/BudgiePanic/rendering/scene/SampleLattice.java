@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.BudgiePanic.rendering.util.Color;
+
+/**
+ * A cache of sub pixel sample colors, shared by the pixels in one tile of an image.
+ * Samples are keyed by their position on a fine lattice, so neighbouring pixels and sampling passes that sample the
+ * same position (such as a shared pixel corner) only cast one ray.
+ * Positions that do not lie exactly on the lattice are never cached.
+ * A lattice is not thread safe, each tile should be sampled by one thread and the lattice discarded when the tile is complete.
+ *
+ * @author BudgiePanic
+ */
+public class SampleLattice {
+
+    /**
+     * The number of lattice points per pixel along each axis. Sample offsets that are multiples of 1/1024 of a pixel are cached.
+     */
+    protected static final double resolution = 1 << 10;
+
+    /**
+     * The world being sampled.
+     */
+    protected final World world;
+
+    /**
+     * The camera that casts the sample rays.
+     */
+    protected final Camera camera;
+
+    /**
+     * The time the samples are taken at.
+     */
+    protected final double time;
+
+    /**
+     * The cached sample colors.
+     */
+    protected final Map<Long, Color> samples;
+
+    /**
+     * The number of samples that were served from the cache.
+     */
+    protected int hits;
+
+    /**
+     * The number of samples that were traced.
+     */
+    protected int misses;
+
+    /**
+     * Create a new empty lattice.
+     *
+     * @param world
+     *   The world being sampled.
+     * @param camera
+     *   The camera that casts the sample rays.
+     * @param time
+     *   The time the samples are taken at.
+     */
+    public SampleLattice(World world, Camera camera, double time) {
+        this.world = world;
+        this.camera = camera;
+        this.time = time;
+        this.samples = new HashMap<>();
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * Check if samples from this lattice can be used for an image.
+     *
+     * @param world
+     *   The world being sampled.
+     * @param camera
+     *   The camera that casts the sample rays.
+     * @param time
+     *   The time the samples are taken at.
+     * @return
+     *   True if this lattice samples the same world, with the same camera, at the same time.
+     */
+    public boolean matches(World world, Camera camera, double time) {
+        return this.world == world && this.camera == camera && Double.compare(this.time, time) == 0;
+    }
+
+    /**
+     * Get the color at a position on the image, casting a ray only if the position has not been sampled yet.
+     *
+     * @param pixelColumn
+     *   The x coordinate of the sample.
+     * @param pixelRow
+     *   The y coordinate of the sample.
+     * @return
+     *   The color of the sample.
+     */
+    public Color sample(double pixelColumn, double pixelRow) {
+        final double x = pixelColumn * resolution;
+        final double y = pixelRow * resolution;
+        if (x != Math.rint(x) || y != Math.rint(y)) {
+            misses++;
+            return camera.pixelAt(world, pixelColumn, pixelRow, time);
+        }
+        final long key = (((long) x) << 32) | (((long) y) & 0xFFFFFFFFL);
+        final var cached = samples.get(key);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        final var color = camera.pixelAt(world, pixelColumn, pixelRow, time);
+        samples.put(key, color);
+        return color;
+    }
+
+    /**
+     * Get the number of samples that were reused instead of traced.
+     *
+     * @return
+     *   The number of cache hits.
+     */
+    public int hits() { return hits; }
+
+    /**
+     * Get the number of samples that were traced.
+     *
+     * @return
+     *   The number of cache misses.
+     */
+    public int misses() { return misses; }
+}
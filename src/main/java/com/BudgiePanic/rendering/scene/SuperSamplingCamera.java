@@ -20,9 +20,12 @@ import static com.BudgiePanic.rendering.util.AngleHelp.toRadians;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+import com.BudgiePanic.rendering.util.Canvas;
 import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Film;
 import com.BudgiePanic.rendering.util.Pair;
 import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.intersect.Ray;
@@ -52,6 +55,28 @@ public class SuperSamplingCamera implements Camera {
          *   The color of the pixel, whose center is at position [pixelColumn, pixelRow]
          */
         Color pixelAt(World world, Camera camera, double pixelColumn, double pixelRow, double time);
+
+        /**
+         * Generate the color in a pixel, reusing samples shared with neighbouring pixels where possible.
+         * Modes that do not share samples between pixels ignore the lattice.
+         * @param world
+         *   The world the camera is imaging.
+         * @param camera
+         *   The child camera that ray casting is deferred to.
+         * @param pixelColumn
+         *   The x coordinate of the center of the pixel.
+         * @param pixelRow
+         *   The y coordinate of the center of the pixel.
+         * @param time
+         *   The time when the pixel was exposed.
+         * @param lattice
+         *   The sample cache of the tile that contains the pixel.
+         * @return
+         *   The color of the pixel, whose center is at position [pixelColumn, pixelRow]
+         */
+        default Color pixelAt(World world, Camera camera, double pixelColumn, double pixelRow, double time, SampleLattice lattice) {
+            return pixelAt(world, camera, pixelColumn, pixelRow, time);
+        }
     }
 
     /**
@@ -258,7 +283,11 @@ public class SuperSamplingCamera implements Camera {
         /**
          * Recursion bean courier to carry common elements between recursion calls.
          */
-        protected static record PixelArgs(World world, Camera camera, double time, double[] accumulator) {
+        protected static record PixelArgs(World world, Camera camera, double time, double[] accumulator, SampleLattice lattice) {
+            Color sample(double pixelColumn, double pixelRow) {
+                if (lattice == null) { return camera.pixelAt(world, pixelColumn, pixelRow, time); }
+                return lattice.sample(pixelColumn, pixelRow);
+            }
             void add(Color color) {
                 this.accumulator[red] += color.getRed();
                 this.accumulator[green] += color.getGreen();
@@ -295,7 +324,7 @@ public class SuperSamplingCamera implements Camera {
             final double left = pixelColumn - offset;
             final double right = pixelColumn + offset;
             // get the 5 sample colors
-            Color middle = args.camera.pixelAt(args.world, pixelColumn, pixelRow, args.time);
+            Color middle = args.sample(pixelColumn, pixelRow);
             args.add(middle);
             Color topRight = null; 
             Color topLeft = null;
@@ -303,44 +332,44 @@ public class SuperSamplingCamera implements Camera {
             Color bottomRight = null;
             switch (corner) {
               case none:
-                topLeft = args.camera.pixelAt(args.world, left, up, args.time);
+                topLeft = args.sample(left, up);
                 args.add(topLeft);
-                topRight = args.camera.pixelAt(args.world, right, up, args.time);
+                topRight = args.sample(right, up);
                 args.add(topRight);
-                bottomLeft = args.camera.pixelAt(args.world, left, down, args.time);
+                bottomLeft = args.sample(left, down);
                 args.add(bottomLeft);
-                bottomRight = args.camera.pixelAt(args.world, right, down, args.time);
+                bottomRight = args.sample(right, down);
                 args.add(bottomRight);
                 break;
               case topLeft:
-                topRight = args.camera.pixelAt(args.world, right, up, args.time);
+                topRight = args.sample(right, up);
                 args.add(topRight);
                 topLeft = prevCorner;
-                bottomLeft = args.camera.pixelAt(args.world, left, down, args.time);
+                bottomLeft = args.sample(left, down);
                 args.add(bottomLeft);
                 bottomRight = prevMiddle;
                 break;
               case topRight:
-                topLeft = args.camera.pixelAt(args.world, left, up, args.time);
+                topLeft = args.sample(left, up);
                 args.add(topLeft);
                 topRight = prevCorner;
                 bottomLeft = prevMiddle;
-                bottomRight = args.camera.pixelAt(args.world, right, down, args.time);
+                bottomRight = args.sample(right, down);
                 args.add(bottomRight);
                 break;
               case bottomLeft:
-                topLeft = args.camera.pixelAt(args.world, left, up, args.time);
+                topLeft = args.sample(left, up);
                 args.add(topLeft);
                 topRight = prevMiddle;
                 bottomLeft = prevCorner;
-                bottomRight = args.camera.pixelAt(args.world, right, down, args.time);
+                bottomRight = args.sample(right, down);
                 args.add(bottomRight);
                 break;
               case bottomRight:
                 topLeft = prevMiddle;
-                topRight = args.camera.pixelAt(args.world, right, up, args.time);
+                topRight = args.sample(right, up);
                 args.add(topRight);
-                bottomLeft = args.camera.pixelAt(args.world, left, down, args.time);
+                bottomLeft = args.sample(left, down);
                 args.add(bottomLeft);
                 bottomRight = prevCorner;
                 break;
@@ -413,8 +442,14 @@ public class SuperSamplingCamera implements Camera {
 
         @Override
         public Color pixelAt(World world, Camera camera, double pixelColumn, double pixelRow, double time) {
+            return pixelAt(world, camera, pixelColumn, pixelRow, time, null);
+        }
+
+        @Override
+        public Color pixelAt(World world, Camera camera, double pixelColumn, double pixelRow, double time, SampleLattice lattice) {
             final double[] accumulator = new double[3];
-            final PixelArgs args = new PixelArgs(world, camera, time, accumulator);
+            final var shared = (lattice != null && lattice.matches(world, camera, time)) ? lattice : null;
+            final PixelArgs args = new PixelArgs(world, camera, time, accumulator, shared);
             final int numbSamples = pixelAt(args, pixelColumn, pixelRow, initalDepth, Corner.none, null, null);
             return new Color(
                 accumulator[red] / numbSamples,
@@ -434,6 +469,11 @@ public class SuperSamplingCamera implements Camera {
      */
     protected final SampleMode mode;
 
+    /**
+     * The width and height of the tiles that share sub pixel samples.
+     */
+    protected static final int tileSize = 16;
+
     public SuperSamplingCamera(Camera camera, SampleMode mode) {
         this.camera = camera;
         this.mode = mode;
@@ -454,4 +494,85 @@ public class SuperSamplingCamera implements Camera {
     public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
         return mode.pixelAt(world, this.camera, pixelColumn, pixelRow, time);
     }
+
+    /**
+     * Images the world one tile at a time, so pixels in the same tile can share samples with each other.
+     */
+    @Override
+    public Canvas takePicture(World world, Canvas canvas) {
+        if (canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        final List<Pair<Integer, Integer>> tiles = new ArrayList<>();
+        for (int row = 0; row < height(); row += tileSize) {
+            for (int col = 0; col < width(); col += tileSize) {
+                tiles.add(new Pair<>(col, row));
+            }
+        }
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        tiles.parallelStream().forEach(tile -> {
+            final var lattice = new SampleLattice(world, camera, 0.0);
+            renderTile(world, canvas, tile.a(), tile.b(), Math.min(tileSize, width() - tile.a()), Math.min(tileSize, height() - tile.b()), lattice);
+            hits.add(lattice.hits());
+            misses.add(lattice.misses());
+        });
+        if (hits.sum() > 0) {
+            System.out.println("INFO: super sampling camera reused " + hits.sum() + " samples and traced " + misses.sum());
+        }
+        return canvas;
+    }
+
+    /**
+     * Images one tile of the world, pixels in the tile share samples with each other.
+     */
+    @Override
+    public void renderTile(World world, Canvas canvas, int column, int row, int columns, int rows) {
+        if (world == null || canvas == null || canvas.getHeight() < this.height() || canvas.getWidth() < this.width()) throw new IllegalArgumentException();
+        if (column < 0 || row < 0 || columns < 0 || rows < 0 || column + columns > this.width() || row + rows > this.height()) throw new IllegalArgumentException("tile must lie within the image");
+        renderTile(world, canvas, column, row, columns, rows, new SampleLattice(world, camera, 0.0));
+    }
+
+    /**
+     * Images one tile of the world, sharing sub pixel samples through a lattice.
+     *
+     * @param world
+     *   The world to take an image of.
+     * @param canvas
+     *   The canvas to write the colors to.
+     * @param column
+     *   The first column of the tile.
+     * @param row
+     *   The first row of the tile.
+     * @param columns
+     *   The number of columns in the tile.
+     * @param rows
+     *   The number of rows in the tile.
+     * @param lattice
+     *   The samples shared by the pixels of the tile.
+     */
+    protected void renderTile(World world, Canvas canvas, int column, int row, int columns, int rows, SampleLattice lattice) {
+        for (int y = row; y < row + rows; y++) {
+            for (int x = column; x < column + columns; x++) {
+                canvas.writePixel(x, y, mode.pixelAt(world, camera, x + 0.5, y + 0.5, 0.0, lattice));
+            }
+        }
+    }
+
+    /**
+     * Splats each sub pixel sample of fixed sampling patterns into the film at the position it was taken, 
+     * so the film's reconstruction filter decides how the samples are combined.
+     * Other sampling modes add one sample per pixel.
+     */
+    @Override
+    public Film takePicture(World world, Film film) {
+        if (!(mode instanceof FixedPattern)) { return Camera.super.takePicture(world, film); }
+        final var sampleLocations = ((FixedPattern) mode).subPixelLocations();
+        generateJobs(film).parallelStream().forEach(pixel -> {
+            final double pixelColumn = pixel.a() + 0.5, pixelRow = pixel.b() + 0.5;
+            for (final var point : sampleLocations) {
+                final double x = pixelColumn + point.a(), y = pixelRow + point.b();
+                film.addSample(x, y, camera.pixelAt(world, x, y, 0.0));
+            }
+        });
+        return film;
+    }
 }
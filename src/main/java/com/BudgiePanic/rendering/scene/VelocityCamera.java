@@ -136,6 +136,12 @@ public class VelocityCamera implements Camera {
         return new Color(velocity.x, velocity.y, velocity.z);
     }
 
+    /**
+     * The image is normalized by its minimum and maximum values, so it cannot be rendered one tile at a time.
+     */
+    @Override
+    public boolean supportsTiles() { return false; }
+
     @Override
     public Canvas takePicture(final World world, final Canvas canvas) {
         final var velocities = Camera.super.takePicture(world, canvas);
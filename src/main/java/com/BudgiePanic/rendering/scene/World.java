@@ -18,7 +18,9 @@ package com.BudgiePanic.rendering.scene;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -31,9 +33,13 @@ import com.BudgiePanic.rendering.util.intersect.Intersection;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.intersect.ShadingInfo;
 import com.BudgiePanic.rendering.util.light.Light;
+import com.BudgiePanic.rendering.util.light.LightTree;
 import com.BudgiePanic.rendering.util.light.Phong;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
 import com.BudgiePanic.rendering.util.shape.Parent;
 import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.composite.Accelerator;
+import com.BudgiePanic.rendering.util.shape.composite.Group;
 
 /**
  * A world is a collection of objects and light sources that rays can intersect with.
@@ -49,6 +55,11 @@ public class World {
      */
     public static final int defaultRecursionDepth = 4;
 
+    /**
+     * Shade points with every sample of each light.
+     */
+    public static final int allLightSamples = Integer.MAX_VALUE;
+
     /**
      * Predicate to include all shapes in the word in intersection tests
      */
@@ -70,12 +81,73 @@ public class World {
      */
     protected List<Light> lights;
 
+    /**
+     * Optional acceleration structure over the lights. When present, shading uses the lights selected by the tree
+     * instead of every light in the world.
+     */
+    protected LightTree lightTree;
+
+    /**
+     * Remembers the shapes that blocked recent shadow rays.
+     */
+    protected final OccluderCache occluderCache;
+
+    /**
+     * The reflection and refraction recursion limit used when no limit is given.
+     */
+    protected volatile int recursionDepth;
+
+    /**
+     * The maximum number of samples taken from each light when shading a point.
+     */
+    protected volatile int lightSamples;
+
+    /**
+     * Recursion and light sample limits that replace the world's own limits on one thread.
+     *
+     * @param recursionDepth
+     *   The reflection and refraction recursion limit.
+     * @param lightSamples
+     *   The maximum number of samples per light.
+     */
+    protected static record Limits(int recursionDepth, int lightSamples) {}
+
+    /**
+     * Limits set by World::withLimits for the task running on the current thread, null when the world's own limits apply.
+     */
+    protected final ThreadLocal<Limits> threadLimits;
+
+    /**
+     * Incremented every time a shape is added to or removed from the world, so caches of primary ray hits can tell when they are stale.
+     */
+    protected volatile long geometryVersion;
+
+    /**
+     * Pruned copy of the world's shapes that only contains shadow casting shapes, built by World::compile.
+     * Shadow rays are tested against this hierarchy without evaluating the shadow caster predicate per shape.
+     * EMPTY when the world has not been compiled, or was modified after compiling.
+     */
+    protected Optional<List<Shape>> shadowShapes;
+
+    /**
+     * The pruned shadow caster hierarchy of each top level shape compiled by World::compile, EMPTY for shapes that cast no shadows.
+     * Kept until the shape is removed or the geometry is invalidated, so compiling again after adding shapes, such as the moving 
+     * shapes of an animation frame, only prunes and packs the new shapes.
+     */
+    protected final Map<Shape, Optional<Shape>> compiledShapes;
+
     /**
      * Construct a new empty world.
      */
     public World() {
         this.shapes = new ArrayList<>();
         this.lights = new ArrayList<>();
+        this.occluderCache = new OccluderCache();
+        this.shadowShapes = Optional.empty();
+        this.compiledShapes = new IdentityHashMap<>();
+        this.recursionDepth = defaultRecursionDepth;
+        this.lightSamples = allLightSamples;
+        this.threadLimits = new ThreadLocal<>();
     }
 
     /**
@@ -110,6 +182,183 @@ public class World {
         // precondition check, don't add null shapes
         if (shape == null) throw new IllegalArgumentException("shape cannot be null.");
         this.shapes.add(shape);
+        shapesChanged();
+    }
+
+    /**
+     * Remove a shape from the world. Shapes are matched by identity rather than equality.
+     *
+     * @param shape
+     *   The shape to remove. Cannot be null.
+     * @return
+     *   True if the shape was in the world.
+     */
+    public boolean removeShape(Shape shape) {
+        if (shape == null) throw new IllegalArgumentException("shape cannot be null");
+        final boolean removed = this.shapes.removeIf(other -> other == shape);
+        if (removed) {
+            if (!this.shapes.contains(shape)) { this.compiledShapes.remove(shape); }
+            shapesChanged();
+        }
+        return removed;
+    }
+
+    /**
+     * Tell the world that shapes already in it were changed, for example moved, added to or removed from a hierarchy.
+     * Discards the compiled structures and remembered occluders, and changes the geometry version.
+     * World::compile must be called again before rendering.
+     */
+    public void invalidateGeometry() {
+        this.compiledShapes.clear();
+        shapesChanged();
+    }
+
+    /**
+     * Discard the world's shadow caster list and remembered occluders after a shape was added or removed, 
+     * keeping the compiled hierarchies of the shapes that did not change.
+     */
+    protected void shapesChanged() {
+        this.occluderCache.invalidate();
+        this.shadowShapes = Optional.empty();
+        this.geometryVersion++;
+    }
+
+    /**
+     * Get the version of the world's geometry. The version changes every time a shape is added or removed, or the geometry is invalidated.
+     *
+     * @return
+     *   The geometry version.
+     */
+    public long geometryVersion() {
+        return this.geometryVersion;
+    }
+
+    /**
+     * Build the per query acceleration structures for the world's shapes.
+     * Builds a shadow caster only hierarchy, so shadow rays never visit shapes that do not cast shadows,
+     * and packs the children of every group by type (see Group::pack) for both hierarchies.
+     * Call after the world has been assembled, after dividing and baking shape end times. 
+     * Adding shapes with World::addShape discards the compiled structures, and they must be compiled again.
+     * Top level shapes that were compiled before are not compiled again, call World::invalidateGeometry after changing them.
+     */
+    public void compile() {
+        final List<Shape> casters = new ArrayList<>();
+        int compiled = 0;
+        for (final var shape : this.shapes) {
+            var pruned = this.compiledShapes.get(shape);
+            if (pruned == null) {
+                pruned = shape.prune(shadowCasters);
+                if (shape instanceof Group) { ((Group) shape).pack(); }
+                final var prunedShape = pruned.orElse(shape);
+                if (prunedShape != shape && prunedShape instanceof Group) { ((Group) prunedShape).pack(); }
+                this.compiledShapes.put(shape, pruned);
+                compiled++;
+            }
+            pruned.ifPresent(casters::add);
+        }
+        this.shadowShapes = Optional.of(casters);
+        this.occluderCache.invalidate();
+        System.out.println("INFO: compiled " + compiled + " shapes, world has " + casters.size() + " of " + this.shapes.size() + " top level shapes casting shadows");
+    }
+
+    /**
+     * Gather the world's shapes into one group and build an acceleration structure over them.
+     * Groups among the shapes are built with the accelerator chosen for them (see Group::setAccelerator), or 'accelerator'.
+     * Afterwards the world holds the single group, so shapes can no longer be removed one at a time with World::removeShape.
+     * Call after the world has been assembled and before World::compile.
+     *
+     * @param accelerator
+     *   Builds the acceleration structure, for example a BVHBuilder, GridBuilder or KDTreeBuilder.
+     */
+    public void accelerate(Accelerator accelerator) {
+        if (accelerator == null) throw new IllegalArgumentException("accelerator cannot be null");
+        final var root = new Group(Matrix4.identity());
+        for (final var shape : this.shapes) { root.addShape(shape); }
+        accelerator.build(root);
+        this.shapes.clear();
+        this.shapes.add(root);
+        invalidateGeometry();
+    }
+
+    /**
+     * Get the cache of shapes that blocked recent shadow rays. 
+     * Call OccluderCache::invalidate if shapes are removed from the world.
+     *
+     * @return
+     *   The world's occluder cache.
+     */
+    public OccluderCache occluderCache() {
+        return this.occluderCache;
+    }
+
+    /**
+     * Get the reflection and refraction recursion limit used when no limit is given.
+     *
+     * @return
+     *   The recursion limit.
+     */
+    public int recursionDepth() {
+        final var limits = threadLimits.get();
+        return limits == null ? this.recursionDepth : limits.recursionDepth();
+    }
+
+    /**
+     * Set the reflection and refraction recursion limit used when no limit is given.
+     * Lower limits render faster, at the cost of less accurate reflections and refractions.
+     *
+     * @param recursionDepth
+     *   The recursion limit. Cannot be negative.
+     */
+    public void setRecursionDepth(int recursionDepth) {
+        if (recursionDepth < 0) throw new IllegalArgumentException("recursion depth cannot be negative");
+        this.recursionDepth = recursionDepth;
+    }
+
+    /**
+     * Get the maximum number of samples taken from each light when shading a point.
+     *
+     * @return
+     *   The light sample limit.
+     */
+    public int lightSamples() {
+        final var limits = threadLimits.get();
+        return limits == null ? this.lightSamples : limits.lightSamples();
+    }
+
+    /**
+     * Run a task on the current thread with different recursion and light sample limits, without changing the limits
+     * seen by other threads. Renderers use this to lower the quality of one render while the world is shared.
+     *
+     * @param recursionDepth
+     *   The recursion limit used by the task. Cannot be negative.
+     * @param lightSamples
+     *   The maximum number of samples per light used by the task.
+     * @param task
+     *   The task to run.
+     */
+    public void withLimits(int recursionDepth, int lightSamples, Runnable task) {
+        if (recursionDepth < 0) throw new IllegalArgumentException("recursion depth cannot be negative");
+        if (lightSamples < 1) throw new IllegalArgumentException("at least one light sample is required");
+        final var previous = threadLimits.get();
+        threadLimits.set(new Limits(recursionDepth, lightSamples));
+        try {
+            task.run();
+        } finally {
+            if (previous == null) { threadLimits.remove(); } else { threadLimits.set(previous); }
+        }
+    }
+
+    /**
+     * Limit the number of samples taken from each light when shading a point.
+     * Lights with more samples than the limit, such as area lights, are shaded with an evenly spaced subset of their samples.
+     * Lower limits render faster, at the cost of noisier soft shadows.
+     *
+     * @param lightSamples
+     *   The maximum number of samples per light. Use World.allLightSamples to use every sample.
+     */
+    public void setLightSamples(int lightSamples) {
+        if (lightSamples < 1) throw new IllegalArgumentException("at least one light sample is required");
+        this.lightSamples = lightSamples;
     }
 
     /**
@@ -122,6 +371,29 @@ public class World {
         // precondition checks, don't add null lights
         if (light == null) throw new IllegalArgumentException("light cannot be null.");
         this.lights.add(light);
+        if (this.lightTree != null) {
+            buildLightTree(this.lightTree.samples());
+        }
+    }
+
+    /**
+     * Shade points with the lights chosen by a light tree instead of with every light in the world.
+     * Useful for worlds with many small lights, where most lights contribute little to any one point.
+     * The tree is rebuilt when lights are added with World::addLight.
+     *
+     * @param samples
+     *   The number of lights to randomly select per shaded point.
+     *   Use LightTree.allLights to shade with every light that is not culled by the tree.
+     */
+    public void buildLightTree(int samples) {
+        this.lightTree = new LightTree(this.lights, samples);
+    }
+
+    /**
+     * Stop using the light tree, points will be shaded with every light in the world.
+     */
+    public void clearLightTree() {
+        this.lightTree = null;
     }
 
     /**
@@ -148,7 +420,22 @@ public class World {
      *   EMPTY if no intersections occured. List of intersections if any.
      */
     protected Optional<List<Intersection>> intersect(Ray ray, Predicate<Shape> inclusionCondition) {
-        var intersections = this.shapes.stream().
+        return intersect(this.shapes, ray, inclusionCondition);
+    }
+
+    /**
+     * Perform a ray intersection test against some shapes.
+     * @param shapes
+     *   The shapes to test against.
+     * @param ray
+     *   The ray to test with.
+     * @param inclusionCondition
+     *   A predicate function that identifies whether a shape should be included in the intersection tests.
+     * @return
+     *   EMPTY if no intersections occured. List of intersections if any.
+     */
+    protected static Optional<List<Intersection>> intersect(List<Shape> shapes, Ray ray, Predicate<Shape> inclusionCondition) {
+        var intersections = shapes.stream().
             filter(inclusionCondition).
             map(Intersection.buildIntersector(ray, inclusionCondition)).
             filter(Optional::isPresent).
@@ -175,16 +462,48 @@ public class World {
         final var material = info.shape().material();
         final var hasReflectance = material.reflectivity() > 0 && material.transparency() > 0; // this expression could be extracted to Shading info 
         final Optional<Double> reflectance = hasReflectance ?  Optional.of(info.schlick()) : Optional.empty(); // this expression could be extracted to Shading info 
-        return this.lights.stream().
-            map((light) -> Phong.compute(info, light, light.intensityAt(info.overPoint(), this, info.time()))).
-            reduce(Color::add).
+        final var lighting = this.lightTree == null ?
+            this.lights.stream().map((light) -> Phong.compute(info, light, this)).reduce(Color::add) :
+            shadeLightTree(info);
+        return lighting.
             map(color -> color.add(this.shadeReflection(info, depth).multiply(reflectance.orElse(1.0)))).
             map(color -> color.add(this.shadeRefraction(info, depth).multiply(1f - reflectance.orElse(0.0)))).
             orElse(Colors.black);
     }
 
     /**
-     * Determine the color of a pointin the world using the default reflection recursion limit.
+     * Determine the color of a point in the world using the lights chosen by the light tree.
+     *
+     * @param info
+     *   Shading information derived from a ray-shape intersection test
+     * @return
+     *   The color of the point from direct lighting. Empty if the world has no lights.
+     */
+    protected Optional<Color> shadeLightTree(ShadingInfo info) {
+        if (this.lights.isEmpty()) { return Optional.empty(); }
+        final var point = info.overPoint();
+        final var normal = info.normalVector();
+        final var surfaceColor = Phong.surfaceColor(info);
+        // ambient light does not depend on light position, so every light contributes ambient light, even when culled
+        var color = Phong.ambient(info, surfaceColor, this.lightTree.totalColor());
+        final int samples = this.lightTree.samples();
+        if (samples < 1) {
+            for (final var light : this.lightTree.collect(point, normal)) {
+                color = color.add(Phong.direct(info, surfaceColor, light, this));
+            }
+            return Optional.of(color);
+        }
+        for (int i = 0; i < samples; i++) {
+            final var selection = this.lightTree.select(point, normal);
+            if (selection.isEmpty()) { break; } // every light was culled
+            final var direct = Phong.direct(info, surfaceColor, selection.get().light(), this);
+            color = color.add(direct.multiply(1.0 / (selection.get().probability() * samples)));
+        }
+        return Optional.of(color);
+    }
+
+    /**
+     * Determine the color of a pointin the world using the world's reflection recursion limit.
      *
      * @param info
      *   Shading information derived from a ray-shape intersection test
@@ -192,7 +511,7 @@ public class World {
      *   The color of the point in the world given the shading information.
      */
     public Color shadeHit(ShadingInfo info) {
-        return shadeHit(info, defaultRecursionDepth);
+        return shadeHit(info, recursionDepth());
     }
 
     /**
@@ -218,7 +537,7 @@ public class World {
     }
 
     /**
-     * Determine the color produced by a ray intersecting with the world, using the deafult recursion limit for reflections.
+     * Determine the color produced by a ray intersecting with the world, using the world's recursion limit for reflections.
      *
      * @param ray
      *   The ray
@@ -226,7 +545,7 @@ public class World {
      *   The color resulting from shading the ray intersection point within the world.
      */
     public Color computeColor(Ray ray) {
-        return computeColor(ray, defaultRecursionDepth);
+        return computeColor(ray, recursionDepth());
     }
 
     /**
@@ -277,18 +596,61 @@ public class World {
         final var trace = to.subtract(from);
         final var distance = trace.magnitude();
         final var ray = new Ray(from, trace.normalize(), time);
-        final var intersections = this.intersect(ray, condition);
-        if (intersections.isEmpty()) return false;
-        var hit = Intersection.Hit(intersections.get());
-        if (hit.isPresent()) {
-            // distance to hit is smaller than distance to target point, so it must be blocking the point's view to the target
-            if (FloatHelp.compareFloat(hit.get().a(), distance) < 0) {
-                return true;
-            }
+        return occluder(ray, distance, condition).isPresent();
+    }
+
+    /**
+     * Test if any shadow casting shapes block the view from a point to a sample on a light.
+     * The last shape that blocked the light on this thread is tested first, before testing the rest of the world.
+     *
+     * @param from
+     *   The point.
+     * @param to
+     *   The sample point on the light.
+     * @param light
+     *   The light that 'to' was sampled from.
+     * @param time
+     *   The time when the occlusion check occurs
+     * @return
+     *   True if any shadow casting shapes block the line traced by 'from' to 'to'.
+     */
+    public boolean isOccluded(Tuple from, Tuple to, Light light, final double time) {
+        final var trace = to.subtract(from);
+        final var distance = trace.magnitude();
+        final var ray = new Ray(from, trace.normalize(), time);
+        if (occluderCache.blocks(light, ray, distance)) {
+            return true;
+        }
+        final var occluder = occluder(ray, distance, shadowCasters);
+        if (occluder.isPresent()) {
+            occluderCache.remember(light, occluder.get().shape());
+            return true;
         }
         return false;
     }
 
+    /**
+     * Find the closest intersection that blocks a ray before it travels a distance.
+     *
+     * @param ray
+     *   The ray.
+     * @param distance
+     *   The distance along the ray to test.
+     * @param condition
+     *   A predicate to decide if a shape should be used in the occulusion test.
+     * @return
+     *   The closest blocking intersection, if any.
+     */
+    protected Optional<Intersection> occluder(Ray ray, double distance, Predicate<Shape> condition) {
+        // the compiled shadow hierarchy only contains shadow casters, so it doesn't need to check the predicate
+        final var intersections = (condition == shadowCasters && shadowShapes.isPresent()) ? 
+            intersect(shadowShapes.get(), ray, allShapes) : this.intersect(ray, condition);
+        if (intersections.isEmpty()) return Optional.empty();
+        var hit = Intersection.Hit(intersections.get());
+        // distance to hit is smaller than distance to target point, so it must be blocking the point's view to the target
+        return hit.filter(h -> FloatHelp.compareFloat(h.a(), distance) < 0);
+    }
+
     /**
      * Calculate the average light intensity at a point in the world. 
      *
@@ -346,7 +708,7 @@ public class World {
      *   the color produced by refracting a ray through the world
      */
     public Color shadeRefraction(ShadingInfo info) {
-        return shadeRefraction(info, defaultRecursionDepth);
+        return shadeRefraction(info, recursionDepth());
     }
 
     /**
@@ -364,5 +726,7 @@ public class World {
         for (final var shape : this.getShapes()) {
             shape.bakeExposureDuration(time);
         }
+        // moving shapes sweep different bounds, so their compiled hierarchies are stale
+        invalidateGeometry();
     }
 }
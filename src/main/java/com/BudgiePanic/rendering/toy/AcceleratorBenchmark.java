@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.toy;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.FileUtils;
+
+import com.BudgiePanic.rendering.io.WavefrontObjectLoader;
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.PinHoleCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.AngleHelp;
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.shape.Plane;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.shape.composite.Accelerator;
+import com.BudgiePanic.rendering.util.shape.composite.BVHBuilder;
+import com.BudgiePanic.rendering.util.shape.composite.GridBuilder;
+import com.BudgiePanic.rendering.util.shape.composite.Group;
+import com.BudgiePanic.rendering.util.shape.composite.KDTreeBuilder;
+import com.BudgiePanic.rendering.util.shape.composite.WideBVHBuilder;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+import com.BudgiePanic.rendering.util.transform.View;
+
+/**
+ * Builds the demo scenes with each acceleration structure and reports how long the build and the render took.
+ * The scenes are a dense field of spheres, and the dragon model when 'dragon.obj' is in the working directory.
+ * 
+ * @author BudgiePanic
+ */
+public class AcceleratorBenchmark extends BaseDemo {
+
+    /**
+     * The accelerators to compare.
+     */
+    protected static final List<Pair<String, Supplier<Accelerator>>> accelerators = List.of(
+        new Pair<>("bvh", () -> new BVHBuilder(4)),
+        new Pair<>("grid", () -> new GridBuilder(4)),
+        new Pair<>("kd-tree", () -> new KDTreeBuilder(4)),
+        new Pair<>("wide bvh", () -> new WideBVHBuilder(4))
+    );
+
+    /**
+     * A scene to time, with the camera that images it.
+     */
+    protected static record Scene(String name, Supplier<Optional<World>> world, Camera camera) {}
+
+    @Override
+    protected String getName() { return "accelerator_benchmark.ppm"; }
+
+    @Override
+    protected Camera getCamera() {
+        return new PinHoleCamera(400, 400, AngleHelp.toRadians(70), View.makeViewMatrix(makePoint(10, 10, -15), makePoint(10, 10, 5), Directions.up));
+    }
+
+    @Override
+    protected World createWorld() { return particleField(); }
+
+    /**
+     * A 20*20*20 field of small spheres.
+     */
+    protected static World particleField() {
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(4, 3, -6), Colors.white));
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 20; x++) {
+                for (int z = 0; z < 20; z++) {
+                    world.addShape(new Sphere(Transforms.identity().scale(0.4).translate(x, y, z).assemble()));
+                }
+            }
+        }
+        return world;
+    }
+
+    /**
+     * The dragon model on a floor, if the model can be loaded.
+     */
+    protected static Optional<World> dragon() {
+        try {
+            final var lines = FileUtils.readLines(new File(LargeModelDemo.modelName), Charset.defaultCharset());
+            final var data = WavefrontObjectLoader.parseObj(lines, Material.defaultMaterial());
+            final Group model = WavefrontObjectLoader.objectToGroup(data, Transforms.identity().assemble());
+            final var world = new World();
+            world.addLight(new PointLight(makePoint(0, 20, -20), Colors.white));
+            world.addShape(new Plane(Transforms.identity().assemble()));
+            world.addShape(model);
+            return Optional.of(world);
+        } catch (IOException e) {
+            System.out.println("WARN: could not load model " + LargeModelDemo.modelName + ", skipping the dragon scene");
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void run() {
+        final var scenes = List.of(
+            new Scene("particle field", () -> Optional.of(particleField()), this.camera),
+            new Scene("dragon", AcceleratorBenchmark::dragon, 
+                new PinHoleCamera(320, 240, AngleHelp.toRadians(70), View.makeViewMatrix(makePoint(0, 5, -7), makePoint(0, 2, 1), Directions.up)))
+        );
+        Canvas last = null;
+        for (final var scene : scenes) {
+            for (final var accelerator : accelerators) {
+                final var world = scene.world().get();
+                if (world.isEmpty()) { break; }
+                final long buildStart = System.nanoTime();
+                world.get().accelerate(accelerator.b().get());
+                world.get().compile();
+                final long renderStart = System.nanoTime();
+                final var camera = scene.camera();
+                last = camera.takePicture(world.get(), new ArrayCanvas(camera.width(), camera.height()));
+                final long end = System.nanoTime();
+                System.out.println(String.format("INFO: %s with %s: build %d ms, render %d ms", 
+                    scene.name(), accelerator.a(), (renderStart - buildStart) / 1_000_000, (end - renderStart) / 1_000_000));
+            }
+        }
+        if (last != null) { saveImageToFile(last, fileName); }
+    }
+}
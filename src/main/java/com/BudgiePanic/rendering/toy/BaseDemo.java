@@ -16,7 +16,10 @@
  */
 package com.BudgiePanic.rendering.toy;
 
+import java.nio.file.Path;
+
 import com.BudgiePanic.rendering.io.CanvasWriter;
+import com.BudgiePanic.rendering.reporting.CheckpointCameraWrapper;
 import com.BudgiePanic.rendering.reporting.ProgressWrapper;
 import com.BudgiePanic.rendering.scene.Camera;
 import com.BudgiePanic.rendering.scene.World;
@@ -62,10 +65,28 @@ public abstract class BaseDemo implements Runnable {
      */
     protected abstract World createWorld();
 
+    /**
+     * Get how often the render of this demo is checkpointed, so an interrupted render can be resumed.
+     * Demos that take a long time to render should override this method.
+     *
+     * @return
+     *     The minimum time between checkpoints in milliseconds, or zero if the render is not checkpointed.
+     */
+    protected long checkpointInterval() { return 0; }
+
     protected Canvas imageWorld() {
         System.out.println("INFO: taking picture");
         var world = createWorld();
+        world.compile();
+        final boolean checkpoint = checkpointInterval() > 0 && CheckpointCameraWrapper.supports(this.camera);
+        if (checkpointInterval() > 0 && !checkpoint) {
+            System.out.println("INFO: " + this.camera.getClass().getSimpleName() + " cannot render tiles, the render will not be checkpointed");
+        }
+        final Camera camera = checkpoint ? 
+            new CheckpointCameraWrapper(this.camera, Path.of(System.getProperty("user.dir"), fileName + ".checkpoint"), checkpointInterval()) : 
+            this.camera;
         var canvas = camera.takePicture(world, new ProgressWrapper(new ArrayCanvas(camera.width(), camera.height()), 20));
+        System.out.println("INFO: shadow ray " + world.occluderCache());
         return canvas;
     }
 
@@ -42,13 +42,16 @@ import com.BudgiePanic.rendering.util.light.PointLight;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
 import com.BudgiePanic.rendering.util.shape.Cube;
 import com.BudgiePanic.rendering.util.shape.Cylinder;
+import com.BudgiePanic.rendering.util.shape.Instance;
 import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.composite.BVHBuilder;
 import com.BudgiePanic.rendering.util.shape.composite.Group;
 import com.BudgiePanic.rendering.util.transform.Transforms;
 import com.BudgiePanic.rendering.util.transform.View;
 
 /**
  * A large scene that contains 6 Stanford dragons with over 140,000 triangles.
+ * The dragons are instances of one shared mesh, so the triangles are only loaded and built once.
  * 
  * see: https://graphics.stanford.edu/data/3Dscanrep/
  * see: http://www.jamis.jamisbuck.org/bonus/assets/dragon.zip
@@ -65,6 +68,9 @@ public class BigSceneDemo extends BaseDemo {
 
     double modelHeightOffset = 0.03; // not sure why our scene does not line up with the book author's scene description in the bonus chapter.// maybe we need to translate then scale? looks close enough
 
+    @Override
+    protected long checkpointInterval() { return 60_000; }
+
     @Override
     protected String getName() { return "complex_scene.ppm"; }
 
@@ -97,14 +103,12 @@ public class BigSceneDemo extends BaseDemo {
         world.addLight(new PointLight(makePoint(100, 10, -25), Colors.white.multiply(0.2)));
         world.addLight(new PointLight(makePoint(-100, 10, -25), Colors.white.multiply(0.2)));
         final var lines = loadModel();
-        Function<Pair<Material, Matrix4>, Shape> buildDragon = (params) -> {
-            final var material = params.a();
-            final var transform = params.b();
-            final var modelData = WavefrontObjectLoader.parseObj(lines, material);
-            final var model = WavefrontObjectLoader.objectToGroup(modelData, transform);
-            model.divide(threshold);
-            return model; 
-        };
+        // the dragon is parsed and built once, every dragon in the scene is an instance of it with its own material
+        final var dragon = WavefrontObjectLoader.objectToGroup(
+            WavefrontObjectLoader.parseObj(lines), 
+            Transforms.identity().scale(0.268).translate(0, modelHeightOffset, 0).assemble());
+        new BVHBuilder(threshold).build(dragon);
+        Function<Pair<Material, Matrix4>, Shape> buildDragon = (params) -> new Instance(params.b(), dragon, params.a());
         var boxTransform = Transforms.identity().
         translate(1, 1, 1).
         scale(3.73335, 2.5845, 1.6283).
@@ -164,7 +168,7 @@ public class BigSceneDemo extends BaseDemo {
         subGroupA.addShape(buildDragon.apply(
             new Pair<Material,Matrix4>(
                 Material.color(new Color(1, 0, 0.1)).setDiffuse(0.6).setSpecular(0.3).setShininess(15), 
-                Transforms.identity().scale(0.268).translate(0, modelHeightOffset, 0).assemble())
+                Matrix4.identity())
             )
         );
         groupA.addShape(subGroupA);
@@ -177,7 +181,7 @@ public class BigSceneDemo extends BaseDemo {
         subGroupB.addShape(buildDragon.apply(
             new Pair<Material,Matrix4>(
                 Material.color(new Color(1, 0.5, 0.1)).setDiffuse(0.6).setSpecular(0.3).setShininess(15), 
-                Transforms.identity().scale(0.268).translate(0, modelHeightOffset, 0).assemble())
+                Matrix4.identity())
             )
         );
         groupB.addShape(subGroupB);
@@ -190,7 +194,7 @@ public class BigSceneDemo extends BaseDemo {
         subGroupC.addShape(buildDragon.apply(
             new Pair<Material,Matrix4>(
                 Material.color(new Color(0.9, 0.5, 0.1)).setDiffuse(0.6).setSpecular(0.3).setShininess(15), 
-                Transforms.identity().scale(0.268).translate(0, modelHeightOffset, 0).assemble())
+                Matrix4.identity())
             )
         );
         groupC.addShape(subGroupC);
@@ -203,7 +207,7 @@ public class BigSceneDemo extends BaseDemo {
         subGroupD.addShape(buildDragon.apply(
             new Pair<Material,Matrix4>(
                 Material.color(new Color(1, 0.9, 0.1)).setDiffuse(0.6).setSpecular(0.3).setShininess(15), 
-                Transforms.identity().scale(0.268).translate(0, modelHeightOffset, 0).assemble())
+                Matrix4.identity())
             )
         );
         groupD.addShape(subGroupD);
@@ -216,7 +220,7 @@ public class BigSceneDemo extends BaseDemo {
         subGroupE.addShape(buildDragon.apply(
             new Pair<Material,Matrix4>(
                 Material.color(new Color(0.9, 1, 0.1)).setDiffuse(0.6).setSpecular(0.3).setShininess(15), 
-                Transforms.identity().scale(0.268).translate(0, modelHeightOffset, 0).assemble())
+                Matrix4.identity())
             )
         );
         groupE.addShape(subGroupE);
@@ -36,6 +36,7 @@ import com.BudgiePanic.rendering.util.Directions;
 import com.BudgiePanic.rendering.util.Material;
 // import com.BudgiePanic.rendering.util.light.AreaLight;
 import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.shape.composite.BVHBuilder;
 import com.BudgiePanic.rendering.util.transform.Transforms;
 import com.BudgiePanic.rendering.util.transform.View;
 
@@ -50,6 +51,9 @@ public class LargeModelDemo extends BaseDemo {
 
     int threshold = 10;
 
+    @Override
+    protected long checkpointInterval() { return 60_000; }
+
     @Override
     protected String getName() { return "dragon.ppm"; }
 
@@ -76,9 +80,9 @@ public class LargeModelDemo extends BaseDemo {
             System.out.println("INFO: model has " + modelData.triangles().size() + " triangles");
             System.out.println("INFO: model has " + modelData.vertices().size() + " verticies");
             var model = WavefrontObjectLoader.objectToGroup(modelData, Transforms.identity().assemble());
-            model.divide(threshold);
+            new BVHBuilder(threshold).build(model);
             System.out.println("INFO: model local extent is " + model.bounds().toString());
-            System.out.println("INFO: model global extent is " + model.bounds().transform(model.transform()).toString());
+            System.out.println("INFO: model global extent is " + model.bounds(model.transform()).toString());
             world.addShape(model);
             System.out.println("INFO: model was loaded successfully");
         } catch (IOException e) {
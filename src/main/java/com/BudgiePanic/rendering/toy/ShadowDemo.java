@@ -68,11 +68,14 @@ public class ShadowDemo implements Runnable {
         world.addShape(d);
         world.addShape(floor);
         world.addShape(background);
+        world.compile();
 
         System.out.println(String.format("INFO: taking first picture \"%s\"", cameraAImageName));
         Canvas imageA = cameraA.takePicture(world);
+        System.out.println("INFO: shadow ray " + world.occluderCache());
         System.out.println(String.format("INFO: taking second picture \"%s\"", cameraBImageName));
         Canvas imageB = cameraB.takePicture(world);
+        System.out.println("INFO: shadow ray " + world.occluderCache());
 
         System.out.println("INFO: saving images...");
 
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util;
+
+import java.util.Arrays;
+
+/**
+ * A film accumulates weighted color samples taken anywhere on the image plane.
+ * Each sample is splatted into every pixel within the radius of the film's reconstruction filter, 
+ * the final pixel color is the weighted average of the samples that reached the pixel.
+ * Samples can be added from multiple threads at once.
+ * 
+ * @author BudgiePanic
+ */
+public class Film {
+
+    /**
+     * Accumulator indexing keys, each pixel has 4 consecutive values in the accumulator.
+     */
+    private static final int red = 0, green = 1, blue = 2, weight = 3, stride = 4;
+
+    /**
+     * The number of columns in the film.
+     */
+    protected final int width;
+
+    /**
+     * The number of rows in the film.
+     */
+    protected final int height;
+
+    /**
+     * Decides how much each sample contributes to the pixels around it.
+     */
+    protected final ReconstructionFilter filter;
+
+    /**
+     * The image row of the first row of the film.
+     */
+    protected final int originRow;
+
+    /**
+     * Weighted color sums and weight sums of every pixel, in row major order.
+     */
+    protected final double[] accumulator;
+
+    /**
+     * One lock per row, so threads splatting samples into different rows don't block each other.
+     */
+    private final Object[] rowLocks;
+
+    /**
+     * Create a new empty film.
+     * 
+     * @param width
+     *   The number of columns in the film.
+     * @param height
+     *   The number of rows in the film.
+     * @param filter
+     *   The reconstruction filter used to splat samples into pixels.
+     */
+    public Film(int width, int height, ReconstructionFilter filter) {
+        this(width, height, filter, 0);
+    }
+
+    /**
+     * Create a new empty film that covers a horizontal band of a larger image.
+     * Samples are added in image coordinates, film pixel row 0 is image row 'originRow'.
+     * 
+     * @param width
+     *   The number of columns in the film.
+     * @param height
+     *   The number of rows in the film.
+     * @param filter
+     *   The reconstruction filter used to splat samples into pixels.
+     * @param originRow
+     *   The image row of the first row of the film.
+     */
+    public Film(int width, int height, ReconstructionFilter filter, int originRow) {
+        if (width <= 0 || height <= 0) { throw new IllegalArgumentException("invalid film dimensions " + width + " " + height); }
+        if (filter == null) { throw new IllegalArgumentException("filter cannot be null"); }
+        if (originRow < 0) { throw new IllegalArgumentException("origin row cannot be negative"); }
+        this.width = width;
+        this.height = height;
+        this.filter = filter;
+        this.originRow = originRow;
+        this.accumulator = new double[width * height * stride];
+        this.rowLocks = new Object[height];
+        for (int row = 0; row < height; row++) {
+            rowLocks[row] = new Object();
+        }
+    }
+
+    /**
+     * Get the width of the film.
+     * 
+     * @return
+     *   The number of columns in the film.
+     */
+    public int getWidth() { return width; }
+
+    /**
+     * Get the height of the film.
+     * 
+     * @return
+     *   The number of rows in the film.
+     */
+    public int getHeight() { return height; }
+
+    /**
+     * Get the reconstruction filter of the film.
+     * 
+     * @return
+     *   The filter that splats samples into pixels.
+     */
+    public ReconstructionFilter filter() { return filter; }
+
+    /**
+     * Get the image row of the first row of the film.
+     * 
+     * @return
+     *   The film's origin row.
+     */
+    public int originRow() { return originRow; }
+
+    /**
+     * Get the first image row whose samples can reach this film.
+     * 
+     * @return
+     *   The first image row that should be sampled.
+     */
+    public int firstSampleRow() { return Math.max(0, originRow - (int) Math.ceil(filter.radius())); }
+
+    /**
+     * Get the image row after the last image row whose samples can reach this film.
+     * 
+     * @param imageHeight
+     *   The height of the whole image.
+     * @return
+     *   The image row after the last row that should be sampled.
+     */
+    public int lastSampleRow(int imageHeight) { return Math.min(imageHeight, originRow + height + (int) Math.ceil(filter.radius())); }
+
+    /**
+     * Add a sample to the film.
+     * 
+     * @param x
+     *   The horizontal position of the sample on the image plane. Pixel [col, row] covers [col, col + 1).
+     * @param imageY
+     *   The vertical position of the sample on the image plane.
+     * @param color
+     *   The color of the sample.
+     */
+    public void addSample(double x, double imageY, Color color) {
+        final double radius = filter.radius();
+        final double y = imageY - originRow;
+        // pixel centers are at [col + 0.5, row + 0.5], the filter covers pixel centers in (x - radius, x + radius]
+        // so a sample on the boundary between two pixels is only added to the pixel it lies in
+        final int minCol = Math.max(0, (int) Math.floor(x - 0.5 - radius) + 1);
+        final int maxCol = Math.min(width - 1, (int) Math.floor(x - 0.5 + radius));
+        final int minRow = Math.max(0, (int) Math.floor(y - 0.5 - radius) + 1);
+        final int maxRow = Math.min(height - 1, (int) Math.floor(y - 0.5 + radius));
+        if (minCol > maxCol || minRow > maxRow) { return; }
+        final double r = color.getRed(), g = color.getGreen(), b = color.getBlue();
+        for (int row = minRow; row <= maxRow; row++) {
+            final double rowWeight = filter.evaluate(row + 0.5 - y);
+            if (rowWeight == 0.0) { continue; }
+            synchronized (rowLocks[row]) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    final double w = rowWeight * filter.evaluate(col + 0.5 - x);
+                    if (w == 0.0) { continue; }
+                    final int index = (row * width + col) * stride;
+                    accumulator[index + red] += r * w;
+                    accumulator[index + green] += g * w;
+                    accumulator[index + blue] += b * w;
+                    accumulator[index + weight] += w;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the reconstructed color of a pixel.
+     * 
+     * @param column
+     *   The column of the pixel.
+     * @param row
+     *   The row of the pixel within the film.
+     * @return
+     *   The weighted average of the samples that reached the pixel, black if no samples reached the pixel.
+     */
+    public Color getPixel(int column, int row) {
+        if (column < 0 || column >= width || row < 0 || row >= height) { throw new IllegalArgumentException("pixel out of bounds " + column + " " + row); }
+        synchronized (rowLocks[row]) {
+            final int index = (row * width + column) * stride;
+            final double w = accumulator[index + weight];
+            if (w == 0.0) { return Colors.black; }
+            return new Color(accumulator[index + red] / w, accumulator[index + green] / w, accumulator[index + blue] / w);
+        }
+    }
+
+    /**
+     * Write the reconstructed image into a canvas.
+     * 
+     * @param canvas
+     *   The canvas to write to. Must be at least as large as the film.
+     * @return
+     *   The canvas.
+     */
+    public Canvas develop(Canvas canvas) {
+        if (canvas == null || canvas.getWidth() < width || canvas.getHeight() < height) { throw new IllegalArgumentException(); }
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                canvas.writePixel(col, row, getPixel(col, row));
+            }
+        }
+        return canvas;
+    }
+
+    /**
+     * Create a new canvas from the reconstructed image.
+     * 
+     * @return
+     *   A canvas containing the reconstructed image.
+     */
+    public Canvas develop() {
+        return develop(new ArrayCanvas(width, height));
+    }
+
+    /**
+     * Remove all samples from the film.
+     */
+    public void clear() {
+        for (int row = 0; row < height; row++) {
+            synchronized (rowLocks[row]) {
+                final int start = row * width * stride;
+                Arrays.fill(accumulator, start, start + width * stride, 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A reconstruction filter decides how much a color sample contributes to the pixels around it.
+ * Filters are separable, the weight of a sample is the product of the filter evaluated along each axis.
+ * 
+ * @author BudgiePanic
+ */
+public interface ReconstructionFilter {
+
+    /**
+     * Each sample only contributes to the pixel it lands in, equivalent to averaging the samples in each pixel.
+     */
+    public static final ReconstructionFilter box = box(0.5);
+
+    /**
+     * Samples contribute linearly less to pixels that are further away.
+     */
+    public static final ReconstructionFilter tent = tent(1.0);
+
+    /**
+     * A soft filter that slightly blurs the image.
+     */
+    public static final ReconstructionFilter gaussian = gaussian(1.5, 2.0);
+
+    /**
+     * Mitchell-Netravali filter with the recommended B = C = 1/3 parameters. A good balance between blurring and ringing.
+     */
+    public static final ReconstructionFilter mitchell = mitchell(2.0, 1.0 / 3.0, 1.0 / 3.0);
+
+    /**
+     * Windowed sinc filter. Produces sharp images, but may ring around high contrast edges.
+     */
+    public static final ReconstructionFilter lanczos = lanczos(2.0);
+
+    /**
+     * The distance from a sample beyond which the filter has no weight.
+     * 
+     * @return
+     *   The radius of the filter in pixels.
+     */
+    double radius();
+
+    /**
+     * Evaluate the filter along a single axis.
+     * 
+     * @param offset
+     *   The distance between the sample and the pixel center along one axis.
+     * @return
+     *   The weight of the sample along the axis. May be negative.
+     */
+    double evaluate(double offset);
+
+    /**
+     * Evaluate the filter.
+     * 
+     * @param offsetX
+     *   The horizontal distance between the sample and the pixel center.
+     * @param offsetY
+     *   The vertical distance between the sample and the pixel center.
+     * @return
+     *   The weight of the sample for the pixel.
+     */
+    default double evaluate(double offsetX, double offsetY) { return evaluate(offsetX) * evaluate(offsetY); }
+
+    /**
+     * Create a filter from a one dimensional profile.
+     * 
+     * @param radius
+     *   The radius of the filter.
+     * @param profile
+     *   The weight of the filter at an offset in the range [-radius, radius].
+     * @return
+     *   A new reconstruction filter.
+     */
+    public static ReconstructionFilter of(final double radius, final DoubleUnaryOperator profile) {
+        if (radius <= 0) { throw new IllegalArgumentException("filter radius must be positive"); }
+        return new ReconstructionFilter() {
+            @Override
+            public double radius() { return radius; }
+            @Override
+            public double evaluate(double offset) {
+                if (Math.abs(offset) > radius) { return 0.0; }
+                return profile.applyAsDouble(offset);
+            }
+        };
+    }
+
+    /**
+     * Create a box filter.
+     * 
+     * @param radius
+     *   The radius of the filter.
+     * @return
+     *   A filter that gives every sample within the radius the same weight.
+     */
+    public static ReconstructionFilter box(double radius) {
+        return of(radius, offset -> 1.0);
+    }
+
+    /**
+     * Create a tent filter.
+     * 
+     * @param radius
+     *   The radius of the filter.
+     * @return
+     *   A filter whose weight falls off linearly to zero at the radius.
+     */
+    public static ReconstructionFilter tent(double radius) {
+        return of(radius, offset -> radius - Math.abs(offset));
+    }
+
+    /**
+     * Create a gaussian filter.
+     * 
+     * @param radius
+     *   The radius of the filter.
+     * @param alpha
+     *   The falloff rate of the filter, larger values give sharper images.
+     * @return
+     *   A gaussian filter that is shifted down so it reaches zero at the radius.
+     */
+    public static ReconstructionFilter gaussian(double radius, double alpha) {
+        final double edge = Math.exp(-alpha * radius * radius);
+        return of(radius, offset -> Math.max(0.0, Math.exp(-alpha * offset * offset) - edge));
+    }
+
+    /**
+     * Create a Mitchell-Netravali cubic filter.
+     * 
+     * @param radius
+     *   The radius of the filter.
+     * @param B
+     *   The B parameter of the cubic.
+     * @param C
+     *   The C parameter of the cubic.
+     * @return
+     *   A new mitchell filter.
+     */
+    public static ReconstructionFilter mitchell(double radius, double B, double C) {
+        return of(radius, offset -> {
+            // the cubic is defined over [-2, 2], remap the offset into that range
+            final double x = Math.abs(2.0 * offset / radius);
+            if (x < 1.0) {
+                return ((12 - 9 * B - 6 * C) * x * x * x + (-18 + 12 * B + 6 * C) * x * x + (6 - 2 * B)) / 6.0;
+            }
+            return ((-B - 6 * C) * x * x * x + (6 * B + 30 * C) * x * x + (-12 * B - 48 * C) * x + (8 * B + 24 * C)) / 6.0;
+        });
+    }
+
+    /**
+     * Create a lanczos windowed sinc filter.
+     * 
+     * @param radius
+     *   The radius of the filter, which is also the width of the sinc window.
+     * @return
+     *   A new lanczos filter.
+     */
+    public static ReconstructionFilter lanczos(double radius) {
+        return of(radius, offset -> sinc(offset) * sinc(offset / radius));
+    }
+
+    /**
+     * Normalized sinc function.
+     * 
+     * @param x
+     *   The input value.
+     * @return
+     *   sin(pi * x) / (pi * x)
+     */
+    private static double sinc(double x) {
+        if (Math.abs(x) < 1e-5) { return 1.0; }
+        final double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+}
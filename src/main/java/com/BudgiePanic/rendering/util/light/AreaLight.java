@@ -24,6 +24,7 @@ import com.BudgiePanic.rendering.scene.World;
 import com.BudgiePanic.rendering.util.Color;
 import com.BudgiePanic.rendering.util.RandomSuppliers;
 import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
 
 /**
  * An area light is a flat retangular panel light source.
@@ -138,13 +139,51 @@ public record AreaLight(Color color, Tuple corner, Tuple uVector, Tuple vVector,
         return corner.add(uUnit.multiply(generator.get() + u)).add(vUnit.multiply(generator.get() + v));
     }
 
+    @Override
+    public LightBounds bounds() {
+        final var far = corner.add(uVector).add(vVector);
+        final var min = Tuple.makePoint(Math.min(corner.x, far.x), Math.min(corner.y, far.y), Math.min(corner.z, far.z));
+        final var max = Tuple.makePoint(Math.max(corner.x, far.x), Math.max(corner.y, far.y), Math.max(corner.z, far.z));
+        return LightBounds.omnidirectional(new BoundingBox(min, max));
+    }
+
+    @Override
+    public void fillSamples(double[] buffer) {
+        int index = 0;
+        for (int v = 0; v < vStep; v++) {
+            for (int u = 0; u < uStep; u++) {
+                // same as sample(u, v), without creating the intermediate tuples
+                final double uOffset = generator.get() + u;
+                final double vOffset = generator.get() + v;
+                buffer[index++] = corner.x + uUnit.x * uOffset + vUnit.x * vOffset;
+                buffer[index++] = corner.y + uUnit.y * uOffset + vUnit.y * vOffset;
+                buffer[index++] = corner.z + uUnit.z * uOffset + vUnit.z * vOffset;
+            }
+        }
+    }
+
+    @Override
+    public void fillSamples(double[] buffer, int count) {
+        final double step = resolution() / (double) count;
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            // only jitter the cells in the subset
+            final int cell = (int) (i * step);
+            final double uOffset = generator.get() + (cell % uStep);
+            final double vOffset = generator.get() + (cell / uStep);
+            buffer[index++] = corner.x + uUnit.x * uOffset + vUnit.x * vOffset;
+            buffer[index++] = corner.y + uUnit.y * uOffset + vUnit.y * vOffset;
+            buffer[index++] = corner.z + uUnit.z * uOffset + vUnit.z * vOffset;
+        }
+    }
+
     @Override
     public double intensityAt(Tuple point, World world, double time) {
         float accumulator = 0f;
         for (int u = 0; u < uStep; u++) {
             for (int v = 0; v < vStep; v++) {
                 final var sample = sample(u, v);
-                final var isShadowed = world.isOccluded(point, sample, World.shadowCasters, time);
+                final var isShadowed = world.isOccluded(point, sample, this, time);
                 accumulator += isShadowed ? 0f : 1f;
             }
         }
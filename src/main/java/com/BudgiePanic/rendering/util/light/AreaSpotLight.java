@@ -29,6 +29,7 @@ import com.BudgiePanic.rendering.util.FloatHelp;
 import com.BudgiePanic.rendering.util.RandomSuppliers;
 import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
 import com.BudgiePanic.rendering.util.transform.Transforms;
 import com.BudgiePanic.rendering.util.transform.Translation;
 
@@ -271,18 +272,15 @@ public class AreaSpotLight implements Light {
 
     @Override
     public double intensityAt(Tuple point, World world, double time) {
-        final var localPoint = transform.multiply(point);
-        if (!isInCone(localPoint)) { return 0.0; }
         // get the illumination that would have been recieved by a point spot light = max_possible_illumination
         // the intensity at the point will be [max_possible_illumination * (non_blocked_rays / samples_cast)]
-        final Tuple lightToPoint = localPoint.subtract(localPosition);
-        final var angle = localDirection.angleBetween(lightToPoint);
-        final var maxIntensity = illumination(angle);
+        final var maxIntensity = attenuationAt(point);
+        if (maxIntensity == 0.0) { return 0.0; }
         final var sampler = sampler();
         var samplesBlocked = 0;
         while (sampler.hasNext()) {
             final var globalSample = sampler.next();
-            if (world.isOccluded(point, globalSample, World.shadowCasters, time)) {
+            if (world.isOccluded(point, globalSample, this, time)) {
                 samplesBlocked++;
             }
         }
@@ -290,6 +288,46 @@ public class AreaSpotLight implements Light {
         return maxIntensity * proportion;
     }
 
+    @Override
+    public double attenuationAt(Tuple point) {
+        final var localPoint = transform.multiply(point);
+        if (!isInCone(localPoint)) { return 0.0; }
+        final Tuple lightToPoint = localPoint.subtract(localPosition);
+        final var angle = localDirection.angleBetween(lightToPoint);
+        return illumination(angle);
+    }
+
+    @Override
+    public LightBounds bounds() {
+        // conservatively bound the light emitting disk with a cube
+        final var min = position.subtract(areaRadius, areaRadius, areaRadius);
+        final var max = position.add(areaRadius, areaRadius, areaRadius);
+        final var direction = toGlobalSpace(localDirection);
+        return LightBounds.cone(new BoundingBox(min, max), direction, coneAngle);
+    }
+
+    @Override
+    public void fillSamples(double[] buffer) {
+        fillSamples(buffer, samples);
+    }
+
+    @Override
+    public void fillSamples(double[] buffer, int count) {
+        // samples are drawn independently, so a subset is just fewer draws
+        final double[][] toGlobal = transform.inverse().matrix;
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            final var angle = Math.PI * 2 * randomSource.get();
+            final var radius = areaRadius * Math.sqrt(randomSource.get());
+            // same as toGlobalSpace(localSample(angle, radius)), local samples lie on the y = 0 plane
+            final double x = Math.cos(angle) * radius;
+            final double z = Math.sin(angle) * radius;
+            buffer[index++] = toGlobal[0][0] * x + toGlobal[0][2] * z + toGlobal[0][3];
+            buffer[index++] = toGlobal[1][0] * x + toGlobal[1][2] * z + toGlobal[1][3];
+            buffer[index++] = toGlobal[2][0] * x + toGlobal[2][2] * z + toGlobal[2][3];
+        }
+    }
+
     /**
      * remaps the angle between the light direction and the vector to the illuminated point to an illumination intensity value.
      * @param angle
@@ -21,6 +21,7 @@ import java.util.Iterator;
 import com.BudgiePanic.rendering.scene.World;
 import com.BudgiePanic.rendering.util.Color;
 import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
 
 /**
  * Common light operations needed by the phong lighting model.
@@ -64,6 +65,70 @@ public interface Light {
      */
     Iterator<Tuple> sampler();
 
+    /**
+     * The number of values used to store one sample point in a sample buffer.
+     */
+    int sampleStride = 3;
+
+    /**
+     * Write a new set of sample points that cover the entire light into a primitive buffer.
+     * Samples are packed as consecutive [x, y, z] triples, so the buffer must hold at least resolution() * sampleStride values.
+     * Lights should override this method to avoid creating a tuple for every sample.
+     *
+     * @param buffer
+     *   The buffer to write the sample points to.
+     */
+    default void fillSamples(double[] buffer) {
+        final var sampler = sampler();
+        int index = 0;
+        while (sampler.hasNext()) {
+            final var sample = sampler.next();
+            buffer[index++] = sample.x;
+            buffer[index++] = sample.y;
+            buffer[index++] = sample.z;
+        }
+    }
+
+    /**
+     * Write an evenly spaced subset of the light's sample points into a primitive buffer.
+     * Sample i of the subset is sample floor(i * resolution() / count) of the full set, packed as in Light::fillSamples.
+     * The default implementation fills every sample and then keeps the subset, lights should override this method
+     * so that samples outside the subset are never generated.
+     *
+     * @param buffer
+     *   The buffer to write the sample points to, must hold at least resolution() * sampleStride values.
+     * @param count
+     *   The number of samples to write, between 1 and resolution().
+     */
+    default void fillSamples(double[] buffer, int count) {
+        fillSamples(buffer);
+        final double step = resolution() / (double) count;
+        // the source index is never behind the destination index, so the subset can be moved to the front in place
+        for (int i = 1; i < count; i++) {
+            System.arraycopy(buffer, ((int) (i * step)) * sampleStride, buffer, i * sampleStride, sampleStride);
+        }
+    }
+
+    /**
+     * How much of this light can reach the point in the world if none of the light's samples are blocked.
+     * Lights that shape their illumination, such as spot lights, should override this method.
+     *
+     * @param point
+     *   The point being tested.
+     * @return
+     *   The unshadowed amount of light reaching the point, between 0 and 1.
+     */
+    default double attenuationAt(Tuple point) { return 1.0; }
+
+    /**
+     * Get the region of space the light emits from and the directions it emits into.
+     * By default, lights are treated as a point at their position that shines in every direction.
+     *
+     * @return
+     *   The world space bounds of the light.
+     */
+    default LightBounds bounds() { return LightBounds.omnidirectional(new BoundingBox(position(), position())); }
+
     /**
      * Get the number of segments in the light.
      *
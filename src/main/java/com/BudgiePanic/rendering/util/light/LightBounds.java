@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.light;
+
+import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+
+/**
+ * The region of space a light emits from, and the cone of directions it emits into.
+ * Used by light acceleration structures to estimate how much a group of lights can contribute to a point.
+ * 
+ * @author BudgiePanic
+ */
+public record LightBounds(BoundingBox box, Tuple axis, double spread, double emission) {
+
+    /**
+     * Canonical constructor.
+     * 
+     * @param box
+     *   The world space bounding box of the light emitting region.
+     * @param axis
+     *   The central direction of the cone that bounds the light's directions. Should be normalized.
+     * @param spread
+     *   The half angle around the axis that contains the light's direction in radians.
+     *   Groups of lights facing different directions have a spread greater than zero.
+     * @param emission
+     *   The half angle of the cone of light emitted about the light's direction in radians.
+     */
+    public LightBounds {}
+
+    /**
+     * Create bounds for a light that emits in every direction.
+     *
+     * @param box
+     *   The world space bounding box of the light emitting region.
+     * @return
+     *   Light bounds that face every direction.
+     */
+    public static LightBounds omnidirectional(BoundingBox box) {
+        return new LightBounds(box, Directions.up, Math.PI, Math.PI);
+    }
+
+    /**
+     * Create bounds for a light that emits in a cone.
+     *
+     * @param box
+     *   The world space bounding box of the light emitting region.
+     * @param direction
+     *   The direction the light faces.
+     * @param coneAngle
+     *   The half angle of the cone of emitted light in radians.
+     * @return
+     *   Light bounds that face 'direction'.
+     */
+    public static LightBounds cone(BoundingBox box, Tuple direction, double coneAngle) {
+        return new LightBounds(box, direction.normalize(), 0.0, coneAngle);
+    }
+
+    /**
+     * Check if the bounds emit light in every direction.
+     *
+     * @return
+     *   True if the bounds do not restrict the direction of emitted light.
+     */
+    public boolean isOmnidirectional() {
+        return spread + emission >= Math.PI;
+    }
+}
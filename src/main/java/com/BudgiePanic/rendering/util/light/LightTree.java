@@ -0,0 +1,343 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.light;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.RandomSuppliers;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+
+/**
+ * A light tree is a bounding volume hierarchy built over the lights in a world.
+ * Each node stores the bounds, orientation cone and total power of the lights below it, which lets a shaded point
+ * cull groups of lights that cannot reach it and pick the lights most likely to illuminate it.
+ * 
+ * NOTE: lights in this renderer do not fall off with distance, so the importance estimate only considers light power,
+ *       spot light cones and the orientation of the shaded surface.
+ * 
+ * @author BudgiePanic
+ */
+public class LightTree {
+
+    /**
+     * The recommended default number of lights to select per shaded point.
+     */
+    public static final int defaultSamples = 8;
+
+    /**
+     * Sample count which tells the tree to shade with every light that is not culled.
+     */
+    public static final int allLights = 0;
+
+    /**
+     * The default source of randomness for light selection.
+     */
+    public static final Supplier<Double> defaultRandomSource = RandomSuppliers.threadSafeRandomSupplier;
+
+    /**
+     * A light picked by the tree and the probability that it was picked.
+     */
+    public static record Selection(Light light, double probability) {}
+
+    /**
+     * Node of the light tree. Leaf nodes hold a single light.
+     */
+    protected static record Node(LightBounds bounds, double power, Light light, Node left, Node right) {
+        boolean isLeaf() { return light != null; }
+    }
+
+    /**
+     * The root of the tree, null if the tree has no lights.
+     */
+    protected final Node root;
+
+    /**
+     * The sum of the colors of every light in the tree.
+     */
+    protected final Color totalColor;
+
+    /**
+     * The number of lights to select per shaded point.
+     */
+    protected final int samples;
+
+    /**
+     * Supplier of uniform random floats between 0 and 1 used to select lights.
+     */
+    protected final Supplier<Double> randomSource;
+
+    /**
+     * Build a new light tree. Canonical constructor.
+     *
+     * @param lights
+     *   The lights to put in the tree.
+     * @param samples
+     *   The number of lights to select per shaded point. Use LightTree.allLights to shade with every light that is not culled.
+     * @param randomSource
+     *   The source of randomness used to select lights.
+     */
+    public LightTree(List<Light> lights, int samples, Supplier<Double> randomSource) {
+        if (lights == null) throw new IllegalArgumentException("lights cannot be null");
+        this.samples = samples;
+        this.randomSource = randomSource;
+        this.root = lights.isEmpty() ? null : build(new ArrayList<>(lights));
+        var color = new Color();
+        for (final var light : lights) {
+            color = color.add(light.color());
+        }
+        this.totalColor = color;
+    }
+
+    /**
+     * Build a new light tree that uses the default source of randomness.
+     *
+     * @param lights
+     *   The lights to put in the tree.
+     * @param samples
+     *   The number of lights to select per shaded point. Use LightTree.allLights to shade with every light that is not culled.
+     */
+    public LightTree(List<Light> lights, int samples) {
+        this(lights, samples, defaultRandomSource);
+    }
+
+    /**
+     * Get the number of lights to select per shaded point.
+     *
+     * @return
+     *   The number of lights selected per point. Values less than 1 mean every light that is not culled is used.
+     */
+    public int samples() { return this.samples; }
+
+    /**
+     * Get the sum of the colors of every light in the tree.
+     * 
+     * @return
+     *   The combined color of the lights.
+     */
+    public Color totalColor() { return this.totalColor; }
+
+    /**
+     * Recursively builds the tree by splitting the lights in half along the longest axis of their centers.
+     *
+     * @param lights
+     *   The lights below the node being built. Will be reordered.
+     * @return
+     *   A node containing all the lights.
+     */
+    protected static Node build(List<Light> lights) {
+        if (lights.size() == 1) {
+            final var light = lights.get(0);
+            return new Node(light.bounds(), power(light.color()), light, null, null);
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (final var light : lights) {
+            final var center = center(light.bounds().box());
+            minX = Math.min(minX, center.x); maxX = Math.max(maxX, center.x);
+            minY = Math.min(minY, center.y); maxY = Math.max(maxY, center.y);
+            minZ = Math.min(minZ, center.z); maxZ = Math.max(maxZ, center.z);
+        }
+        final double xLength = maxX - minX, yLength = maxY - minY, zLength = maxZ - minZ;
+        final double biggest = Math.max(xLength, Math.max(yLength, zLength));
+        final Comparator<Light> axis;
+        if (xLength == biggest) {
+            axis = Comparator.comparingDouble(light -> center(light.bounds().box()).x);
+        } else if (yLength == biggest) {
+            axis = Comparator.comparingDouble(light -> center(light.bounds().box()).y);
+        } else {
+            axis = Comparator.comparingDouble(light -> center(light.bounds().box()).z);
+        }
+        lights.sort(axis);
+        final int middle = lights.size() / 2;
+        final var left = build(lights.subList(0, middle));
+        final var right = build(lights.subList(middle, lights.size()));
+        return new Node(merge(left.bounds, right.bounds), left.power + right.power, null, left, right);
+    }
+
+    /**
+     * Estimate the brightness of a light color.
+     *
+     * @param color
+     *   The light's color.
+     * @return
+     *   The combined intensity of the color channels.
+     */
+    protected static double power(Color color) {
+        return Math.abs(color.getRed()) + Math.abs(color.getGreen()) + Math.abs(color.getBlue());
+    }
+
+    /**
+     * Find the center of a bounding box.
+     *
+     * @param box
+     *   The bounding box.
+     * @return
+     *   The point in the middle of the box.
+     */
+    protected static Tuple center(BoundingBox box) {
+        return box.minimum().add(box.maximum()).multiply(0.5);
+    }
+
+    /**
+     * Find the angle between two vectors, safe against rounding errors pushing the cosine outside of [-1, 1].
+     */
+    private static double angle(Tuple a, Tuple b) {
+        final var cos = a.dot(b) / (a.magnitude() * b.magnitude());
+        return Math.acos(Math.max(-1.0, Math.min(1.0, cos)));
+    }
+
+    /**
+     * Combine the bounds of two groups of lights.
+     *
+     * @param a
+     *   The first bounds.
+     * @param b
+     *   The second bounds.
+     * @return
+     *   Bounds that contain both the regions and the orientation cones of 'a' and 'b'.
+     */
+    protected static LightBounds merge(LightBounds a, LightBounds b) {
+        final var box = a.box().grow(b.box());
+        final double emission = Math.max(a.emission(), b.emission());
+        if (a.spread() < b.spread()) {
+            final var temp = a; a = b; b = temp;
+        }
+        // see: Conty Estevez and Kulla, "Importance Sampling of Many Lights with Adaptive Tree Splitting", orientation cone union
+        final double between = angle(a.axis(), b.axis());
+        if (Math.min(between + b.spread(), Math.PI) <= a.spread()) {
+            return new LightBounds(box, a.axis(), a.spread(), emission);
+        }
+        final double spread = (a.spread() + between + b.spread()) * 0.5;
+        if (spread >= Math.PI) {
+            return new LightBounds(box, a.axis(), Math.PI, emission);
+        }
+        // rotate a's axis towards b's axis
+        final double rotation = spread - a.spread();
+        final double sinBetween = Math.sin(between);
+        if (sinBetween < 1e-9) {
+            return new LightBounds(box, a.axis(), spread, emission);
+        }
+        final var axis = a.axis().multiply(Math.sin(between - rotation)).add(b.axis().multiply(Math.sin(rotation))).divide(sinBetween).normalize();
+        return new LightBounds(box, axis, spread, emission);
+    }
+
+    /**
+     * Estimate how much light from a node can reach a point on a surface.
+     * Returns zero when the node's lights are certainly unable to illuminate the point,
+     * either because the point is outside every light's cone or because the lights are behind the surface.
+     *
+     * @param node
+     *   The node to estimate the contribution of.
+     * @param point
+     *   The point being shaded.
+     * @param normal
+     *   The surface normal at the point.
+     * @return
+     *   The estimated importance of the node to the point. Zero if the node can be culled.
+     */
+    protected static double importance(Node node, Tuple point, Tuple normal) {
+        final var bounds = node.bounds;
+        final var box = bounds.box();
+        final var center = center(box);
+        final var toPoint = point.subtract(center);
+        final double distance = toPoint.magnitude();
+        final double radius = box.maximum().subtract(center).magnitude();
+        if (distance <= radius) {
+            // the point is inside the node bounds, the node cannot be culled
+            return node.power;
+        }
+        // the angle the bounding sphere of the node subtends when viewed from the point
+        final double subtended = Math.asin(radius / distance);
+        if (!bounds.isOmnidirectional()) {
+            final double fromAxis = angle(bounds.axis(), toPoint);
+            final double closest = Math.max(0.0, fromAxis - bounds.spread() - subtended);
+            if (closest >= bounds.emission()) {
+                return 0.0;
+            }
+        }
+        final double fromNormal = Math.max(0.0, angle(normal, toPoint.negate()) - subtended);
+        if (fromNormal >= Math.PI * 0.5) {
+            return 0.0;
+        }
+        return node.power * Math.cos(fromNormal);
+    }
+
+    /**
+     * Collect every light in the tree that could illuminate a point on a surface.
+     *
+     * @param point
+     *   The point being shaded.
+     * @param normal
+     *   The surface normal at the point.
+     * @return
+     *   The lights that were not culled.
+     */
+    public List<Light> collect(Tuple point, Tuple normal) {
+        final List<Light> result = new ArrayList<>();
+        if (root != null) {
+            collect(root, point, normal, result);
+        }
+        return result;
+    }
+
+    private static void collect(Node node, Tuple point, Tuple normal, List<Light> result) {
+        if (importance(node, point, normal) <= 0.0) { return; }
+        if (node.isLeaf()) {
+            result.add(node.light);
+            return;
+        }
+        collect(node.left, point, normal, result);
+        collect(node.right, point, normal, result);
+    }
+
+    /**
+     * Randomly select a light, favouring the lights that are estimated to contribute the most to a point on a surface.
+     *
+     * @param point
+     *   The point being shaded.
+     * @param normal
+     *   The surface normal at the point.
+     * @return
+     *   The selected light and the probability it was selected. Empty if every light was culled.
+     */
+    public Optional<Selection> select(Tuple point, Tuple normal) {
+        if (root == null || importance(root, point, normal) <= 0.0) { return Optional.empty(); }
+        var node = root;
+        double probability = 1.0;
+        while (!node.isLeaf()) {
+            final double left = importance(node.left, point, normal);
+            final double right = importance(node.right, point, normal);
+            final double total = left + right;
+            if (total <= 0.0) { return Optional.empty(); }
+            final double pickLeft = left / total;
+            if (randomSource.get() < pickLeft) {
+                node = node.left;
+                probability *= pickLeft;
+            } else {
+                node = node.right;
+                probability *= (1.0 - pickLeft);
+            }
+        }
+        return Optional.of(new Selection(node.light, probability));
+    }
+}
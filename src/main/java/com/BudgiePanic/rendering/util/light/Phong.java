@@ -18,7 +18,9 @@ package com.BudgiePanic.rendering.util.light;
 
 import java.util.Optional;
 
+import com.BudgiePanic.rendering.scene.World;
 import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Colors;
 import com.BudgiePanic.rendering.util.FloatHelp;
 import com.BudgiePanic.rendering.util.Material;
 import com.BudgiePanic.rendering.util.Tuple;
@@ -34,6 +36,140 @@ public final class Phong {
 
     private Phong() {}
 
+    /**
+     * Reusable light sample buffers, one per rendering thread, so shading a point does not allocate sample storage.
+     */
+    private static final ThreadLocal<double[]> sampleBuffers = ThreadLocal.withInitial(() -> new double[Light.sampleStride]);
+
+    /**
+     * Get this thread's light sample buffer, growing it if it is too small to hold every sample of the light.
+     *
+     * @param light
+     *   The light that will be sampled into the buffer.
+     * @return
+     *   A buffer that can hold all of the light's samples.
+     */
+    private static double[] sampleBuffer(Light light) {
+        final int size = light.resolution() * Light.sampleStride;
+        var buffer = sampleBuffers.get();
+        if (buffer.length < size) {
+            buffer = new double[size];
+            sampleBuffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Uses the Phong lighting model to compute the color of a point, testing the light's visibility at the same time.
+     * Each light sample is generated once and used for both the shadow test and the diffuse and specular terms,
+     * so a point is only shaded by the samples it can see.
+     *
+     * @param info
+     *   Information about the point being illuminated
+     * @param light
+     *   The light that is illuminating the point
+     * @param world
+     *   The world used to test if the light's samples are blocked
+     * @return
+     *   The color of the point described in the shading information record.
+     */
+    public static Color compute(ShadingInfo info, Light light, World world) {
+        final var color = surfaceColor(info);
+        return ambient(info, color, light.color()).add(direct(info, color, light, world));
+    }
+
+    /**
+     * Get the color of the surface at the point being illuminated.
+     *
+     * @param info
+     *   Information about the point being illuminated
+     * @return
+     *   The color of the shape's material pattern at the point.
+     */
+    public static Color surfaceColor(ShadingInfo info) {
+        final var shape = info.shape();
+        final var color = shape.material().pattern().colorAt(info.overPoint(), shape::toObjectSpace);
+        assert color != null;
+        return color;
+    }
+
+    /**
+     * Compute the ambient term of the Phong lighting model.
+     * The ambient term does not depend on the light's position, so the ambient light of many lights
+     * can be found in one call by passing in the sum of their colors.
+     *
+     * @param info
+     *   Information about the point being illuminated
+     * @param surfaceColor
+     *   The color of the surface at the point
+     * @param lightColor
+     *   The color of the light illuminating the point
+     * @return
+     *   The ambient color of the point.
+     */
+    public static Color ambient(ShadingInfo info, Color surfaceColor, Color lightColor) {
+        return surfaceColor.colorMul(lightColor).multiply(info.shape().material().ambient());
+    }
+
+    /**
+     * Compute the diffuse and specular terms of the Phong lighting model for the samples of a light that are not blocked.
+     *
+     * @param info
+     *   Information about the point being illuminated
+     * @param surfaceColor
+     *   The color of the surface at the point
+     * @param light
+     *   The light that is illuminating the point
+     * @param world
+     *   The world used to test if the light's samples are blocked
+     * @return
+     *   The diffuse and specular color of the point.
+     */
+    public static Color direct(ShadingInfo info, Color surfaceColor, Light light, World world) {
+        final var material = info.shape().material();
+        final var position = info.overPoint();
+        final double attenuation = light.attenuationAt(position);
+        if (FloatHelp.compareFloat(0, attenuation) != -1) {
+            return Colors.black;
+        }
+        final var eye = info.eyeVector();
+        final var normal = info.normalVector();
+        final int resolution = light.resolution();
+        final double[] samples = sampleBuffer(light);
+        // when the world limits light samples, only generate an evenly spaced subset of the samples
+        final int count = Math.min(resolution, world.lightSamples());
+        if (count < resolution) { light.fillSamples(samples, count); } else { light.fillSamples(samples); }
+        double diffuse = 0, specular = 0;
+        for (int i = 0; i < count; i++) {
+            final int index = i * Light.sampleStride;
+            final double x = samples[index], y = samples[index + 1], z = samples[index + 2];
+            // direction to light, computed in place to avoid creating tuples for unlit samples
+            double dx = x - position.x, dy = y - position.y, dz = z - position.z;
+            final double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            dx /= length; dy /= length; dz /= length;
+            final double lightNormalAngle = dx * normal.x + dy * normal.y + dz * normal.z;
+            if (lightNormalAngle < 0.0) {
+                continue;
+            }
+            if (world.isOccluded(position, Tuple.makePoint(x, y, z), light, info.time())) {
+                continue;
+            }
+            diffuse += lightNormalAngle;
+            // reflection = -directionToLight reflected about the normal
+            final double rx = -dx - normal.x * 2 * -lightNormalAngle;
+            final double ry = -dy - normal.y * 2 * -lightNormalAngle;
+            final double rz = -dz - normal.z * 2 * -lightNormalAngle;
+            final double eyeReflectAngle = rx * eye.x + ry * eye.y + rz * eye.z;
+            if (eyeReflectAngle < 0.0) {
+                continue;
+            }
+            specular += Math.pow(eyeReflectAngle, material.shininess());
+        }
+        final var effective = surfaceColor.colorMul(light.color());
+        final var accumulator = effective.multiply(material.diffuse() * diffuse).add(light.color().multiply(material.specular() * specular));
+        return accumulator.multiply(attenuation / count);
+    }
+
     /**
      * Convience method to unwrap lighting information before passing off to Phong::compute implementation.
      *
@@ -33,7 +33,7 @@ public record PointLight(Tuple position, Color color) implements Light {
 
     @Override
     public double intensityAt(Tuple point, World world, double time) {
-        final boolean inShadow = world.isOccluded(point, position, World.shadowCasters, time);
+        final boolean inShadow = world.isOccluded(point, position, this, time);
         return inShadow ? 0.0 : 1.0;
     }
 
@@ -52,6 +52,13 @@ public record PointLight(Tuple position, Color color) implements Light {
         };
     }
 
+    @Override
+    public void fillSamples(double[] buffer) {
+        buffer[0] = position.x;
+        buffer[1] = position.y;
+        buffer[2] = position.z;
+    }
+
     @Override
     public int resolution() { return 1; }
     
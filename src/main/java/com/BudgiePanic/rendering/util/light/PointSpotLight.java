@@ -23,6 +23,7 @@ import com.BudgiePanic.rendering.scene.World;
 import com.BudgiePanic.rendering.util.Color;
 import com.BudgiePanic.rendering.util.FloatHelp;
 import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
 
 /**
  * A point light that casts light out in a cone with a direction.
@@ -61,8 +62,13 @@ public record PointSpotLight(Tuple position, Color color, Tuple direction, doubl
 
     @Override
     public double intensityAt(Tuple point, World world, double time) {
-        final var isShadowed = world.isOccluded(point, position, World.shadowCasters, time);
+        final var isShadowed = world.isOccluded(point, position, this, time);
         if (isShadowed) { return 0.0; }
+        return attenuationAt(point);
+    }
+
+    @Override
+    public double attenuationAt(Tuple point) {
         final Tuple lightToPoint = point.subtract(position);
         final var normDot = (direction.dot(lightToPoint)) / (direction.magnitude() * lightToPoint.magnitude());
         final double angle = Math.acos(normDot);
@@ -78,6 +84,16 @@ public record PointSpotLight(Tuple position, Color color, Tuple direction, doubl
     @Override
     public Iterator<Tuple> sampler() { return new PointSpotLight.SpotLightIterator(); }
 
+    @Override
+    public LightBounds bounds() { return LightBounds.cone(new BoundingBox(position, position), direction, coneAngle); }
+
+    @Override
+    public void fillSamples(double[] buffer) {
+        buffer[0] = position.x;
+        buffer[1] = position.y;
+        buffer[2] = position.z;
+    }
+
     @Override
     public int resolution() { return 1; }
 }
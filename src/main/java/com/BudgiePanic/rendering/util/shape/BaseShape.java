@@ -48,12 +48,12 @@ public abstract class BaseShape implements Shape {
     /**
      * Information needed to convert locations from world space to the object's local space
      */
-    protected final Matrix4 transform;
+    protected Matrix4 transform;
 
     /**
      * information needed to light the shape in the scene
      */
-    protected final Material material;
+    protected Material material;
 
     /**
      * The shape tree that this shape belongs to, if any.
@@ -120,10 +120,46 @@ public abstract class BaseShape implements Shape {
         return this.transform;
     }
 
+    /**
+     * Move the shape by changing its transform.
+     * Intended for rearranging a scene between renders, the transform should not be changed while a render is in progress.
+     * The shape does not tell anything above it that it moved, these caches still hold the old transform and must be refreshed by the caller:
+     * <ul>
+     * <li>The bounds of the groups above the shape, and the packed children of its parent, which keep the inverse transforms of
+     * spheres (see PackedShapes). DynamicBVH::refit refits the hierarchy and drops the packed children of the nodes it refits.</li>
+     * <li>The oriented bounds of an OrientedGroup above the shape, dropped by OrientedGroup::setFrame.</li>
+     * <li>The bounds of LazyGroup nodes and the child bounds of grid and kd-tree indexes (see SpatialGroup), which are fixed
+     * when they are built. These hierarchies must be built again.</li>
+     * <li>The prototype bounds kept by an Instance of a prototype holding the shape, the instance must be made again.</li>
+     * <li>The world's compiled hierarchies, dropped by World::invalidateGeometry, which also discards the remembered occluders.
+     * Call World::compile again before rendering, it packs the refit groups again.</li>
+     * </ul>
+     *
+     * @param transform
+     *   The new transform. Cannot be null.
+     */
+    public void setTransform(Matrix4 transform) {
+        if (transform == null) throw new IllegalArgumentException("shape transform cannot be null");
+        this.transform = transform;
+    }
+
     @Override
     public Material material() {
         return this.material;
     }
+
+    /**
+     * Change the material of the shape.
+     * Intended for tweaking the look of a scene between renders, the material should not be changed while a render is in progress.
+     * Materials with a normal bump change surface normals, so cached hit information (see ReshadingCamera) must be invalidated after swapping one in.
+     *
+     * @param material
+     *   The new material. Cannot be null.
+     */
+    public void setMaterial(Material material) {
+        if (material == null) throw new IllegalArgumentException("shape material cannot be null");
+        this.material = material;
+    }
     
     @Override
     public Optional<Parent> parent() {
@@ -55,6 +55,20 @@ public record BoundingBox(Tuple minimum, Tuple maximum) {
     public boolean contains(BoundingBox other) {
         return contains(other.maximum) && contains(other.minimum);
     }
+
+    /**
+     * Check if another bounding box shares any space with this bounding box, touching boxes overlap.
+     * @param other
+     *   The bounding box to test.
+     * @return
+     *   True if the boxes overlap on every axis.
+     */
+    public boolean overlaps(BoundingBox other) {
+        return 
+            other.minimum.x <= maximum.x && other.maximum.x >= minimum.x &&
+            other.minimum.y <= maximum.y && other.maximum.y >= minimum.y &&
+            other.minimum.z <= maximum.z && other.maximum.z >= minimum.z;
+    }
     /**
      * Calculate new AABB extents needed to contain the given point.
      * 
@@ -122,6 +136,26 @@ public record BoundingBox(Tuple minimum, Tuple maximum) {
         return true;
     }
 
+    /**
+     * Test if a segment of a ray intersects with the AABB.
+     * @param ray
+     *   The ray to test against.
+     * @param distance
+     *   The end of the segment, measured along the ray from its origin.
+     * @return
+     *   true if some point of the ray between its origin and 'distance' lies within the AABB.
+     */
+    public boolean intersect(Ray ray, double distance) {
+        final var origin = ray.origin();
+        final var direction = ray.direction();
+        final var x = checkAxis(origin.x, direction.x, minimum.x, maximum.x);
+        final var y = checkAxis(origin.y, direction.y, minimum.y, maximum.y);
+        final var z = checkAxis(origin.z, direction.z, minimum.z, maximum.z);
+        final var min = Math.max(x.a(), Math.max(y.a(), z.a()));
+        final var max = Math.min(x.b(), Math.min(y.b(), z.b()));
+        return min <= max && max >= 0 && min <= distance;
+    }
+
     /**
      * Merge two bounding boxes.
      *
@@ -130,7 +164,7 @@ public record BoundingBox(Tuple minimum, Tuple maximum) {
      * @return
      *   A new bounding box with extents min(this.min, other.min), max(this.max, other.max)
      */
-    protected BoundingBox grow(BoundingBox other) {
+    public BoundingBox grow(BoundingBox other) {
         // instead of creating two intermediary bounding boxes, we could determine the min and max inline?
         var a = this;
         if (!a.contains(other.maximum)) {
@@ -168,6 +202,59 @@ public record BoundingBox(Tuple minimum, Tuple maximum) {
         return result;
     }
 
+    /**
+     * Check if a transform keeps the faces of a box parallel to the axes, which makes BoundingBox::transform exact.
+     * Translations and scales keep the faces aligned, rotations and shears do not.
+     * @param transform
+     *   The transform to check.
+     * @return
+     *   True if the linear part of the transform is a diagonal matrix.
+     */
+    public static boolean isAxisAligned(Matrix4 transform) {
+        final var m = transform.matrix;
+        return m[0][1] == 0 && m[0][2] == 0 && m[1][0] == 0 && m[1][2] == 0 && m[2][0] == 0 && m[2][1] == 0;
+    }
+
+    /**
+     * Find how far a transformed unit circle or ball reaches along one axis from its center.
+     * This is the length of a row of the linear part of the transform, using only the columns of the axes the shape spans.
+     * @param transform
+     *   The transform applied to the shape.
+     * @param row
+     *   The axis to measure along, 0, 1 or 2 for x, y or z.
+     * @param x
+     *   True if the shape spans the local x axis.
+     * @param y
+     *   True if the shape spans the local y axis.
+     * @param z
+     *   True if the shape spans the local z axis.
+     * @return
+     *   The reach of the transformed shape along the axis.
+     */
+    static double reach(Matrix4 transform, int row, boolean x, boolean y, boolean z) {
+        final var m = transform.matrix[row];
+        return Math.sqrt((x ? m[0] * m[0] : 0) + (y ? m[1] * m[1] : 0) + (z ? m[2] * m[2] : 0));
+    }
+
+    /**
+     * Create a bounding box around a point.
+     * @param center
+     *   The center of the box.
+     * @param x
+     *   The distance from the center to the faces on the x axis.
+     * @param y
+     *   The distance from the center to the faces on the y axis.
+     * @param z
+     *   The distance from the center to the faces on the z axis.
+     * @return
+     *   A new bounding box.
+     */
+    public static BoundingBox around(Tuple center, double x, double y, double z) {
+        return new BoundingBox(
+            Tuple.makePoint(center.x - x, center.y - y, center.z - z),
+            Tuple.makePoint(center.x + x, center.y + y, center.z + z));
+    }
+
     public static final int index000 = 0;
     public static final int index001 = 1;
     public static final int index010 = 2;
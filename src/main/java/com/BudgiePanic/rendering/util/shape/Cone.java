@@ -262,6 +262,27 @@ public class Cone extends BaseShape {
             Tuple.makePoint(max, maximum, max));
     }
 
+    /**
+     * The cone is a disk on the xz plane swept along the y axis, with a radius equal to the height.
+     * The transformed cone reaches furthest at its ends or at its tip.
+     */
+    @Override
+    public BoundingBox bounds(Matrix4 transform) {
+        if (Double.isInfinite(minimum) || Double.isInfinite(maximum)) { return super.bounds(transform); }
+        final var x = BoundingBox.reach(transform, 0, true, false, true);
+        final var y = BoundingBox.reach(transform, 1, true, false, true);
+        final var z = BoundingBox.reach(transform, 2, true, false, true);
+        var box = BoundingBox.around(transform.multiply(Tuple.makePoint(0, minimum, 0)), 
+            x * Math.abs(minimum), y * Math.abs(minimum), z * Math.abs(minimum));
+        box = box.grow(BoundingBox.around(transform.multiply(Tuple.makePoint(0, maximum, 0)), 
+            x * Math.abs(maximum), y * Math.abs(maximum), z * Math.abs(maximum)));
+        if (minimum < 0 && maximum > 0) {
+            // the tip of the double cone, the disks at both ends may not reach past it
+            box = box.grow(BoundingBox.around(transform.multiply(origin), 0, 0, 0));
+        }
+        return box;
+    }
+
     @Override
     public boolean isSolid() { return this.closed; }
 }
@@ -218,6 +218,21 @@ public class Cylinder extends BaseShape {
             Tuple.makePoint(-1, this.minimum, -1),
             Tuple.makePoint(1, this.maximum, 1));
     }
+
+    /**
+     * The cylinder is a unit disk on the xz plane swept along the y axis, so the box of the transformed cylinder
+     * is the box of the transformed disk at both ends.
+     */
+    @Override
+    public BoundingBox bounds(Matrix4 transform) {
+        if (Double.isInfinite(minimum) || Double.isInfinite(maximum)) { return super.bounds(transform); }
+        final var x = BoundingBox.reach(transform, 0, true, false, true);
+        final var y = BoundingBox.reach(transform, 1, true, false, true);
+        final var z = BoundingBox.reach(transform, 2, true, false, true);
+        final var bottom = BoundingBox.around(transform.multiply(Tuple.makePoint(0, minimum, 0)), x, y, z);
+        final var top = BoundingBox.around(transform.multiply(Tuple.makePoint(0, maximum, 0)), x, y, z);
+        return bottom.grow(top);
+    }
     
     @Override
     public boolean isSolid() { return this.closed; }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+
+/**
+ * An instance places a shared prototype shape in the scene with its own transform and, optionally, its own material.
+ * The prototype, such as a mesh group with a bounding volume hierarchy, is built once and can be referenced by any number 
+ * of instances, so a thousand copies of a model cost about the memory of one. Instances can be put in a group and built
+ * with a BVHBuilder to make the top level of a two level hierarchy.
+ * <p>
+ * The prototype is never added to an instance, it must not have a parent and must not be changed while it is instanced.
+ * Intersections with an instance report an InstancedShape, which pairs the prototype's shape with the instance
+ * so normals, patterns and materials are worked out in the instance's space.
+ * 
+ * @author BudgiePanic
+ */
+public class Instance extends BaseShape implements Parent {
+
+    /**
+     * The shared shape being instanced.
+     */
+    protected final Shape prototype;
+
+    /**
+     * The material used in place of the prototype's materials, if any.
+     */
+    protected final Optional<Material> override;
+
+    /**
+     * Cached bounds of the prototype in the instance's space.
+     */
+    protected BoundingBox AABB;
+
+    /**
+     * The prototype seen through this instance, shared by every inclusion test of a shape with the override material.
+     */
+    protected volatile InstancedShape view;
+
+    /**
+     * Create an instance that keeps the prototype's materials.
+     *
+     * @param transform
+     *   The transform to enter the prototype's space.
+     * @param prototype
+     *   The shared shape being instanced.
+     */
+    public Instance(Matrix4 transform, Shape prototype) {
+        this(transform, prototype, Optional.empty());
+    }
+
+    /**
+     * Create an instance that shades the prototype with its own material.
+     *
+     * @param transform
+     *   The transform to enter the prototype's space.
+     * @param prototype
+     *   The shared shape being instanced.
+     * @param material
+     *   The material used in place of the prototype's materials.
+     */
+    public Instance(Matrix4 transform, Shape prototype, Material material) {
+        this(transform, prototype, Optional.ofNullable(material));
+        if (material == null) throw new IllegalArgumentException("material cannot be null");
+    }
+
+    /**
+     * Canonical constructor.
+     *
+     * @param transform
+     *   The transform to enter the prototype's space.
+     * @param prototype
+     *   The shared shape being instanced.
+     * @param override
+     *   The material used in place of the prototype's materials, if any.
+     */
+    protected Instance(Matrix4 transform, Shape prototype, Optional<Material> override) {
+        super(transform, override.orElse(Material.defaultMaterial()));
+        if (prototype == null) throw new IllegalArgumentException("prototype cannot be null");
+        if (prototype.parent().isPresent()) throw new IllegalArgumentException("an instanced prototype cannot have a parent");
+        this.prototype = prototype;
+        this.override = override;
+        this.AABB = null;
+    }
+
+    /**
+     * Get the shared shape being instanced.
+     *
+     * @return
+     *   The prototype.
+     */
+    public Shape prototype() { return prototype; }
+
+    /**
+     * Get the material used in place of the prototype's materials.
+     *
+     * @return
+     *   The override material, or EMPTY if the instance keeps the prototype's materials.
+     */
+    public Optional<Material> override() { return override; }
+
+    /**
+     * Make the inclusion condition see the material the instance shades the prototype's shapes with.
+     * Every shape of the prototype is shaded with the override material, so the condition is tested once against the prototype
+     * seen through this instance and the answer is reused for every concrete shape, instead of wrapping each shape as it is tested.
+     */
+    protected Predicate<Shape> wrap(Predicate<Shape> condition) {
+        if (override.isEmpty()) { return condition; }
+        var view = this.view;
+        if (view == null) {
+            view = new InstancedShape(this, prototype);
+            this.view = view;
+        }
+        final boolean included = condition.test(view);
+        return (shape) -> shape instanceof Parent ? condition.test(shape) : included;
+    }
+
+    /**
+     * Perform a local intersection test against the prototype.
+     *
+     * @param ray
+     *   The ray in the instance's space.
+     * @param inclusionCondition
+     *   Filtering condition to check if a shape should be tested.
+     * @return
+     *   Ray-shape intersections that occured, if any, reporting InstancedShapes.
+     */
+    protected Optional<List<Intersection>> localIntersect(Ray ray, Predicate<Shape> inclusionCondition) {
+        if (!bounds().intersect(ray)) { return Optional.empty(); }
+        final var condition = wrap(inclusionCondition);
+        final Optional<List<Intersection>> intersections;
+        if (prototype instanceof Parent) {
+            intersections = ((Parent) prototype).intersect(ray, condition);
+        } else if (condition.test(prototype)) {
+            intersections = prototype.intersect(ray);
+        } else {
+            return Optional.empty();
+        }
+        return intersections.map(list -> list.stream().
+            map(intersection -> new Intersection(intersection.a(), new InstancedShape(this, intersection.shape()), intersection.uv())).
+            toList());
+    }
+
+    @Override
+    public Optional<List<Intersection>> intersect(Ray ray, Predicate<Shape> inclusionCondition) {
+        var transformInverse = this.transform().inverse();
+        var rayInObjectSpace = ray.transform(transformInverse);
+        return localIntersect(rayInObjectSpace, inclusionCondition);
+    }
+
+    @Override
+    protected Optional<List<Intersection>> localIntersect(Ray ray) { return localIntersect(ray, s->true); }
+
+    @Override
+    protected Tuple localNormal(Tuple point) { throw new UnsupportedOperationException("Instance does not support local normal operation"); }
+
+    @Override
+    public synchronized BoundingBox bounds() {
+        if (AABB == null) {
+            AABB = prototype.bounds(prototype.transform());
+        }
+        return AABB;
+    }
+
+    @Override
+    public BoundingBox bounds(Matrix4 transform) { return prototype.bounds(transform.multiply(prototype.transform())); }
+
+    @Override
+    public boolean isSolid() { return prototype.isSolid(); }
+
+    @Override
+    public boolean contains(Shape shape) { return childrenContains(shape); }
+
+    @Override
+    public boolean childrenContains(Shape shape) {
+        if (shape instanceof InstancedShape) { return ((InstancedShape) shape).instance() == this; }
+        return prototype.contains(shape);
+    }
+
+    @Override
+    public Collection<Shape> children() { return Collections.singleton(prototype); }
+
+    /**
+     * The prototype is built once before it is instanced, dividing every instance would rebuild it again and again.
+     */
+    @Override
+    public Shape divide(int threshold) { return this; }
+
+    @Override
+    public void bakeExposureDuration(double endTime) { prototype.bakeExposureDuration(endTime); }
+
+    @Override
+    public Optional<Shape> prune(Predicate<Shape> condition) {
+        final var pruned = prototype.prune(wrap(condition));
+        if (pruned.isEmpty()) { return Optional.empty(); }
+        if (pruned.get() == prototype) { return Optional.of(this); }
+        final var copy = new Instance(transform, pruned.get(), override);
+        // the copy converts its hits to world space like this instance does
+        copy.parent = this.parent;
+        return Optional.of(copy);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + System.identityHashCode(prototype);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!super.equals(obj)) { return false; }
+        final var other = (Instance) obj;
+        return prototype == other.prototype && override.equals(other.override);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape;
+
+import java.util.List;
+import java.util.Optional;
+
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+
+/**
+ * A shape of an instanced prototype, as seen through one instance.
+ * Intersections with an Instance report these, so points and normals pass through the prototype's hierarchy and then 
+ * the instance's transforms, and the instance's override material is used when it has one.
+ * They are made on the fly for every intersection and are equal when they pair the same instance and shape.
+ *
+ * @param instance
+ *   The instance the shape was seen through.
+ * @param shape
+ *   The shape of the instance's prototype.
+ *
+ * @author BudgiePanic
+ */
+public record InstancedShape(Instance instance, Shape shape) implements Shape {
+
+    public InstancedShape {
+        if (instance == null || shape == null) throw new IllegalArgumentException("instance and shape cannot be null");
+    }
+
+    @Override
+    public Matrix4 transform() { return shape.transform(); }
+
+    @Override
+    public Material material() { return instance.override().orElseGet(shape::material); }
+
+    /**
+     * Intersect the instance with a world space ray, keeping the intersections with this shape.
+     */
+    @Override
+    public Optional<List<Intersection>> intersect(Ray ray) {
+        final var intersections = instance.parent().
+            map(parent -> instance.intersect(ray.transform(worldTransform(parent).inverse()))).
+            orElseGet(() -> instance.intersect(ray));
+        return intersections.
+            map(list -> list.stream().filter(intersection -> isSame(intersection.shape())).toList()).
+            filter(list -> !list.isEmpty());
+    }
+
+    /**
+     * Check if another shape pairs this exact instance and shape.
+     */
+    private boolean isSame(Shape other) {
+        return other instanceof InstancedShape && ((InstancedShape) other).instance == instance && ((InstancedShape) other).shape == shape;
+    }
+
+    /**
+     * Get the transform from a shape's space to world space.
+     */
+    private static Matrix4 worldTransform(Shape shape) {
+        final var transform = shape.transform();
+        return shape.parent().map(parent -> worldTransform(parent).multiply(transform)).orElse(transform);
+    }
+
+    @Override
+    public Tuple normal(Tuple point) {
+        return normal(point, new Intersection(0.0, this));
+    }
+
+    @Override
+    public Tuple normal(Tuple point, Intersection intersection) {
+        if (!(shape instanceof BaseShape)) {
+            return instance.normalToWorldSpace(shape.normal(instance.toObjectSpace(point), new Intersection(intersection.a(), shape, intersection.uv())));
+        }
+        // the same steps as BaseShape::normal, bumped by the material the instance shades the shape with
+        final var localPoint = toObjectSpace(point);
+        final var localNormal = ((BaseShape) shape).localNormal(localPoint, new Intersection(intersection.a(), shape, intersection.uv()));
+        final var bumpedNormal = material().normalBump().apply(localNormal, point);
+        return normalToWorldSpace(bumpedNormal);
+    }
+
+    @Override
+    public Tuple toObjectSpace(Tuple point) { return shape.toObjectSpace(instance.toObjectSpace(point)); }
+
+    @Override
+    public Tuple normalToWorldSpace(Tuple normal) { return instance.normalToWorldSpace(shape.normalToWorldSpace(normal)); }
+
+    @Override
+    public Tuple pointToWorldSpace(Tuple localPoint) { return instance.pointToWorldSpace(shape.pointToWorldSpace(localPoint)); }
+
+    /**
+     * The instance is the nearest parent that places the shape in the scene.
+     */
+    @Override
+    public Optional<Parent> parent() { return Optional.of(instance); }
+
+    @Override
+    public void setParent(Parent parent) { throw new UnsupportedOperationException("instanced shapes cannot be added to a parent"); }
+
+    @Override
+    public BoundingBox bounds() { return shape.bounds(); }
+
+    @Override
+    public boolean contains(Shape shape) { return this.equals(shape); }
+
+    @Override
+    public boolean isSolid() { return shape.isSolid(); }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) { return true; }
+        if (!(obj instanceof InstancedShape)) { return false; }
+        final var other = (InstancedShape) obj;
+        // instances are placed in the scene separately, so they are compared by identity
+        return instance == other.instance && shape.equals(other.shape);
+    }
+
+    @Override
+    public int hashCode() { return 31 * System.identityHashCode(instance) + shape.hashCode(); }
+}
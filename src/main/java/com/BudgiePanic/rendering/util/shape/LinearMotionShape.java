@@ -28,12 +28,12 @@ import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.intersect.Intersection;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
-import com.BudgiePanic.rendering.util.transform.Translation;
 
 /**
  * A motion shape is a shape that contains one internal shape.
  * The shape contains a motion vector that moves the location of the internal shape based on the time that intersection rays arrive.
  * The motion shapes AABB fits the entire volume that the shape moves through during the shot exposure.
+ * Rays are tested against the AABB of the shape at the time they were cast, which is exact for linear motion.
  * 
  * @author BudgiePanic
  */
@@ -64,6 +64,11 @@ public class LinearMotionShape extends BaseShape implements Parent {
      */
     protected BoundingBox AABB;
 
+    /**
+     * Cached AABB that encompasses the shape at the start of the motion.
+     */
+    protected BoundingBox restAABB;
+
     /**
      * The time at which the motion ends.
      */
@@ -100,8 +105,8 @@ public class LinearMotionShape extends BaseShape implements Parent {
      *   Ray-shape intersections that occured, if any.
      */
     protected Optional<List<Intersection>> localIntersect(Ray ray, Predicate<Shape> inclusionCondition) {
-        if (motionEndTime.isPresent() && !bounds().intersect(ray)) {
-            // only use AABB optimization if we know the time when the motion ends
+        if (!bounds(ray.time()).intersect(ray)) {
+            // the AABB at the ray's time is exact, it does not need to know when the motion ends
             return Optional.empty();
         }
         // test if the shape meets the inclusion condition
@@ -131,57 +136,71 @@ public class LinearMotionShape extends BaseShape implements Parent {
         this.AABB = null; // force AABB regeneration on next bounds() call
     }
 
+    /**
+     * Get the AABB of the shape at the start of the motion.
+     *
+     * @return
+     *   The AABB of the internal shape in this shape's local space at time zero.
+     */
+    protected synchronized BoundingBox restBounds() {
+        if (restAABB == null) {
+            restAABB = shape.bounds(shape.transform());
+        }
+        return restAABB;
+    }
+
     @Override
     public synchronized BoundingBox bounds() { 
         if (AABB == null) {
-            // the cube has 8 points [000,100,001,101,010,110,011,111]
-            final BoundingBox localAABB = shape.bounds();
-            final var aabbMin = localAABB.minimum();
-            final var aabbMax = localAABB.maximum();
-            final var transform = shape.transform();
-            
-            Tuple _000 = transform.multiply(new Tuple(aabbMax.x, aabbMin.y, aabbMin.z)); // MAX MIN 
-            Tuple _100 = transform.multiply(aabbMin); // MIN                                MIN MIN
-            Tuple _001 = transform.multiply(new Tuple(aabbMax.x, aabbMin.y, aabbMax.z)); // MAX MAX
-            Tuple _101 = transform.multiply(new Tuple(aabbMin.x, aabbMin.y, aabbMax.z)); // MIN MAX
-            
-            Tuple _010 = transform.multiply(new Tuple(aabbMax.x, aabbMax.y, aabbMin.z)); // MAX MIN
-            Tuple _110 = transform.multiply(new Tuple(aabbMin.x, aabbMax.y, aabbMin.z)); // MIN MIN
-            Tuple _011 = transform.multiply(aabbMax); // MAX                                MAX MAX
-            Tuple _111 = transform.multiply(new Tuple(aabbMin.x, aabbMax.y, aabbMax.z)); // MIN MAX
-            var points = List.of(_000, _001, _010, _011, _100, _101, _110, _111);
-            
-            BoundingBox box = new BoundingBox(_000, _000);
-            // check if we need to grow the AABB extents to contain the points
-            for (var point : points) {
-                if (!box.contains(point)) {
-                    box = box.grow(point);
-                }
-            }
+            BoundingBox box = restBounds();
             if (motionEndTime.isEmpty()) {
                 System.out.println("WARN: motion shape has no end time set, assuming shape does not move for AABB generation");
             } else {
-                // move the points by velocity * exposure time and grow the AABB again
+                // grow the AABB to contain the AABB at the end of the motion
                 // in the future, for non linear motion, 
                 // we would have to get the max and minimum of the movement function in the bounds 0 to motion end time
                 // here, the motion function is implicity a linear function [y = vel*time + initial_position]
-                final var offset = initialVelocity.multiply(motionEndTime.get());
-                final var velocityOffset = Translation.makeTranslationMatrix(offset.x, offset.y, offset.z);
-                for (var point : points) {
-                    final var pointAtEndOfMotion = velocityOffset.multiply(point);
-                    if (!box.contains(pointAtEndOfMotion)) {
-                        box = box.grow(pointAtEndOfMotion);
-                    }
-                }
+                final var end = bounds(motionEndTime.get());
+                if (!box.contains(end.minimum())) { box = box.grow(end.minimum()); }
+                if (!box.contains(end.maximum())) { box = box.grow(end.maximum()); }
             }
             AABB = box;
         } 
         return this.AABB;
     }
 
+    @Override
+    public BoundingBox bounds(double time) {
+        final var rest = restBounds();
+        final var offset = initialVelocity.multiply(time);
+        return new BoundingBox(rest.minimum().add(offset), rest.maximum().add(offset));
+    }
+
+    /**
+     * The box of the moving shape at the start of the motion joined with its box at the end of the motion.
+     */
+    @Override
+    public BoundingBox bounds(Matrix4 transform) {
+        final var toShape = transform.multiply(shape.transform());
+        final var rest = shape.bounds(toShape);
+        if (motionEndTime.isEmpty()) { return rest; }
+        final var offset = transform.multiply(initialVelocity.multiply(motionEndTime.get()));
+        return rest.grow(new BoundingBox(rest.minimum().add(offset), rest.maximum().add(offset)));
+    }
+
     @Override
     public boolean isSolid() { return this.shape.isSolid(); }
 
+    @Override
+    public Optional<Shape> prune(Predicate<Shape> condition) {
+        final var pruned = shape.prune(condition);
+        if (pruned.isEmpty()) { return Optional.empty(); }
+        if (pruned.get() == shape) { return Optional.of(this); }
+        final var copy = new LinearMotionShape(transform, pruned.get(), initialVelocity);
+        copy.setMotionEndTime(motionEndTime);
+        return Optional.of(copy);
+    }
+
     @Override
     public boolean childrenContains(Shape shape) { return this.shape.contains(shape); }
 
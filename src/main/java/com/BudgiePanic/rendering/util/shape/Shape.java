@@ -18,6 +18,7 @@ package com.BudgiePanic.rendering.util.shape;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 import com.BudgiePanic.rendering.util.Material;
 import com.BudgiePanic.rendering.util.Tuple;
@@ -151,6 +152,27 @@ public interface Shape {
      */
     BoundingBox bounds();
 
+    /**
+     * Get the local bounding box for the shape at one instant of the exposure.
+     * Moving shapes give a box around where they are at that time, instead of the volume they sweep over the whole exposure.
+     * @param time
+     *   The time since the start of the exposure.
+     * @return
+     *   A bounding box for the shape in local space at the time. By default the same as bounds().
+     */
+    default BoundingBox bounds(double time) { return bounds(); }
+
+    /**
+     * Get a bounding box for the shape after it is moved by a transform, like the shape's own transform into its parent's space.
+     * By default the corners of the local bounding box are transformed, which gives a loose box when the transform rotates the shape.
+     * Shapes that know their geometry override this to give a box that fits the transformed shape.
+     * @param transform
+     *   The transform from the shape's local space to the space the box is wanted in.
+     * @return
+     *   A bounding box for the transformed shape.
+     */
+    default BoundingBox bounds(Matrix4 transform) { return bounds().transform(transform); }
+
      /**
      * Check if this shape contains another shape.
      * @param shape
@@ -177,4 +199,20 @@ public interface Shape {
      *   The subdivision of this shape.
      */
     default Shape divide(int threshold) { return this; }
+
+    /**
+     * Create a copy of this shape's hierarchy that only contains the shapes that meet the condition.
+     * Concrete shapes like Cube and Sphere are not copied, and keep their original parents, so intersections 
+     * with the pruned hierarchy report the original shapes. Parents that keep all of their shapes are returned as they are,
+     * so unchanged parts of the hierarchy, such as shared instance prototypes, are not copied.
+     * The pruned hierarchy is only intended for intersection tests, it should not be modified.
+     *
+     * @param condition
+     *   The condition that concrete shapes must meet to be kept.
+     * @return
+     *   The pruned shape, or EMPTY if no shapes meet the condition.
+     */
+    default Optional<Shape> prune(Predicate<Shape> condition) { 
+        return condition.test(this) ? Optional.of(this) : Optional.empty(); 
+    }
 }
@@ -106,6 +106,17 @@ public class Sphere extends BaseShape {
     public BoundingBox bounds() {
       return AABB;
     }
+
+    /**
+     * The transformed unit sphere is an ellipsoid, its reach along each axis comes straight from the transform.
+     */
+    @Override
+    public BoundingBox bounds(Matrix4 transform) {
+      return BoundingBox.around(transform.multiply(origin),
+        BoundingBox.reach(transform, 0, true, true, true),
+        BoundingBox.reach(transform, 1, true, true, true),
+        BoundingBox.reach(transform, 2, true, true, true));
+    }
     
     @Override
     public boolean isSolid() { return true; }
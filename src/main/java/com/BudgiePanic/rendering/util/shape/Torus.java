@@ -83,6 +83,18 @@ public class Torus extends BaseShape {
     @Override
     public BoundingBox bounds() { return aabb; }
 
+    /**
+     * The torus is a ball of radius 'thickness' swept around a circle of radius 'radius' on the xy plane,
+     * so its reach along each axis is the reach of the transformed circle plus the reach of the transformed ball.
+     */
+    @Override
+    public BoundingBox bounds(Matrix4 transform) {
+        return BoundingBox.around(transform.multiply(origin),
+            radius * BoundingBox.reach(transform, 0, true, true, false) + thickness * BoundingBox.reach(transform, 0, true, true, true),
+            radius * BoundingBox.reach(transform, 1, true, true, false) + thickness * BoundingBox.reach(transform, 1, true, true, true),
+            radius * BoundingBox.reach(transform, 2, true, true, false) + thickness * BoundingBox.reach(transform, 2, true, true, true));
+    }
+
     @Override
     public boolean isSolid() { return true; }
 
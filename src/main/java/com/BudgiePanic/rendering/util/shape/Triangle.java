@@ -126,6 +126,19 @@ public class Triangle extends BaseShape {
     @Override
     public synchronized BoundingBox bounds() { return AABB; }
 
+    /**
+     * The box of a transformed triangle is the box of its transformed vertices.
+     */
+    @Override
+    public BoundingBox bounds(Matrix4 transform) {
+        final var a = transform.multiply(p1);
+        final var b = transform.multiply(p2);
+        final var c = transform.multiply(p3);
+        return new BoundingBox(
+            Tuple.makePoint(Math.min(Math.min(a.x, b.x), c.x), Math.min(Math.min(a.y, b.y), c.y), Math.min(Math.min(a.z, b.z), c.z)),
+            Tuple.makePoint(Math.max(Math.max(a.x, b.x), c.x), Math.max(Math.max(a.y, b.y), c.y), Math.max(Math.max(a.z, b.z), c.z)));
+    }
+
     @Override
     protected Optional<List<Intersection>> localIntersect(Ray ray) {
         // uses the Moller-Trumbore ray-triangle intersection algorithm
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+/**
+ * An acceleration structure that can be built over the children of a group.
+ * Implementations replace the children of the group with a structure that gives the same intersections with fewer tests.
+ * Nested groups are built with their own accelerator when they have one (see Group::setAccelerator),
+ * so each subtree of a scene can use the structure that suits it.
+ *
+ * @author BudgiePanic
+ */
+public interface Accelerator {
+
+    /**
+     * Replace the children of a group with an acceleration structure over them.
+     * The children keep 'group' as their parent.
+     *
+     * @param group
+     *   The group to build the structure of.
+     * @return
+     *   The group.
+     */
+    Group build(Group group);
+
+    /**
+     * Build a nested group with the accelerator chosen for it, or the accelerator building its parent if none was chosen.
+     * Grids, kd-trees and wide hierarchies are already built and are left as they are.
+     *
+     * @param group
+     *   The nested group.
+     * @param fallback
+     *   The accelerator building the group's parent.
+     * @return
+     *   The group.
+     */
+    static Group buildNested(Group group, Accelerator fallback) {
+        if (group instanceof SpatialGroup) { return group; }
+        return group.accelerator().orElse(fallback).build(group);
+    }
+}
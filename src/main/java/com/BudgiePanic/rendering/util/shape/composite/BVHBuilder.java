@@ -0,0 +1,893 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.Triangle;
+
+/**
+ * Builds a bounding volume hierarchy over the children of a group.
+ * Unlike Group::divide, every child is placed in the hierarchy. Children are binned by the centroid of their bounds and split 
+ * where the surface area heuristic is lowest, partitioning an index array in place.
+ * Subtrees with at least 'parallelCutoff' children are built as separate fork join tasks, so large meshes build on every core.
+ * <p>
+ * A builder with a duplication budget also tries spatial splits (SBVH), which cut the references to long, thin triangles
+ * at the split plane so one triangle can sit in several leaves with tighter boxes. The budget caps the number of extra
+ * references as a fraction of the group's child count, groups that end up with duplicates drop repeated intersections.
+ *
+ * @author BudgiePanic
+ */
+public class BVHBuilder implements Accelerator {
+
+    /**
+     * The default number of centroid bins tested along each axis.
+     */
+    public static final int defaultBins = 12;
+
+    /**
+     * Subtrees with fewer children than this are built on the current thread.
+     */
+    public static final int defaultParallelCutoff = 1 << 12;
+
+    /**
+     * The default number of extra references a spatial split build may make, as a fraction of the child count.
+     */
+    public static final double defaultDuplication = 0.5;
+
+    /**
+     * Spatial splits are only tried where the boxes of the best object split overlap by more than this fraction of the root's area.
+     */
+    protected static final double overlapThreshold = 1e-5;
+
+    /**
+     * Below this depth only object splits are made, so references that straddle every plane cannot recurse forever.
+     */
+    protected static final int spatialDepthLimit = 48;
+
+    /**
+     * Identity singleton to feed into the hierarchy's groups.
+     */
+    private static final Matrix4 identity = Matrix4.identity();
+
+    /**
+     * The most children a leaf group may have.
+     */
+    protected final int threshold;
+
+    /**
+     * The number of centroid bins tested along each axis.
+     */
+    protected final int bins;
+
+    /**
+     * Subtrees with fewer children than this are built on the current thread.
+     */
+    protected final int parallelCutoff;
+
+    /**
+     * The pool that builds the subtrees.
+     */
+    protected final ForkJoinPool pool;
+
+    /**
+     * The most extra references spatial splits may make, as a fraction of the child count. Zero disables spatial splits.
+     */
+    protected final double duplication;
+
+    /**
+     * Create a builder with the default bin count and parallel cutoff that builds on the common pool.
+     *
+     * @param threshold
+     *   The most children a leaf group may have.
+     */
+    public BVHBuilder(int threshold) {
+        this(threshold, defaultBins, defaultParallelCutoff, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a builder that only makes object splits.
+     *
+     * @param threshold
+     *   The most children a leaf group may have.
+     * @param bins
+     *   The number of centroid bins tested along each axis.
+     * @param parallelCutoff
+     *   Subtrees with fewer children than this are built on the current thread.
+     * @param pool
+     *   The pool that builds the subtrees.
+     */
+    public BVHBuilder(int threshold, int bins, int parallelCutoff, ForkJoinPool pool) {
+        this(threshold, bins, parallelCutoff, pool, 0);
+    }
+
+    /**
+     * Canonical constructor.
+     *
+     * @param threshold
+     *   The most children a leaf group may have.
+     * @param bins
+     *   The number of bins tested along each axis.
+     * @param parallelCutoff
+     *   Subtrees with fewer children than this are built on the current thread.
+     * @param pool
+     *   The pool that builds the subtrees.
+     * @param duplication
+     *   The most extra references spatial splits may make, as a fraction of the child count. Zero disables spatial splits.
+     */
+    public BVHBuilder(int threshold, int bins, int parallelCutoff, ForkJoinPool pool, double duplication) {
+        if (threshold <= 0 || bins < 2 || parallelCutoff <= 0) throw new IllegalArgumentException("threshold and cutoff must be positive and there must be at least two bins");
+        if (pool == null) throw new IllegalArgumentException("pool cannot be null");
+        if (!(duplication >= 0)) throw new IllegalArgumentException("duplication cannot be negative");
+        this.threshold = threshold;
+        this.bins = bins;
+        this.parallelCutoff = parallelCutoff;
+        this.pool = pool;
+        this.duplication = duplication;
+    }
+
+    /**
+     * Create a builder that makes spatial splits with the default duplication budget, bin count and parallel cutoff.
+     *
+     * @param threshold
+     *   The most children a leaf group may have.
+     * @return
+     *   A new spatial split builder.
+     */
+    public static BVHBuilder spatial(int threshold) {
+        return new BVHBuilder(threshold, defaultBins, defaultParallelCutoff, ForkJoinPool.commonPool(), defaultDuplication);
+    }
+
+    /**
+     * The children of a group and their bounds, shared by the build tasks.
+     * The bounds are stored six values per child [min x, min y, min z, max x, max y, max z] in group space.
+     *
+     * @param shapes
+     *   The children of the group.
+     * @param bounds
+     *   The bounds of each child.
+     * @param order
+     *   The permutation of the children that the build partitions in place.
+     */
+    protected static record Primitives(Shape[] shapes, double[] bounds, int[] order) {
+        double centroid(int index, int axis) { return (bounds[index * 6 + axis] + bounds[index * 6 + 3 + axis]) * 0.5; }
+        void swap(int a, int b) { final int temp = order[a]; order[a] = order[b]; order[b] = temp; }
+    }
+
+    /**
+     * Replace the children of a group with a bounding volume hierarchy over them.
+     * Children that are groups themselves are built the same way, unless they chose another accelerator, 
+     * other shapes are divided with Shape::divide.
+     * The children keep 'group' as their parent, the groups inside the hierarchy have identity transforms.
+     *
+     * @param group
+     *   The group to build the hierarchy of.
+     * @return
+     *   The group.
+     */
+    @Override
+    public Group build(Group group) {
+        if (group == null) throw new IllegalArgumentException("group cannot be null");
+        final Shape[] shapes = group.children.toArray(new Shape[0]);
+        final int count = shapes.length;
+        if (count > threshold) {
+            final double[] bounds = new double[count * 6];
+            IntStream.range(0, count).parallel().forEach(i -> writeBounds(shapes[i], bounds, i));
+            final var hierarchy = hierarchy(shapes, bounds);
+            if (duplication > 0) { group.sharedChildren = hierarchy.b(); }
+            group.children.clear();
+            group.children.addAll(((Group) hierarchy.a()).children);
+            group.AABB = null;
+            group.packed = Optional.empty();
+        }
+        // nested groups, such as the groups of an OBJ file, get their own hierarchies
+        List.of(shapes).parallelStream().forEach(shape -> {
+            if (shape instanceof Group) {
+                Accelerator.buildNested((Group) shape, this);
+            } else {
+                shape.divide(threshold);
+            }
+        });
+        return group;
+    }
+
+    /**
+     * Build a binary hierarchy over some shapes without adding them to a group.
+     * The leaves are groups with identity transforms and at most 'threshold' shapes, or single shapes.
+     *
+     * @param shapes
+     *   The shapes to build the hierarchy over.
+     * @param bounds
+     *   The bounds of each shape, six values per shape (see BVHBuilder::writeBounds).
+     * @return
+     *   The root of the hierarchy, and whether spatial splits placed a shape in more than one leaf.
+     */
+    protected Pair<Shape, Boolean> hierarchy(Shape[] shapes, double[] bounds) {
+        final int count = shapes.length;
+        final var primitives = new Primitives(shapes, bounds, IntStream.range(0, count).toArray());
+        if (duplication > 0) {
+            final int allowance = (int) Math.min(Integer.MAX_VALUE, duplication * count);
+            final var budget = new AtomicInteger(allowance);
+            final double rootArea = halfArea(rangeBounds(primitives, 0, count), 0);
+            final var root = pool.invoke(new SpatialTask(primitives, 0, count, budget, rootArea, 0));
+            // the budget only moves when a reference was duplicated
+            return new Pair<>(root, budget.get() != allowance);
+        }
+        return new Pair<>(pool.invoke(new BuildTask(primitives, 0, count)), false);
+    }
+
+    /**
+     * Replace the children of a group with a hierarchy that builds itself as rays reach it.
+     * Only the bounds of the children are worked out now, each node is split the first time a ray enters it (see LazyGroup),
+     * so rendering starts sooner and parts of the scene no ray reaches are never built.
+     * Lazy hierarchies use object splits only. Nested groups become lazy hierarchies when the leaf holding them is built.
+     *
+     * @param group
+     *   The group to build the hierarchy of.
+     * @return
+     *   The group.
+     */
+    public Group buildLazy(Group group) {
+        if (group == null) throw new IllegalArgumentException("group cannot be null");
+        final Shape[] shapes = group.children.toArray(new Shape[0]);
+        final int count = shapes.length;
+        if (count > threshold) {
+            final double[] bounds = new double[count * 6];
+            IntStream.range(0, count).parallel().forEach(i -> writeBounds(shapes[i], bounds, i));
+            final var root = new LazyGroup(this, new Primitives(shapes, bounds, IntStream.range(0, count).toArray()), 0, count);
+            group.children.clear();
+            group.children.add(root);
+            group.AABB = null;
+            group.packed = Optional.empty();
+        } else {
+            for (final var shape : shapes) {
+                if (shape instanceof Group) {
+                    buildLazy((Group) shape);
+                } else {
+                    shape.divide(threshold);
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Replace the children of a group with a motion blur hierarchy over them.
+     * The exposure is baked into the children and the hierarchy is built over the volumes they sweep, then every node keeps
+     * the bounds of its children at 'segments' + 1 evenly spaced times (see MotionGroup). Rays are tested against node bounds
+     * interpolated to the time they were cast, so fast moving shapes are only tested by the rays cast while they are nearby.
+     *
+     * @param group
+     *   The group to build the hierarchy of.
+     * @param exposure
+     *   The end time of the exposure.
+     * @param segments
+     *   The number of time segments between the keyed bounds of each node.
+     * @return
+     *   The group.
+     */
+    public Group buildMotion(Group group, double exposure, int segments) {
+        if (group == null) throw new IllegalArgumentException("group cannot be null");
+        if (segments < 1) throw new IllegalArgumentException("motion hierarchy needs at least one segment");
+        group.bakeExposureDuration(exposure);
+        build(group);
+        keyNodes(group, exposure, segments);
+        return group;
+    }
+
+    /**
+     * Replace the hierarchy nodes under a group with motion nodes.
+     * Nodes are the groups the builder made, they have no parent. Nested groups keep their place and have their own nodes replaced.
+     */
+    private static void keyNodes(Group group, double exposure, int segments) {
+        group.children.replaceAll(child -> {
+            if (!(child instanceof Group) || child instanceof LazyGroup) { return child; }
+            final var node = (Group) child;
+            keyNodes(node, exposure, segments);
+            if (node.parent().isPresent()) { return node; }
+            final var motion = new MotionGroup(exposure, segments);
+            motion.children.addAll(node.children);
+            motion.AABB = node.AABB;
+            return motion;
+        });
+        group.AABB = null;
+        group.packed = Optional.empty();
+    }
+
+    /**
+     * Write the bounds of a shape in its parent's space into a bounds array.
+     *
+     * @param shape
+     *   The shape.
+     * @param bounds
+     *   The array to write to, six values per shape.
+     * @param index
+     *   The index of the shape in the array.
+     */
+    protected static void writeBounds(Shape shape, double[] bounds, int index) {
+        final var box = shape.bounds(shape.transform());
+        final int offset = index * 6;
+        bounds[offset] = box.minimum().x; bounds[offset + 1] = box.minimum().y; bounds[offset + 2] = box.minimum().z;
+        bounds[offset + 3] = box.maximum().x; bounds[offset + 4] = box.maximum().y; bounds[offset + 5] = box.maximum().z;
+    }
+
+    /**
+     * Builds the subtree over a range of the primitive order.
+     * Tasks only live while the builder's pool runs them and are never serialized, so the primitives and builder they hold need not be serializable.
+     */
+    @SuppressWarnings("serial")
+    protected class BuildTask extends RecursiveTask<Shape> {
+        private static final long serialVersionUID = 1L;
+
+        protected final Primitives primitives;
+        protected final int start;
+        protected final int end;
+
+        protected BuildTask(Primitives primitives, int start, int end) {
+            this.primitives = primitives;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Shape compute() {
+            return node(primitives, start, end);
+        }
+    }
+
+    /**
+     * Build the subtree over a range of the primitive order.
+     *
+     * @param primitives
+     *   The primitives being built.
+     * @param start
+     *   The first index of the range.
+     * @param end
+     *   The index after the last index of the range.
+     * @return
+     *   The single primitive in the range, or a group containing the range.
+     */
+    protected Shape node(Primitives primitives, int start, int end) {
+        final int count = end - start;
+        if (count == 1) { return primitives.shapes[primitives.order[start]]; }
+        final double[] box = rangeBounds(primitives, start, end);
+        final var node = new Group(identity);
+        node.AABB = new BoundingBox(new Tuple(box[0], box[1], box[2]), new Tuple(box[3], box[4], box[5]));
+        if (count <= threshold) {
+            for (int i = start; i < end; i++) { node.children.add(primitives.shapes[primitives.order[i]]); }
+            return node;
+        }
+        final int middle = split(primitives, start, end);
+        if (count >= parallelCutoff) {
+            final var left = new BuildTask(primitives, start, middle);
+            left.fork();
+            final var right = node(primitives, middle, end);
+            node.children.add(left.join());
+            node.children.add(right);
+        } else {
+            node.children.add(node(primitives, start, middle));
+            node.children.add(node(primitives, middle, end));
+        }
+        return node;
+    }
+
+    /**
+     * Builds the subtree over a range of references with spatial splits.
+     * Never serialized, see BuildTask.
+     */
+    @SuppressWarnings("serial")
+    protected class SpatialTask extends RecursiveTask<Shape> {
+        private static final long serialVersionUID = 1L;
+
+        protected final Primitives references;
+        protected final int start;
+        protected final int end;
+        protected final AtomicInteger budget;
+        protected final double rootArea;
+        protected final int depth;
+
+        protected SpatialTask(Primitives references, int start, int end, AtomicInteger budget, double rootArea, int depth) {
+            this.references = references;
+            this.start = start;
+            this.end = end;
+            this.budget = budget;
+            this.rootArea = rootArea;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Shape compute() {
+            return spatialNode(references, start, end, budget, rootArea, depth);
+        }
+    }
+
+    /**
+     * Build the subtree over a range of references, choosing between the best object split and the best spatial split.
+     * The bounds of a reference may be smaller than the bounds of its shape when an earlier spatial split clipped it.
+     *
+     * @param references
+     *   The references being built.
+     * @param start
+     *   The first index of the range.
+     * @param end
+     *   The index after the last index of the range.
+     * @param budget
+     *   The number of references that may still be duplicated.
+     * @param rootArea
+     *   Half the surface area of the root of the hierarchy.
+     * @param depth
+     *   The depth of the subtree in the hierarchy.
+     * @return
+     *   The single shape in the range, or a group containing the range.
+     */
+    protected Shape spatialNode(Primitives references, int start, int end, AtomicInteger budget, double rootArea, int depth) {
+        final int count = end - start;
+        if (count == 1) { return references.shapes[references.order[start]]; }
+        final double[] box = rangeBounds(references, start, end);
+        final var node = new Group(identity);
+        node.AABB = new BoundingBox(new Tuple(box[0], box[1], box[2]), new Tuple(box[3], box[4], box[5]));
+        if (count <= threshold) {
+            for (int i = start; i < end; i++) { node.children.add(references.shapes[references.order[i]]); }
+            return node;
+        }
+        final var objectSplit = objectSplit(references, start, end);
+        if (depth < spatialDepthLimit && budget.get() > 0) {
+            final double overlap = objectSplit == null ? halfArea(box, 0) : overlap(references, start, end, objectSplit);
+            if (overlap > overlapThreshold * rootArea) {
+                final var spatialSplit = spatialSplit(references, start, end, box);
+                // a spatial split the budget cannot pay for would push whole references into both halves, worse than an object split
+                if (spatialSplit != null && spatialSplit.duplicates() <= budget.get() && (objectSplit == null || spatialSplit.cost() < objectSplit.cost())) {
+                    final var halves = clip(references, start, end, spatialSplit, budget);
+                    if (halves != null) {
+                        final var left = halves.a();
+                        final var right = halves.b();
+                        addChildren(node,
+                            new SpatialTask(left, 0, left.order.length, budget, rootArea, depth + 1),
+                            new SpatialTask(right, 0, right.order.length, budget, rootArea, depth + 1), count);
+                        return node;
+                    }
+                }
+            }
+        }
+        final int middle = objectSplit == null ? start + count / 2 : partition(references, start, end, objectSplit);
+        addChildren(node,
+            new SpatialTask(references, start, middle, budget, rootArea, depth + 1),
+            new SpatialTask(references, middle, end, budget, rootArea, depth + 1), count);
+        return node;
+    }
+
+    /**
+     * Build two subtrees and add them to a node, forking the first when the node is large enough.
+     */
+    private void addChildren(Group node, SpatialTask left, SpatialTask right, int count) {
+        if (count >= parallelCutoff) {
+            left.fork();
+            final var rightNode = right.compute();
+            node.children.add(left.join());
+            node.children.add(rightNode);
+        } else {
+            node.children.add(left.compute());
+            node.children.add(right.compute());
+        }
+    }
+
+    /**
+     * Half the surface area of the overlap between the two boxes of an object split.
+     */
+    protected double overlap(Primitives primitives, int start, int end, Split split) {
+        final double[] boxes = new double[12];
+        resetBox(boxes, 0);
+        resetBox(boxes, 6);
+        for (int i = start; i < end; i++) {
+            final int index = primitives.order[i];
+            final int side = bin(primitives.centroid(index, split.axis), split.min, split.extent) < split.bin ? 0 : 6;
+            growBox(boxes, side, primitives.bounds, index * 6);
+        }
+        final double[] overlap = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            overlap[axis] = Math.max(boxes[axis], boxes[6 + axis]);
+            overlap[axis + 3] = Math.min(boxes[axis + 3], boxes[9 + axis]);
+        }
+        return halfArea(overlap, 0);
+    }
+
+    /**
+     * Find the spatial bin boundary with the lowest surface area heuristic cost.
+     * Each reference is clipped into every bin it spans, and counted on the left of every boundary after the bin it enters
+     * and on the right of every boundary before the bin it exits.
+     *
+     * @return
+     *   The cheapest spatial split, or null if no plane separates the references. The split's min and extent describe the node's box.
+     */
+    protected Split spatialSplit(Primitives references, int start, int end, double[] box) {
+        final int count = end - start;
+        Split best = null;
+        final int[] entries = new int[bins];
+        final int[] exits = new int[bins];
+        final int[] leftCounts = new int[bins];
+        final double[] binBounds = new double[bins * 6];
+        final double[] clipped = new double[6];
+        final double[] sweep = new double[6];
+        final double[] leftCost = new double[bins];
+        for (int axis = 0; axis < 3; axis++) {
+            final double extent = box[axis + 3] - box[axis];
+            if (extent <= 0) { continue; }
+            Arrays.fill(entries, 0);
+            Arrays.fill(exits, 0);
+            for (int bin = 0; bin < bins; bin++) { resetBox(binBounds, bin * 6); }
+            for (int i = start; i < end; i++) {
+                final int index = references.order[i];
+                final int first = bin(references.bounds[index * 6 + axis], box[axis], extent);
+                final int last = bin(references.bounds[index * 6 + 3 + axis], box[axis], extent);
+                for (int bin = first; bin <= last; bin++) {
+                    if (clip(references.shapes[index], references.bounds, index * 6, axis, plane(box[axis], extent, bin), plane(box[axis], extent, bin + 1), clipped)) {
+                        growBox(binBounds, bin * 6, clipped, 0);
+                    }
+                }
+                entries[first]++;
+                exits[last]++;
+            }
+            resetBox(sweep, 0);
+            int leftCount = 0;
+            for (int bin = 0; bin < bins - 1; bin++) {
+                leftCount += entries[bin];
+                leftCounts[bin] = leftCount;
+                growBox(sweep, 0, binBounds, bin * 6);
+                leftCost[bin] = leftCount * halfArea(sweep, 0);
+            }
+            resetBox(sweep, 0);
+            int rightCount = 0;
+            for (int bin = bins - 1; bin > 0; bin--) {
+                rightCount += exits[bin];
+                growBox(sweep, 0, binBounds, bin * 6);
+                final int leftSize = leftCounts[bin - 1];
+                if (leftSize == 0 || rightCount == 0) { continue; }
+                final double cost = leftCost[bin - 1] + rightCount * halfArea(sweep, 0);
+                if (best == null || cost < best.cost) {
+                    best = new Split(axis, bin, cost, box[axis], extent, leftSize + rightCount - count);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The position of a spatial bin boundary.
+     */
+    private double plane(double min, double extent, int bin) {
+        return bin == bins ? min + extent : min + extent * bin / bins;
+    }
+
+    /**
+     * Divide a range of references at a spatial split. References that straddle the plane are clipped into both halves while
+     * the budget lasts, after that they go whole to the side their centroid is on.
+     *
+     * @return
+     *   The references on either side of the plane, or null if one of the sides would be empty.
+     */
+    protected Pair<Primitives, Primitives> clip(Primitives references, int start, int end, Split split, AtomicInteger budget) {
+        final int count = end - start;
+        final int axis = split.axis;
+        final double plane = plane(split.min, split.extent, split.bin);
+        final Shape[] leftShapes = new Shape[count], rightShapes = new Shape[count];
+        final double[] leftBounds = new double[count * 6], rightBounds = new double[count * 6];
+        final double[] leftClip = new double[6], rightClip = new double[6];
+        int lefts = 0, rights = 0;
+        for (int i = start; i < end; i++) {
+            final int index = references.order[i];
+            final int offset = index * 6;
+            final var shape = references.shapes[index];
+            final boolean left, right;
+            if (references.bounds[offset + 3 + axis] <= plane) {
+                left = true; right = false;
+                System.arraycopy(references.bounds, offset, leftClip, 0, 6);
+            } else if (references.bounds[offset + axis] >= plane) {
+                left = false; right = true;
+                System.arraycopy(references.bounds, offset, rightClip, 0, 6);
+            } else {
+                final boolean reachesLeft = clip(shape, references.bounds, offset, axis, Double.NEGATIVE_INFINITY, plane, leftClip);
+                final boolean reachesRight = clip(shape, references.bounds, offset, axis, plane, Double.POSITIVE_INFINITY, rightClip);
+                if (reachesLeft && reachesRight && budget.getAndDecrement() > 0) {
+                    left = true; right = true;
+                } else if (reachesLeft != reachesRight) {
+                    // the shape itself does not cross the plane, only its box does
+                    left = reachesLeft; right = reachesRight;
+                } else {
+                    left = references.centroid(index, axis) < plane; right = !left;
+                    System.arraycopy(references.bounds, offset, left ? leftClip : rightClip, 0, 6);
+                }
+            }
+            if (left) {
+                leftShapes[lefts] = shape;
+                System.arraycopy(leftClip, 0, leftBounds, lefts++ * 6, 6);
+            }
+            if (right) {
+                rightShapes[rights] = shape;
+                System.arraycopy(rightClip, 0, rightBounds, rights++ * 6, 6);
+            }
+        }
+        if (lefts == 0 || rights == 0) { return null; }
+        return new Pair<>(
+            new Primitives(Arrays.copyOf(leftShapes, lefts), Arrays.copyOf(leftBounds, lefts * 6), IntStream.range(0, lefts).toArray()),
+            new Primitives(Arrays.copyOf(rightShapes, rights), Arrays.copyOf(rightBounds, rights * 6), IntStream.range(0, rights).toArray()));
+    }
+
+    /**
+     * Clip the part of a shape inside a slab along one axis. Triangles are clipped exactly, other shapes are clipped by their box.
+     *
+     * @param shape
+     *   The shape to clip.
+     * @param bounds
+     *   The bounds of the shape's reference.
+     * @param offset
+     *   The offset of the reference's bounds.
+     * @param axis
+     *   The axis the slab is perpendicular to.
+     * @param low
+     *   The lower edge of the slab.
+     * @param high
+     *   The upper edge of the slab.
+     * @param out
+     *   Receives the clipped bounds.
+     * @return
+     *   True if any of the shape is inside the slab.
+     */
+    protected static boolean clip(Shape shape, double[] bounds, int offset, int axis, double low, double high, double[] out) {
+        if (shape instanceof Triangle) {
+            final var triangle = (Triangle) shape;
+            final var transform = triangle.transform();
+            final Tuple[] points = {
+                transform.multiply(triangle.p1()), transform.multiply(triangle.p2()), transform.multiply(triangle.p3()) };
+            resetBox(out, 0);
+            for (int i = 0; i < 3; i++) {
+                final var a = points[i];
+                final var b = points[(i + 1) % 3];
+                final double aValue = component(a, axis), bValue = component(b, axis);
+                if (aValue >= low && aValue <= high) { growPoint(out, a.x, a.y, a.z); }
+                // add the points where the edge crosses the sides of the slab
+                for (final double plane : new double[] {low, high}) {
+                    if ((aValue < plane) != (bValue < plane)) {
+                        final double t = (plane - aValue) / (bValue - aValue);
+                        growPoint(out, a.x + (b.x - a.x) * t, a.y + (b.y - a.y) * t, a.z + (b.z - a.z) * t);
+                    }
+                }
+            }
+        } else {
+            System.arraycopy(bounds, offset, out, 0, 6);
+        }
+        for (int i = 0; i < 3; i++) {
+            out[i] = Math.max(out[i], bounds[offset + i]);
+            out[i + 3] = Math.min(out[i + 3], bounds[offset + i + 3]);
+        }
+        out[axis] = Math.max(out[axis], low);
+        out[axis + 3] = Math.min(out[axis + 3], high);
+        return out[0] <= out[3] && out[1] <= out[4] && out[2] <= out[5];
+    }
+
+    private static double component(Tuple tuple, int axis) {
+        return axis == 0 ? tuple.x : axis == 1 ? tuple.y : tuple.z;
+    }
+
+    private static void growPoint(double[] box, double x, double y, double z) {
+        box[0] = Math.min(box[0], x); box[1] = Math.min(box[1], y); box[2] = Math.min(box[2], z);
+        box[3] = Math.max(box[3], x); box[4] = Math.max(box[4], y); box[5] = Math.max(box[5], z);
+    }
+
+    /**
+     * Estimate the cost of tracing a ray through a hierarchy with the surface area heuristic.
+     * Each group is visited with a probability of its surface area over the root's, and a visit costs one box test plus one test
+     * per shape that is not a group. The estimate is the expected number of tests for a ray that hits the root's box.
+     * It assumes the groups below the root have identity transforms, like the groups the builder makes.
+     *
+     * @param root
+     *   The root of the hierarchy.
+     * @return
+     *   The expected number of box and shape tests per ray.
+     */
+    public static double traversalCost(Group root) {
+        if (root == null) throw new IllegalArgumentException("root cannot be null");
+        final double rootArea = halfArea(root.bounds());
+        if (rootArea <= 0) { return 1 + root.children.stream().filter(child -> !(child instanceof Group)).count(); }
+        return traversalCost(root, rootArea);
+    }
+
+    private static double traversalCost(Group group, double rootArea) {
+        double cost = 0;
+        int shapes = 0;
+        for (final var child : group.children) {
+            if (child instanceof Group) {
+                cost += traversalCost((Group) child, rootArea);
+            } else {
+                shapes++;
+            }
+        }
+        return cost + halfArea(group.bounds()) / rootArea * (1 + shapes);
+    }
+
+    protected static double halfArea(BoundingBox box) {
+        final double[] values = { box.minimum().x, box.minimum().y, box.minimum().z, box.maximum().x, box.maximum().y, box.maximum().z };
+        return halfArea(values, 0);
+    }
+
+    /**
+     * Get the bounds of a range of primitives.
+     *
+     * @return
+     *   The bounds as [min x, min y, min z, max x, max y, max z].
+     */
+    protected static double[] rangeBounds(Primitives primitives, int start, int end) {
+        final double[] box = {
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (int i = start; i < end; i++) {
+            final int offset = primitives.order[i] * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(box[axis], primitives.bounds[offset + axis]);
+                box[axis + 3] = Math.max(box[axis + 3], primitives.bounds[offset + axis + 3]);
+            }
+        }
+        return box;
+    }
+
+    /**
+     * Half of the surface area of a box, enough to compare the cost of two splits.
+     */
+    protected static double halfArea(double[] box, int offset) {
+        final double x = box[offset + 3] - box[offset], y = box[offset + 4] - box[offset + 1], z = box[offset + 5] - box[offset + 2];
+        if (x < 0 || y < 0 || z < 0) { return 0; } // empty box
+        return x * y + y * z + z * x;
+    }
+
+    /**
+     * A candidate split of a range of primitives.
+     *
+     * @param axis
+     *   The axis the range is split along.
+     * @param bin
+     *   The first bin of the second partition.
+     * @param cost
+     *   The surface area heuristic cost of the split.
+     * @param min
+     *   The smallest centroid along the axis.
+     * @param extent
+     *   The distance between the smallest and largest centroid along the axis.
+     * @param duplicates
+     *   The number of references the split duplicates, zero for object splits.
+     */
+    protected static record Split(int axis, int bin, double cost, double min, double extent, int duplicates) {}
+
+    /**
+     * Partition a range of primitives in two at the centroid bin boundary with the lowest surface area heuristic cost.
+     *
+     * @return
+     *   The first index of the second partition, always strictly between start and end.
+     */
+    protected int split(Primitives primitives, int start, int end) {
+        final var split = objectSplit(primitives, start, end);
+        if (split == null) {
+            // every centroid is in the same place, any split is as good as another
+            return start + (end - start) / 2;
+        }
+        return partition(primitives, start, end, split);
+    }
+
+    /**
+     * Find the centroid bin boundary with the lowest surface area heuristic cost.
+     *
+     * @return
+     *   The cheapest split, or null if every centroid is in the same place.
+     */
+    protected Split objectSplit(Primitives primitives, int start, int end) {
+        final double[] centroidMin = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        final double[] centroidMax = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                final double centroid = primitives.centroid(primitives.order[i], axis);
+                centroidMin[axis] = Math.min(centroidMin[axis], centroid);
+                centroidMax[axis] = Math.max(centroidMax[axis], centroid);
+            }
+        }
+        Split best = null;
+        final int[] counts = new int[bins];
+        final double[] binBounds = new double[bins * 6];
+        final double[] sweep = new double[6];
+        final double[] leftCost = new double[bins];
+        for (int axis = 0; axis < 3; axis++) {
+            final double extent = centroidMax[axis] - centroidMin[axis];
+            if (extent <= 0) { continue; }
+            Arrays.fill(counts, 0);
+            for (int bin = 0; bin < bins; bin++) { resetBox(binBounds, bin * 6); }
+            for (int i = start; i < end; i++) {
+                final int index = primitives.order[i];
+                final int bin = bin(primitives.centroid(index, axis), centroidMin[axis], extent);
+                counts[bin]++;
+                growBox(binBounds, bin * 6, primitives.bounds, index * 6);
+            }
+            // sweep from the left recording the cost of everything left of each boundary, then from the right to finish the cost
+            resetBox(sweep, 0);
+            int leftCount = 0;
+            for (int bin = 0; bin < bins - 1; bin++) {
+                leftCount += counts[bin];
+                growBox(sweep, 0, binBounds, bin * 6);
+                leftCost[bin] = leftCount * halfArea(sweep, 0);
+            }
+            resetBox(sweep, 0);
+            int rightCount = 0;
+            for (int bin = bins - 1; bin > 0; bin--) {
+                rightCount += counts[bin];
+                growBox(sweep, 0, binBounds, bin * 6);
+                final int leftSize = (end - start) - rightCount;
+                if (leftSize == 0 || rightCount == 0) { continue; }
+                final double cost = leftCost[bin - 1] + rightCount * halfArea(sweep, 0);
+                if (best == null || cost < best.cost) {
+                    best = new Split(axis, bin, cost, centroidMin[axis], extent, 0);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Partition a range of primitives in place at a split.
+     *
+     * @return
+     *   The first index of the second partition.
+     */
+    protected int partition(Primitives primitives, int start, int end, Split split) {
+        int left = start, right = end - 1;
+        while (left <= right) {
+            if (bin(primitives.centroid(primitives.order[left], split.axis), split.min, split.extent) < split.bin) {
+                left++;
+            } else {
+                primitives.swap(left, right--);
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Find the bin a centroid falls in.
+     */
+    protected int bin(double centroid, double min, double extent) {
+        return Math.min(bins - 1, (int) (((centroid - min) / extent) * bins));
+    }
+
+    private static void resetBox(double[] box, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[offset + axis] = Double.POSITIVE_INFINITY;
+            box[offset + axis + 3] = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static void growBox(double[] box, int offset, double[] other, int otherOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[offset + axis] = Math.min(box[offset + axis], other[otherOffset + axis]);
+            box[offset + axis + 3] = Math.max(box[offset + axis + 3], other[otherOffset + axis + 3]);
+        }
+    }
+}
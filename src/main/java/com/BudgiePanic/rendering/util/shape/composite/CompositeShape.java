@@ -76,12 +76,22 @@ public abstract class CompositeShape extends BaseShape implements Parent {
      *   A list of ray-shape intersections made on the composite shapes children, if any.
      */
     protected final Optional<List<Intersection>> localIntersect(Ray ray, Predicate<Shape> condition) {
-        if (children().isEmpty() || !bounds().intersect(ray)) { // AABB check
+        if (children().isEmpty() || !boundsIntersect(ray)) { // AABB check
             return Optional.empty();
         }
         return localIntersectI(ray, condition);
     };
 
+    /**
+     * Test a ray against the bounds of the composite shape before its children are tested.
+     * Subclasses can use tighter bounds, like bounds that depend on the time the ray was cast.
+     * @param ray
+     *     The ray in local space.
+     * @return
+     *     False if the ray cannot hit any of the children.
+     */
+    protected boolean boundsIntersect(Ray ray) { return bounds().intersect(ray); }
+
     @Override
     public Optional<List<Intersection>> intersect(Ray ray, Predicate<Shape> inclusionCondition) {
         var transformInverse = this.transform().inverse();
@@ -102,7 +112,7 @@ public abstract class CompositeShape extends BaseShape implements Parent {
             final var children = children();
             // the cube has 8 points [000,100,001,101,010,110,011,111]
             for (var shape : children) {
-                final BoundingBox localAABB = shape.bounds().transform(shape.transform());
+                final BoundingBox localAABB = shape.bounds(shape.transform());
                 if (box == null) {
                     box = localAABB;
                 } else {
@@ -118,6 +128,22 @@ public abstract class CompositeShape extends BaseShape implements Parent {
         }
         return AABB;
     }
+
+    /**
+     * Transforms that keep the box faces aligned with the axes move the cached box exactly.
+     * Other transforms are passed down to the children, so a rotated subtree is bounded by its rotated primitives instead of its rotated box.
+     */
+    @Override
+    public BoundingBox bounds(Matrix4 transform) {
+        final var children = children();
+        if (children.isEmpty() || BoundingBox.isAxisAligned(transform)) { return bounds().transform(transform); }
+        BoundingBox box = null;
+        for (var shape : children) {
+            final var childBox = shape.bounds(transform.multiply(shape.transform()));
+            box = box == null ? childBox : box.grow(childBox);
+        }
+        return box;
+    }
     
     @Override
     public boolean contains(Shape shape) {
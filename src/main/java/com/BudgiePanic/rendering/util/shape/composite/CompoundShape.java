@@ -58,6 +58,25 @@ public class CompoundShape extends CompositeShape {
         }
     }
 
+    /**
+     * Creates a compound shape over existing shapes without taking them as children.
+     * Used to create pruned copies of compound shapes.
+     *
+     * @param other
+     *   The compound shape being copied.
+     * @param left
+     *   The pruned left shape.
+     * @param right
+     *   The pruned right shape.
+     */
+    protected CompoundShape(CompoundShape other, Shape left, Shape right) {
+        super(other.transform);
+        this.left = left;
+        this.right = right;
+        this.operation = other.operation;
+        this.children = List.of(this.left, this.right);
+    }
+
     protected Shape left() { return left; }
 
     protected Shape right() { return right; }
@@ -115,4 +134,21 @@ public class CompoundShape extends CompositeShape {
         return this;
     }
 
+    @Override
+    public Optional<Shape> prune(Predicate<Shape> condition) {
+        final var prunedLeft = left.prune(condition);
+        final var prunedRight = right.prune(condition);
+        if (prunedLeft.isPresent() && prunedRight.isPresent()) {
+            if (prunedLeft.get() == left && prunedRight.get() == right) { return Optional.of(this); }
+            return Optional.of(new CompoundShape(this, prunedLeft.get(), prunedRight.get()));
+        }
+        if (prunedLeft.isEmpty() && prunedRight.isEmpty()) { return Optional.empty(); }
+        // only one side remains, so every hit on it is tested as if the other side was never entered
+        final var isLeft = prunedLeft.isPresent();
+        if (!operation.isIntersectionValid(isLeft, false, false)) { return Optional.empty(); }
+        final var remaining = new Group(transform);
+        remaining.children.add(isLeft ? prunedLeft.get() : prunedRight.get());
+        return Optional.of(remaining);
+    }
+
 }
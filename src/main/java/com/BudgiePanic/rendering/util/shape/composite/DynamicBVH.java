@@ -0,0 +1,456 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * Keeps the bounding volume hierarchy of a group up to date while shapes are added, removed and moved between renders.
+ * Shapes are inserted next to the sibling whose bounds grow the least, removals collapse the nodes they empty, and moved
+ * shapes are refit bottom up. Every node on the way back to the root is refit and tries a tree rotation (swapping a child
+ * with a grandchild) that shrinks the node's children.
+ * <p>
+ * The surface area heuristic cost of the hierarchy is tracked as it changes. When it degrades past the rebuild threshold,
+ * relative to the cost after the last full build, the hierarchy is rebuilt from scratch.
+ * The hierarchy must not be edited while a render is in progress, and the world must be told with World::invalidateGeometry.
+ *
+ * @author BudgiePanic
+ */
+public class DynamicBVH {
+
+    /**
+     * The default ratio of the current cost to the cost after the last full build that triggers a rebuild.
+     */
+    public static final double defaultRebuildThreshold = 1.5;
+
+    /**
+     * Identity singleton to feed into the hierarchy's nodes.
+     */
+    private static final Matrix4 identity = Matrix4.identity();
+
+    /**
+     * The group whose hierarchy is maintained.
+     */
+    protected final Group root;
+
+    /**
+     * Builds the hierarchy from scratch.
+     */
+    protected final BVHBuilder builder;
+
+    /**
+     * The ratio of the current cost to the cost after the last full build that triggers a rebuild.
+     */
+    protected final double rebuildThreshold;
+
+    /**
+     * The shapes in the hierarchy. Every other group under the root is a node of the hierarchy.
+     */
+    protected final Set<Shape> primitives;
+
+    /**
+     * The group holding each shape and node. The hierarchy's groups do not become the parents of the shapes.
+     */
+    protected final Map<Shape, Group> parents;
+
+    /**
+     * The cost of each node, its area multiplied by one plus the number of shapes directly in it.
+     */
+    protected final Map<Group, Double> contributions;
+
+    /**
+     * The sum of the node costs.
+     */
+    protected double cost;
+
+    /**
+     * The cost per unit of root area after the last full build.
+     */
+    protected double baseline;
+
+    /**
+     * The number of times the hierarchy degraded enough to be rebuilt.
+     */
+    protected int rebuilds;
+
+    /**
+     * Build and maintain the hierarchy of a group with the default rebuild threshold.
+     *
+     * @param root
+     *   The group, whose children are the shapes to put in the hierarchy.
+     * @param threshold
+     *   The most children a leaf group may have.
+     */
+    public DynamicBVH(Group root, int threshold) {
+        this(root, new BVHBuilder(threshold), defaultRebuildThreshold);
+    }
+
+    /**
+     * Canonical constructor. Builds the hierarchy of the group.
+     *
+     * @param root
+     *   The group, whose children are the shapes to put in the hierarchy.
+     * @param builder
+     *   Builds the hierarchy from scratch. Cannot make spatial splits, every shape must be in exactly one node.
+     * @param rebuildThreshold
+     *   The ratio of the current cost to the cost after the last full build that triggers a rebuild. At least one.
+     */
+    public DynamicBVH(Group root, BVHBuilder builder, double rebuildThreshold) {
+        if (root == null || builder == null) throw new IllegalArgumentException("root and builder cannot be null");
+        if (builder.duplication > 0) throw new IllegalArgumentException("a dynamic hierarchy cannot duplicate shapes with spatial splits");
+        if (!(rebuildThreshold >= 1)) throw new IllegalArgumentException("rebuild threshold must be at least one");
+        this.root = root;
+        this.builder = builder;
+        this.rebuildThreshold = rebuildThreshold;
+        this.primitives = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.parents = new IdentityHashMap<>();
+        this.contributions = new IdentityHashMap<>();
+        this.primitives.addAll(root.children);
+        build();
+    }
+
+    /**
+     * Get the group whose hierarchy is maintained.
+     *
+     * @return
+     *   The root group.
+     */
+    public Group root() { return root; }
+
+    /**
+     * Get the number of shapes in the hierarchy.
+     *
+     * @return
+     *   The shape count.
+     */
+    public int size() { return primitives.size(); }
+
+    /**
+     * Get the number of times the hierarchy degraded enough to be rebuilt.
+     *
+     * @return
+     *   The rebuild count.
+     */
+    public int rebuilds() { return rebuilds; }
+
+    /**
+     * Get the surface area heuristic cost of the hierarchy, the expected number of box and shape tests for a ray that hits the root.
+     * Matches BVHBuilder::traversalCost for hierarchies of shapes that are not groups.
+     *
+     * @return
+     *   The cost of the hierarchy.
+     */
+    public final double cost() {
+        if (root.children.isEmpty()) { return 1; }
+        final double area = BVHBuilder.halfArea(root.bounds());
+        return area > 0 ? cost / area : 1;
+    }
+
+    /**
+     * Get how much the hierarchy has degraded since it was last built from scratch.
+     *
+     * @return
+     *   The ratio of the current cost to the cost after the last full build.
+     */
+    public double degradation() { return baseline > 0 ? cost() / baseline : 1; }
+
+    /**
+     * Rebuild the hierarchy from scratch.
+     */
+    public void rebuild() {
+        build();
+        rebuilds++;
+    }
+
+    /**
+     * Build the hierarchy from scratch and index its nodes, without counting a rebuild.
+     */
+    private void build() {
+        final List<Shape> shapes = new ArrayList<>(primitives.size());
+        collect(root, shapes);
+        root.children.clear();
+        root.children.addAll(shapes);
+        root.AABB = null;
+        root.packed = Optional.empty();
+        builder.build(root);
+        parents.clear();
+        contributions.clear();
+        cost = 0;
+        index(root);
+        baseline = cost();
+    }
+
+    private void collect(Group node, List<Shape> shapes) {
+        for (final var child : node.children) {
+            if (primitives.contains(child)) {
+                shapes.add(child);
+            } else {
+                collect((Group) child, shapes);
+            }
+        }
+    }
+
+    private void index(Group node) {
+        for (final var child : node.children) {
+            parents.put(child, node);
+            if (!primitives.contains(child)) { index((Group) child); }
+        }
+        update(node);
+    }
+
+    /**
+     * Add a shape to the hierarchy. The root becomes the shape's parent.
+     *
+     * @param shape
+     *   The shape to add, which cannot already be in the hierarchy.
+     */
+    public void insert(Shape shape) {
+        if (shape == null) throw new IllegalArgumentException("shape cannot be null");
+        if (primitives.contains(shape)) throw new IllegalArgumentException("shape is already in the hierarchy");
+        primitives.add(shape);
+        shape.setParent(root);
+        final var box = boxOf(shape);
+        Group target = root;
+        Shape sibling = null;
+        while (!(isLeaf(target) && target.children.size() < builder.threshold)) {
+            // descend into the child whose bounds grow the least
+            Shape best = null;
+            double bestGrowth = Double.POSITIVE_INFINITY, bestArea = Double.POSITIVE_INFINITY;
+            for (final var child : target.children) {
+                final var childBox = boxOf(child);
+                final double area = BVHBuilder.halfArea(childBox);
+                final double growth = BVHBuilder.halfArea(childBox.grow(box)) - area;
+                if (growth < bestGrowth || (growth == bestGrowth && area < bestArea)) {
+                    best = child;
+                    bestGrowth = growth;
+                    bestArea = area;
+                }
+            }
+            if (best == null) { break; }
+            if (primitives.contains(best)) {
+                sibling = best;
+                break;
+            }
+            target = (Group) best;
+        }
+        if (sibling == null) {
+            target.children.add(shape);
+            parents.put(shape, target);
+        } else {
+            // pair the shape with its sibling in a new node
+            final var node = new Group(identity);
+            replace(target, sibling, node);
+            node.children.add(sibling);
+            node.children.add(shape);
+            parents.put(sibling, node);
+            parents.put(shape, node);
+            parents.put(node, target);
+            refitNode(node);
+            update(node);
+        }
+        refitUp(target);
+        checkDegradation();
+    }
+
+    /**
+     * Remove a shape from the hierarchy, collapsing the nodes it leaves with fewer than two children.
+     * The shape's parent is cleared.
+     *
+     * @param shape
+     *   The shape to remove.
+     * @return
+     *   True if the shape was in the hierarchy.
+     */
+    public boolean remove(Shape shape) {
+        if (shape == null || !primitives.remove(shape)) { return false; }
+        Group node = parents.remove(shape);
+        node.children.removeIf(child -> child == shape);
+        shape.setParent(null);
+        while (node != root && node.children.size() < 2) {
+            final var grandparent = parents.remove(node);
+            if (node.children.isEmpty()) {
+                final var empty = node;
+                grandparent.children.removeIf(child -> child == empty);
+            } else {
+                final var only = node.children.get(0);
+                replace(grandparent, node, only);
+                parents.put(only, grandparent);
+            }
+            cost -= contributions.remove(node);
+            node = grandparent;
+        }
+        refitUp(node);
+        checkDegradation();
+        return true;
+    }
+
+    /**
+     * Refit the nodes above a shape after the shape moved.
+     *
+     * @param shape
+     *   The shape that moved.
+     */
+    public void refit(Shape shape) {
+        if (!primitives.contains(shape)) throw new IllegalArgumentException("shape is not in the hierarchy");
+        refitUp(parents.get(shape));
+        checkDegradation();
+    }
+
+    /**
+     * Refit every node of the hierarchy bottom up, after many shapes moved.
+     */
+    public void refit() {
+        refitAll(root);
+        checkDegradation();
+    }
+
+    private void refitAll(Group node) {
+        for (final var child : node.children) {
+            if (!primitives.contains(child)) { refitAll((Group) child); }
+        }
+        refitNode(node);
+        update(node);
+    }
+
+    /**
+     * Refit a node and every node above it, rotating each one if that shrinks its children.
+     */
+    protected void refitUp(Group node) {
+        while (node != null) {
+            refitNode(node);
+            rotate(node);
+            update(node);
+            node = node == root ? null : parents.get(node);
+        }
+    }
+
+    /**
+     * Swap a child of the node with a grandchild, if the swap shrinks the grandchild's old parent the most.
+     */
+    protected void rotate(Group node) {
+        double bestGain = 0;
+        Shape bestChild = null, bestGrandchild = null;
+        Group bestGroup = null;
+        for (final var child : node.children) {
+            final var childBox = boxOf(child);
+            for (final var other : node.children) {
+                if (other == child || primitives.contains(other)) { continue; }
+                final var group = (Group) other;
+                final double area = BVHBuilder.halfArea(group.bounds());
+                for (final var grandchild : group.children) {
+                    // the bounds of the other child with the grandchild swapped out for the child
+                    BoundingBox swapped = childBox;
+                    for (final var sibling : group.children) {
+                        if (sibling != grandchild) { swapped = swapped.grow(boxOf(sibling)); }
+                    }
+                    final double gain = area - BVHBuilder.halfArea(swapped);
+                    if (gain > bestGain + 1e-9 * area) {
+                        bestGain = gain;
+                        bestChild = child;
+                        bestGrandchild = grandchild;
+                        bestGroup = group;
+                    }
+                }
+            }
+        }
+        if (bestChild == null) { return; }
+        replace(node, bestChild, bestGrandchild);
+        node.packed = Optional.empty();
+        replace(bestGroup, bestGrandchild, bestChild);
+        parents.put(bestGrandchild, node);
+        parents.put(bestChild, bestGroup);
+        refitNode(bestGroup);
+        update(bestGroup);
+    }
+
+    /**
+     * Rebuild the hierarchy if it degraded past the threshold.
+     * Runs on every edit, so a rebuild is only reported when the rebuild count reaches a power of two.
+     */
+    protected void checkDegradation() {
+        final double degradation = degradation();
+        if (degradation > rebuildThreshold) {
+            rebuild();
+            if (Integer.bitCount(rebuilds) == 1) {
+                System.out.println("INFO: dynamic hierarchy degraded to " + degradation + " times its built cost, rebuilt " + rebuilds + " times");
+            }
+        }
+    }
+
+    /**
+     * Set the bounds of a node to the bounds of its children.
+     */
+    protected void refitNode(Group node) {
+        BoundingBox box = null;
+        for (final var child : node.children) {
+            box = box == null ? boxOf(child) : box.grow(boxOf(child));
+        }
+        node.AABB = box;
+        node.packed = Optional.empty();
+    }
+
+    /**
+     * Update the tracked cost of a node.
+     */
+    private void update(Group node) {
+        int shapes = 0;
+        for (final var child : node.children) {
+            if (primitives.contains(child)) { shapes++; }
+        }
+        final double contribution = node.children.isEmpty() ? 0 : BVHBuilder.halfArea(node.bounds()) * (1 + shapes);
+        final Double old = contributions.put(node, contribution);
+        cost += contribution - (old == null ? 0 : old);
+    }
+
+    /**
+     * Check if a node only holds shapes.
+     */
+    protected boolean isLeaf(Group node) {
+        for (final var child : node.children) {
+            if (!primitives.contains(child)) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Get the bounds of a shape or node in the space of the group holding it.
+     */
+    protected BoundingBox boxOf(Shape shape) {
+        if (primitives.contains(shape)) { return shape.bounds(shape.transform()); }
+        return shape.bounds();
+    }
+
+    private static void replace(Group node, Shape child, Shape replacement) {
+        for (int i = 0; i < node.children.size(); i++) {
+            if (node.children.get(i) == child) {
+                node.children.set(i, replacement);
+                return;
+            }
+        }
+        throw new IllegalStateException("hierarchy is out of sync, node does not hold the child");
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+/**
+ * Builds uniform grids (see GridGroup) over the children of groups.
+ *
+ * @author BudgiePanic
+ */
+public class GridBuilder implements Accelerator {
+
+    /**
+     * The default target number of cells per child.
+     */
+    public static final double defaultDensity = 2;
+
+    /**
+     * The most children a group may have without a grid.
+     */
+    protected final int threshold;
+
+    /**
+     * The target number of cells per child.
+     */
+    protected final double density;
+
+    /**
+     * Create a builder with the default density.
+     *
+     * @param threshold
+     *   The most children a group may have without a grid.
+     */
+    public GridBuilder(int threshold) {
+        this(threshold, defaultDensity);
+    }
+
+    /**
+     * Canonical constructor.
+     *
+     * @param threshold
+     *   The most children a group may have without a grid.
+     * @param density
+     *   The target number of cells per child.
+     */
+    public GridBuilder(int threshold, double density) {
+        if (threshold <= 0) throw new IllegalArgumentException("threshold must be positive");
+        if (!(density > 0)) throw new IllegalArgumentException("grid density must be positive");
+        this.threshold = threshold;
+        this.density = density;
+    }
+
+    @Override
+    public Group build(Group group) {
+        return SpatialGroup.build(group, threshold, this, shapes -> new GridGroup(shapes, density));
+    }
+}
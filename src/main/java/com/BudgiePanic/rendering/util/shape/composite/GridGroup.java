@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.List;
+
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * A uniform grid over the children of a group.
+ * The bounds of the children are cut into equal cells, about 'density' cells per child, and each child is listed in every
+ * cell its bounds overlap. Rays walk the cells they pass through with a 3D digital differential analyser (3D-DDA),
+ * so only children in those cells are tested. Suits dense fields of similar sized shapes, like particles.
+ *
+ * @author BudgiePanic
+ */
+public class GridGroup extends SpatialGroup {
+
+    /**
+     * The most cells along one axis.
+     */
+    protected static final int maxResolution = 128;
+
+    /**
+     * The target number of cells per indexed child.
+     */
+    protected final double density;
+
+    /**
+     * The number of cells along each axis.
+     */
+    protected final int[] resolution;
+
+    /**
+     * The size of a cell along each axis.
+     */
+    protected final double[] cellSize;
+
+    /**
+     * Where the children of each cell start in 'cellItems', with one extra entry marking the end of the last cell.
+     */
+    protected final int[] cellStart;
+
+    /**
+     * The children of every cell, cell after cell.
+     */
+    protected final int[] cellItems;
+
+    /**
+     * Build a grid over some shapes.
+     *
+     * @param shapes
+     *   The shapes to index.
+     * @param density
+     *   The target number of cells per shape.
+     */
+    public GridGroup(List<Shape> shapes, double density) {
+        super(shapes);
+        if (!(density > 0)) throw new IllegalArgumentException("grid density must be positive");
+        this.density = density;
+        this.resolution = new int[] { 1, 1, 1 };
+        this.cellSize = new double[3];
+        // spread density * count cells over the axes that have an extent, keeping the cells close to cubes
+        double volume = 1;
+        int dimensions = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            final double extent = box[axis + 3] - box[axis];
+            if (extent > 0) {
+                volume *= extent;
+                dimensions++;
+            }
+        }
+        final double cellsPerUnit = dimensions == 0 ? 0 : Math.pow(density * indexed.length / volume, 1.0 / dimensions);
+        for (int axis = 0; axis < 3; axis++) {
+            final double extent = box[axis + 3] - box[axis];
+            if (extent > 0) { resolution[axis] = (int) Math.max(1, Math.min(maxResolution, Math.round(extent * cellsPerUnit))); }
+            cellSize[axis] = extent > 0 ? extent / resolution[axis] : 1;
+        }
+        // count the children of each cell, then fill them in
+        final int cells = resolution[0] * resolution[1] * resolution[2];
+        this.cellStart = new int[cells + 1];
+        final int[] range = new int[6];
+        for (final int child : indexed) {
+            cellRange(child, range);
+            for (int z = range[2]; z <= range[5]; z++) {
+                for (int y = range[1]; y <= range[4]; y++) {
+                    for (int x = range[0]; x <= range[3]; x++) { cellStart[cell(x, y, z) + 1]++; }
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) { cellStart[cell + 1] += cellStart[cell]; }
+        this.cellItems = new int[cellStart[cells]];
+        final int[] fill = new int[cells];
+        for (final int child : indexed) {
+            cellRange(child, range);
+            for (int z = range[2]; z <= range[5]; z++) {
+                for (int y = range[1]; y <= range[4]; y++) {
+                    for (int x = range[0]; x <= range[3]; x++) {
+                        final int cell = cell(x, y, z);
+                        cellItems[cellStart[cell] + fill[cell]++] = child;
+                    }
+                }
+            }
+        }
+    }
+
+    private int cell(int x, int y, int z) { return (z * resolution[1] + y) * resolution[0] + x; }
+
+    private int cellIndex(double position, int axis) {
+        final int index = (int) Math.floor((position - box[axis]) / cellSize[axis]);
+        return Math.max(0, Math.min(resolution[axis] - 1, index));
+    }
+
+    /**
+     * Get the cells a child's bounds overlap, as [min x, min y, min z, max x, max y, max z] cell indexes.
+     */
+    private void cellRange(int child, int[] range) {
+        for (int axis = 0; axis < 3; axis++) {
+            range[axis] = cellIndex(childBounds[child * 6 + axis], axis);
+            range[axis + 3] = cellIndex(childBounds[child * 6 + axis + 3], axis);
+        }
+    }
+
+    @Override
+    protected void traverse(double[] origin, double[] direction, double enter, double exit, Traversal traversal) {
+        final int[] cell = new int[3], step = new int[3];
+        final double[] next = new double[3], delta = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            cell[axis] = cellIndex(origin[axis] + direction[axis] * enter, axis);
+            if (direction[axis] == 0 || resolution[axis] == 1) {
+                // the line never crosses a cell boundary on this axis
+                next[axis] = Double.POSITIVE_INFINITY;
+            } else if (direction[axis] > 0) {
+                step[axis] = 1;
+                next[axis] = (box[axis] + (cell[axis] + 1) * cellSize[axis] - origin[axis]) / direction[axis];
+                delta[axis] = cellSize[axis] / direction[axis];
+            } else {
+                step[axis] = -1;
+                next[axis] = (box[axis] + cell[axis] * cellSize[axis] - origin[axis]) / direction[axis];
+                delta[axis] = -cellSize[axis] / direction[axis];
+            }
+        }
+        while (true) {
+            final int index = cell(cell[0], cell[1], cell[2]);
+            for (int item = cellStart[index]; item < cellStart[index + 1]; item++) { traversal.test(cellItems[item]); }
+            final int axis = next[0] < next[1] ? (next[0] < next[2] ? 0 : 2) : (next[1] < next[2] ? 1 : 2);
+            if (next[axis] == Double.POSITIVE_INFINITY || next[axis] > exit) { return; }
+            cell[axis] += step[axis];
+            if (cell[axis] < 0 || cell[axis] >= resolution[axis]) { return; }
+            next[axis] += delta[axis];
+        }
+    }
+
+    @Override
+    protected SpatialGroup rebuild(List<Shape> shapes) { return new GridGroup(shapes, density); }
+}
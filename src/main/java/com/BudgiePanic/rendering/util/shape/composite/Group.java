@@ -46,6 +46,22 @@ public class Group extends CompositeShape {
      */
     protected final List<Shape> children;
 
+    /**
+     * Set when the same shape can be reached through more than one child, like a hierarchy built with spatial splits.
+     * The group then drops repeated intersections of a shape at the same distance.
+     */
+    protected boolean sharedChildren;
+
+    /**
+     * The acceleration structure chosen for this group, used when the group is built as part of a larger scene.
+     */
+    protected Optional<Accelerator> accelerator = Optional.empty();
+
+    /**
+     * The children sorted by type for the leaf loops, set by Group::pack. EMPTY until packed, and again after the children change.
+     */
+    protected volatile Optional<PackedShapes> packed = Optional.empty();
+
     /**
      * Creates a new empty group with no parent.
      *
@@ -73,13 +89,36 @@ public class Group extends CompositeShape {
      *   The shape to add to the group.
      */
     public void addShape(Shape shape) {
-        this.AABB = null;
+        if (this.AABB != null) {
+            // grow the cached bounds instead of throwing them away, only removals need a full recomputation
+            final var box = shape.bounds(shape.transform());
+            if (!this.AABB.contains(box.maximum())) { this.AABB = this.AABB.grow(box.maximum()); }
+            if (!this.AABB.contains(box.minimum())) { this.AABB = this.AABB.grow(box.minimum()); }
+        }
         this.children.add(shape);
+        this.packed = Optional.empty();
         shape.setParent(this);
     }
 
+    /**
+     * Choose the acceleration structure this group gets when an accelerator builds the scene it is part of.
+     * @param accelerator
+     *   The accelerator to build this group with, or null to use the accelerator building the group's parent.
+     */
+    public void setAccelerator(Accelerator accelerator) {
+        this.accelerator = Optional.ofNullable(accelerator);
+    }
+
+    /**
+     * Get the acceleration structure chosen for this group.
+     * @return
+     *   The chosen accelerator, EMPTY if the group uses the accelerator building its parent.
+     */
+    public Optional<Accelerator> accelerator() { return this.accelerator; }
+
     public void removeShape(Shape shape) {
         this.AABB = null;
+        this.packed = Optional.empty();
         var removed = this.children.remove(shape);
         if (removed) {
             shape.setParent(null);
@@ -90,19 +129,46 @@ public class Group extends CompositeShape {
     protected Optional<List<Intersection>> localIntersectI(Ray ray, Predicate<Shape> condition) {
         List<Intersection> result = null; // lazilly initialize intersect list to avoid excessive list creation
         if (children.isEmpty()) { return Optional.empty(); }
-        final var mapper = Intersection.buildIntersector(ray, condition);
-        for (var child : children) {
-            if (!condition.test(child)) { continue; }
-            var intersect = mapper.apply(child);
-            if (intersect.isPresent()) {
-                if (result == null) { result = new ArrayList<>(); }
-                result.addAll(intersect.get());
+        final var packed = this.packed;
+        if (packed.isPresent()) {
+            result = packed.get().intersect(ray, condition);
+        } else {
+            final var mapper = Intersection.buildIntersector(ray, condition);
+            for (var child : children) {
+                if (!condition.test(child)) { continue; }
+                var intersect = mapper.apply(child);
+                if (intersect.isPresent()) {
+                    if (result == null) { result = new ArrayList<>(); }
+                    result.addAll(intersect.get());
+                }
             }
         }
-        if (result != null) { result.sort(Comparator.comparing(Intersection::a)); }
+        if (result != null) { 
+            result.sort(Comparator.comparing(Intersection::a));
+            if (sharedChildren) { removeDuplicates(result); }
+        }
         return Optional.ofNullable(result);
     }
 
+    /**
+     * Remove repeated intersections of the same shape at the same distance from a sorted list of intersections.
+     * @param intersections
+     *   The sorted intersections.
+     */
+    protected static void removeDuplicates(List<Intersection> intersections) {
+        int kept = 0;
+        for (int i = 0; i < intersections.size(); i++) {
+            final var intersection = intersections.get(i);
+            boolean repeated = false;
+            // only intersections at the same distance need checking, and they sit next to each other
+            for (int j = kept - 1; j >= 0 && intersections.get(j).a().doubleValue() == intersection.a().doubleValue(); j--) {
+                if (intersections.get(j).shape() == intersection.shape()) { repeated = true; break; }
+            }
+            if (!repeated) { intersections.set(kept++, intersection); }
+        }
+        intersections.subList(kept, intersections.size()).clear();
+    }
+
     @Override
     public boolean childrenContains(Shape shape) { return this.children.contains(shape); }
 
@@ -119,22 +185,23 @@ public class Group extends CompositeShape {
         final var right = subBounds.b();
         List<Shape> lefts = null;
         List<Shape> rights = null;
-        for (int i = 0; i < this.children.size(); i++) {
-            final var shape = children.get(i);
-            final var shapeBounds = shape.bounds().transform(shape.transform());
+        // shapes that stay in this group are collected and written back in one pass, removing them one at a time is quadratic
+        final List<Shape> kept = new ArrayList<>();
+        for (final var shape : this.children) {
+            final var shapeBounds = shape.bounds(shape.transform());
             if (left.contains(shapeBounds)) {
                 if (lefts == null) { lefts = new ArrayList<>(); }
                 lefts.add(shape);
-                children.remove(i);
-                i--;
             }
             else if (right.contains(shapeBounds)) {
                 if (rights == null) { rights = new ArrayList<>(); }
                 rights.add(shape);
-                children.remove(i);
-                i--;
+            } else {
+                kept.add(shape);
             }
         }
+        this.children.clear();
+        this.children.addAll(kept);
         if (lefts == null) { lefts = List.of(); }
         if (rights == null) { rights = List.of(); }
         return new Pair<List<Shape>,List<Shape>>(lefts, rights);
@@ -168,4 +235,40 @@ public class Group extends CompositeShape {
         return this;
     }
 
+    /**
+     * Sort the children of this group, and of the groups nested in it, by type so each type is tested in its own loop (see PackedShapes).
+     * Called by World::compile. Changing the children through Group::addShape or Group::removeShape discards the packing.
+     */
+    public void pack() {
+        for (final var child : children) {
+            if (child instanceof Group) { ((Group) child).pack(); }
+        }
+        this.packed = PackedShapes.of(children);
+    }
+
+    @Override
+    public void bakeExposureDuration(double endTime) {
+        for (final var shape : children()) { shape.bakeExposureDuration(endTime); }
+        // moving children sweep a different volume with the new end time
+        this.AABB = null;
+    }
+
+    @Override
+    public Optional<Shape> prune(Predicate<Shape> condition) {
+        final var pruned = new Group(transform);
+        pruned.sharedChildren = sharedChildren;
+        pruned.accelerator = accelerator;
+        boolean changed = false;
+        for (final var child : children) {
+            final var prunedChild = child.prune(condition);
+            changed |= prunedChild.isEmpty() || prunedChild.get() != child;
+            // add directly to the list, the pruned group must not steal the child from this group
+            prunedChild.ifPresent(pruned.children::add);
+        }
+        if (pruned.children.isEmpty()) { return Optional.empty(); }
+        // nothing was removed, so this group can be shared instead of copied
+        if (!changed) { return Optional.of(this); }
+        return Optional.of(pruned);
+    }
+
 }
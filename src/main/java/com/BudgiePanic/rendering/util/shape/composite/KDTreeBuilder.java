@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+/**
+ * Builds surface area heuristic kd-trees (see KDTreeGroup) over the children of groups.
+ *
+ * @author BudgiePanic
+ */
+public class KDTreeBuilder implements Accelerator {
+
+    /**
+     * The most children a leaf, or a group without a tree, may have.
+     */
+    protected final int threshold;
+
+    /**
+     * Create a builder.
+     *
+     * @param threshold
+     *   The most children a leaf, or a group without a tree, may have.
+     */
+    public KDTreeBuilder(int threshold) {
+        if (threshold <= 0) throw new IllegalArgumentException("threshold must be positive");
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Group build(Group group) {
+        return SpatialGroup.build(group, threshold, this, shapes -> new KDTreeGroup(shapes, threshold));
+    }
+}
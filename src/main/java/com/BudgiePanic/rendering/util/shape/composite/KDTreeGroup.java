@@ -0,0 +1,239 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * A kd-tree over the children of a group, split with the surface area heuristic.
+ * Each node cuts its box in two with an axis aligned plane, children are listed in every leaf their bounds overlap.
+ * Split planes are swept over the bounds of the children and the plane with the lowest expected cost is taken, with a
+ * bonus for planes that cut off empty space. Suits static scenes with large empty regions, like architecture.
+ * <p>
+ * The nodes are stored depth first in flat arrays, the child below a split plane directly follows its parent.
+ *
+ * @author BudgiePanic
+ */
+public class KDTreeGroup extends SpatialGroup {
+
+    /**
+     * The estimated cost of visiting a node, relative to testing a child.
+     */
+    protected static final double traversalCost = 1;
+
+    /**
+     * The estimated cost of testing a child.
+     */
+    protected static final double intersectionCost = 80;
+
+    /**
+     * The fraction of the cost saved by a split that cuts off empty space.
+     */
+    protected static final double emptyBonus = 0.5;
+
+    /**
+     * Marks a leaf in 'axes'.
+     */
+    protected static final int leaf = 3;
+
+    /**
+     * The most children a leaf may have before it is split.
+     */
+    protected final int leafSize;
+
+    /**
+     * The split axis of each node, or 'leaf'.
+     */
+    protected int[] axes;
+
+    /**
+     * The position of each node's split plane.
+     */
+    protected double[] splits;
+
+    /**
+     * The node above the split plane for interior nodes, where the leaf's children start in 'items' for leaves.
+     */
+    protected int[] links;
+
+    /**
+     * The number of children in each leaf.
+     */
+    protected int[] counts;
+
+    /**
+     * The children of every leaf, leaf after leaf.
+     */
+    protected int[] items;
+
+    /**
+     * The number of nodes and leaf items in use.
+     */
+    protected int nodeCount, itemCount;
+
+    /**
+     * Build a kd-tree over some shapes.
+     *
+     * @param shapes
+     *   The shapes to index.
+     * @param leafSize
+     *   The most shapes a leaf may have before it is split.
+     */
+    public KDTreeGroup(List<Shape> shapes, int leafSize) {
+        super(shapes);
+        if (leafSize < 1) throw new IllegalArgumentException("leaf size must be positive");
+        this.leafSize = leafSize;
+        this.axes = new int[16];
+        this.splits = new double[16];
+        this.links = new int[16];
+        this.counts = new int[16];
+        this.items = new int[Math.max(16, indexed.length * 2)];
+        final int maxDepth = (int) Math.round(8 + 1.3 * Math.log(Math.max(1, indexed.length)) / Math.log(2));
+        build(indexed.clone(), box.clone(), maxDepth);
+    }
+
+    private int allocate() {
+        if (nodeCount == axes.length) {
+            final int size = axes.length * 2;
+            axes = Arrays.copyOf(axes, size);
+            splits = Arrays.copyOf(splits, size);
+            links = Arrays.copyOf(links, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+        return nodeCount++;
+    }
+
+    private static double area(double[] bounds) {
+        final double x = bounds[3] - bounds[0], y = bounds[4] - bounds[1], z = bounds[5] - bounds[2];
+        return x * y + y * z + z * x;
+    }
+
+    /**
+     * Build the subtree over some children, appending its nodes depth first.
+     */
+    private void build(int[] shapes, double[] bounds, int depth) {
+        final int node = allocate();
+        final int count = shapes.length;
+        double bestCost = intersectionCost * count, bestSplit = 0;
+        int bestAxis = -1;
+        final double area = area(bounds);
+        if (count > leafSize && depth > 0 && area > 0) {
+            final double[] mins = new double[count], maxs = new double[count], planes = new double[count * 2];
+            final double[] below = bounds.clone(), above = bounds.clone();
+            for (int axis = 0; axis < 3; axis++) {
+                final double low = bounds[axis], high = bounds[axis + 3];
+                if (!(high > low)) { continue; }
+                for (int i = 0; i < count; i++) {
+                    mins[i] = childBounds[shapes[i] * 6 + axis];
+                    maxs[i] = childBounds[shapes[i] * 6 + axis + 3];
+                }
+                Arrays.sort(mins);
+                Arrays.sort(maxs);
+                System.arraycopy(mins, 0, planes, 0, count);
+                System.arraycopy(maxs, 0, planes, count, count);
+                Arrays.sort(planes);
+                // sweep the planes, counting the children that start before the plane and the children that end after it
+                int starts = 0, ends = 0;
+                for (int p = 0; p < planes.length; p++) {
+                    final double plane = planes[p];
+                    if (!(plane > low && plane < high) || (p > 0 && planes[p - 1] == plane)) { continue; }
+                    while (starts < count && mins[starts] < plane) { starts++; }
+                    while (ends < count && maxs[ends] <= plane) { ends++; }
+                    final int belowCount = starts, aboveCount = count - ends;
+                    below[axis + 3] = plane;
+                    above[axis] = plane;
+                    final double bonus = (belowCount == 0 || aboveCount == 0) ? emptyBonus : 0;
+                    final double cost = traversalCost + intersectionCost * (1 - bonus) * 
+                        (area(below) / area * belowCount + area(above) / area * aboveCount);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = plane;
+                    }
+                }
+                below[axis + 3] = high;
+                above[axis] = low;
+            }
+        }
+        if (bestAxis < 0) {
+            axes[node] = leaf;
+            links[node] = itemCount;
+            counts[node] = count;
+            if (itemCount + count > items.length) { items = Arrays.copyOf(items, Math.max(items.length * 2, itemCount + count)); }
+            System.arraycopy(shapes, 0, items, itemCount, count);
+            itemCount += count;
+            return;
+        }
+        final int axis = bestAxis;
+        final double split = bestSplit;
+        // children lying flat in the split plane go to both sides
+        final int[] belowShapes = Arrays.stream(shapes).filter(shape -> 
+            childBounds[shape * 6 + axis] < split || childBounds[shape * 6 + axis + 3] <= split).toArray();
+        final int[] aboveShapes = Arrays.stream(shapes).filter(shape -> 
+            childBounds[shape * 6 + axis + 3] > split || childBounds[shape * 6 + axis] >= split).toArray();
+        axes[node] = axis;
+        splits[node] = split;
+        final double[] belowBounds = bounds.clone(), aboveBounds = bounds.clone();
+        belowBounds[axis + 3] = split;
+        aboveBounds[axis] = split;
+        build(belowShapes, belowBounds, depth - 1);
+        links[node] = nodeCount;
+        build(aboveShapes, aboveBounds, depth - 1);
+    }
+
+    @Override
+    protected void traverse(double[] origin, double[] direction, double enter, double exit, Traversal traversal) {
+        traverse(0, origin, direction, enter, exit, traversal);
+    }
+
+    private void traverse(int node, double[] origin, double[] direction, double enter, double exit, Traversal traversal) {
+        while (true) {
+            final int axis = axes[node];
+            if (axis == leaf) {
+                for (int item = links[node]; item < links[node] + counts[node]; item++) { traversal.test(items[item]); }
+                return;
+            }
+            final double split = splits[node];
+            final int below = node + 1, above = links[node];
+            if (direction[axis] == 0) {
+                // the line runs parallel to the plane, it only sees the side its origin is on
+                final boolean visitBelow = origin[axis] <= split, visitAbove = origin[axis] >= split;
+                if (visitBelow && visitAbove) { traverse(below, origin, direction, enter, exit, traversal); }
+                node = visitBelow && !visitAbove ? below : above;
+                continue;
+            }
+            final double crossing = (split - origin[axis]) / direction[axis];
+            final double tolerance = 1e-9 * (1 + Math.abs(crossing));
+            // the line reaches the side below the plane first when it travels up the axis
+            final int first = direction[axis] > 0 ? below : above, second = direction[axis] > 0 ? above : below;
+            final boolean visitFirst = crossing >= enter - tolerance, visitSecond = crossing <= exit + tolerance;
+            if (visitFirst && visitSecond) {
+                traverse(first, origin, direction, enter, Math.min(crossing, exit), traversal);
+                node = second;
+                enter = Math.max(crossing, enter);
+            } else {
+                node = visitFirst ? first : second;
+            }
+        }
+    }
+
+    @Override
+    protected SpatialGroup rebuild(List<Shape> shapes) { return new KDTreeGroup(shapes, leafSize); }
+}
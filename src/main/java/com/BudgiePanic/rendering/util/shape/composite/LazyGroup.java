@@ -0,0 +1,294 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * A node of a bounding volume hierarchy that builds its children the first time a ray enters its bounds.
+ * Made by BVHBuilder::buildLazy, so parts of a scene that are never seen never pay for their hierarchy.
+ * <p>
+ * The children are published once through a volatile field. Rays that find them built never lock, the first rays to
+ * enter the node take the node's lock while one of them builds the children.
+ * Nodes share one primitive order and partition their own range of it in place when they are built, so the range of a node
+ * is only read under the node's lock before it is built, and through its published children after.
+ * Lazy nodes are finished hierarchies, shapes cannot be added to or removed from them.
+ *
+ * @author BudgiePanic
+ */
+public class LazyGroup extends Group {
+
+    /**
+     * Identity singleton to feed into the hierarchy's nodes.
+     */
+    private static final Matrix4 identity = Matrix4.identity();
+
+    /**
+     * The builder that splits the node.
+     */
+    protected final BVHBuilder builder;
+
+    /**
+     * The shapes under the node, shared with the rest of the hierarchy.
+     */
+    protected final BVHBuilder.Primitives primitives;
+
+    /**
+     * The first index of the node's range of the primitive order.
+     */
+    protected final int start;
+
+    /**
+     * The index after the last index of the node's range of the primitive order.
+     */
+    protected final int end;
+
+    /**
+     * The bounds of the node, fixed when the node is made so the read path never locks.
+     */
+    protected final BoundingBox box;
+
+    /**
+     * The children of the node, null until a ray first enters the node.
+     */
+    protected volatile Shape[] nodes;
+
+    /**
+     * Create an unbuilt node over a range of primitives.
+     *
+     * @param builder
+     *   The builder that splits the node.
+     * @param primitives
+     *   The shapes under the node.
+     * @param start
+     *   The first index of the range.
+     * @param end
+     *   The index after the last index of the range.
+     */
+    protected LazyGroup(BVHBuilder builder, BVHBuilder.Primitives primitives, int start, int end) {
+        super(identity);
+        this.builder = builder;
+        this.primitives = primitives;
+        this.start = start;
+        this.end = end;
+        final double[] bounds = BVHBuilder.rangeBounds(primitives, start, end);
+        this.box = new BoundingBox(new Tuple(bounds[0], bounds[1], bounds[2]), new Tuple(bounds[3], bounds[4], bounds[5]));
+        this.AABB = box;
+        this.nodes = null;
+    }
+
+    /**
+     * Check if the node's children have been built.
+     *
+     * @return
+     *   True if a ray has entered the node.
+     */
+    public boolean isBuilt() { return nodes != null; }
+
+    /**
+     * Get the node's children, building them if this is the first time they are needed.
+     *
+     * @return
+     *   The children of the node.
+     */
+    protected Shape[] nodes() {
+        var result = nodes;
+        if (result == null) {
+            synchronized (this) {
+                result = nodes;
+                if (result == null) {
+                    result = expand();
+                    nodes = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build the children of the node. Leaves hold the primitives themselves, larger nodes are split in two unbuilt nodes.
+     * The partition only touches this node's range of the shared primitive order, so nodes can expand on different threads at once.
+     *
+     * @return
+     *   The children of the node.
+     */
+    protected Shape[] expand() {
+        final int count = end - start;
+        if (count <= builder.threshold) {
+            final Shape[] leaves = new Shape[count];
+            for (int i = 0; i < count; i++) {
+                final var shape = primitives.shapes()[primitives.order()[start + i]];
+                // nested groups, such as the groups of an OBJ file, become lazy hierarchies of their own
+                if (shape instanceof Group) {
+                    builder.buildLazy((Group) shape);
+                } else {
+                    shape.divide(builder.threshold);
+                }
+                leaves[i] = shape;
+            }
+            return leaves;
+        }
+        final int middle = builder.split(primitives, start, end);
+        return new Shape[] { node(start, middle), node(middle, end) };
+    }
+
+    private Shape node(int from, int to) {
+        if (to - from == 1 && !(primitives.shapes()[primitives.order()[from]] instanceof Group)) {
+            final var shape = primitives.shapes()[primitives.order()[from]];
+            shape.divide(builder.threshold);
+            return shape;
+        }
+        return new LazyGroup(builder, primitives, from, to);
+    }
+
+    /**
+     * Lazy nodes are built while rendering, their children are tested as they are.
+     */
+    @Override
+    public void pack() {}
+
+    @Override
+    protected Optional<List<Intersection>> localIntersectI(Ray ray, Predicate<Shape> condition) {
+        List<Intersection> result = null;
+        final var mapper = Intersection.buildIntersector(ray, condition);
+        for (final var child : nodes()) {
+            if (!condition.test(child)) { continue; }
+            var intersect = mapper.apply(child);
+            if (intersect.isPresent()) {
+                if (result == null) { result = new ArrayList<>(); }
+                result.addAll(intersect.get());
+            }
+        }
+        if (result != null) { result.sort(Comparator.comparing(Intersection::a)); }
+        return Optional.ofNullable(result);
+    }
+
+    /**
+     * Get the indices of the shapes under the node, without building anything.
+     * An unbuilt node reads its range under its lock, so the range cannot be partitioned while it is read.
+     * Once built, the unbuilt nodes below partition parts of the range in place, so the indices are gathered through the published children.
+     *
+     * @param result
+     *   The list to add the indices to.
+     */
+    protected void collectIndices(List<Integer> result) {
+        var built = nodes;
+        if (built == null) {
+            synchronized (this) {
+                built = nodes;
+                if (built == null) {
+                    for (int i = start; i < end; i++) { result.add(primitives.order()[i]); }
+                    return;
+                }
+            }
+        }
+        // the ranges of leaves are never partitioned again after they are published
+        if (end - start <= builder.threshold) {
+            for (int i = start; i < end; i++) { result.add(primitives.order()[i]); }
+            return;
+        }
+        // a split node's children are unbuilt nodes, or a single primitive at the start or end of the range
+        if (built[0] instanceof LazyGroup) { ((LazyGroup) built[0]).collectIndices(result); } else { result.add(primitives.order()[start]); }
+        if (built[1] instanceof LazyGroup) { ((LazyGroup) built[1]).collectIndices(result); } else { result.add(primitives.order()[end - 1]); }
+    }
+
+    /**
+     * Get the node's children once built, or the shapes under the node before then, without building anything.
+     */
+    @Override
+    public List<Shape> children() {
+        var result = nodes;
+        if (result == null) {
+            synchronized (this) {
+                result = nodes;
+                if (result == null) {
+                    final List<Shape> shapes = new ArrayList<>(end - start);
+                    for (int i = start; i < end; i++) { shapes.add(primitives.shapes()[primitives.order()[i]]); }
+                    return shapes;
+                }
+            }
+        }
+        return List.of(result);
+    }
+
+    @Override
+    public BoundingBox bounds() { return box; }
+
+    @Override
+    public boolean childrenContains(Shape shape) {
+        final List<Integer> indices = new ArrayList<>(end - start);
+        collectIndices(indices);
+        for (final int index : indices) {
+            if (primitives.shapes()[index].contains(shape)) { return true; }
+        }
+        return false;
+    }
+
+    @Override
+    public void addShape(Shape shape) { throw new UnsupportedOperationException("shapes cannot be added to a lazy hierarchy"); }
+
+    @Override
+    public void removeShape(Shape shape) { throw new UnsupportedOperationException("shapes cannot be removed from a lazy hierarchy"); }
+
+    @Override
+    public Shape divide(int threshold) { return this; }
+
+    /**
+     * Prune the shapes under the node into a new lazy hierarchy, without building this one.
+     */
+    @Override
+    public Optional<Shape> prune(Predicate<Shape> condition) {
+        final List<Integer> indices = new ArrayList<>(end - start);
+        collectIndices(indices);
+        final List<Shape> kept = new ArrayList<>();
+        final List<Integer> sources = new ArrayList<>();
+        for (final int index : indices) {
+            final var pruned = primitives.shapes()[index].prune(condition);
+            if (pruned.isPresent()) {
+                kept.add(pruned.get());
+                sources.add(pruned.get() == primitives.shapes()[index] ? index : -1);
+            }
+        }
+        if (kept.isEmpty()) { return Optional.empty(); }
+        if (kept.size() == indices.size() && !sources.contains(-1)) { return Optional.of(this); }
+        final var shapes = kept.toArray(new Shape[0]);
+        final double[] bounds = new double[shapes.length * 6];
+        for (int i = 0; i < shapes.length; i++) {
+            final int source = sources.get(i);
+            if (source >= 0) {
+                System.arraycopy(primitives.bounds(), source * 6, bounds, i * 6, 6);
+            } else {
+                BVHBuilder.writeBounds(shapes[i], bounds, i);
+            }
+        }
+        final var order = new int[shapes.length];
+        Arrays.setAll(order, i -> i);
+        return Optional.of(new LazyGroup(builder, new BVHBuilder.Primitives(shapes, bounds, order), 0, shapes.length));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * A node of a motion blur bounding volume hierarchy.
+ * The node keeps the bounds of its children at evenly spaced times over the exposure and tests each ray against the bounds
+ * interpolated to the time the ray was cast, so rays only visit the children that are near them at that time.
+ * Interpolating the keyed bounds is conservative for children that move linearly or do not move.
+ *
+ * @author BudgiePanic
+ */
+public class MotionGroup extends Group {
+
+    /**
+     * The default number of time segments between the keyed bounds.
+     */
+    public static final int defaultSegments = 4;
+
+    /**
+     * Identity singleton to feed into motion nodes.
+     */
+    private static final Matrix4 identity = Matrix4.identity();
+
+    /**
+     * The number of time segments between the keyed bounds.
+     */
+    protected final int segments;
+
+    /**
+     * The end time of the exposure.
+     */
+    protected double exposure;
+
+    /**
+     * The bounds of the children at the start of each segment and at the end of the exposure, worked out on first use.
+     */
+    protected volatile BoundingBox[] keys;
+
+    /**
+     * Create an empty motion node with an identity transform.
+     *
+     * @param exposure
+     *   The end time of the exposure.
+     * @param segments
+     *   The number of time segments between the keyed bounds.
+     */
+    public MotionGroup(double exposure, int segments) {
+        super(identity);
+        if (segments < 1) throw new IllegalArgumentException("motion group needs at least one segment");
+        if (!(exposure >= 0)) throw new IllegalArgumentException("exposure cannot be negative");
+        this.segments = segments;
+        this.exposure = exposure;
+        this.keys = null;
+    }
+
+    /**
+     * Get the keyed bounds, working them out from the children if they are missing.
+     *
+     * @return
+     *   The bounds of the children at each time key.
+     */
+    protected BoundingBox[] keys() {
+        var keys = this.keys;
+        if (keys == null) {
+            synchronized (this) {
+                keys = this.keys;
+                if (keys == null) {
+                    keys = new BoundingBox[segments + 1];
+                    for (int key = 0; key <= segments; key++) {
+                        final double time = exposure * key / segments;
+                        BoundingBox box = null;
+                        for (final var child : children) {
+                            final var childBox = child.bounds(time).transform(child.transform());
+                            box = box == null ? childBox : box.grow(childBox);
+                        }
+                        keys[key] = box;
+                    }
+                    this.keys = keys;
+                }
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public BoundingBox bounds(double time) {
+        if (children.isEmpty() || !(exposure > 0) || time < 0 || time > exposure) { return bounds(); }
+        final var keys = keys();
+        final double position = time / exposure * segments;
+        final int key = Math.min((int) position, segments - 1);
+        final double fraction = position - key;
+        final var from = keys[key];
+        final var to = keys[key + 1];
+        return new BoundingBox(lerp(from.minimum(), to.minimum(), fraction), lerp(from.maximum(), to.maximum(), fraction));
+    }
+
+    @Override
+    protected boolean boundsIntersect(Ray ray) { return bounds(ray.time()).intersect(ray); }
+
+    @Override
+    public void bakeExposureDuration(double endTime) {
+        super.bakeExposureDuration(endTime);
+        this.exposure = endTime;
+        this.keys = null;
+    }
+
+    @Override
+    public void addShape(Shape shape) {
+        super.addShape(shape);
+        this.keys = null;
+    }
+
+    @Override
+    public void removeShape(Shape shape) {
+        super.removeShape(shape);
+        this.keys = null;
+    }
+
+    private static Tuple lerp(Tuple from, Tuple to, double fraction) {
+        return Tuple.makePoint(
+            from.x + (to.x - from.x) * fraction,
+            from.y + (to.y - from.y) * fraction,
+            from.z + (to.z - from.z) * fraction);
+    }
+}
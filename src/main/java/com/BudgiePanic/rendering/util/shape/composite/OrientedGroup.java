@@ -0,0 +1,244 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * A group that tests rays against an oriented bounding box (OBB) before its children.
+ * The oriented box is lined up with the principal axes of the primitives in the group, so it fits long rotated geometry,
+ * like a rotated mesh baked into world space, much better than the axis aligned box of the group.
+ * Rays are tested against the axis aligned box first, and only rays that hit it pay for the oriented test.
+ * The frame is chosen by OrientedGroup::fit, until then the group behaves like a plain group.
+ *
+ * @author BudgiePanic
+ */
+public class OrientedGroup extends Group {
+
+    /**
+     * Identity singleton, the frame of a group that has not been fit.
+     */
+    private static final Matrix4 identity = Matrix4.identity();
+
+    /**
+     * The number of rotations the principal axis search may make before it settles for the axes it has.
+     */
+    protected static final int maxRotations = 50;
+
+    /**
+     * The rotation from the space of the oriented box into group space. The columns are the axes of the box.
+     */
+    protected Matrix4 frame;
+
+    /**
+     * The rotation from group space into the space of the oriented box.
+     */
+    protected Matrix4 frameInverse;
+
+    /**
+     * Cached nullable bounds of the children in the space of the oriented box.
+     */
+    protected volatile BoundingBox orientedAABB;
+
+    /**
+     * Creates a new empty oriented group with no parent.
+     *
+     * @param transform
+     *   The transform to enter group space.
+     */
+    public OrientedGroup(Matrix4 transform) {
+        super(transform);
+        this.frame = identity;
+        this.frameInverse = identity;
+        this.orientedAABB = null;
+    }
+
+    /**
+     * Get the orientation of the oriented box.
+     * @return
+     *   The rotation from the space of the oriented box into group space.
+     */
+    public Matrix4 frame() { return frame; }
+
+    /**
+     * Get the bounds of the children in the space of the oriented box.
+     * @return
+     *   The oriented box, null if the group is empty.
+     */
+    public BoundingBox orientedBounds() {
+        var box = orientedAABB;
+        if (box == null && !children.isEmpty()) {
+            for (final var child : children) {
+                final var childBox = child.bounds(frameInverse.multiply(child.transform()));
+                box = box == null ? childBox : box.grow(childBox);
+            }
+            orientedAABB = box;
+        }
+        return box;
+    }
+
+    /**
+     * Line the oriented box up with the principal axes of the primitives in the group.
+     * The axes are kept only if the oriented box is smaller than the axis aligned box, otherwise the group goes back to the identity frame.
+     * Call this again after the children change a lot, the box grows to fit new children but does not turn to follow them.
+     */
+    public void fit() {
+        final List<Tuple> points = new ArrayList<>();
+        for (final var child : children) { collect(child, child.transform(), points); }
+        setFrame(points.size() < 2 ? identity : principalAxes(points));
+        if (children.isEmpty()) { return; }
+        if (!(BVHBuilder.halfArea(orientedBounds()) < BVHBuilder.halfArea(bounds()))) { setFrame(identity); }
+    }
+
+    /**
+     * Change the orientation of the oriented box.
+     * @param frame
+     *   A rotation from the space of the oriented box into group space. Cannot be null.
+     */
+    public void setFrame(Matrix4 frame) {
+        if (frame == null) { throw new IllegalArgumentException("oriented group frame cannot be null"); }
+        this.frame = frame;
+        // the frame is a rotation so its transpose is its inverse
+        this.frameInverse = frame.transpose();
+        this.orientedAABB = null;
+    }
+
+    /**
+     * Gather the centers of the primitives under a shape, walking into nested composite shapes.
+     * @param shape
+     *   The shape.
+     * @param toGroup
+     *   The transform from the shape's local space to group space.
+     * @param points
+     *   The list to add the centers to.
+     */
+    protected static void collect(Shape shape, Matrix4 toGroup, List<Tuple> points) {
+        if (shape instanceof CompositeShape) {
+            for (final var child : ((CompositeShape) shape).children()) { collect(child, toGroup.multiply(child.transform()), points); }
+            return;
+        }
+        final var box = shape.bounds(toGroup);
+        final var center = box.minimum().add(box.maximum()).multiply(0.5);
+        // shapes with infinite bounds, like planes, do not have a center
+        if (Double.isFinite(center.x) && Double.isFinite(center.y) && Double.isFinite(center.z)) { points.add(center); }
+    }
+
+    /**
+     * Find the principal axes of a point cloud, the eigenvectors of its covariance matrix, with Jacobi rotations.
+     * @param points
+     *   The points.
+     * @return
+     *   A rotation whose columns are the principal axes.
+     */
+    protected static Matrix4 principalAxes(List<Tuple> points) {
+        double meanX = 0, meanY = 0, meanZ = 0;
+        for (final var point : points) { meanX += point.x; meanY += point.y; meanZ += point.z; }
+        meanX /= points.size(); meanY /= points.size(); meanZ /= points.size();
+        final double[][] a = new double[3][3];
+        for (final var point : points) {
+            final double[] d = { point.x - meanX, point.y - meanY, point.z - meanZ };
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++) { a[row][column] += d[row] * d[column]; }
+            }
+        }
+        final double[][] v = { {1, 0, 0}, {0, 1, 0}, {0, 0, 1} };
+        final double scale = Math.abs(a[0][0]) + Math.abs(a[1][1]) + Math.abs(a[2][2]);
+        for (int rotation = 0; rotation < maxRotations; rotation++) {
+            // zero the largest off diagonal entry with a rotation in its plane
+            int p = 0, q = 1;
+            if (Math.abs(a[0][2]) > Math.abs(a[p][q])) { p = 0; q = 2; }
+            if (Math.abs(a[1][2]) > Math.abs(a[p][q])) { p = 1; q = 2; }
+            if (Math.abs(a[p][q]) <= 1e-12 * scale) { break; }
+            final double theta = (a[q][q] - a[p][p]) / (2 * a[p][q]);
+            final double t = (theta >= 0 ? 1 : -1) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+            final double c = 1 / Math.sqrt(t * t + 1);
+            final double s = t * c;
+            for (int k = 0; k < 3; k++) {
+                final double kp = a[k][p], kq = a[k][q];
+                a[k][p] = c * kp - s * kq;
+                a[k][q] = s * kp + c * kq;
+            }
+            for (int k = 0; k < 3; k++) {
+                final double pk = a[p][k], qk = a[q][k];
+                a[p][k] = c * pk - s * qk;
+                a[q][k] = s * pk + c * qk;
+            }
+            for (int k = 0; k < 3; k++) {
+                final double kp = v[k][p], kq = v[k][q];
+                v[k][p] = c * kp - s * kq;
+                v[k][q] = s * kp + c * kq;
+            }
+        }
+        return Matrix4.buildMatrixColumn(
+            new double[] { v[0][0], v[1][0], v[2][0], 0 },
+            new double[] { v[0][1], v[1][1], v[2][1], 0 },
+            new double[] { v[0][2], v[1][2], v[2][2], 0 },
+            new double[] { 0, 0, 0, 1 });
+    }
+
+    @Override
+    protected boolean boundsIntersect(Ray ray) {
+        if (!super.boundsIntersect(ray)) { return false; }
+        if (frame == identity) { return true; }
+        return orientedBounds().intersect(ray.transform(frameInverse));
+    }
+
+    @Override
+    public void addShape(Shape shape) {
+        final var box = orientedAABB;
+        if (box != null) {
+            orientedAABB = box.grow(shape.bounds(frameInverse.multiply(shape.transform())));
+        }
+        super.addShape(shape);
+    }
+
+    @Override
+    public void removeShape(Shape shape) {
+        super.removeShape(shape);
+        this.orientedAABB = null;
+    }
+
+    @Override
+    public void bakeExposureDuration(double endTime) {
+        super.bakeExposureDuration(endTime);
+        this.orientedAABB = null;
+    }
+
+    @Override
+    public Optional<Shape> prune(Predicate<Shape> condition) {
+        return super.prune(condition).map(shape -> {
+            if (shape == this) { return this; }
+            final var group = (Group) shape;
+            final var pruned = new OrientedGroup(transform);
+            pruned.sharedChildren = group.sharedChildren;
+            pruned.accelerator = group.accelerator;
+            pruned.children.addAll(group.children);
+            pruned.setFrame(frame);
+            return pruned;
+        });
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * A group that indexes its children by where they are in space, the base of the grid and kd-tree accelerators.
+ * Rays are clipped to the bounds of the indexed children and walked through the cells of the index, 
+ * each child is tested at most once per ray with a per thread mailbox. Children with infinite bounds, like planes,
+ * can't be indexed and are tested by every ray.
+ * <p>
+ * Like the other groups, every intersection along the whole ray is found, not only the closest one.
+ * The children keep the group the index was built for as their parent. The index is fixed once built.
+ *
+ * @author BudgiePanic
+ */
+public abstract class SpatialGroup extends Group {
+
+    /**
+     * Identity singleton to feed into the indexes.
+     */
+    private static final Matrix4 identity = Matrix4.identity();
+
+    /**
+     * Remembers which children were already tested by the current ray on one thread.
+     */
+    private static final class Mailbox {
+        int[] stamps;
+        int stamp;
+
+        Mailbox(int size) { this.stamps = new int[size]; }
+
+        void next() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+
+        /**
+         * Mark a child as tested, returning false if it was already tested by this ray.
+         */
+        boolean mark(int child) {
+            if (stamps[child] == stamp) { return false; }
+            stamps[child] = stamp;
+            return true;
+        }
+    }
+
+    /**
+     * Tests the children found by a traversal against one ray, collecting their intersections.
+     */
+    protected final class Traversal {
+        private final Function<Shape, Optional<List<Intersection>>> mapper;
+        private final Predicate<Shape> condition;
+        private final Mailbox mailbox;
+        private List<Intersection> result;
+
+        private Traversal(Ray ray, Predicate<Shape> condition, Mailbox mailbox) {
+            this.mapper = Intersection.buildIntersector(ray, condition);
+            this.condition = condition;
+            this.mailbox = mailbox;
+        }
+
+        /**
+         * Test a child against the ray, unless the ray already tested it.
+         *
+         * @param child
+         *   The index of the child.
+         */
+        protected void test(int child) {
+            if (!mailbox.mark(child)) { return; }
+            final var shape = children.get(child);
+            if (!condition.test(shape)) { return; }
+            final var intersect = mapper.apply(shape);
+            if (intersect.isPresent()) {
+                if (result == null) { result = new ArrayList<>(); }
+                result.addAll(intersect.get());
+            }
+        }
+    }
+
+    /**
+     * The bounds of each child in group space, six values per child [min x, min y, min z, max x, max y, max z].
+     */
+    protected final double[] childBounds;
+
+    /**
+     * The children with infinite bounds, tested by every ray.
+     */
+    protected final int[] unbounded;
+
+    /**
+     * The indexes of the children with finite bounds.
+     */
+    protected final int[] indexed;
+
+    /**
+     * The bounds of the indexed children, [min x, min y, min z, max x, max y, max z].
+     */
+    protected final double[] box;
+
+    /**
+     * One mailbox per rendering thread.
+     */
+    private final ThreadLocal<Mailbox> mailboxes;
+
+    /**
+     * Work out the bounds of the children. Subclasses build their index over the children in 'indexed'.
+     *
+     * @param shapes
+     *   The children to index.
+     */
+    protected SpatialGroup(List<Shape> shapes) {
+        super(identity);
+        if (shapes == null || shapes.isEmpty()) throw new IllegalArgumentException("spatial group needs at least one child");
+        this.children.addAll(shapes);
+        final int count = shapes.size();
+        this.childBounds = new double[count * 6];
+        this.box = new double[] {
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        final List<Integer> unbounded = new ArrayList<>(), indexed = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BVHBuilder.writeBounds(shapes.get(i), childBounds, i);
+            boolean finite = true;
+            for (int value = 0; value < 6; value++) { finite &= Double.isFinite(childBounds[i * 6 + value]); }
+            if (!finite) {
+                unbounded.add(i);
+                continue;
+            }
+            indexed.add(i);
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(box[axis], childBounds[i * 6 + axis]);
+                box[axis + 3] = Math.max(box[axis + 3], childBounds[i * 6 + axis + 3]);
+            }
+        }
+        this.unbounded = unbounded.stream().mapToInt(Integer::intValue).toArray();
+        this.indexed = indexed.stream().mapToInt(Integer::intValue).toArray();
+        this.mailboxes = ThreadLocal.withInitial(() -> new Mailbox(count));
+    }
+
+    /**
+     * Walk the cells of the index that a line passes through between two distances, testing the children in each cell.
+     *
+     * @param origin
+     *   The origin of the ray, [x, y, z].
+     * @param direction
+     *   The direction of the ray, [x, y, z].
+     * @param enter
+     *   The distance where the line enters the bounds of the indexed children.
+     * @param exit
+     *   The distance where the line leaves the bounds of the indexed children.
+     * @param traversal
+     *   Tests the children found.
+     */
+    protected abstract void traverse(double[] origin, double[] direction, double enter, double exit, Traversal traversal);
+
+    /**
+     * Build a new index of the same kind over other children.
+     *
+     * @param shapes
+     *   The children to index.
+     * @return
+     *   The new index.
+     */
+    protected abstract SpatialGroup rebuild(List<Shape> shapes);
+
+    @Override
+    protected Optional<List<Intersection>> localIntersectI(Ray ray, Predicate<Shape> condition) {
+        final var mailbox = mailboxes.get();
+        mailbox.next();
+        final var traversal = new Traversal(ray, condition, mailbox);
+        for (final int child : unbounded) { traversal.test(child); }
+        if (indexed.length > 0) {
+            final double[] origin = { ray.origin().x, ray.origin().y, ray.origin().z };
+            final double[] direction = { ray.direction().x, ray.direction().y, ray.direction().z };
+            // clip the whole line, rays report intersections behind their origin too
+            double enter = Double.NEGATIVE_INFINITY, exit = Double.POSITIVE_INFINITY;
+            boolean hit = true;
+            for (int axis = 0; axis < 3 && hit; axis++) {
+                final double pad = 1e-9 * (box[axis + 3] - box[axis] + 1);
+                final double min = box[axis] - pad, max = box[axis + 3] + pad;
+                if (direction[axis] == 0) {
+                    hit = origin[axis] >= min && origin[axis] <= max;
+                } else {
+                    final double a = (min - origin[axis]) / direction[axis], b = (max - origin[axis]) / direction[axis];
+                    enter = Math.max(enter, Math.min(a, b));
+                    exit = Math.min(exit, Math.max(a, b));
+                    hit = enter <= exit;
+                }
+            }
+            if (hit) { traverse(origin, direction, enter, exit, traversal); }
+        }
+        final var result = traversal.result;
+        if (result != null) { result.sort(Comparator.comparing(Intersection::a)); }
+        return Optional.ofNullable(result);
+    }
+
+    @Override
+    public void addShape(Shape shape) { throw new UnsupportedOperationException("spatial groups cannot be changed once built"); }
+
+    @Override
+    public void removeShape(Shape shape) { throw new UnsupportedOperationException("spatial groups cannot be changed once built"); }
+
+    @Override
+    public Shape divide(int threshold) { return this; }
+
+    /**
+     * Packs the groups nested in this index. The index tests its own children, so they are not packed.
+     */
+    @Override
+    public void pack() {
+        for (final var child : children) {
+            if (child instanceof Group) { ((Group) child).pack(); }
+        }
+    }
+
+    @Override
+    public Optional<Shape> prune(Predicate<Shape> condition) {
+        final List<Shape> kept = new ArrayList<>();
+        boolean changed = false;
+        for (final var child : children) {
+            final var pruned = child.prune(condition);
+            changed |= pruned.isEmpty() || pruned.get() != child;
+            pruned.ifPresent(kept::add);
+        }
+        if (kept.isEmpty()) { return Optional.empty(); }
+        if (!changed) { return Optional.of(this); }
+        return Optional.of(rebuild(kept));
+    }
+
+    /**
+     * Replace the children of a group with a spatial index over them, the shared part of the grid and kd-tree accelerators.
+     * Nested groups are built first, with their chosen accelerator or 'accelerator', other shapes are divided with Shape::divide.
+     * Groups with at most 'threshold' children are left as they are.
+     *
+     * @param group
+     *   The group to build the index of.
+     * @param threshold
+     *   The most children a group may have without an index.
+     * @param accelerator
+     *   The accelerator building the group.
+     * @param index
+     *   Builds the index over the children.
+     * @return
+     *   The group.
+     */
+    protected static Group build(Group group, int threshold, Accelerator accelerator, Function<List<Shape>, SpatialGroup> index) {
+        if (group == null) throw new IllegalArgumentException("group cannot be null");
+        final List<Shape> shapes = new ArrayList<>(group.children);
+        for (final var shape : shapes) {
+            if (shape instanceof Group) {
+                Accelerator.buildNested((Group) shape, accelerator);
+            } else {
+                shape.divide(threshold);
+            }
+        }
+        if (shapes.size() > threshold) {
+            group.children.clear();
+            group.children.add(index.apply(shapes));
+            group.AABB = null;
+            group.packed = Optional.empty();
+        }
+        return group;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+/**
+ * Builds wide bounding volume hierarchies (see WideBVHGroup) over the children of groups,
+ * by collapsing the binary hierarchies of a BVHBuilder.
+ *
+ * @author BudgiePanic
+ */
+public class WideBVHBuilder implements Accelerator {
+
+    /**
+     * The default number of children per node.
+     */
+    public static final int defaultWidth = 4;
+
+    /**
+     * The default number of bits per quantized bound.
+     */
+    public static final int defaultBits = 8;
+
+    /**
+     * Builds the binary hierarchies that are collapsed.
+     */
+    protected final BVHBuilder binary;
+
+    /**
+     * The number of children per node, 4 or 8.
+     */
+    protected final int width;
+
+    /**
+     * The number of bits per quantized bound, 8 or 16.
+     */
+    protected final int bits;
+
+    /**
+     * Create a builder with the default width and quantization, collapsing object split hierarchies.
+     *
+     * @param threshold
+     *   The most children a leaf, or a group without a hierarchy, may have.
+     */
+    public WideBVHBuilder(int threshold) {
+        this(new BVHBuilder(threshold), defaultWidth, defaultBits);
+    }
+
+    /**
+     * Canonical constructor.
+     *
+     * @param binary
+     *   Builds the binary hierarchies that are collapsed. Its threshold is the most children a leaf, or a group without a hierarchy, may have.
+     * @param width
+     *   The number of children per node, 4 or 8.
+     * @param bits
+     *   The number of bits per quantized bound, 8 or 16.
+     */
+    public WideBVHBuilder(BVHBuilder binary, int width, int bits) {
+        if (binary == null) throw new IllegalArgumentException("binary builder cannot be null");
+        if (width != 4 && width != 8) throw new IllegalArgumentException("wide hierarchy nodes must have 4 or 8 children");
+        if (bits != 8 && bits != 16) throw new IllegalArgumentException("wide hierarchy bounds must be quantized to 8 or 16 bits");
+        this.binary = binary;
+        this.width = width;
+        this.bits = bits;
+    }
+
+    @Override
+    public Group build(Group group) {
+        return SpatialGroup.build(group, binary.threshold, this, shapes -> new WideBVHGroup(shapes, binary, width, bits));
+    }
+}
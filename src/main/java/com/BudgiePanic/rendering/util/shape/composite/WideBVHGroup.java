@@ -0,0 +1,366 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Shape;
+
+/**
+ * A bounding volume hierarchy with 4 or 8 children per node, made by collapsing a binary hierarchy from a BVHBuilder.
+ * Each node stores the boxes of its children quantized to 8 or 16 bits relative to the node's own box, so a node takes a few dozen
+ * bytes instead of a group object per child, and a ray visits about a third (4 wide) or a quarter (8 wide) as many nodes.
+ * The children of a node are tested together in one loop over flat arrays, which the JIT can unroll and vectorize.
+ * <p>
+ * Quantized boxes are rounded outwards, so they can only be larger than the boxes they stand for.
+ * The nodes are stored in flat arrays, the slots of node n start at n * width.
+ *
+ * @author BudgiePanic
+ */
+public class WideBVHGroup extends SpatialGroup {
+
+    /**
+     * Marks a slot with no child in 'links'.
+     */
+    protected static final int empty = Integer.MIN_VALUE;
+
+    /**
+     * The binary builder the hierarchy is collapsed from.
+     */
+    protected final BVHBuilder binary;
+
+    /**
+     * The number of child slots per node, 4 or 8.
+     */
+    protected final int width;
+
+    /**
+     * The number of bits per quantized bound, 8 or 16.
+     */
+    protected final int bits;
+
+    /**
+     * The largest quantized value, 2^bits - 1.
+     */
+    protected final int levels;
+
+    /**
+     * The frame each node's child boxes are quantized in, nine values per node
+     * [low origin x, y, z, high origin x, y, z, step x, y, z]. The origins are the minimum of the node's box, padded 
+     * outwards so rounding while decoding cannot shrink a child box.
+     */
+    protected double[] frames;
+
+    /**
+     * The quantized child boxes, six values per slot [min x, min y, min z, max x, max y, max z], 'bits' / 8 bytes per value.
+     */
+    protected byte[] boxes;
+
+    /**
+     * What each slot holds, the index of a node, the bitwise not of a leaf index, or 'empty'.
+     */
+    protected int[] links;
+
+    /**
+     * Where each leaf's children start in 'items', with one extra entry marking the end of the last leaf.
+     */
+    protected int[] leaves;
+
+    /**
+     * The children of every leaf, leaf after leaf.
+     */
+    protected int[] items;
+
+    /**
+     * The number of nodes, leaves and leaf items in use.
+     */
+    protected int nodeCount, leafCount, itemCount;
+
+    /**
+     * The most nodes a traversal can have waiting on its stack.
+     */
+    protected int stackSize;
+
+    /**
+     * Build a wide hierarchy over some shapes.
+     *
+     * @param shapes
+     *   The shapes to index.
+     * @param binary
+     *   Builds the binary hierarchy that is collapsed. Its threshold is the most shapes a leaf may have.
+     * @param width
+     *   The number of children per node, 4 or 8.
+     * @param bits
+     *   The number of bits per quantized bound, 8 or 16.
+     */
+    public WideBVHGroup(List<Shape> shapes, BVHBuilder binary, int width, int bits) {
+        super(shapes);
+        if (binary == null) throw new IllegalArgumentException("binary builder cannot be null");
+        if (width != 4 && width != 8) throw new IllegalArgumentException("wide hierarchy nodes must have 4 or 8 children");
+        if (bits != 8 && bits != 16) throw new IllegalArgumentException("wide hierarchy bounds must be quantized to 8 or 16 bits");
+        this.binary = binary;
+        this.width = width;
+        this.bits = bits;
+        this.levels = (1 << bits) - 1;
+        this.frames = new double[16 * 9];
+        this.boxes = new byte[16 * width * 6 * (bits / 8)];
+        this.links = new int[16 * width];
+        this.leaves = new int[17];
+        this.items = new int[Math.max(16, indexed.length)];
+        if (indexed.length > 0) {
+            final Shape[] primitives = new Shape[indexed.length];
+            final double[] bounds = new double[indexed.length * 6];
+            final Map<Shape, Integer> index = new IdentityHashMap<>();
+            for (int i = 0; i < indexed.length; i++) {
+                primitives[i] = children.get(indexed[i]);
+                System.arraycopy(childBounds, indexed[i] * 6, bounds, i * 6, 6);
+                index.put(primitives[i], indexed[i]);
+            }
+            final var root = binary.hierarchy(primitives, bounds).a();
+            // a traversal pushes at most width - 1 more nodes than it pops at each level
+            stackSize = collapse(new ArrayList<>(List.of(root)), index) * (width - 1) + 1;
+        }
+    }
+
+    /**
+     * Check if a shape from the binary hierarchy is a node with nodes below it, rather than a leaf or a single shape.
+     */
+    private static boolean isInterior(Shape shape, Map<Shape, Integer> index) {
+        if (!(shape instanceof Group) || index.containsKey(shape)) { return false; }
+        for (final var child : ((Group) shape).children) {
+            if (!index.containsKey(child)) { return true; }
+        }
+        return false;
+    }
+
+    private double[] bounds(Shape shape, Map<Shape, Integer> index) {
+        final Integer child = index.get(shape);
+        if (child != null) { return Arrays.copyOfRange(childBounds, child * 6, child * 6 + 6); }
+        // nodes made by the binary builder carry their own box, which spatial splits may have clipped
+        final BoundingBox box = shape.bounds();
+        return new double[] { box.minimum().x, box.minimum().y, box.minimum().z, box.maximum().x, box.maximum().y, box.maximum().z };
+    }
+
+    /**
+     * Make a node from a binary subtree, opening the largest interior nodes until the slots are full, then collapse the slots below it.
+     *
+     * @param slots
+     *   The roots of the binary subtrees that go in the node, opened in place.
+     * @param index
+     *   The child index of every shape the binary hierarchy was built over.
+     * @return
+     *   The number of levels of nodes in the subtree.
+     */
+    private int collapse(List<Shape> slots, Map<Shape, Integer> index) {
+        while (slots.size() < width) {
+            int largest = -1;
+            double largestArea = -1;
+            for (int slot = 0; slot < slots.size(); slot++) {
+                if (!isInterior(slots.get(slot), index)) { continue; }
+                final double area = BVHBuilder.halfArea(bounds(slots.get(slot), index), 0);
+                if (area > largestArea) { largest = slot; largestArea = area; }
+            }
+            if (largest < 0) { break; }
+            final var opened = (Group) slots.remove(largest);
+            slots.addAll(opened.children);
+        }
+        final int node = allocate();
+        final double[][] slotBounds = new double[slots.size()][];
+        final double[] nodeBounds = {
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (int slot = 0; slot < slots.size(); slot++) {
+            slotBounds[slot] = bounds(slots.get(slot), index);
+            for (int axis = 0; axis < 3; axis++) {
+                nodeBounds[axis] = Math.min(nodeBounds[axis], slotBounds[slot][axis]);
+                nodeBounds[axis + 3] = Math.max(nodeBounds[axis + 3], slotBounds[slot][axis + 3]);
+            }
+        }
+        quantize(node, nodeBounds, slotBounds);
+        Arrays.fill(links, node * width, node * width + width, empty);
+        int height = 0;
+        for (int slot = 0; slot < slots.size(); slot++) {
+            final var shape = slots.get(slot);
+            if (isInterior(shape, index)) {
+                links[node * width + slot] = nodeCount;
+                height = Math.max(height, collapse(new ArrayList<>(((Group) shape).children), index));
+            } else {
+                links[node * width + slot] = ~leaf(shape, index);
+            }
+        }
+        return height + 1;
+    }
+
+    private int allocate() {
+        if (nodeCount * 9 == frames.length) {
+            final int size = nodeCount * 2;
+            frames = Arrays.copyOf(frames, size * 9);
+            boxes = Arrays.copyOf(boxes, size * width * 6 * (bits / 8));
+            links = Arrays.copyOf(links, size * width);
+        }
+        return nodeCount++;
+    }
+
+    /**
+     * Add a leaf holding a single shape, or the shapes of a leaf node of the binary hierarchy.
+     */
+    private int leaf(Shape shape, Map<Shape, Integer> index) {
+        final List<Shape> shapes = index.containsKey(shape) ? List.of(shape) : ((Group) shape).children;
+        if (leafCount + 2 > leaves.length) { leaves = Arrays.copyOf(leaves, leaves.length * 2); }
+        while (itemCount + shapes.size() > items.length) { items = Arrays.copyOf(items, items.length * 2); }
+        for (final var child : shapes) { items[itemCount++] = index.get(child); }
+        leaves[leafCount + 1] = itemCount;
+        return leafCount++;
+    }
+
+    /**
+     * Store the boxes of a node's slots relative to the node's box, rounding each box outwards.
+     */
+    private void quantize(int node, double[] nodeBounds, double[][] slotBounds) {
+        final int frame = node * 9;
+        for (int axis = 0; axis < 3; axis++) {
+            final double extent = nodeBounds[axis + 3] - nodeBounds[axis];
+            final double pad = 1e-9 * (extent + 1);
+            frames[frame + axis] = nodeBounds[axis] - pad;
+            frames[frame + 3 + axis] = nodeBounds[axis] + pad;
+            frames[frame + 6 + axis] = extent / levels;
+        }
+        for (int slot = 0; slot < width; slot++) {
+            for (int axis = 0; axis < 3; axis++) {
+                int low = 0, high = 0;
+                if (slot < slotBounds.length) {
+                    final double step = frames[frame + 6 + axis];
+                    if (step > 0) {
+                        low = (int) Math.floor((slotBounds[slot][axis] - nodeBounds[axis]) / step);
+                        high = (int) Math.ceil((slotBounds[slot][axis + 3] - nodeBounds[axis]) / step);
+                    }
+                    low = Math.max(0, Math.min(levels, low));
+                    high = Math.max(0, Math.min(levels, high));
+                }
+                write((node * width + slot) * 6 + axis, low);
+                write((node * width + slot) * 6 + 3 + axis, high);
+            }
+        }
+    }
+
+    private void write(int value, int quantized) {
+        if (bits == 8) {
+            boxes[value] = (byte) quantized;
+        } else {
+            boxes[value * 2] = (byte) quantized;
+            boxes[value * 2 + 1] = (byte) (quantized >>> 8);
+        }
+    }
+
+    private int read(int value) {
+        if (bits == 8) { return boxes[value] & 0xFF; }
+        return (boxes[value * 2] & 0xFF) | ((boxes[value * 2 + 1] & 0xFF) << 8);
+    }
+
+    /**
+     * Decode the box of one slot of a node.
+     *
+     * @param node
+     *   The node.
+     * @param slot
+     *   The slot of the node.
+     * @return
+     *   The quantized box of the slot, which contains the box of the child in the slot.
+     */
+    protected double[] slotBounds(int node, int slot) {
+        final int frame = node * 9, value = (node * width + slot) * 6;
+        final double[] result = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            result[axis] = frames[frame + axis] + read(value + axis) * frames[frame + 6 + axis];
+            result[axis + 3] = frames[frame + 3 + axis] + read(value + 3 + axis) * frames[frame + 6 + axis];
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of nodes in the hierarchy.
+     *
+     * @return
+     *   The number of nodes.
+     */
+    public int nodeCount() { return nodeCount; }
+
+    /**
+     * Get the number of bytes used by the arrays that store the nodes and leaves, ignoring the unused ends of the arrays.
+     *
+     * @return
+     *   The size of the hierarchy in bytes.
+     */
+    public long footprint() {
+        return (long) nodeCount * (9 * Double.BYTES + width * 6 * (bits / 8) + width * Integer.BYTES)
+            + (long) (leafCount + 1) * Integer.BYTES + (long) itemCount * Integer.BYTES;
+    }
+
+    @Override
+    protected void traverse(double[] origin, double[] direction, double enter, double exit, Traversal traversal) {
+        if (nodeCount == 0) { return; }
+        final double[] inverse = { 1 / direction[0], 1 / direction[1], 1 / direction[2] };
+        final double[] near = new double[width], far = new double[width];
+        final int[] stack = new int[stackSize + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int frame = node * 9, first = node * width;
+            Arrays.fill(near, enter);
+            Arrays.fill(far, exit);
+            // test the line against every slot of the node, one axis at a time
+            for (int axis = 0; axis < 3; axis++) {
+                final double low = frames[frame + axis], high = frames[frame + 3 + axis], step = frames[frame + 6 + axis];
+                final double o = origin[axis], inv = inverse[axis];
+                if (direction[axis] == 0) {
+                    // the line runs parallel to the slabs, it is inside them or misses them everywhere
+                    for (int slot = 0; slot < width; slot++) {
+                        final int value = (first + slot) * 6 + axis;
+                        if (o < low + read(value) * step || o > high + read(value + 3) * step) { far[slot] = Double.NEGATIVE_INFINITY; }
+                    }
+                    continue;
+                }
+                for (int slot = 0; slot < width; slot++) {
+                    final int value = (first + slot) * 6 + axis;
+                    final double a = (low + read(value) * step - o) * inv, b = (high + read(value + 3) * step - o) * inv;
+                    near[slot] = Math.max(near[slot], Math.min(a, b));
+                    far[slot] = Math.min(far[slot], Math.max(a, b));
+                }
+            }
+            for (int slot = 0; slot < width; slot++) {
+                final int link = links[first + slot];
+                if (link == empty) { break; }
+                if (near[slot] > far[slot]) { continue; }
+                if (link >= 0) {
+                    stack[top++] = link;
+                } else {
+                    final int leaf = ~link;
+                    for (int item = leaves[leaf]; item < leaves[leaf + 1]; item++) { traversal.test(items[item]); }
+                }
+            }
+        }
+    }
+
+    @Override
+    protected SpatialGroup rebuild(List<Shape> shapes) { return new WideBVHGroup(shapes, binary, width, bits); }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.transform;
+
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+
+/**
+ * A transform that changes over time, used to animate shapes and cameras across the frames of a sequence.
+ *
+ * @author BudgiePanic
+ */
+@FunctionalInterface
+public interface TransformCurve {
+
+    /**
+     * Evaluate the curve.
+     *
+     * @param time
+     *   The time in seconds since the start of the animation.
+     * @return
+     *   The transform at time 'time'.
+     */
+    Matrix4 at(double time);
+
+    /**
+     * A curve that never changes.
+     *
+     * @param transform
+     *   The transform.
+     * @return
+     *   A curve that always evaluates to 'transform'.
+     */
+    public static TransformCurve constant(Matrix4 transform) {
+        if (transform == null) throw new IllegalArgumentException("transform cannot be null");
+        return time -> transform;
+    }
+
+    /**
+     * A curve that linearly interpolates the elements of two transforms.
+     * Suited to translation and scale, interpolating two rotations element wise does not produce a rotation.
+     *
+     * @param start
+     *   The transform at time zero.
+     * @param end
+     *   The transform at time 'duration' and after.
+     * @param duration
+     *   The time taken to reach the end transform.
+     * @return
+     *   A curve from 'start' to 'end'.
+     */
+    public static TransformCurve linear(Matrix4 start, Matrix4 end, double duration) {
+        if (start == null || end == null) throw new IllegalArgumentException("transforms cannot be null");
+        if (duration <= 0) throw new IllegalArgumentException("duration must be positive");
+        return time -> {
+            final double alpha = Math.max(0.0, Math.min(1.0, time / duration));
+            final double[][] result = new double[4][4];
+            for (int row = 0; row < 4; row++) {
+                for (int col = 0; col < 4; col++) {
+                    result[row][col] = start.matrix[row][col] + (end.matrix[row][col] - start.matrix[row][col]) * alpha;
+                }
+            }
+            return Matrix4.buildMatrixRow(result[0], result[1], result[2], result[3]);
+        };
+    }
+
+    /**
+     * A curve that spins a transform about its local y axis, one full turn every 'period' seconds.
+     * Applied to a shape transform the shape spins on the spot, applied to a view transform the camera orbits the world's y axis.
+     *
+     * @param transform
+     *   The transform at time zero.
+     * @param period
+     *   The time taken to complete one turn.
+     * @return
+     *   A turntable curve.
+     */
+    public static TransformCurve turntable(Matrix4 transform, double period) {
+        if (transform == null) throw new IllegalArgumentException("transform cannot be null");
+        if (period <= 0) throw new IllegalArgumentException("period must be positive");
+        return time -> transform.multiply(Rotation.buildYRotationMatrix(2.0 * Math.PI * time / period));
+    }
+}
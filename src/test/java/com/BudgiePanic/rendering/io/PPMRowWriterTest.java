@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Color;
+
+/**
+ * Tests for streaming images to disk row by row.
+ */
+public class PPMRowWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRowsMatchCanvasWriter() throws IOException {
+        final int width = 30, height = 7;
+        final var canvas = new ArrayCanvas(width, height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                canvas.writePixel(col, row, new Color(col / (double) width, row / (double) height, 0.5));
+            }
+        }
+        final var file = directory.resolve("banded.ppm");
+        try (var writer = new PPMRowWriter(file, width, height)) {
+            final var band = new ArrayCanvas(width, 3);
+            for (int origin = 0; origin < height; origin += 3) {
+                final int rows = Math.min(3, height - origin);
+                for (int row = 0; row < rows; row++) {
+                    for (int col = 0; col < width; col++) {
+                        band.writePixel(col, row, canvas.getPixel(col, origin + row));
+                    }
+                }
+                writer.writeRows(band, rows);
+            }
+            assertEquals(height, writer.rowsWritten());
+            assertThrows(IllegalArgumentException.class, () -> writer.writeRows(band, 1));
+        }
+        final var expected = new ArrayList<String>();
+        for (var line : CanvasWriter.canvasToPPMString(canvas)) {
+            expected.addAll(line.lines().toList());
+            if (line.equals("\n")) { expected.add(""); }
+        }
+        assertEquals(expected, Files.readAllLines(file));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Colors;
+
+/**
+ * Tests for saving and loading render checkpoints.
+ */
+public class RenderCheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCheckpointTiles() {
+        var checkpoint = new RenderCheckpoint(10, 5, 4, 42);
+        assertEquals(3, checkpoint.tileColumns());
+        assertEquals(2, checkpoint.tileRows());
+        assertEquals(6, checkpoint.tiles());
+        assertEquals(0, checkpoint.completedTiles());
+        assertTrue(checkpoint.matches(10, 5, 4, 42));
+        assertFalse(checkpoint.matches(10, 5, 8, 42));
+        // a checkpoint of a different scene or camera
+        assertFalse(checkpoint.matches(10, 5, 4, 43));
+    }
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        var canvas = new ArrayCanvas(10, 5);
+        canvas.writeAll(c -> new Color(0.1, 0.2, 0.3));
+        var checkpoint = new RenderCheckpoint(10, 5, 4, 42);
+        // the last tile is only 2 by 1 pixels
+        checkpoint.complete(5, canvas);
+        checkpoint.complete(0, canvas);
+        var file = directory.resolve("render.checkpoint");
+        checkpoint.save(file);
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(directory.resolve("render.checkpoint.tmp")));
+
+        var loaded = RenderCheckpoint.load(file);
+        assertTrue(loaded.isPresent());
+        assertTrue(loaded.get().matches(10, 5, 4, 42));
+        assertEquals(2, loaded.get().completedTiles());
+        assertTrue(loaded.get().isComplete(0));
+        assertTrue(loaded.get().isComplete(5));
+        assertFalse(loaded.get().isComplete(1));
+        var restored = new ArrayCanvas(10, 5);
+        loaded.get().restore(restored);
+        assertEquals(new Color(0.1, 0.2, 0.3), restored.getPixel(3, 3));
+        assertEquals(new Color(0.1, 0.2, 0.3), restored.getPixel(9, 4));
+        assertEquals(Colors.black, restored.getPixel(4, 0));
+    }
+
+    @Test
+    void testLoadInvalidCheckpoint() throws IOException {
+        assertTrue(RenderCheckpoint.load(directory.resolve("missing")).isEmpty());
+        var file = directory.resolve("junk");
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertTrue(RenderCheckpoint.load(file).isEmpty());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.BudgiePanic.rendering.io.CanvasReader;
+import com.BudgiePanic.rendering.scene.CountingCamera;
+import com.BudgiePanic.rendering.scene.SuperSamplingCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Film;
+import com.BudgiePanic.rendering.util.ReconstructionFilter;
+
+/**
+ * Tests for rendering images in bands.
+ */
+public class BandedRendererTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testBandHeight() {
+        assertEquals(10, BandedRenderer.bandHeight(100, 100 * 96 * 10));
+        assertEquals(1, BandedRenderer.bandHeight(100, 0));
+    }
+
+    void assertSameImage(Canvas expected, Canvas result) {
+        assertEquals(expected.getWidth(), result.getWidth());
+        assertEquals(expected.getHeight(), result.getHeight());
+        for (int row = 0; row < expected.getHeight(); row++) {
+            for (int col = 0; col < expected.getWidth(); col++) {
+                final var e = expected.getPixel(col, row);
+                final var r = result.getPixel(col, row);
+                // the file stores 8 bit colors
+                assertEquals(Math.ceil(e.getRed() * 255), r.getRed() * 255, 0.01);
+                assertEquals(Math.ceil(e.getGreen() * 255), r.getGreen() * 255, 0.01);
+                assertEquals(Math.ceil(e.getBlue() * 255), r.getBlue() * 255, 0.01);
+            }
+        }
+    }
+
+    @Test
+    void testBandedRender() throws Exception {
+        final var camera = new CountingCamera();
+        final var world = new World();
+        final var file = directory.resolve("banded.ppm");
+        new BandedRenderer(camera, 5, Optional.empty()).render(world, file);
+        assertEquals(32 * 32, camera.samples().get());
+        final var result = CanvasReader.createCanvas(file.toFile());
+        assertSameImage(camera.takePicture(world), result);
+    }
+
+    @Test
+    void testBandedFilteredRender() throws Exception {
+        final var camera = new CountingCamera();
+        final var world = new World();
+        final var file = directory.resolve("banded.ppm");
+        final var renderer = new BandedRenderer(camera, 5, Optional.of(ReconstructionFilter.mitchell));
+        renderer.render(world, file);
+        assertEquals(32 * 32, camera.samples().get());
+        final var expected = camera.takePicture(world, new Film(32, 32, ReconstructionFilter.mitchell)).develop();
+        final var result = CanvasReader.createCanvas(file.toFile());
+        assertSameImage(expected, result);
+    }
+
+    @Test
+    void testBandedSuperSampledRender() throws Exception {
+        // bands shorter than the filter diameter carry samples across more than one band boundary
+        final var counter = new CountingCamera();
+        final var camera = new SuperSamplingCamera(counter, SuperSamplingCamera.defaultMode);
+        final var world = new World();
+        final var file = directory.resolve("banded.ppm");
+        new BandedRenderer(camera, 1, Optional.of(ReconstructionFilter.mitchell)).render(world, file);
+        final int bandedSamples = counter.samples().getAndSet(0);
+        final var expected = camera.takePicture(world, new Film(32, 32, ReconstructionFilter.mitchell)).develop();
+        assertEquals(counter.samples().get(), bandedSamples);
+        assertSameImage(expected, CanvasReader.createCanvas(file.toFile()));
+    }
+}
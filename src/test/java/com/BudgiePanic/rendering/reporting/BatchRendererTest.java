@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import static com.BudgiePanic.rendering.util.AngleHelp.toRadians;
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.scene.Camera;
+import com.BudgiePanic.rendering.scene.CountingCamera;
+import com.BudgiePanic.rendering.scene.PinHoleCamera;
+import com.BudgiePanic.rendering.scene.SuperSamplingCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.View;
+
+/**
+ * Tests for rendering many views of a world in one batch.
+ */
+public class BatchRendererTest {
+
+    void assertSameImage(Canvas expected, Canvas result) {
+        assertEquals(expected.getWidth(), result.getWidth());
+        assertEquals(expected.getHeight(), result.getHeight());
+        for (int row = 0; row < expected.getHeight(); row++) {
+            for (int col = 0; col < expected.getWidth(); col++) {
+                assertEquals(expected.getPixel(col, row), result.getPixel(col, row));
+            }
+        }
+    }
+
+    @Test
+    void testBatchMatchesSeparateRenders() {
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+        world.addShape(new Sphere(Matrix4.identity()));
+        final var front = new PinHoleCamera(20, 12, toRadians(60), View.makeViewMatrix(makePoint(0, 0, -5), makePoint(0, 0, 0), Directions.up));
+        final var side = new PinHoleCamera(9, 17, toRadians(60), View.makeViewMatrix(makePoint(5, 1, 0), makePoint(0, 0, 0), Directions.up));
+        final var supersampled = new SuperSamplingCamera(front, SuperSamplingCamera.grid);
+        final var counting = new CountingCamera();
+        final List<Camera> cameras = List.of(front, side, supersampled, counting);
+        final var batch = new BatchRenderer(cameras, 8);
+        final var images = batch.render(world);
+        assertEquals(4, images.size());
+        for (int view = 0; view < 3; view++) {
+            assertSameImage(cameras.get(view).takePicture(world), images.get(view));
+        }
+        // every pixel is exposed once
+        assertEquals(32 * 32, counting.samples().get());
+        assertSameImage(new CountingCamera().takePicture(world), images.get(3));
+        final var timings = batch.timings();
+        assertEquals(4, timings.size());
+        for (int view = 0; view < 4; view++) {
+            assertEquals(view, timings.get(view).view());
+            assertTrue(timings.get(view).finishedMillis() >= 0);
+        }
+    }
+
+    @Test
+    void testTiledCameras() {
+        final var pinhole = new PinHoleCamera(4, 4, toRadians(60), Matrix4.identity());
+        final var progressive = new ProgressiveCameraWrapper(pinhole, 1, ProgressiveCameraWrapper.noTarget, ProgressiveCameraWrapper.noSnapshots, () -> 0.5);
+        assertTrue(pinhole.supportsTiles());
+        assertTrue(new SuperSamplingCamera(pinhole, SuperSamplingCamera.grid).supportsTiles());
+        assertTrue(new TimingWrapper(pinhole).supportsTiles());
+        assertFalse(new TimingWrapper(progressive).supportsTiles());
+        assertThrows(IllegalArgumentException.class, () -> new BatchRenderer(List.of(pinhole), 0));
+    }
+
+    @Test
+    void testAntiAliasedViewIsSplitIntoTiles() {
+        final var world = new World();
+        final var tiles = new AtomicInteger();
+        final var supersampled = new SuperSamplingCamera(new CountingCamera(), SuperSamplingCamera.grid) {
+            @Override
+            public void renderTile(World world, Canvas canvas, int column, int row, int columns, int rows) {
+                tiles.incrementAndGet();
+                super.renderTile(world, canvas, column, row, columns, rows);
+            }
+        };
+        final var images = new BatchRenderer(List.of(new TimingWrapper(supersampled)), 8).render(world);
+        // the 32 x 32 image is rendered as 16 tiles of 8 x 8 pixels
+        assertEquals(16, tiles.get());
+        assertSameImage(new SuperSamplingCamera(new CountingCamera(), SuperSamplingCamera.grid).takePicture(world), images.get(0));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.BudgiePanic.rendering.io.RenderCheckpoint;
+import com.BudgiePanic.rendering.scene.CountingCamera;
+import com.BudgiePanic.rendering.scene.SuperSamplingCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.light.PointLight;
+
+/**
+ * Tests for checkpointed rendering.
+ */
+public class CheckpointCameraWrapperTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Camera that crashes when it reaches a pixel.
+     */
+    static class CrashingCamera extends CountingCamera {
+        @Override
+        public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
+            if (pixelColumn > 24 && pixelRow > 24) { throw new IllegalStateException("node preempted"); }
+            return super.pixelAt(world, pixelColumn, pixelRow, time);
+        }
+    }
+
+    @Test
+    void testResumeAfterCrash() {
+        final var file = directory.resolve("image.checkpoint");
+        final var world = new World();
+        // 32 x 32 image split into 16 tiles, the bottom right tile crashes
+        final var crashing = new CheckpointCameraWrapper(new CrashingCamera(), file, 0, 8);
+        assertThrows(IllegalStateException.class, () -> crashing.takePicture(world));
+        assertTrue(Files.exists(file));
+        final var checkpoint = RenderCheckpoint.load(file);
+        assertTrue(checkpoint.isPresent());
+        assertFalse(checkpoint.get().isComplete(15));
+        final int completed = checkpoint.get().completedTiles();
+        assertTrue(completed > 0);
+
+        final var inner = new CountingCamera();
+        final var image = new CheckpointCameraWrapper(inner, file, 0, 8).takePicture(world);
+        // only the tiles that were not complete are rendered again
+        assertEquals((16 - completed) * 8 * 8, inner.samples().get());
+        for (int row = 0; row < 32; row++) {
+            for (int col = 0; col < 32; col++) {
+                assertEquals(inner.pixelExposureAt(world, col, row), image.getPixel(col, row));
+            }
+        }
+        // the checkpoint is removed once the render is complete
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testCheckpointOfDifferentSceneIsNotResumed() {
+        final var file = directory.resolve("image.checkpoint");
+        final var crashing = new CheckpointCameraWrapper(new CrashingCamera(), file, 0, 8);
+        assertThrows(IllegalStateException.class, () -> crashing.takePicture(new World()));
+        assertTrue(RenderCheckpoint.load(file).get().completedTiles() > 0);
+        // same image size, but the world has a light, so every tile is rendered again
+        final var world = new World();
+        world.addLight(new PointLight(Tuple.makePoint(0, 10, 0), Colors.white));
+        final var inner = new CountingCamera();
+        new CheckpointCameraWrapper(inner, file, 0, 8).takePicture(world);
+        assertEquals(32 * 32, inner.samples().get());
+    }
+
+    @Test
+    void testResumeSuperSampledRenderAfterCrash() {
+        final var file = directory.resolve("image.checkpoint");
+        final var world = new World();
+        final var crashing = new CheckpointCameraWrapper(new SuperSamplingCamera(new CrashingCamera(), SuperSamplingCamera.grid), file, 0, 8);
+        assertThrows(IllegalStateException.class, () -> crashing.takePicture(world));
+        final var checkpoint = RenderCheckpoint.load(file);
+        assertTrue(checkpoint.isPresent());
+        assertFalse(checkpoint.get().isComplete(15));
+        final int completed = checkpoint.get().completedTiles();
+        assertTrue(completed > 0);
+
+        final var inner = new CountingCamera();
+        final var camera = new SuperSamplingCamera(inner, SuperSamplingCamera.grid);
+        final var image = new CheckpointCameraWrapper(camera, file, 0, 8).takePicture(world);
+        // the grid takes 4 samples per pixel, only in the tiles that were not complete
+        assertEquals((16 - completed) * 8 * 8 * 4, inner.samples().get());
+        final var expected = camera.takePicture(world);
+        for (int row = 0; row < 32; row++) {
+            for (int col = 0; col < 32; col++) {
+                assertEquals(expected.getPixel(col, row), image.getPixel(col, row));
+            }
+        }
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testCamerasWithoutTilesAreRejected() {
+        final var file = directory.resolve("image.checkpoint");
+        final var progressive = new ProgressiveCameraWrapper(new CountingCamera(), 1, ProgressiveCameraWrapper.noTarget, ProgressiveCameraWrapper.noSnapshots, () -> 0.5);
+        assertFalse(CheckpointCameraWrapper.supports(progressive));
+        assertTrue(CheckpointCameraWrapper.supports(new SuperSamplingCamera(new CountingCamera(), SuperSamplingCamera.grid)));
+        assertTrue(CheckpointCameraWrapper.supports(new TimingWrapper(new CountingCamera())));
+        assertThrows(IllegalArgumentException.class, () -> new CheckpointCameraWrapper(progressive, file, 0));
+    }
+
+    @Test
+    void testWorkersDoNotWaitForAnotherSave() throws Exception {
+        final var file = directory.resolve("image.checkpoint");
+        final var wrapper = new CheckpointCameraWrapper(new CountingCamera(), file, 0, 8);
+        final var checkpoint = new RenderCheckpoint(32, 32, 8, 0);
+        final var locked = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        // another worker is in the middle of a save
+        final var saver = new Thread(() -> {
+            wrapper.saveLock.lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                wrapper.saveLock.unlock();
+            }
+        });
+        saver.start();
+        locked.await();
+        wrapper.saveIfDue(checkpoint);
+        assertFalse(Files.exists(file));
+        release.countDown();
+        saver.join();
+        wrapper.saveIfDue(checkpoint);
+        assertTrue(Files.exists(file));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.scene.CountingCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.RandomSuppliers;
+
+/**
+ * Tests for progressive rendering.
+ */
+public class ProgressiveCameraWrapperTest {
+
+    @Test
+    void testProgressivePasses() {
+        final var inner = new CountingCamera();
+        final List<Canvas> snapshots = new ArrayList<>();
+        final var camera = new ProgressiveCameraWrapper(inner, 3, ProgressiveCameraWrapper.noTarget, snapshots::add, RandomSuppliers.noRandom);
+        final var world = new World();
+        final var image = camera.takePicture(world);
+        // coarse pass + 3 refinement passes
+        assertEquals(4, snapshots.size());
+        assertEquals(3, camera.passesCompleted());
+        assertEquals((32 / 4) * (32 / 4) + 3 * 32 * 32, inner.samples().get());
+        // the coarse pass fills each block with one color
+        final var coarse = snapshots.get(0);
+        assertEquals(coarse.getPixel(0, 0), coarse.getPixel(3, 3));
+        assertEquals(new Color(2.0 / 32, 2.0 / 32, 0), coarse.getPixel(0, 0));
+        // the first refinement pass samples pixel centers
+        assertEquals(new Color(5.5 / 32, 7.5 / 32, 0), snapshots.get(1).getPixel(5, 7));
+        // later passes average in samples taken at the jittered positions
+        final var expected = new Color((5.5 + 5.0 + 5.0) / 3 / 32, (7.5 + 7.0 + 7.0) / 3 / 32, 0);
+        assertEquals(expected, image.getPixel(5, 7));
+        assertEquals(expected, snapshots.get(3).getPixel(5, 7));
+    }
+
+    @Test
+    void testProgressiveStopsAtTarget() {
+        final var inner = new CountingCamera();
+        final var camera = new ProgressiveCameraWrapper(inner, 10, 0.005, ProgressiveCameraWrapper.noSnapshots, RandomSuppliers.noRandom);
+        camera.takePicture(new World());
+        // the second pass changes the image, the third pass changes it by less than the target
+        assertEquals(3, camera.passesCompleted());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        final var inner = new CountingCamera();
+        assertThrows(IllegalArgumentException.class, () -> new ProgressiveCameraWrapper(inner, 0, 0, ProgressiveCameraWrapper.noSnapshots, RandomSuppliers.noRandom));
+        assertThrows(IllegalArgumentException.class, () -> new ProgressiveCameraWrapper(inner, 1, -1, ProgressiveCameraWrapper.noSnapshots, RandomSuppliers.noRandom));
+    }
+}
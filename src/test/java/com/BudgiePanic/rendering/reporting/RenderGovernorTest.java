@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.scene.CountingCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.RandomSuppliers;
+
+/**
+ * Tests for deadline driven rendering.
+ */
+public class RenderGovernorTest {
+
+    /**
+     * Camera where every sample takes one millisecond on a fake clock.
+     */
+    static class TimedCamera extends CountingCamera {
+        final AtomicLong clock = new AtomicLong();
+        volatile int lastLightSamples = 0;
+        @Override
+        public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
+            clock.addAndGet(1_000_000L);
+            lastLightSamples = world.lightSamples();
+            return super.pixelAt(world, pixelColumn, pixelRow, time);
+        }
+    }
+
+    @Test
+    void testGenerousBudget() {
+        final var inner = new TimedCamera();
+        final var camera = new RenderGovernor(inner, 1_000_000_000L, 3, RandomSuppliers.noRandom, inner.clock::get);
+        final var world = new World();
+        final var image = camera.takePicture(world);
+        assertEquals(RenderGovernor.qualities.get(0), camera.quality());
+        // 16 warm up samples, then every pixel gets the maximum number of samples
+        assertEquals(16 + 3 * 32 * 32, inner.samples().get());
+        for (int samples : camera.tileSamples()) {
+            assertEquals(3, samples);
+        }
+        assertEquals(new Color((5.5 + 5 + 5) / 3 / 32, (7.5 + 7 + 7) / 3 / 32, 0), image.getPixel(5, 7));
+    }
+
+    @Test
+    void testNoBudget() {
+        final var inner = new TimedCamera();
+        final var camera = new RenderGovernor(inner, 0, 3, RandomSuppliers.noRandom, inner.clock::get);
+        final var world = new World();
+        final var image = camera.takePicture(world);
+        // the governor lowers the quality as far as it can, then falls back to the warm up image
+        assertEquals(RenderGovernor.qualities.get(RenderGovernor.qualities.size() - 1), camera.quality());
+        assertEquals(16 * RenderGovernor.qualities.size(), inner.samples().get());
+        for (int samples : camera.tileSamples()) {
+            assertEquals(0, samples);
+        }
+        assertEquals(new Color(4.0 / 32, 4.0 / 32, 0), image.getPixel(5, 7));
+        // the lowest quality was used by the render threads, but the world's own settings were never changed
+        assertEquals(1, inner.lastLightSamples);
+        assertEquals(World.defaultRecursionDepth, world.recursionDepth());
+        assertEquals(World.allLightSamples, world.lightSamples());
+    }
+}
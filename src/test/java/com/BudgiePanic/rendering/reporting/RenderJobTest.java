@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.scene.CountingCamera;
+import com.BudgiePanic.rendering.scene.SuperSamplingCamera;
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Color;
+
+/**
+ * Tests for background render jobs.
+ */
+public class RenderJobTest {
+
+    static final RenderOptions singleThread = RenderOptions.defaultOptions().setTileSize(8).setThreads(1);
+
+    @Test
+    void testRenderAsync() throws Exception {
+        final var world = new World();
+        final var camera = new CountingCamera();
+        final var job = RenderJob.renderAsync(world, camera, RenderOptions.defaultOptions().setTileSize(10));
+        final var image = job.result().get(10, TimeUnit.SECONDS);
+        assertEquals(16, job.tiles());
+        assertEquals(16, job.completedTiles());
+        assertEquals(32 * 32, camera.samples().get());
+        assertEquals(1.0, job.progress());
+        assertEquals(Duration.ZERO, job.eta().get());
+        for (int row = 0; row < 32; row++) {
+            for (int col = 0; col < 32; col++) {
+                assertEquals(new Color((col + 0.5) / 32, (row + 0.5) / 32, 0), image.getPixel(col, row));
+            }
+        }
+        // the last tiles are clipped to the image
+        assertEquals(new RenderJob.Tile(15, 30, 30, 2, 2), job.tile(15));
+    }
+
+    /**
+     * Camera that does not start rendering until it is opened.
+     */
+    static class GatedCamera extends CountingCamera {
+        final CountDownLatch gate = new CountDownLatch(1);
+        @Override
+        public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return super.pixelAt(world, pixelColumn, pixelRow, time);
+        }
+    }
+
+    @Test
+    void testTileCallbacks() throws Exception {
+        final var tiles = new AtomicInteger();
+        final var camera = new GatedCamera();
+        final var job = RenderJob.renderAsync(new World(), camera, singleThread);
+        job.onTileComplete(tile -> {
+            tiles.incrementAndGet();
+            assertEquals(64, tile.width() * tile.height());
+        });
+        assertTrue(job.eta().isEmpty());
+        camera.gate.countDown();
+        job.result().get(10, TimeUnit.SECONDS);
+        assertEquals(16, tiles.get());
+        // late listeners are told about every finished tile
+        final var late = new AtomicInteger();
+        job.onTileComplete(tile -> late.incrementAndGet());
+        assertEquals(16, late.get());
+    }
+
+    @Test
+    void testCancel() {
+        final var camera = new GatedCamera();
+        final var job = RenderJob.renderAsync(new World(), camera, singleThread.setThreads(2));
+        job.onTileComplete(tile -> job.cancel());
+        camera.gate.countDown();
+        assertThrows(CancellationException.class, () -> job.result().get(10, TimeUnit.SECONDS));
+        // each worker stops after the tile it was rendering
+        assertTrue(job.completedTiles() <= 2 + 2, "completed " + job.completedTiles());
+        assertTrue(camera.samples().get() < 32 * 32);
+    }
+
+    @Test
+    void testSuperSampledCameraIsTiled() {
+        final var inner = new GatedCamera();
+        final var camera = new TimingWrapper(new SuperSamplingCamera(inner, SuperSamplingCamera.grid));
+        final var job = RenderJob.renderAsync(new World(), camera, singleThread);
+        final var progress = new ArrayList<Double>();
+        job.onTileComplete(tile -> {
+            progress.add(job.progress());
+            job.cancel();
+        });
+        assertEquals(16, job.tiles());
+        inner.gate.countDown();
+        assertThrows(CancellationException.class, () -> job.result().get(10, TimeUnit.SECONDS));
+        // the job reported progress after the first tile and stopped long before the whole image was sampled
+        assertEquals(1.0 / 16, progress.get(0));
+        assertTrue(job.completedTiles() < 16, "completed " + job.completedTiles());
+        assertTrue(inner.samples().get() < 32 * 32 * 4);
+    }
+
+    @Test
+    void testPauseAndResume() throws Exception {
+        final var paused = new CountDownLatch(1);
+        final var camera = new GatedCamera();
+        final var job = RenderJob.renderAsync(new World(), camera, singleThread);
+        job.onTileComplete(tile -> {
+            if (paused.getCount() > 0) {
+                job.pause();
+                paused.countDown();
+            }
+        });
+        camera.gate.countDown();
+        assertTrue(paused.await(10, TimeUnit.SECONDS));
+        final int completed = job.completedTiles();
+        Thread.sleep(50);
+        assertTrue(job.isPaused());
+        assertEquals(completed, job.completedTiles());
+        assertFalse(job.result().isDone());
+        job.resume();
+        job.result().get(10, TimeUnit.SECONDS);
+        assertEquals(16, job.completedTiles());
+    }
+
+    @Test
+    void testFailedTile() {
+        final var job = RenderJob.renderAsync(new World(), new CountingCamera() {
+            @Override
+            public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
+                if (pixelColumn > 16) { throw new IllegalStateException("out of memory"); }
+                return super.pixelAt(world, pixelColumn, pixelRow, time);
+            }
+        }, singleThread);
+        final var error = assertThrows(ExecutionException.class, () -> job.result().get(10, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void testFailedListener() throws Exception {
+        final var job = RenderJob.renderAsync(new World(), new CountingCamera(), singleThread);
+        final var calls = new AtomicInteger();
+        job.onTileComplete(tile -> { throw new IllegalStateException("listener bug"); });
+        job.onTileComplete(tile -> calls.incrementAndGet());
+        // a listener that throws does not fail the render or stop the other listeners
+        job.result().get(10, TimeUnit.SECONDS);
+        assertEquals(16, calls.get());
+    }
+
+    @Test
+    void testRejectedWorkers() {
+        final var submitted = new AtomicInteger();
+        final Executor full = task -> {
+            if (submitted.incrementAndGet() > 1) { throw new RejectedExecutionException("queue full"); }
+            new Thread(task).start();
+        };
+        final var job = RenderJob.renderAsync(new World(), new CountingCamera(), RenderOptions.defaultOptions().setTileSize(8).setThreads(4).setExecutor(full));
+        final var error = assertThrows(ExecutionException.class, () -> job.result().get(10, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof RejectedExecutionException);
+    }
+}
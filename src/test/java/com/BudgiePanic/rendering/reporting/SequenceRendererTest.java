@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.reporting;
+
+import static com.BudgiePanic.rendering.util.AngleHelp.toRadians;
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.light.AreaLight;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Plane;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.TransformCurve;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+import com.BudgiePanic.rendering.util.transform.View;
+
+/**
+ * Tests for rendering animation sequences.
+ */
+public class SequenceRendererTest {
+
+    static final int size = 24;
+
+    static final int frames = 4;
+
+    static final Material matte = Material.color(new Color(0.8, 0.6, 0.4)).setSpecular(0);
+
+    static World world(Material material) {
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+        world.addShape(new Sphere(Matrix4.identity(), material));
+        world.addShape(new Plane(Transforms.identity().translate(0, -1, 0).assemble(), material));
+        return world;
+    }
+
+    static SequenceRenderer renderer(TransformCurve camera, boolean reprojection) {
+        final var renderer = new SequenceRenderer(size, size, toRadians(60), camera, frames, 1.0, reprojection);
+        // a small sphere rolls across the floor
+        renderer.addTrack(
+            TransformCurve.linear(
+                Transforms.identity().scale(0.5).translate(-2, -0.5, -1.5).assemble(),
+                Transforms.identity().scale(0.5).translate(2, -0.5, -1.5).assemble(), frames - 1),
+            transform -> new Sphere(transform, matte));
+        return renderer;
+    }
+
+    static Canvas[] render(SequenceRenderer renderer, World world) {
+        final Canvas[] result = new Canvas[frames];
+        renderer.render(world, (frame, canvas) -> result[frame] = canvas);
+        return result;
+    }
+
+    static final TransformCurve still = TransformCurve.constant(View.makeViewMatrix(makePoint(0, 1.5, -5), makePoint(0, 0, 0), Directions.up));
+
+    @Test
+    void testReprojectionMatchesTracing() {
+        final var world = world(matte);
+        final var expected = render(renderer(still, false), world);
+        final var reprojecting = renderer(still, true);
+        final var result = render(reprojecting, world);
+        for (int frame = 0; frame < frames; frame++) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    assertEquals(expected[frame].getPixel(col, row), result[frame].getPixel(col, row), "frame " + frame + " pixel " + col + ", " + row);
+                }
+            }
+        }
+        assertTrue(reprojecting.reusedPixels() > size * size, "reused " + reprojecting.reusedPixels());
+        assertEquals(frames * size * size, reprojecting.reusedPixels() + reprojecting.tracedPixels());
+        // the moving shapes are taken out of the world when the sequence is done
+        assertEquals(2, world.getShapes().size());
+    }
+
+    @Test
+    void testReprojectionWithAreaLight() {
+        // the rolling sphere's soft shadow changes points whose ray to the center of the light is never blocked
+        final var world = new World();
+        world.addLight(new AreaLight(Colors.white, makePoint(-5, 5, -5), makeVector(4, 0, 0), makeVector(0, 0, 4), 3, 3, AreaLight.constantSamples));
+        world.addShape(new Plane(Transforms.identity().translate(0, -1, 0).assemble(), matte));
+        final var expected = render(renderer(still, false), world);
+        final var reprojecting = renderer(still, true);
+        final var result = render(reprojecting, world);
+        for (int frame = 0; frame < frames; frame++) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    assertEquals(expected[frame].getPixel(col, row), result[frame].getPixel(col, row), "frame " + frame + " pixel " + col + ", " + row);
+                }
+            }
+        }
+        assertTrue(reprojecting.reusedPixels() > 0);
+    }
+
+    @Test
+    void testReprojectionWithMovingCamera() {
+        final var world = world(matte);
+        final var orbit = TransformCurve.turntable(still.at(0), 90);
+        final var expected = render(renderer(orbit, false), world);
+        final var reprojecting = renderer(orbit, true);
+        final var result = render(reprojecting, world);
+        assertTrue(reprojecting.reusedPixels() > 0);
+        double error = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    final var e = expected[frame].getPixel(col, row);
+                    final var r = result[frame].getPixel(col, row);
+                    error += Math.abs(e.getRed() - r.getRed()) + Math.abs(e.getGreen() - r.getGreen()) + Math.abs(e.getBlue() - r.getBlue());
+                }
+            }
+        }
+        error /= frames * size * size * 3;
+        assertTrue(error < 0.01, "mean error " + error);
+    }
+
+    @Test
+    void testViewDependentMaterialsAreTraced() {
+        final var world = world(Material.defaultMaterial());
+        final var renderer = new SequenceRenderer(size, size, toRadians(60), still, frames, 1.0, true);
+        final var result = render(renderer, world);
+        assertEquals(0, renderer.reusedPixels());
+        assertEquals(frames, List.of(result).size());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+
+/**
+ * Test support camera that colors pixels by their position and counts how many samples it takes.
+ * Shared by the tests of the cameras and renderers that wrap other cameras.
+ */
+public class CountingCamera implements Camera {
+
+    protected final AtomicInteger samples = new AtomicInteger();
+
+    /**
+     * Get the number of samples taken so far.
+     * @return
+     *   The sample counter.
+     */
+    public AtomicInteger samples() { return samples; }
+
+    @Override public int width() { return 32; }
+
+    @Override public int height() { return 32; }
+
+    /**
+     * Orthographic rays looking down the z axis, one unit per pixel.
+     */
+    @Override public Ray createRay(double pixelColumn, double pixelRow, double time) {
+        return new Ray(Tuple.makePoint(pixelColumn, -pixelRow, -5), Tuple.makeVector(0, 0, 1), time);
+    }
+
+    @Override
+    public Color pixelAt(World world, double pixelColumn, double pixelRow, double time) {
+        samples.incrementAndGet();
+        return new Color(pixelColumn / width(), pixelRow / height(), 0);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import static com.BudgiePanic.rendering.util.AngleHelp.toRadians;
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.ArrayCanvas;
+import com.BudgiePanic.rendering.util.Color;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.shape.composite.Group;
+import com.BudgiePanic.rendering.util.transform.View;
+
+/**
+ * Tests for the edge adaptive anti aliasing camera.
+ */
+public class EdgeAdaptiveCameraTest {
+
+    @Test
+    void testFindEdges() {
+        final var sphere = new Sphere(Matrix4.identity());
+        final var pass = new EdgeAdaptiveCamera.FirstPass(3, 1);
+        // [sphere] [sphere] [miss]
+        for (int i = 0; i < 2; i++) {
+            pass.owners()[i] = sphere;
+            pass.materials()[i] = sphere.material();
+            pass.normals()[i] = makeVector(0, 0, -1);
+            pass.depths()[i] = 4;
+            pass.colors()[i] = Colors.white;
+        }
+        pass.normals()[2] = makeVector();
+        pass.depths()[2] = Double.POSITIVE_INFINITY;
+        pass.colors()[2] = Colors.black;
+        final var camera = new EdgeAdaptiveCamera(new PinHoleCamera(3, 1, toRadians(90), Matrix4.identity()), SuperSamplingCamera.denseGrid);
+        var result = camera.findEdges(pass);
+        assertFalse(result[0]);
+        assertTrue(result[1]);
+        assertTrue(result[2]);
+        // the normals of the first two pixels point in different directions
+        pass.normals()[0] = makeVector(0, 1, 0);
+        result = camera.findEdges(pass);
+        assertTrue(result[0]);
+        // depth discontinuity on the same shape
+        pass.normals()[0] = makeVector(0, 0, -1);
+        pass.depths()[0] = 8;
+        result = camera.findEdges(pass);
+        assertTrue(result[0]);
+        // color discontinuity on the same shape
+        pass.depths()[0] = 4;
+        pass.colors()[0] = Colors.red;
+        result = camera.findEdges(pass);
+        assertTrue(result[0]);
+        // different shapes with the same material in the same top level group are one surface
+        pass.colors()[0] = Colors.white;
+        final var other = new Sphere(Matrix4.identity());
+        final var group = new Group(Matrix4.identity());
+        group.addShape(sphere);
+        group.addShape(other);
+        pass.owners()[0] = EdgeAdaptiveCamera.owner(sphere);
+        pass.owners()[1] = EdgeAdaptiveCamera.owner(other);
+        result = camera.findEdges(pass);
+        assertFalse(result[0]);
+        // a different material is a different surface
+        pass.materials()[0] = Material.color(Colors.red);
+        result = camera.findEdges(pass);
+        assertTrue(result[0]);
+    }
+
+    @Test
+    void testOnlyEdgesAreSupersampled() {
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+        world.addShape(new Sphere(Matrix4.identity(), Material.color(Colors.white).setSpecular(0).setDiffuse(0).setAmbient(1)));
+        final int size = 21;
+        final var pinhole = new PinHoleCamera(size, size, toRadians(90), View.makeViewMatrix(makePoint(0, 0, -3), makePoint(0, 0, 0), Directions.up));
+        final var camera = new EdgeAdaptiveCamera(pinhole, SuperSamplingCamera.denseGrid);
+        final var supersampled = new SuperSamplingCamera(pinhole, SuperSamplingCamera.denseGrid);
+        final var image = camera.takePicture(world);
+        assertTrue(camera.edgePixels() > 0);
+        assertTrue(camera.edgePixels() < size * size / 2, "edge pixels " + camera.edgePixels());
+        // the center of the sphere and the corners of the image are not on an edge
+        assertEquals(Colors.white, image.getPixel(size / 2, size / 2));
+        assertEquals(Colors.black, image.getPixel(0, 0));
+        // the anti aliased image should match a fully supersampled image
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                final Color expected = supersampled.pixelExposureAt(world, col, row);
+                final Color result = image.getPixel(col, row);
+                assertEquals(expected, result, "pixel " + col + " " + row);
+            }
+        }
+    }
+
+    @Test
+    void testTilesMatchWholePicture() {
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+        world.addShape(new Sphere(Matrix4.identity()));
+        final int size = 21;
+        final var pinhole = new PinHoleCamera(size, size, toRadians(90), View.makeViewMatrix(makePoint(0, 0, -3), makePoint(0, 0, 0), Directions.up));
+        final var camera = new EdgeAdaptiveCamera(pinhole, SuperSamplingCamera.grid);
+        final var expected = camera.takePicture(world);
+        // tiles that do not line up with the image, so sphere edges cross the tile borders
+        final var tiled = new ArrayCanvas(size, size);
+        final int tileSize = 4;
+        for (int row = 0; row < size; row += tileSize) {
+            for (int col = 0; col < size; col += tileSize) {
+                camera.renderTile(world, tiled, col, row, Math.min(tileSize, size - col), Math.min(tileSize, size - row));
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                assertEquals(expected.getPixel(col, row), tiled.getPixel(col, row), "pixel " + col + " " + row);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.shape.composite.CompoundOperation;
+import com.BudgiePanic.rendering.util.shape.composite.CompoundShape;
+import com.BudgiePanic.rendering.util.shape.composite.Group;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests for the shadow ray occluder cache.
+ */
+public class OccluderCacheTest {
+
+    @Test
+    void testRepeatedShadowTestHitsCache() {
+        var world = new World();
+        var light = new PointLight(makePoint(0, 10, 0), Colors.white);
+        world.addLight(light);
+        world.addShape(new Sphere(Transforms.identity().translate(0, 5, 0).assemble()));
+        var cache = world.occluderCache();
+        assertTrue(world.isOccluded(makePoint(0, 0, 0), light.position(), light, 0));
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+        assertTrue(world.isOccluded(makePoint(0.1, 0, 0), light.position(), light, 0));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        // the remembered sphere is not between this point and the light
+        assertFalse(world.isOccluded(makePoint(5, 0, 0), light.position(), light, 0));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void testCachedShapeInTransformedGroup() {
+        var world = new World();
+        var light = new PointLight(makePoint(0, 10, 0), Colors.white);
+        var group = new Group(Transforms.identity().translate(2, 0, 0).assemble());
+        var inner = new Group(Transforms.identity().scale(2, 2, 2).assemble());
+        var sphere = new Sphere(Transforms.identity().scale(0.5, 0.5, 0.5).translate(-1, 2.5, 0).assemble());
+        inner.addShape(sphere);
+        group.addShape(inner);
+        world.addLight(light);
+        world.addShape(group);
+        // the sphere is centered at [0, 5, 0] with a radius of 1 in world space
+        assertTrue(world.isOccluded(makePoint(0, 0, 0), light.position(), light, 0));
+        assertTrue(world.isOccluded(makePoint(0.5, 0, 0), light.position(), light, 0));
+        assertEquals(1, world.occluderCache().hits());
+        assertFalse(world.isOccluded(makePoint(3, 0, 0), light.position(), light, 0));
+    }
+
+    @Test
+    void testAddingShapesInvalidatesCache() {
+        var world = new World();
+        var light = new PointLight(makePoint(0, 10, 0), Colors.white);
+        world.addShape(new Sphere(Transforms.identity().translate(0, 5, 0).assemble()));
+        assertTrue(world.isOccluded(makePoint(0, 0, 0), light.position(), light, 0));
+        world.addShape(new Sphere(Transforms.identity().translate(0, -5, 0).assemble()));
+        assertTrue(world.isOccluded(makePoint(0, 0, 0), light.position(), light, 0));
+        assertEquals(0, world.occluderCache().hits());
+        assertEquals(2, world.occluderCache().misses());
+    }
+
+    @Test
+    void testCompoundShapeChildrenAreNotCached() {
+        var left = new Sphere(Matrix4.identity());
+        var right = new Sphere(Transforms.identity().translate(0.5, 0, 0).assemble());
+        new CompoundShape(CompoundOperation.difference, left, right, Matrix4.identity());
+        assertFalse(OccluderCache.isCacheable(left));
+        var group = new Group(Matrix4.identity());
+        var sphere = new Sphere(Matrix4.identity());
+        group.addShape(sphere);
+        assertTrue(OccluderCache.isCacheable(sphere));
+        assertFalse(OccluderCache.isCacheable(group));
+    }
+}
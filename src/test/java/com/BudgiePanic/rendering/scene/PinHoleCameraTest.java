@@ -119,4 +119,19 @@ public class PinHoleCameraTest {
         assertEquals(new Color(0.38066f, 0.47583f, 0.2855f), result.getPixel(5, 5));
     }
 
+
+    @Test
+    void testCameraPixelOf() {
+        var camera = new PinHoleCamera(
+            201, 101,
+            AngleHelp.toRadians(90.0),
+            View.makeViewMatrix(Tuple.makePoint(1, 2, -5), Tuple.makePoint(0, 0, 0), Tuple.makeVector(0, 1, 0)));
+        var ray = camera.createRay(37.25, 80.5, 0);
+        var result = camera.pixelOf(ray.position(7.5));
+        assertTrue(result.isPresent());
+        assertEquals(0, FloatHelp.compareFloat(37.25, result.get().a()));
+        assertEquals(0, FloatHelp.compareFloat(80.5, result.get().b()));
+        // points behind the camera do not project onto the image
+        assertTrue(camera.pixelOf(ray.position(-1)).isEmpty());
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import static com.BudgiePanic.rendering.util.AngleHelp.toRadians;
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Canvas;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Plane;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.Translation;
+import com.BudgiePanic.rendering.util.transform.View;
+
+/**
+ * Tests for the geometry buffer caching camera.
+ */
+public class ReshadingCameraTest {
+
+    static final int size = 16;
+
+    static PinHoleCamera pinhole() {
+        return new PinHoleCamera(size, size, toRadians(90), View.makeViewMatrix(makePoint(0, 1, -4), makePoint(0, 0, 0), Directions.up));
+    }
+
+    static World world(Sphere sphere) {
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+        world.addShape(sphere);
+        world.addShape(new Plane(Translation.makeTranslationMatrix(0, -1, 0)));
+        return world;
+    }
+
+    static void assertSameImage(Canvas expected, Canvas actual) {
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                assertEquals(expected.getPixel(col, row), actual.getPixel(col, row), "pixel " + col + ", " + row);
+            }
+        }
+    }
+
+    @Test
+    void testReshadingMatchesFreshRender() {
+        final var sphere = new Sphere(Matrix4.identity());
+        final var world = world(sphere);
+        final var camera = new ReshadingCamera(pinhole());
+        assertSameImage(pinhole().takePicture(world), camera.takePicture(world));
+        assertEquals(1, camera.captures());
+        // material change
+        sphere.setMaterial(Material.color(Colors.red).setReflectivity(0.5));
+        final var expected = pinhole().takePicture(world);
+        assertNotEquals(expected.getPixel(size / 2, size / 2), Colors.black);
+        assertSameImage(expected, camera.takePicture(world));
+        // light change
+        world.getLights().set(0, new PointLight(makePoint(10, 10, -10), Colors.white));
+        assertSameImage(pinhole().takePicture(world), camera.takePicture(world));
+        assertEquals(1, camera.captures());
+    }
+
+    @Test
+    void testGeometryChangeRecaptures() {
+        final var world = world(new Sphere(Matrix4.identity()));
+        final var camera = new ReshadingCamera(pinhole());
+        camera.takePicture(world);
+        camera.takePicture(world);
+        assertEquals(1, camera.captures());
+        world.addShape(new Sphere(Translation.makeTranslationMatrix(1.5, 0, 0)));
+        assertSameImage(pinhole().takePicture(world), camera.takePicture(world));
+        assertEquals(2, camera.captures());
+        camera.takePicture(world(new Sphere(Matrix4.identity())));
+        assertEquals(3, camera.captures());
+        camera.invalidate();
+        camera.takePicture(world);
+        assertEquals(4, camera.captures());
+    }
+
+    @Test
+    void testReshadingSupersampled() {
+        final var world = world(new Sphere(Matrix4.identity()));
+        final var camera = new ReshadingCamera(pinhole(), SuperSamplingCamera.grid);
+        assertSameImage(new SuperSamplingCamera(pinhole(), SuperSamplingCamera.grid).takePicture(world), camera.takePicture(world));
+        assertThrows(IllegalArgumentException.class, () -> new ReshadingCamera(pinhole(), SuperSamplingCamera.dynamicCornerGrid));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Color;
+
+/**
+ * Tests for the tile sample cache.
+ */
+public class SampleLatticeTest {
+
+    @Test
+    void testLatticeReusesSamples() {
+        final var world = new World();
+        final var camera = new CountingCamera();
+        final var lattice = new SampleLattice(world, camera, 0);
+        var result = lattice.sample(1.5, 2.25);
+        assertEquals(new Color(1.5 / 32, 2.25 / 32, 0), result);
+        assertEquals(1, camera.samples.get());
+        result = lattice.sample(1.5, 2.25);
+        assertEquals(new Color(1.5 / 32, 2.25 / 32, 0), result);
+        assertEquals(1, camera.samples.get());
+        assertEquals(1, lattice.hits());
+        assertEquals(1, lattice.misses());
+        // positions off the lattice are always traced
+        lattice.sample(0.1, 0.1);
+        lattice.sample(0.1, 0.1);
+        assertEquals(3, camera.samples.get());
+        assertEquals(1, lattice.hits());
+    }
+
+    @Test
+    void testLatticeMatches() {
+        final var world = new World();
+        final var camera = new CountingCamera();
+        final var lattice = new SampleLattice(world, camera, 0);
+        assertTrue(lattice.matches(world, camera, 0));
+        assertFalse(lattice.matches(world, camera, 0.5));
+        assertFalse(lattice.matches(new World(), camera, 0));
+        assertFalse(lattice.matches(world, new CountingCamera(), 0));
+    }
+}
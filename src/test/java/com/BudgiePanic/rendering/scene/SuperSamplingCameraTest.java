@@ -28,8 +28,10 @@ import org.junit.jupiter.api.Test;
 import com.BudgiePanic.rendering.io.CanvasWriter;
 import com.BudgiePanic.rendering.util.Colors;
 import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.Film;
 import com.BudgiePanic.rendering.util.FloatHelp;
 import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.ReconstructionFilter;
 import com.BudgiePanic.rendering.util.light.PointLight;
 import com.BudgiePanic.rendering.util.shape.Triangle;
 import com.BudgiePanic.rendering.util.transform.View;
@@ -115,4 +117,53 @@ public class SuperSamplingCameraTest {
         // only the rotated grid passes this currently.
         assertEquals(expected, result);
     }
+
+    @Test
+    void testDynamicSamplerSharesSamples() {
+        final var camera = new CountingCamera();
+        final var world = new World();
+        final var mode = new SuperSamplingCamera.DynamicSampler(0.0, 2);
+        final var lattice = new SampleLattice(world, camera, 0);
+        // neighbouring pixels share two corners
+        final var left = mode.pixelAt(world, camera, 0.5, 0.5, 0, lattice);
+        final var right = mode.pixelAt(world, camera, 1.5, 0.5, 0, lattice);
+        assertEquals(8, camera.samples.get());
+        assertEquals(2, lattice.hits());
+        // sharing samples does not change the pixel color
+        assertEquals(left, mode.pixelAt(world, camera, 0.5, 0.5, 0));
+        assertEquals(right, mode.pixelAt(world, camera, 1.5, 0.5, 0));
+    }
+
+    @Test
+    void testTiledPictureMatchesPixels() {
+        final var inner = new CountingCamera();
+        final var camera = new SuperSamplingCamera(inner, SuperSamplingCamera.dynamicCornerGrid);
+        final var world = new World();
+        final var image = camera.takePicture(world);
+        final int traced = inner.samples.get();
+        inner.samples.set(0);
+        for (int row = 0; row < camera.height(); row++) {
+            for (int col = 0; col < camera.width(); col++) {
+                assertEquals(camera.pixelExposureAt(world, col, row), image.getPixel(col, row));
+            }
+        }
+        assertTrue(traced < inner.samples.get(), "tiled samples " + traced + " untiled samples " + inner.samples.get());
+    }
+
+    @Test
+    void testFilmBoxFilterMatchesAveraging() {
+        final var inner = new CountingCamera();
+        final var camera = new SuperSamplingCamera(inner, SuperSamplingCamera.grid);
+        final var world = new World();
+        final var image = camera.takePicture(world);
+        final var film = camera.takePicture(world, new Film(camera.width(), camera.height(), ReconstructionFilter.box));
+        for (int row = 0; row < camera.height(); row++) {
+            for (int col = 0; col < camera.width(); col++) {
+                assertEquals(image.getPixel(col, row), film.getPixel(col, row));
+            }
+        }
+        // wider filters blend the samples of neighbouring pixels
+        final var tent = camera.takePicture(world, new Film(camera.width(), camera.height(), ReconstructionFilter.tent));
+        assertEquals(image.getPixel(10, 10), tent.getPixel(10, 10));
+    }
 }
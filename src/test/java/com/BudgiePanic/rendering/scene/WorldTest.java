@@ -25,6 +25,7 @@ import static com.BudgiePanic.rendering.util.shape.composite.CompoundOperation.d
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
@@ -46,6 +47,7 @@ import com.BudgiePanic.rendering.util.Pair;
 import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.intersect.Intersection;
 import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.light.LightTree;
 import com.BudgiePanic.rendering.util.light.Phong;
 import com.BudgiePanic.rendering.util.light.PointLight;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
@@ -60,6 +62,7 @@ import com.BudgiePanic.rendering.util.shape.Shape;
 import com.BudgiePanic.rendering.util.shape.Sphere;
 import com.BudgiePanic.rendering.util.shape.Torus;
 import com.BudgiePanic.rendering.util.shape.composite.CompoundShape;
+import com.BudgiePanic.rendering.util.shape.composite.Group;
 import com.BudgiePanic.rendering.util.transform.Transforms;
 import com.BudgiePanic.rendering.util.transform.View;
 
@@ -122,6 +125,20 @@ public class WorldTest {
         assertEquals(new Color(0.38066f, 0.47583f, 0.2855f), result);
     }
 
+    @Test
+    void testWorldShadingWithLightTree() {
+        var world = new World();
+        world.getShapes().addAll(defaultTestWorld.getShapes());
+        world.addLight(defaultTestWorld.getLights().get(0));
+        world.addLight(new PointLight(Tuple.makePoint(10, 10, -10), new Color(0.5f, 0.5f, 0.5f)));
+        var ray = new Ray(Tuple.makePoint(0, 0, -5), Tuple.makeVector(0,0,1));
+        var info = new Intersection(4.0, world.getShapes().get(0)).computeShadingInfo(ray);
+        var expected = world.shadeHit(info);
+        world.buildLightTree(LightTree.allLights);
+        var result = world.shadeHit(info);
+        assertEquals(expected, result);
+    }
+
     @Test
     void testWorldShadingInsideShape() {
         var world = new World();
@@ -835,4 +852,109 @@ public class WorldTest {
         // if the perturb is removed from the pattern, then the color will become white
         assertEquals(new Color(0.1, 0.1, 0.1), result);
     }
+
+    @Test
+    void testCompiledShadowCasters() {
+        final var shadowless = Material.defaultMaterial().setShadow(false);
+        final var group = new Group(identity());
+        group.addShape(new Sphere(Transforms.identity().translate(0, 2, 0).assemble(), shadowless));
+        group.addShape(new Sphere(Transforms.identity().translate(3, 2, 0).assemble()));
+        final var world = new World();
+        world.addShape(group);
+        world.addShape(new Sphere(Transforms.identity().translate(-3, 2, 0).assemble(), shadowless));
+        world.addLight(new PointLight(makePoint(0, 10, 0), Colors.white));
+        final var tests = List.of(
+            new Pair<>(makePoint(0, 0, 0), false),
+            new Pair<>(makePoint(3, 0, 0), true),
+            new Pair<>(makePoint(-3, 0, 0), false),
+            new Pair<>(makePoint(6, 0, 0), false)
+        );
+        final var light = world.getLights().get(0);
+        for (var test : tests) {
+            assertEquals(test.b(), world.isOccluded(test.a(), light.position(), World.shadowCasters, 0), "test: " + test.toString());
+        }
+        world.compile();
+        assertTrue(world.shadowShapes.isPresent());
+        assertEquals(1, world.shadowShapes.get().size());
+        for (var test : tests) {
+            assertEquals(test.b(), world.isOccluded(test.a(), light.position(), World.shadowCasters, 0), "test: " + test.toString());
+            assertEquals(test.b(), world.isOccluded(test.a(), light.position(), light, 0), "test: " + test.toString());
+        }
+        // primary rays still see every shape
+        assertEquals(2, world.intersect(new Ray(makePoint(0, 0, 0), makeVector(0, 1, 0))).get().size());
+        // adding shapes discards the compiled structure
+        final var pruned = world.shadowShapes.get().get(0);
+        world.addShape(new Sphere(Transforms.identity().translate(0, 5, 0).assemble()));
+        assertTrue(world.shadowShapes.isEmpty());
+        assertTrue(world.isOccluded(makePoint(0, 0, 0), light.position(), World.shadowCasters, 0));
+        // compiling again only compiles the new shape, the group keeps its pruned hierarchy
+        world.compile();
+        assertEquals(2, world.shadowShapes.get().size());
+        assertTrue(world.shadowShapes.get().get(0) == pruned);
+        // changed shapes are compiled again after the geometry is invalidated
+        world.invalidateGeometry();
+        world.compile();
+        assertTrue(world.shadowShapes.get().get(0) != pruned);
+    }
+
+    @Test
+    void testWorldThreadLimits() {
+        final var world = new World();
+        final int[] seen = new int[4];
+        world.withLimits(1, 3, () -> {
+            seen[0] = world.recursionDepth();
+            seen[1] = world.lightSamples();
+            // other threads still see the world's own limits
+            final var other = new Thread(() -> { seen[2] = world.recursionDepth(); seen[3] = world.lightSamples(); });
+            other.start();
+            try { other.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+        });
+        assertEquals(1, seen[0]);
+        assertEquals(3, seen[1]);
+        assertEquals(World.defaultRecursionDepth, seen[2]);
+        assertEquals(World.allLightSamples, seen[3]);
+        // the limits are removed once the task is done
+        assertEquals(World.defaultRecursionDepth, world.recursionDepth());
+        assertEquals(World.allLightSamples, world.lightSamples());
+        assertThrows(IllegalArgumentException.class, () -> world.withLimits(-1, 1, () -> {}));
+        assertThrows(IllegalArgumentException.class, () -> world.withLimits(0, 0, () -> {}));
+    }
+
+    @Test
+    void testWorldQualitySettings() {
+        final var world = new World();
+        assertEquals(World.defaultRecursionDepth, world.recursionDepth());
+        assertEquals(World.allLightSamples, world.lightSamples());
+        world.setRecursionDepth(0);
+        world.setLightSamples(2);
+        assertEquals(0, world.recursionDepth());
+        assertEquals(2, world.lightSamples());
+        assertThrows(IllegalArgumentException.class, () -> world.setRecursionDepth(-1));
+        assertThrows(IllegalArgumentException.class, () -> world.setLightSamples(0));
+        // reflections are not traced once the recursion limit is zero
+        final var mirror = new Plane(Transforms.identity().translate(0, -1, 0).assemble(), Material.defaultMaterial().setReflectivity(1));
+        world.addShape(mirror);
+        world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+        final var ray = new Ray(makePoint(0, 0, -3), makeVector(0, -Math.sqrt(2) / 2, Math.sqrt(2) / 2));
+        final var hit = new Intersection(Math.sqrt(2), mirror);
+        final var info = hit.computeShadingInfo(ray);
+        assertEquals(world.shadeHit(info, 0), world.shadeHit(info));
+    }
+
+    @Test
+    void testWorldRemoveShape() {
+        final var world = new World();
+        final var a = new Sphere(identity());
+        final var b = new Sphere(identity());
+        world.addShape(a);
+        world.addShape(b);
+        final long version = world.geometryVersion();
+        // shapes are removed by identity, b is equal to a but is not removed
+        assertTrue(world.removeShape(a));
+        assertEquals(List.of(b), world.getShapes());
+        assertTrue(world.getShapes().get(0) == b);
+        assertFalse(world.removeShape(a));
+        assertTrue(world.geometryVersion() > version);
+        assertThrows(IllegalArgumentException.class, () -> world.removeShape(null));
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the sample accumulation film.
+ */
+public class FilmTest {
+
+    @Test
+    void testEmptyFilm() {
+        var film = new Film(4, 3, ReconstructionFilter.box);
+        assertEquals(4, film.getWidth());
+        assertEquals(3, film.getHeight());
+        assertEquals(Colors.black, film.getPixel(3, 2));
+        assertThrows(IllegalArgumentException.class, () -> film.getPixel(4, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Film(0, 1, ReconstructionFilter.box));
+    }
+
+    @Test
+    void testBoxFilterAveragesPixelSamples() {
+        var film = new Film(2, 2, ReconstructionFilter.box);
+        film.addSample(0.25, 0.25, Colors.white);
+        film.addSample(0.75, 0.75, Colors.black);
+        film.addSample(1.5, 0.5, Colors.red);
+        assertEquals(new Color(0.5, 0.5, 0.5), film.getPixel(0, 0));
+        assertEquals(Colors.red, film.getPixel(1, 0));
+        assertEquals(Colors.black, film.getPixel(0, 1));
+        assertEquals(Colors.black, film.getPixel(1, 1));
+    }
+
+    @Test
+    void testSampleOnPixelBoundary() {
+        var film = new Film(2, 1, ReconstructionFilter.box);
+        film.addSample(0.25, 0.5, Colors.white);
+        // a sample on the boundary between two pixels belongs to the pixel on its right, like any other sample in [col, col + 1)
+        film.addSample(1.0, 0.5, Colors.red);
+        assertEquals(Colors.white, film.getPixel(0, 0));
+        assertEquals(Colors.red, film.getPixel(1, 0));
+    }
+
+    @Test
+    void testTentFilterSplatsNeighbours() {
+        var film = new Film(3, 1, ReconstructionFilter.tent);
+        film.addSample(1.5, 0.5, Colors.white);
+        // the sample lands on the center of the middle pixel, the neighbours are exactly one radius away
+        assertEquals(Colors.white, film.getPixel(1, 0));
+        assertEquals(Colors.black, film.getPixel(0, 0));
+        film.addSample(1.0, 0.5, Colors.red);
+        // the second sample is half way between the first two pixels
+        assertEquals(Colors.red, film.getPixel(0, 0));
+        // middle pixel: (white * 1.0 + red * 0.5) / 1.5
+        assertEquals(new Color(1.0, 2.0 / 3.0, 2.0 / 3.0), film.getPixel(1, 0));
+    }
+
+    @Test
+    void testFilmDevelop() {
+        var film = new Film(2, 2, ReconstructionFilter.mitchell);
+        film.addSample(1.0, 1.0, Colors.green);
+        var canvas = film.develop();
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < 2; col++) {
+                assertEquals(Colors.green, canvas.getPixel(col, row));
+            }
+        }
+        film.clear();
+        assertEquals(Colors.black, film.getPixel(0, 0));
+    }
+
+    @Test
+    void testConcurrentSplatting() {
+        var film = new Film(8, 8, ReconstructionFilter.gaussian);
+        final var color = new Color(0.2, 0.4, 0.6);
+        IntStream.range(0, 10000).parallel().forEach(i -> film.addSample((i % 97) / 97.0 * 8, (i % 89) / 89.0 * 8, color));
+        var canvas = film.develop();
+        for (var pixel : canvas) {
+            assertEquals(color, pixel);
+        }
+        assertTrue(film.filter() == ReconstructionFilter.gaussian);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util;
+
+import static com.BudgiePanic.rendering.util.FloatHelp.compareFloat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the film reconstruction filters.
+ */
+public class ReconstructionFilterTest {
+
+    @Test
+    void testFiltersAreZeroOutsideRadius() {
+        final var filters = List.of(ReconstructionFilter.box, ReconstructionFilter.tent, ReconstructionFilter.gaussian, ReconstructionFilter.mitchell, ReconstructionFilter.lanczos);
+        for (var filter : filters) {
+            assertEquals(0.0, filter.evaluate(filter.radius() + 0.01));
+            assertEquals(0.0, filter.evaluate(-filter.radius() - 0.01));
+            assertTrue(filter.evaluate(0.0) > 0.0);
+            assertTrue(compareFloat(filter.evaluate(0.3), filter.evaluate(-0.3)) == 0);
+        }
+    }
+
+    @Test
+    void testFilterValues() {
+        final var tests = List.of(
+            new Pair<>(ReconstructionFilter.box.evaluate(0.4), 1.0),
+            new Pair<>(ReconstructionFilter.tent.evaluate(0.25), 0.75),
+            new Pair<>(ReconstructionFilter.tent.evaluate(0.5, 0.5), 0.25),
+            new Pair<>(ReconstructionFilter.gaussian.evaluate(1.5), 0.0),
+            new Pair<>(ReconstructionFilter.mitchell.evaluate(0.0), 16.0 / 18.0),
+            new Pair<>(ReconstructionFilter.mitchell.evaluate(2.0), 0.0),
+            new Pair<>(ReconstructionFilter.lanczos.evaluate(0.0), 1.0),
+            new Pair<>(ReconstructionFilter.lanczos.evaluate(1.0), 0.0)
+        );
+        for (var test : tests) {
+            assertTrue(compareFloat(test.b(), test.a()) == 0, "test: " + test.toString());
+        }
+        // the sharpening filters have negative lobes
+        assertTrue(ReconstructionFilter.mitchell.evaluate(1.5) < 0.0);
+        assertTrue(ReconstructionFilter.lanczos.evaluate(1.5) < 0.0);
+    }
+
+    @Test
+    void testInvalidRadius() {
+        assertThrows(IllegalArgumentException.class, () -> ReconstructionFilter.box(0.0));
+    }
+}
@@ -33,6 +33,7 @@ import com.BudgiePanic.rendering.util.Colors;
 import com.BudgiePanic.rendering.util.FloatHelp;
 import com.BudgiePanic.rendering.util.Material;
 import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.shape.Sphere;
 import com.BudgiePanic.rendering.util.transform.Transforms;
 
@@ -176,4 +177,56 @@ public class AreaLightTest {
             assertEquals(expected, result);
         }
     }
+
+    @Test
+    void testAreaLightFillSamples() {
+        var light = new AreaLight(Colors.white, makePoint(), makeVector(2, 0, 0), makeVector(0,0,1), 4, 2, AreaLight.constantSamples);
+        var buffer = new double[light.resolution() * Light.sampleStride];
+        light.fillSamples(buffer);
+        int index = 0;
+        for (int v = 0; v < 2; v++) {
+            for (int u = 0; u < 4; u++) {
+                var expected = light.sample(u, v);
+                var actual = makePoint(buffer[index], buffer[index + 1], buffer[index + 2]);
+                assertEquals(expected, actual);
+                index += Light.sampleStride;
+            }
+        }
+    }
+
+    @Test
+    void testAreaLightFillSampleSubset() {
+        var light = new AreaLight(Colors.white, makePoint(), makeVector(2, 0, 0), makeVector(0,0,1), 4, 2, AreaLight.constantSamples);
+        var full = new double[light.resolution() * Light.sampleStride];
+        light.fillSamples(full);
+        // the subset matches the evenly spaced samples of the full set, written to the front of the buffer
+        var buffer = new double[light.resolution() * Light.sampleStride];
+        light.fillSamples(buffer, 3);
+        var expected = new int[] {0, 2, 5};
+        for (int i = 0; i < expected.length; i++) {
+            for (int axis = 0; axis < Light.sampleStride; axis++) {
+                assertEquals(full[expected[i] * Light.sampleStride + axis], buffer[i * Light.sampleStride + axis]);
+            }
+        }
+    }
+
+    @Test
+    void testDefaultFillSampleSubset() {
+        var light = new AreaLight(Colors.white, makePoint(), makeVector(2, 0, 0), makeVector(0,0,1), 4, 2, AreaLight.constantSamples);
+        // a light that only provides a sampler uses the default subset, which must agree with the area light's own subset
+        Light plain = new Light() {
+            public Tuple position() { return light.position(); }
+            public Color color() { return light.color(); }
+            public double intensityAt(Tuple point, World world, double time) { return light.intensityAt(point, world, time); }
+            public Iterator<Tuple> sampler() { return light.sampler(); }
+            public int resolution() { return light.resolution(); }
+        };
+        var expected = new double[light.resolution() * Light.sampleStride];
+        var actual = new double[light.resolution() * Light.sampleStride];
+        light.fillSamples(expected, 3);
+        plain.fillSamples(actual, 3);
+        for (int i = 0; i < 3 * Light.sampleStride; i++) {
+            assertEquals(expected[i], actual[i], FloatHelp.epsilon);
+        }
+    }
 }
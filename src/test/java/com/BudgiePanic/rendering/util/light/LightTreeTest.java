@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.light;
+
+import static com.BudgiePanic.rendering.util.AngleHelp.toRadians;
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Directions;
+import com.BudgiePanic.rendering.util.FloatHelp;
+import com.BudgiePanic.rendering.util.RandomSuppliers;
+
+/**
+ * Tests for the light tree acceleration structure.
+ */
+public class LightTreeTest {
+
+    @Test
+    void testCollectAllLightsInFront() {
+        List<Light> lights = List.of(
+            new PointLight(makePoint(-5, 5, 0), Colors.white),
+            new PointLight(makePoint(0, 5, 0), Colors.white),
+            new PointLight(makePoint(5, 5, 0), Colors.white)
+        );
+        var tree = new LightTree(lights, LightTree.allLights);
+        var result = tree.collect(makePoint(), Directions.up);
+        assertEquals(3, result.size());
+        assertTrue(result.containsAll(lights));
+    }
+
+    @Test
+    void testCollectCullsLightsBehindSurface() {
+        var above = new PointLight(makePoint(0, 5, 0), Colors.white);
+        var below = new PointLight(makePoint(0, -5, 0), Colors.white);
+        var tree = new LightTree(List.of(above, below), LightTree.allLights);
+        var result = tree.collect(makePoint(), Directions.up);
+        assertEquals(List.of(above), result);
+    }
+
+    @Test
+    void testCollectCullsSpotLightsFacingAway() {
+        var facing = new PointSpotLight(makePoint(0, 5, 0), Colors.white, Directions.down, toRadians(20), toRadians(30));
+        var away = new PointSpotLight(makePoint(1, 5, 0), Colors.white, Directions.up, toRadians(20), toRadians(30));
+        var tree = new LightTree(List.of(facing, away), LightTree.allLights);
+        var result = tree.collect(makePoint(), Directions.up);
+        assertEquals(List.of(facing), result);
+        // outside of the facing light's cone
+        result = tree.collect(makePoint(10, 0, 0), Directions.up);
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void testSelectProbability() {
+        List<Light> lights = List.of(
+            new PointLight(makePoint(-5, 5, 0), Colors.white),
+            new PointLight(makePoint(5, 5, 0), Colors.white)
+        );
+        var tree = new LightTree(lights, 1, RandomSuppliers.noRandom);
+        var selection = tree.select(makePoint(0, 0, 0), Directions.up);
+        assertTrue(selection.isPresent());
+        assertEquals(0, FloatHelp.compareFloat(0.5, selection.get().probability()));
+    }
+
+    @Test
+    void testSelectFavoursBrighterLights() {
+        var dim = new PointLight(makePoint(-5, 5, 0), Colors.white.multiply(0.25));
+        var bright = new PointLight(makePoint(5, 5, 0), Colors.white);
+        var tree = new LightTree(List.of(dim, bright), 1, () -> 0.5);
+        var selection = tree.select(makePoint(0, 0, 0), Directions.up);
+        assertTrue(selection.isPresent());
+        assertEquals(bright, selection.get().light());
+        assertEquals(0, FloatHelp.compareFloat(0.8, selection.get().probability()));
+    }
+
+    @Test
+    void testSelectNothingWhenCulled() {
+        var light = new PointLight(makePoint(0, -5, 0), Colors.white);
+        var tree = new LightTree(List.of(light), 1);
+        assertTrue(tree.select(makePoint(), makeVector(0, 1, 0)).isEmpty());
+    }
+}
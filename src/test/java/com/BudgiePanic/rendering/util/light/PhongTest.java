@@ -16,6 +16,8 @@
  */
 package com.BudgiePanic.rendering.util.light;
 
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.util.Optional;
@@ -23,12 +25,17 @@ import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.BudgiePanic.rendering.scene.World;
 import com.BudgiePanic.rendering.util.Color;
 import com.BudgiePanic.rendering.util.Colors;
 import com.BudgiePanic.rendering.util.Material;
 import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.pattern.BiOperation;
 import com.BudgiePanic.rendering.util.pattern.BiPattern;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.Transforms;
 
 /**
  * Tests for verifying correctness of phong lighting model
@@ -130,5 +137,33 @@ public class PhongTest {
         assertEquals(Colors.white, resultA);
         assertEquals(Colors.black, resultB);
     }
-}
 
+    @Test
+    void testCombinedLightingMatchesSeparatePasses() {
+        var world = new World();
+        var light = new AreaLight(Colors.white, makePoint(-0.5f, -0.5f, -5), makeVector(1, 0, 0), makeVector(0, 1, 0), 2, 2, AreaLight.constantSamples);
+        var sphere = new Sphere(Transforms.identity().assemble());
+        world.addLight(light);
+        world.addShape(sphere);
+        var ray = new Ray(makePoint(0, 0, -5), makeVector(0, 0, 1));
+        var info = new Intersection(4.0, sphere).computeShadingInfo(ray);
+        var expected = Phong.compute(info, light, light.intensityAt(info.overPoint(), world, 0));
+        var result = Phong.compute(info, light, world);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void testCombinedLightingInShadow() {
+        var world = new World();
+        var light = new PointLight(makePoint(0, 0, -10), Colors.white);
+        var blocker = new Sphere(Transforms.identity().translate(0, 0, -5).assemble());
+        var sphere = new Sphere(Transforms.identity().assemble());
+        world.addLight(light);
+        world.addShape(blocker);
+        world.addShape(sphere);
+        var ray = new Ray(makePoint(0, 0, -2), makeVector(0, 0, 1));
+        var info = new Intersection(1.0, sphere).computeShadingInfo(ray);
+        var result = Phong.compute(info, light, world);
+        assertEquals(new Color(0.1f, 0.1f, 0.1f), result);
+    }
+}
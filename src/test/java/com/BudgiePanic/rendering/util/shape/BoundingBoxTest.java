@@ -28,6 +28,7 @@ import org.junit.jupiter.api.Test;
 
 import com.BudgiePanic.rendering.util.AngleHelp;
 import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
 import com.BudgiePanic.rendering.util.shape.composite.CompoundOperation;
@@ -73,6 +74,19 @@ public class BoundingBoxTest {
         assertFalse(box.contains(makePoint(0, 1, 0)));
     }
 
+    @Test
+    void testBoundingBoxOverlaps() {
+        var box = new BoundingBox(makePoint(-1, -1, -1), makePoint(1, 1, 1));
+        assertTrue(box.overlaps(new BoundingBox(makePoint(0, 0, 0), makePoint(2, 2, 2))));
+        assertTrue(box.overlaps(new BoundingBox(makePoint(-0.5, -0.5, -0.5), makePoint(0.5, 0.5, 0.5))));
+        assertTrue(new BoundingBox(makePoint(-0.5, -0.5, -0.5), makePoint(0.5, 0.5, 0.5)).overlaps(box));
+        // touching boxes overlap
+        assertTrue(box.overlaps(new BoundingBox(makePoint(1, -1, -1), makePoint(2, 1, 1))));
+        // apart on one axis is enough to separate the boxes
+        assertFalse(box.overlaps(new BoundingBox(makePoint(-1, -1, 1.5), makePoint(1, 1, 2))));
+        assertFalse(box.overlaps(new BoundingBox(makePoint(2, 2, 2), makePoint(3, 3, 3))));
+    }
+
     @Test
     void testBoundingBoxGrow() {
         // simple case 
@@ -398,6 +412,21 @@ public class BoundingBoxTest {
         }
     }
 
+    @Test
+    void testRaySegmentAABBIntersection() {
+        var tests = List.of(
+            new Pair<>(new Pair<>(new Ray(makePoint(5, 0, 0), makeVector(-1, 0, 0)), 10.0), true),
+            new Pair<>(new Pair<>(new Ray(makePoint(5, 0, 0), makeVector(-1, 0, 0)), 3.0), false),
+            new Pair<>(new Pair<>(new Ray(makePoint(5, 0, 0), makeVector(1, 0, 0)), 10.0), false),
+            new Pair<>(new Pair<>(new Ray(makePoint(0, 0, 0), makeVector(0, 0, 1)), 0.1), true),
+            new Pair<>(new Pair<>(new Ray(makePoint(2, 0, 2), makeVector(0, 0, -1)), 10.0), false)
+        );
+        var box = new BoundingBox(makePoint(-1, -1, -1), makePoint(1, 1, 1));
+        for (var test : tests) {
+            assertEquals(test.b(), box.intersect(test.a().a(), test.a().b()), test.a().toString());
+        }
+    }
+
     @Test
     void testRayAABBIntersectionA() {
         var tests = List.of(
@@ -471,4 +500,58 @@ public class BoundingBoxTest {
         assertEquals(makePoint(5, 3, 7), right.maximum());
     }
 
+
+    /**
+     * A transform that turns shapes about all three axes and stretches them unevenly.
+     */
+    static final Matrix4 tilted = Transforms.identity().scale(1, 2, 0.5).rotateX(0.7).rotateY(0.4).rotateZ(1.1).translate(1, -2, 3).assemble();
+
+    /**
+     * Check that a bounding box fits a cloud of points, every point is inside the box and every face of the box touches a point.
+     */
+    static void assertFits(List<Tuple> points, BoundingBox box) {
+        final double tolerance = 1e-3;
+        double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+        for (var point : points) {
+            final double[] values = { point.x, point.y, point.z };
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], values[axis]);
+                max[axis] = Math.max(max[axis], values[axis]);
+            }
+        }
+        final double[] boxMin = { box.minimum().x, box.minimum().y, box.minimum().z };
+        final double[] boxMax = { box.maximum().x, box.maximum().y, box.maximum().z };
+        for (int axis = 0; axis < 3; axis++) {
+            assertTrue(boxMin[axis] <= min[axis] + 1e-9 && min[axis] - boxMin[axis] < tolerance, "axis " + axis + " min " + boxMin[axis] + " points " + min[axis]);
+            assertTrue(boxMax[axis] >= max[axis] - 1e-9 && boxMax[axis] - max[axis] < tolerance, "axis " + axis + " max " + boxMax[axis] + " points " + max[axis]);
+        }
+    }
+
+    @Test
+    void testIsAxisAligned() {
+        var tests = List.of(
+            new Pair<>(Matrix4.identity(), true),
+            new Pair<>(Transforms.identity().scale(2, 3, 4).translate(1, 2, 3).assemble(), true),
+            new Pair<>(Transforms.identity().rotateY(AngleHelp.toRadians(30)).assemble(), false),
+            new Pair<>(Transforms.identity().shear(1, 0, 0, 0, 0, 0).assemble(), false)
+        );
+        for (var test : tests) {
+            assertEquals(test.b(), BoundingBox.isAxisAligned(test.a()));
+        }
+    }
+
+    @Test
+    void testAround() {
+        var box = BoundingBox.around(makePoint(1, 2, 3), 1, 0.5, 2);
+        assertEquals(new BoundingBox(makePoint(0, 1.5, 1), makePoint(2, 2.5, 5)), box);
+    }
+
+    @Test
+    void testTransformAxisAlignedIsExact() {
+        // moving a box without turning it keeps the box tight
+        var box = new BoundingBox(makePoint(-1, -1, -1), makePoint(1, 1, 1));
+        var result = box.transform(Transforms.identity().scale(2, 1, 3).translate(1, 0, 0).assemble());
+        assertEquals(new BoundingBox(makePoint(-1, -1, -3), makePoint(3, 1, 3)), result);
+    }
 }
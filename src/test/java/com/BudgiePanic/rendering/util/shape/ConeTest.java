@@ -22,6 +22,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -122,4 +123,31 @@ public class ConeTest {
         assertEquals(shape, result);
     }
 
+    @Test
+    void testConeTransformedBounds() {
+        var tests = List.of(
+            new Pair<>(1.0, -2.0),
+            new Pair<>(3.0, 1.0),
+            new Pair<>(0.5, -0.5)
+        );
+        for (var test : tests) {
+            var shape = new Cone(Matrix4.identity(), test.a(), test.b(), true);
+            List<Tuple> points = new ArrayList<>();
+            points.add(BoundingBoxTest.tilted.multiply(makePoint(0, 0, 0)));
+            for (int i = 0; i < 3600; i++) {
+                var angle = i * Math.PI / 1800;
+                for (var y : List.of(test.a(), test.b())) {
+                    var radius = Math.abs(y);
+                    points.add(BoundingBoxTest.tilted.multiply(makePoint(radius * Math.cos(angle), y, radius * Math.sin(angle))));
+                }
+            }
+            var result = shape.bounds(BoundingBoxTest.tilted);
+            if (test.b() > 0) {
+                // the tip is not part of a cone that does not reach the origin
+                points.remove(0);
+            }
+            BoundingBoxTest.assertFits(points, result);
+            assertTrue(shape.bounds().transform(BoundingBoxTest.tilted).contains(result));
+        }
+    }
 }
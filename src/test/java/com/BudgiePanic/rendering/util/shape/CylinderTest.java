@@ -22,6 +22,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -32,6 +33,7 @@ import com.BudgiePanic.rendering.util.Pair;
 import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.transform.Transforms;
 
 /**
  * Tests for cylinder shape
@@ -186,4 +188,27 @@ public class CylinderTest {
         var result = shape.divide(0);
         assertEquals(shape, result);
     }
+
+    @Test
+    void testCylinderTransformedBounds() {
+        var shape = new Cylinder(Matrix4.identity(), 2, -1, true);
+        List<Tuple> points = new ArrayList<>();
+        for (int i = 0; i < 3600; i++) {
+            var angle = i * Math.PI / 1800;
+            points.add(BoundingBoxTest.tilted.multiply(makePoint(Math.cos(angle), 2, Math.sin(angle))));
+            points.add(BoundingBoxTest.tilted.multiply(makePoint(Math.cos(angle), -1, Math.sin(angle))));
+        }
+        var result = shape.bounds(BoundingBoxTest.tilted);
+        BoundingBoxTest.assertFits(points, result);
+        var loose = shape.bounds().transform(BoundingBoxTest.tilted);
+        assertTrue(loose.contains(result));
+        assertFalse(result.contains(loose));
+    }
+
+    @Test
+    void testInfiniteCylinderTransformedBounds() {
+        var shape = new Cylinder(Matrix4.identity());
+        var transform = Transforms.identity().translate(1, 0, 0).assemble();
+        assertEquals(shape.bounds().transform(transform), shape.bounds(transform));
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.pattern.BiOperation;
+import com.BudgiePanic.rendering.util.pattern.BiPattern;
+import com.BudgiePanic.rendering.util.shape.composite.BVHBuilder;
+import com.BudgiePanic.rendering.util.shape.composite.Group;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests for instanced shapes.
+ */
+public class InstanceTest {
+
+    static final Material striped = Material.pattern(new BiPattern(BiOperation.stripe, Colors.white, Colors.red, 
+        Transforms.identity().scale(0.25).assemble())).setSpecular(0.5);
+
+    static World world(Shape shape) {
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+        world.addShape(shape);
+        world.addShape(new Plane(Transforms.identity().translate(0, -3, 0).assemble()));
+        return world;
+    }
+
+    static List<Ray> rays() {
+        final var rays = new ArrayList<Ray>();
+        for (int i = -6; i <= 6; i++) {
+            for (int j = -6; j <= 6; j++) {
+                rays.add(new Ray(makePoint(i * 0.4 + 0.01, j * 0.4 + 0.02, -10), makeVector(0, 0, 1)));
+            }
+        }
+        return rays;
+    }
+
+    @Test
+    void testInstanceMatchesPlacedShape() {
+        // a sphere in a rotated group, placed directly and placed through an instance of the group
+        final var placement = Transforms.identity().rotateZ(0.3).translate(0.5, 0.2, 0).assemble();
+        final var direct = new Group(placement);
+        final var inner = new Group(Transforms.identity().scale(1, 1.5, 1).assemble());
+        inner.addShape(new Sphere(Transforms.identity().translate(0.2, 0, 0).assemble(), striped));
+        direct.addShape(inner);
+
+        final var prototype = new Group(Transforms.identity().scale(1, 1.5, 1).assemble());
+        prototype.addShape(new Sphere(Transforms.identity().translate(0.2, 0, 0).assemble(), striped));
+        final var holder = new Group(placement);
+        holder.addShape(new Instance(Matrix4.identity(), prototype));
+
+        final var expected = world(direct);
+        final var actual = world(holder);
+        int hits = 0;
+        for (final var ray : rays()) {
+            final var hit = actual.intersect(ray).flatMap(Intersection::Hit);
+            if (hit.isPresent() && hit.get().shape() instanceof InstancedShape) {
+                hits++;
+                final var point = ray.position(hit.get().a());
+                final var expectedHit = expected.intersect(ray).flatMap(Intersection::Hit).get();
+                assertEquals(expectedHit.a(), hit.get().a(), 1e-9);
+                assertEquals(expectedHit.shape().normal(point), hit.get().shape().normal(point));
+            }
+            assertEquals(expected.computeColor(ray), actual.computeColor(ray), ray.toString());
+        }
+        assertTrue(hits > 10);
+    }
+
+    @Test
+    void testInstancesShareThePrototype() {
+        final var prototype = new Group(Matrix4.identity());
+        for (int i = 0; i < 20; i++) {
+            prototype.addShape(new Triangle(makePoint(i * 0.1, 0, 0), makePoint(i * 0.1 + 0.1, 1, 0), makePoint(i * 0.1, 1, 0)));
+        }
+        final List<Shape> triangles = new ArrayList<>(prototype.children());
+        new BVHBuilder(4).build(prototype);
+        final var top = new Group(Matrix4.identity());
+        for (int i = 0; i < 1000; i++) {
+            top.addShape(new Instance(Transforms.identity().translate((i % 40) * 3, (i / 40) * 3, 0).assemble(), prototype));
+        }
+        new BVHBuilder(4).build(top);
+        // the prototype's shapes are never re-parented by the instances
+        assertTrue(prototype.parent().isEmpty());
+        for (final var shape : triangles) {
+            assertTrue(shape.parent().get() == prototype);
+        }
+        final var ray = new Ray(makePoint(3 * 7 + 0.55, 3 * 11 + 0.8, -5), makeVector(0, 0, 1));
+        final var hits = top.intersect(ray).get();
+        assertEquals(1, hits.size());
+        assertEquals(5.0, hits.get(0).a(), 1e-9);
+        final var hit = (InstancedShape) hits.get(0).shape();
+        assertTrue(hit.instance().prototype() == prototype);
+        assertTrue(hit.instance().transform().equals(Transforms.identity().translate(3 * 7, 3 * 11, 0).assemble()));
+        assertTrue(triangles.stream().anyMatch(triangle -> triangle == hit.shape()));
+        assertTrue(hit.instance().contains(hit));
+        assertEquals(hits, hit.intersect(ray).get());
+    }
+
+    @Test
+    void testInstanceMaterialOverride() {
+        final var prototype = new Sphere(Matrix4.identity(), Material.color(Colors.white));
+        final var plain = new Instance(Transforms.identity().translate(-1.5, 0, 0).assemble(), prototype);
+        final var green = new Instance(Transforms.identity().translate(1.5, 0, 0).assemble(), prototype, 
+            Material.color(Colors.green).setShadow(false));
+        final var world = new World();
+        world.addLight(new PointLight(makePoint(0, 10, 0), Colors.white));
+        world.addShape(plain);
+        world.addShape(green);
+        world.compile();
+        final var left = world.computeColor(new Ray(makePoint(-1.5, 0, -5), makeVector(0, 0, 1)));
+        final var right = world.computeColor(new Ray(makePoint(1.5, 0, -5), makeVector(0, 0, 1)));
+        assertEquals(left.getRed(), left.getGreen(), 1e-9);
+        assertEquals(0, right.getRed(), 1e-9);
+        assertNotEquals(Colors.black, right);
+        // the override decides if the instance casts shadows
+        assertTrue(world.isOccluded(makePoint(-1.5, -5, 0), makePoint(-1.5, 5, 0), World.shadowCasters, 0));
+        assertFalse(world.isOccluded(makePoint(1.5, -5, 0), makePoint(1.5, 5, 0), World.shadowCasters, 0));
+        assertEquals(green.override().get(), green.intersect(new Ray(makePoint(1.5, 0, -5), makeVector(0, 0, 1))).get().get(0).shape().material());
+    }
+
+    @Test
+    void testPruneSharesThePrototype() {
+        final var prototype = new Group(Matrix4.identity());
+        prototype.addShape(new Sphere(Matrix4.identity(), Material.defaultMaterial().setShadow(false)));
+        prototype.addShape(new Sphere(Transforms.identity().translate(3, 0, 0).assemble()));
+        // the prototype's shapes are shaded with the override, so nothing is removed and the instance is not copied
+        final var casting = new Instance(Matrix4.identity(), prototype, Material.defaultMaterial());
+        assertTrue(casting.prune(World.shadowCasters).get() == casting);
+        final var shadowless = new Instance(Matrix4.identity(), prototype, Material.defaultMaterial().setShadow(false));
+        assertTrue(shadowless.prune(World.shadowCasters).isEmpty());
+        // without an override only the shadowless sphere is removed
+        final var plain = new Instance(Matrix4.identity(), prototype);
+        final var pruned = (Instance) plain.prune(World.shadowCasters).get();
+        assertEquals(1, ((Group) pruned.prototype()).children().size());
+    }
+
+    @Test
+    void testInstanceBounds() {
+        final var prototype = new Cube(Transforms.identity().scale(2).assemble());
+        final var instance = new Instance(Transforms.identity().translate(5, 0, 0).assemble(), prototype);
+        assertEquals(new BoundingBox(makePoint(-2, -2, -2), makePoint(2, 2, 2)), instance.bounds());
+        assertEquals(new BoundingBox(makePoint(3, -2, -2), makePoint(7, 2, 2)), instance.bounds().transform(instance.transform()));
+        final var group = new Group(Matrix4.identity());
+        group.addShape(prototype);
+        assertThrows(IllegalArgumentException.class, () -> new Instance(Matrix4.identity(), prototype));
+        assertThrows(IllegalArgumentException.class, () -> new Instance(Matrix4.identity(), null));
+    }
+
+    @Test
+    void testInstanceBoundsFitPrototype() {
+        var prototype = new Sphere(Transforms.identity().scale(3, 1, 1).rotateZ(Math.PI / 4).assemble());
+        var instance = new Instance(Matrix4.identity(), prototype);
+        var reach = Math.sqrt(5);
+        assertEquals(new BoundingBox(makePoint(-reach, -reach, -1), makePoint(reach, reach, 1)), instance.bounds());
+        var turn = Transforms.identity().rotateZ(-Math.PI / 4).assemble();
+        assertEquals(new BoundingBox(makePoint(-3, -1, -1), makePoint(3, 1, 1)), instance.bounds(turn));
+    }
+}
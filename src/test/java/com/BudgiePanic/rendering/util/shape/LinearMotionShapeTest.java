@@ -171,4 +171,40 @@ public class LinearMotionShapeTest {
         assertTrue(group.children().get(1) instanceof Group);
     }
 
+    @Test
+    void testBoundsAtTime() {
+        var shape = new LinearMotionShape(Matrix4.identity(), new Sphere(Transforms.identity().translate(0, 1, 0).assemble()), makeVector(10, 0, 0));
+        var tests = List.of(
+            new Pair<>(0.0, new BoundingBox(makePoint(-1, 0, -1), makePoint(1, 2, 1))),
+            new Pair<>(0.5, new BoundingBox(makePoint(4, 0, -1), makePoint(6, 2, 1))),
+            new Pair<>(1.0, new BoundingBox(makePoint(9, 0, -1), makePoint(11, 2, 1)))
+        );
+        for (var test : tests) {
+            var bounds = shape.bounds(test.a());
+            assertEquals(test.b().minimum(), bounds.minimum());
+            assertEquals(test.b().maximum(), bounds.maximum());
+        }
+        // the bounds over the whole exposure contain the bounds at every time
+        shape.setMotionEndTime(Optional.of(1.0));
+        assertEquals(new BoundingBox(makePoint(-1, 0, -1), makePoint(11, 2, 1)), shape.bounds());
+    }
+
+    @Test
+    void testGroupBakesExposureIntoChildren() {
+        var shape = new LinearMotionShape(Matrix4.identity(), new Cube(Matrix4.identity()), makeVector(2, 0, 0));
+        var group = new Group(Matrix4.identity());
+        group.addShape(shape);
+        group.bakeExposureDuration(1.0);
+        assertEquals(Optional.of(1.0), shape.motionEndTime);
+        assertEquals(new BoundingBox(makePoint(-1, -1, -1), makePoint(3, 1, 1)), group.bounds());
+    }
+
+    @Test
+    void testMotionShapeTransformedBounds() {
+        var shape = new LinearMotionShape(Matrix4.identity(), new Sphere(Matrix4.identity()), makeVector(2, 0, 0));
+        shape.setMotionEndTime(Optional.of(1.0));
+        var turn = Transforms.identity().rotateZ(Math.PI / 2).assemble();
+        // the sphere sweeps along x, which the turn points along y
+        assertEquals(new BoundingBox(makePoint(-1, -1, -1), makePoint(1, 3, 1)), shape.bounds(turn));
+    }
 }
@@ -229,4 +229,16 @@ public class SphereTest {
         var result = shape.divide(0);
         assertEquals(shape, result);
     }
+
+    @Test
+    void testSphereTransformedBounds() {
+        var transform = Transforms.identity().scale(2, 1, 1).rotateZ(Math.PI / 4).translate(1, 2, 3).assemble();
+        var result = Sphere.defaultSphere().bounds(transform);
+        // the stretched and turned sphere reaches sqrt(4cos^2 + sin^2) along x and y
+        var reach = Math.sqrt(2.5);
+        assertEquals(new BoundingBox(Tuple.makePoint(1 - reach, 2 - reach, 2), Tuple.makePoint(1 + reach, 2 + reach, 4)), result);
+        var loose = Sphere.defaultSphere().bounds().transform(transform);
+        assertTrue(loose.contains(result));
+        assertTrue(loose.maximum().x - result.maximum().x > 0.5);
+    }
 }
@@ -18,8 +18,10 @@ package com.BudgiePanic.rendering.util.shape;
 
 import static com.BudgiePanic.rendering.util.Tuple.makePoint;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -28,6 +30,7 @@ import com.BudgiePanic.rendering.util.Directions;
 import com.BudgiePanic.rendering.util.FloatHelp;
 import com.BudgiePanic.rendering.util.Material;
 import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.Tuple;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
 
@@ -98,4 +101,23 @@ public class TorusTest {
         var expected = new BoundingBox(makePoint(-1.25, -1.25, -0.25), makePoint(1.25, 1.25, 0.25));
         assertEquals(expected, result);
     }
+
+    @Test
+    void testTorusTransformedBounds() {
+        var shape = new Torus(Matrix4.identity(), Material.defaultMaterial(), 1, 0.25);
+        List<Tuple> points = new ArrayList<>();
+        for (int i = 0; i < 720; i++) {
+            var around = i * Math.PI / 360;
+            for (int j = 0; j < 360; j++) {
+                var tube = j * Math.PI / 180;
+                var distance = 1 + 0.25 * Math.cos(tube);
+                points.add(BoundingBoxTest.tilted.multiply(makePoint(distance * Math.cos(around), distance * Math.sin(around), 0.25 * Math.sin(tube))));
+            }
+        }
+        var result = shape.bounds(BoundingBoxTest.tilted);
+        BoundingBoxTest.assertFits(points, result);
+        var loose = shape.bounds().transform(BoundingBoxTest.tilted);
+        assertTrue(loose.contains(result));
+        assertFalse(result.contains(loose));
+    }
 }
@@ -20,6 +20,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 
 import static com.BudgiePanic.rendering.util.Tuple.makeVector;
@@ -113,4 +115,18 @@ public class TriangleTest {
         assertEquals(shape, result);
     }
 
+    @Test
+    void testTriangleTransformedBounds() {
+        var shape = new Triangle(makePoint(0, 1, 0), makePoint(-1, 0, 0), makePoint(1, 0, 0));
+        var result = shape.bounds(BoundingBoxTest.tilted);
+        var points = List.of(
+            BoundingBoxTest.tilted.multiply(makePoint(0, 1, 0)),
+            BoundingBoxTest.tilted.multiply(makePoint(-1, 0, 0)),
+            BoundingBoxTest.tilted.multiply(makePoint(1, 0, 0)));
+        BoundingBoxTest.assertFits(points, result);
+        // the flat triangle has no depth, but its turned box does
+        var loose = shape.bounds().transform(BoundingBoxTest.tilted);
+        assertTrue(loose.contains(result));
+        assertFalse(result.contains(loose));
+    }
 }
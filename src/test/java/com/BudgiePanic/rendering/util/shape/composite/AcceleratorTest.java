@@ -0,0 +1,153 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.light.PointLight;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Plane;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests shared by every acceleration structure.
+ */
+public class AcceleratorTest {
+
+    static Stream<Accelerator> accelerators() {
+        return Stream.of(new BVHBuilder(4), new GridBuilder(4), new KDTreeBuilder(4), new WideBVHBuilder(4));
+    }
+
+    /**
+     * The accelerators that index their children in a single spatial group.
+     */
+    static Stream<Accelerator> indexes() {
+        return Stream.of(new GridBuilder(4), new KDTreeBuilder(4), new WideBVHBuilder(4));
+    }
+
+    /**
+     * Builds a spatial index over a list of shapes, for each spatial group that can hold unbounded shapes.
+     */
+    static Stream<Function<List<Shape>, SpatialGroup>> indexBuilders() {
+        return Stream.of(shapes -> new GridGroup(shapes, GridBuilder.defaultDensity), shapes -> new KDTreeGroup(shapes, 4));
+    }
+
+    static Group spheresOnPlane() {
+        final var group = HierarchyFixtures.spheres(400);
+        group.addShape(new Plane(Transforms.identity().translate(0, -3, 0).assemble()));
+        return group;
+    }
+
+    @ParameterizedTest
+    @MethodSource("accelerators")
+    void testAcceleratorMatchesFlatGroup(Accelerator accelerator) {
+        HierarchyFixtures.assertSameHitsAlongAxes(spheresOnPlane(), accelerator.build(spheresOnPlane()));
+        HierarchyFixtures.assertSameHitsAlongAxes(HierarchyFixtures.slivers(300), accelerator.build(HierarchyFixtures.slivers(300)));
+        HierarchyFixtures.assertSameHitsAlongAxes(HierarchyFixtures.particles(500), accelerator.build(HierarchyFixtures.particles(500)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("accelerators")
+    void testAcceleratorTestsFewerShapes(Accelerator accelerator) {
+        final var flat = HierarchyFixtures.particles(2000);
+        final var index = accelerator.build(HierarchyFixtures.particles(2000));
+        final int flatTests = HierarchyFixtures.countTests(flat), indexTests = HierarchyFixtures.countTests(index);
+        assertTrue(indexTests * 20 < flatTests, accelerator + " tests " + indexTests + " flat tests " + flatTests);
+    }
+
+    @ParameterizedTest
+    @MethodSource("accelerators")
+    void testNestedGroupsUseTheirChosenAccelerator(Accelerator accelerator) {
+        final var root = new Group(Matrix4.identity());
+        final var chosen = HierarchyFixtures.spheres(50);
+        chosen.setAccelerator(new GridBuilder(4));
+        final var inherited = HierarchyFixtures.spheres(60);
+        root.addShape(chosen);
+        root.addShape(inherited);
+        accelerator.build(root);
+        assertTrue(chosen.children().get(0) instanceof GridGroup, accelerator.toString());
+        if (accelerator instanceof KDTreeBuilder) { assertTrue(inherited.children().get(0) instanceof KDTreeGroup); }
+        if (accelerator instanceof WideBVHBuilder) { assertTrue(inherited.children().get(0) instanceof WideBVHGroup); }
+        if (accelerator instanceof BVHBuilder) { assertTrue(inherited.children().stream().noneMatch(child -> child instanceof SpatialGroup)); }
+    }
+
+    @ParameterizedTest
+    @MethodSource("indexes")
+    void testPruneKeepsIndex(Accelerator accelerator) {
+        final var built = accelerator.build(spheresOnPlane());
+        assertTrue(built.children().get(0) instanceof SpatialGroup, accelerator.toString());
+        final var pruned = built.prune(shape -> shape instanceof Sphere).get();
+        assertTrue(((Group) pruned).children().get(0) instanceof SpatialGroup);
+        HierarchyFixtures.assertSameHitsAlongAxes(HierarchyFixtures.spheres(400), pruned);
+    }
+
+    @ParameterizedTest
+    @MethodSource("indexBuilders")
+    void testIndexOfUnboundedShapes(Function<List<Shape>, SpatialGroup> indexBuilder) {
+        final List<Shape> planes = List.of(new Plane(Matrix4.identity()), new Plane(Transforms.identity().translate(0, 2, 0).assemble()));
+        final var flat = new Group(Matrix4.identity());
+        planes.forEach(flat::addShape);
+        final var index = indexBuilder.apply(planes);
+        assertEquals(0, index.indexed.length);
+        HierarchyFixtures.assertSameHitsAlongAxes(flat, index);
+    }
+
+    @Test
+    void testSpatialGroupsCannotChange() {
+        final var grid = new GridBuilder(4).build(HierarchyFixtures.spheres(50)).children().get(0);
+        assertThrows(UnsupportedOperationException.class, () -> ((Group) grid).addShape(new Sphere(Matrix4.identity())));
+    }
+
+    @ParameterizedTest
+    @MethodSource("accelerators")
+    void testWorldAccelerate(Accelerator accelerator) {
+        final var flat = new World();
+        final var accelerated = new World();
+        for (final var world : List.of(flat, accelerated)) {
+            world.addLight(new PointLight(makePoint(-10, 10, -10), Colors.white));
+            HierarchyFixtures.spheres(200).children().forEach(world::addShape);
+            world.addShape(new Plane(Transforms.identity().translate(0, -11, 0).assemble()));
+        }
+        accelerated.accelerate(accelerator);
+        assertEquals(1, accelerated.getShapes().size());
+        flat.compile();
+        accelerated.compile();
+        for (int i = -10; i <= 10; i += 2) {
+            for (int j = -10; j <= 10; j += 2) {
+                final var ray = new Ray(makePoint(i * 0.97, j * 1.03, -20), makeVector(0.01 * i, -0.02, 1).normalize());
+                assertEquals(flat.computeColor(ray), accelerated.computeColor(ray), ray.toString());
+            }
+        }
+    }
+}
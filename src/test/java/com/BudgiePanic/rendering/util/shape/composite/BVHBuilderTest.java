@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+
+/**
+ * Tests for the binned bounding volume hierarchy builder.
+ */
+public class BVHBuilderTest {
+
+    /**
+     * Count how many times each primitive appears in the hierarchy under a group, checking the size of the leaves on the way.
+     */
+    static void collect(Group group, Map<Shape, Integer> found, int threshold) {
+        boolean leaf = true;
+        for (final var child : group.children()) {
+            if (child instanceof Group) {
+                leaf = false;
+                collect((Group) child, found, threshold);
+            } else {
+                found.merge(child, 1, Integer::sum);
+            }
+        }
+        if (leaf) { assertTrue(group.children().size() <= threshold, "leaf has " + group.children().size() + " children"); }
+    }
+
+    @Test
+    void testBuildKeepsEveryShape() {
+        final var group = HierarchyFixtures.spheres(500);
+        final List<Shape> shapes = new ArrayList<>(group.children());
+        new BVHBuilder(4).build(group);
+        final Map<Shape, Integer> found = new IdentityHashMap<>();
+        collect(group, found, 4);
+        assertEquals(shapes.size(), found.size());
+        for (final var shape : shapes) {
+            assertEquals(1, found.get(shape));
+            // shapes keep the built group as their parent
+            assertTrue(shape.parent().get() == group);
+        }
+        assertEquals(HierarchyFixtures.spheres(500).bounds(), group.bounds());
+    }
+
+    @Test
+    void testBuildMatchesFlatGroup() {
+        final var flat = HierarchyFixtures.spheres(500);
+        final var built = new BVHBuilder(4).build(HierarchyFixtures.spheres(500));
+        HierarchyFixtures.assertSameHits(flat, built);
+        // subtrees built on other threads make the same hierarchy
+        final var parallel = new BVHBuilder(4, BVHBuilder.defaultBins, 8, new ForkJoinPool(4)).build(HierarchyFixtures.spheres(500));
+        HierarchyFixtures.assertSameHits(flat, parallel);
+        HierarchyFixtures.assertSameHits(built, parallel);
+    }
+
+    @Test
+    void testBuildNestedGroups() {
+        final var outer = new Group(Matrix4.identity());
+        final var inner = HierarchyFixtures.spheres(50);
+        outer.addShape(inner);
+        outer.addShape(new Sphere(Matrix4.identity()));
+        new BVHBuilder(4).build(outer);
+        assertEquals(2, outer.children().size());
+        assertTrue(inner.children().size() <= 2);
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(50), inner);
+    }
+
+    @Test
+    void testBuildCoincidentShapes() {
+        // every centroid is in the same place, so the builder can only split by count
+        final var group = new Group(Matrix4.identity());
+        for (int i = 0; i < 20; i++) { group.addShape(new Sphere(Matrix4.identity())); }
+        new BVHBuilder(3).build(group);
+        final Map<Shape, Integer> found = new IdentityHashMap<>();
+        collect(group, found, 3);
+        assertEquals(20, found.size());
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder(0));
+    }
+
+    @Test
+    void testSpatialSplitsMatchFlatGroup() {
+        final var flat = HierarchyFixtures.slivers(300);
+        final var spatial = BVHBuilder.spatial(4).build(HierarchyFixtures.slivers(300));
+        assertTrue(spatial.sharedChildren);
+        HierarchyFixtures.assertSameHits(flat, spatial);
+        // spatial splits fall back to box clipping for shapes that are not triangles
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(300), BVHBuilder.spatial(4).build(HierarchyFixtures.spheres(300)));
+        final var parallel = new BVHBuilder(4, BVHBuilder.defaultBins, 8, new ForkJoinPool(4), BVHBuilder.defaultDuplication).build(HierarchyFixtures.slivers(300));
+        HierarchyFixtures.assertSameHits(flat, parallel);
+    }
+
+    @Test
+    void testSpatialSplitsVisitFewerNodes() {
+        final var object = new BVHBuilder(4).build(HierarchyFixtures.slivers(1000));
+        final var spatial = BVHBuilder.spatial(4).build(HierarchyFixtures.slivers(1000));
+        assertTrue(BVHBuilder.traversalCost(spatial) < BVHBuilder.traversalCost(object),
+            BVHBuilder.traversalCost(spatial) + " vs " + BVHBuilder.traversalCost(object));
+        final int objectTests = HierarchyFixtures.countTests(object), spatialTests = HierarchyFixtures.countTests(spatial);
+        assertTrue(spatialTests < objectTests, spatialTests + " vs " + objectTests);
+        // a bigger budget lets the slivers be cut into many short pieces
+        final var generous = new BVHBuilder(4, BVHBuilder.defaultBins, BVHBuilder.defaultParallelCutoff, ForkJoinPool.commonPool(), 8).build(HierarchyFixtures.slivers(1000));
+        assertTrue(HierarchyFixtures.countTests(generous) * 3 < objectTests, HierarchyFixtures.countTests(generous) + " vs " + objectTests);
+    }
+
+    @Test
+    void testSpatialSplitsDuplicationCap() {
+        final var shapes = HierarchyFixtures.slivers(500);
+        final List<Shape> children = new ArrayList<>(shapes.children());
+        new BVHBuilder(4, BVHBuilder.defaultBins, BVHBuilder.defaultParallelCutoff, ForkJoinPool.commonPool(), 0.1).build(shapes);
+        final Map<Shape, Integer> found = new IdentityHashMap<>();
+        collect(shapes, found, 4);
+        assertEquals(children.size(), found.size());
+        final int references = found.values().stream().mapToInt(Integer::intValue).sum();
+        assertTrue(references > children.size());
+        assertTrue(references <= children.size() + 50, "made " + references + " references");
+        // without a budget no shape is duplicated
+        final var unshared = new BVHBuilder(4, BVHBuilder.defaultBins, BVHBuilder.defaultParallelCutoff, ForkJoinPool.commonPool(), 0).build(HierarchyFixtures.slivers(500));
+        assertTrue(!unshared.sharedChildren);
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder(4, 12, 8, ForkJoinPool.commonPool(), -1));
+    }
+
+    @Test
+    void testGroupRemovesDuplicateIntersections() {
+        final var shape = new Sphere(Matrix4.identity());
+        final var other = new Sphere(Matrix4.identity());
+        final var intersections = new ArrayList<>(List.of(
+            new Intersection(1.0, shape), new Intersection(1.0, other), new Intersection(1.0, shape),
+            new Intersection(2.0, shape), new Intersection(2.0, shape), new Intersection(3.0, other)));
+        Group.removeDuplicates(intersections);
+        assertEquals(List.of(
+            new Intersection(1.0, shape), new Intersection(1.0, other), new Intersection(2.0, shape), new Intersection(3.0, other)), intersections);
+    }
+}
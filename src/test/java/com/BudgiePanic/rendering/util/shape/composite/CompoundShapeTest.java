@@ -20,17 +20,20 @@ import static com.BudgiePanic.rendering.util.Tuple.makePoint;
 import static com.BudgiePanic.rendering.util.Tuple.makeVector;
 import static com.BudgiePanic.rendering.util.matrix.Matrix4.identity;
 import static com.BudgiePanic.rendering.util.shape.composite.CompoundOperation.difference;
+import static com.BudgiePanic.rendering.util.shape.composite.CompoundOperation.intersect;
 import static com.BudgiePanic.rendering.util.shape.composite.CompoundOperation.union;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import com.BudgiePanic.rendering.util.FloatHelp;
+import com.BudgiePanic.rendering.util.Material;
 import com.BudgiePanic.rendering.util.Pair;
 import com.BudgiePanic.rendering.util.intersect.Intersection;
 import com.BudgiePanic.rendering.util.intersect.Ray;
@@ -38,6 +41,7 @@ import com.BudgiePanic.rendering.util.matrix.Matrix4;
 import com.BudgiePanic.rendering.util.shape.BaseShapeTest;
 import com.BudgiePanic.rendering.util.shape.Cube;
 import com.BudgiePanic.rendering.util.shape.Cylinder;
+import com.BudgiePanic.rendering.util.shape.Shape;
 import com.BudgiePanic.rendering.util.shape.Sphere;
 import com.BudgiePanic.rendering.util.transform.Transforms;
 
@@ -219,4 +223,33 @@ public class CompoundShapeTest {
         assertEquals(shape4, ((Group) groupB.children.get(1)).children.get(0));
     }
 
+    @Test
+    void testCompoundShapePrune() {
+        final var shadowless = Material.defaultMaterial().setShadow(false);
+        final Predicate<Shape> casters = s -> s.material().shadow();
+        final var ray = new Ray(makePoint(0, 0, -5), makeVector(0, 0, 1));
+        // the carved out sphere doesn't cast shadows, so shadow rays only see the cube
+        final var cube = new Cube(identity());
+        final var shape = new CompoundShape(difference, cube, new Sphere(Transforms.identity().scale(0.5f).translate(0, 0, -1f).assemble(), shadowless), identity());
+        var result = shape.prune(casters);
+        assertTrue(result.isPresent());
+        var intersections = result.get().intersect(ray);
+        assertTrue(intersections.isPresent());
+        assertEquals(2, intersections.get().size());
+        assertEquals(cube, intersections.get().get(0).shape());
+        assertTrue(FloatHelp.compareFloat(4, intersections.get().get(0).a()) == 0);
+        // the cube doesn't cast shadows, so nothing is left over after the difference
+        final var tests = List.of(
+            new Pair<>(new CompoundShape(difference, new Cube(identity(), shadowless), new Sphere(identity()), identity()), false),
+            new Pair<>(new CompoundShape(intersect, new Cube(identity()), new Sphere(identity(), shadowless), identity()), false),
+            new Pair<>(new CompoundShape(union, new Cube(identity(), shadowless), new Sphere(identity()), identity()), true),
+            new Pair<>(new CompoundShape(union, new Cube(identity()), new Sphere(identity()), identity()), true)
+        );
+        for (var test : tests) {
+            result = test.a().prune(casters);
+            assertEquals(test.b(), result.isPresent(), "test: " + test.toString());
+        }
+        // unchanged shapes are not copied
+        assertEquals(tests.get(3).a(), tests.get(3).a().prune(casters).get());
+    }
 }
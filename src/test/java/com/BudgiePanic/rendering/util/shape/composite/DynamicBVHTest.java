@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BaseShape;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests for incrementally maintained bounding volume hierarchies.
+ */
+public class DynamicBVHTest {
+
+    @Test
+    void testBuildMatchesFlatGroup() {
+        final var bvh = new DynamicBVH(HierarchyFixtures.spheres(300), 4);
+        assertEquals(300, bvh.size());
+        assertEquals(0, bvh.rebuilds());
+        assertEquals(1, bvh.degradation(), 1e-9);
+        assertEquals(BVHBuilder.traversalCost(bvh.root()), bvh.cost(), 1e-9);
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(300), bvh.root());
+    }
+
+    @Test
+    void testInsertMatchesFlatGroup() {
+        final var source = HierarchyFixtures.spheres(400);
+        final var shapes = new ArrayList<>(source.children());
+        final var root = new Group(Matrix4.identity());
+        shapes.subList(0, 100).forEach(root::addShape);
+        final var bvh = new DynamicBVH(root, new BVHBuilder(4), 1e9);
+        for (final var shape : shapes.subList(100, 400)) {
+            bvh.insert(shape);
+            assertSame(root, shape.parent().get());
+        }
+        assertEquals(400, bvh.size());
+        assertEquals(HierarchyFixtures.spheres(400).bounds(), root.bounds());
+        assertEquals(BVHBuilder.traversalCost(root), bvh.cost(), 1e-6);
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(400), root);
+        assertThrows(IllegalArgumentException.class, () -> bvh.insert(shapes.get(0)));
+    }
+
+    @Test
+    void testInsertKeepsQualityNearFullBuild() {
+        final var shapes = new ArrayList<>(HierarchyFixtures.spheres(1000).children());
+        final var bvh = new DynamicBVH(new Group(Matrix4.identity()), new BVHBuilder(4), 1e9);
+        shapes.forEach(bvh::insert);
+        final double inserted = bvh.cost();
+        bvh.rebuild();
+        final double built = bvh.cost();
+        assertTrue(inserted < built * 2, "inserted cost " + inserted + " built cost " + built);
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(1000), bvh.root());
+    }
+
+    @Test
+    void testRemoveMatchesFlatGroup() {
+        final var root = HierarchyFixtures.spheres(400);
+        final var shapes = new ArrayList<>(root.children());
+        final var bvh = new DynamicBVH(root, new BVHBuilder(4), 1e9);
+        final var expected = new Group(Matrix4.identity());
+        final var copies = HierarchyFixtures.spheres(400).children();
+        for (int i = 0; i < shapes.size(); i++) {
+            if (i % 3 == 0) {
+                assertTrue(bvh.remove(shapes.get(i)));
+                assertTrue(shapes.get(i).parent().isEmpty());
+            } else {
+                expected.addShape(copies.get(i));
+            }
+        }
+        assertFalse(bvh.remove(shapes.get(0)));
+        assertEquals(expected.children().size(), bvh.size());
+        assertEquals(BVHBuilder.traversalCost(root), bvh.cost(), 1e-6);
+        HierarchyFixtures.assertSameHits(expected, root);
+    }
+
+    @Test
+    void testRemoveEverything() {
+        final var root = HierarchyFixtures.spheres(50);
+        final var shapes = new ArrayList<>(root.children());
+        final var bvh = new DynamicBVH(root, 4);
+        shapes.forEach(bvh::remove);
+        assertEquals(0, bvh.size());
+        assertTrue(root.children().isEmpty());
+        assertTrue(root.intersect(new Ray(makePoint(0.3, 0.2, -20), makeVector(0, 0, 1))).isEmpty());
+        shapes.forEach(bvh::insert);
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(50), root);
+    }
+
+    /**
+     * Move every third sphere of a group to a new random spot.
+     */
+    static void scatter(Group group, long seed) {
+        final var random = new Random(seed);
+        for (int i = 0; i < group.children().size(); i += 3) {
+            final var transform = Transforms.identity().scale(0.3).translate(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10).assemble();
+            ((BaseShape) group.children().get(i)).setTransform(transform);
+        }
+    }
+
+    @Test
+    void testRefitMovedShapes() {
+        final var root = HierarchyFixtures.spheres(300);
+        final var shapes = new ArrayList<>(root.children());
+        final var bvh = new DynamicBVH(root, new BVHBuilder(4), 1e9);
+        final var flat = new Group(Matrix4.identity());
+        shapes.forEach(flat::addShape);
+        scatter(flat, 3);
+        for (int i = 0; i < shapes.size(); i += 3) { bvh.refit(shapes.get(i)); }
+        assertEquals(BVHBuilder.traversalCost(root), bvh.cost(), 1e-6);
+        final var expected = HierarchyFixtures.spheres(300);
+        scatter(expected, 3);
+        HierarchyFixtures.assertSameHits(expected, root);
+        assertThrows(IllegalArgumentException.class, () -> bvh.refit(new Sphere(Matrix4.identity())));
+    }
+
+    @Test
+    void testDegradedHierarchyIsRebuilt() {
+        final var root = HierarchyFixtures.spheres(300);
+        final var shapes = new ArrayList<>(root.children());
+        final var flat = new Group(Matrix4.identity());
+        shapes.forEach(flat::addShape);
+        final var bvh = new DynamicBVH(root, new BVHBuilder(4), 1.2);
+        scatter(flat, 5);
+        bvh.refit();
+        assertEquals(1, bvh.rebuilds());
+        assertTrue(bvh.degradation() <= 1.2);
+        final var expected = HierarchyFixtures.spheres(300);
+        scatter(expected, 5);
+        HierarchyFixtures.assertSameHits(expected, root);
+    }
+
+    @Test
+    void testRejectsSpatialSplits() {
+        assertThrows(IllegalArgumentException.class, () -> new DynamicBVH(HierarchyFixtures.spheres(10), BVHBuilder.spatial(4), 1.5));
+        assertThrows(IllegalArgumentException.class, () -> new DynamicBVH(HierarchyFixtures.spheres(10), new BVHBuilder(4), 0.5));
+    }
+}
@@ -26,12 +26,15 @@ import org.junit.jupiter.api.Test;
 
 import static com.BudgiePanic.rendering.util.Tuple.makeVector;
 import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import com.BudgiePanic.rendering.util.Material;
 import com.BudgiePanic.rendering.util.intersect.Ray;
 import com.BudgiePanic.rendering.util.matrix.Matrix4;
 import com.BudgiePanic.rendering.util.shape.BaseShapeTest;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
 import com.BudgiePanic.rendering.util.shape.Cone;
 import com.BudgiePanic.rendering.util.shape.Shape;
 import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.shape.Triangle;
 import com.BudgiePanic.rendering.util.transform.Transforms;
 
 /**
@@ -262,4 +265,62 @@ public class GroupTest {
         assertEquals(shape2, right.children.get(0));
         assertEquals(shape3, right.children.get(1));
     }
+
+    @Test
+    void testGroupPrune() {
+        var shadowless = Material.defaultMaterial().setShadow(false);
+        var shape1 = new Sphere(Transforms.identity().translate(-2, 0, 0).assemble());
+        var shape2 = new Sphere(Transforms.identity().translate(2, 0, 0).assemble(), shadowless);
+        var shape3 = new Sphere(Transforms.identity().translate(0, 2, 0).assemble(), shadowless);
+        var inner = new Group(identity);
+        inner.addShape(shape2);
+        inner.addShape(shape3);
+        var group = new Group(Transforms.identity().translate(0, 0, 1).assemble());
+        group.addShape(shape1);
+        group.addShape(inner);
+
+        var result = group.prune(s -> s.material().shadow());
+        assertTrue(result.isPresent());
+        var pruned = (Group) result.get();
+        assertTrue(pruned != group);
+        assertEquals(group.transform(), pruned.transform());
+        assertEquals(List.of(shape1), pruned.children);
+        // the original hierarchy is untouched
+        assertEquals(2, group.children.size());
+        assertEquals(group, shape1.parent().get());
+        assertEquals(inner, shape2.parent().get());
+        // the pruned group has tighter bounds
+        assertEquals(shape1.bounds().transform(shape1.transform()), pruned.bounds());
+        // no shapes meet the condition
+        assertTrue(inner.prune(s -> s.material().shadow()).isEmpty());
+        // every shape meets the condition, so the group is shared instead of copied
+        assertTrue(group.prune(s -> true).get() == group);
+    }
+
+    @Test
+    void testRotatedGroupBoundsFitPrimitives() {
+        // two turns that cancel out, the box of the outer group should fit the triangle instead of growing at each turn
+        var triangle = new Triangle(makePoint(0, 0, 0), makePoint(4, 0, 0), makePoint(4, 0.1, 0));
+        var inner = new Group(Transforms.identity().rotateZ(Math.PI / 4).assemble());
+        inner.addShape(triangle);
+        var middle = new Group(Transforms.identity().rotateZ(-Math.PI / 4).assemble());
+        middle.addShape(inner);
+        var outer = new Group(identity);
+        outer.addShape(middle);
+        assertEquals(new BoundingBox(makePoint(0, 0, 0), makePoint(4, 0.1, 0)), outer.bounds());
+        // the turned box of the middle group is much bigger
+        var loose = middle.bounds().transform(middle.transform());
+        assertTrue(loose.maximum().y - loose.minimum().y > 2);
+    }
+
+    @Test
+    void testAxisAlignedGroupBoundsUseCachedBox() {
+        var group = new Group(identity);
+        group.addShape(new Sphere(Transforms.identity().translate(2, 0, 0).assemble()));
+        group.addShape(new Sphere(Transforms.identity().translate(-2, 0, 0).assemble()));
+        var transform = Transforms.identity().scale(2).translate(0, 1, 0).assemble();
+        assertEquals(new BoundingBox(makePoint(-6, -1, -2), makePoint(6, 3, 2)), group.bounds(transform));
+        var turn = Transforms.identity().rotateZ(Math.PI / 2).assemble();
+        assertEquals(new BoundingBox(makePoint(-1, -3, -1), makePoint(1, 3, 1)), group.bounds(turn));
+    }
 }
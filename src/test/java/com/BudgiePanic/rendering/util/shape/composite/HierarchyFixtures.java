@@ -0,0 +1,156 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.shape.Triangle;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Test support scenes and checks shared by the tests of the groups and the hierarchies built over them.
+ */
+public class HierarchyFixtures {
+
+    /**
+     * A triangle that counts how many times it is tested against a ray.
+     */
+    static class CountingTriangle extends Triangle {
+        static final AtomicInteger tests = new AtomicInteger();
+
+        CountingTriangle(Tuple p1, Tuple p2, Tuple p3) { super(p1, p2, p3); }
+
+        @Override
+        protected Optional<List<Intersection>> localIntersect(Ray ray) {
+            tests.incrementAndGet();
+            return super.localIntersect(ray);
+        }
+    }
+
+    /**
+     * Spheres of different sizes scattered through a cube.
+     */
+    static Group spheres(int count) {
+        final var random = new Random(42);
+        final var group = new Group(Matrix4.identity());
+        for (int i = 0; i < count; i++) {
+            final double x = random.nextDouble() * 20 - 10, y = random.nextDouble() * 20 - 10, z = random.nextDouble() * 20 - 10;
+            group.addShape(new Sphere(Transforms.identity().scale(0.1 + random.nextDouble() * 0.4).translate(x, y, z).assemble()));
+        }
+        return group;
+    }
+
+    /**
+     * Long, thin triangles running diagonally across the scene, like the planks of a floor laid at 45 degrees.
+     * Their boxes are large squares that overlap heavily even though the triangles themselves barely touch.
+     */
+    static Group slivers(int count) {
+        final var random = new Random(7);
+        final var group = new Group(Matrix4.identity());
+        final var along = makeVector(1, 1, 0).normalize().multiply(7);
+        for (int i = 0; i < count; i++) {
+            final double offset = random.nextDouble() * 16 - 8;
+            final var center = makePoint(offset + random.nextDouble() - 0.5, -offset + random.nextDouble() - 0.5, random.nextDouble() * 2 - 1);
+            final var across = makeVector(0.1, -0.1, random.nextDouble() * 0.1);
+            group.addShape(new CountingTriangle(center.subtract(along), center.add(along), center.subtract(along).add(across)));
+        }
+        return group;
+    }
+
+    /**
+     * Small triangles scattered through a cube, like a particle field.
+     */
+    static Group particles(int count) {
+        final var random = new Random(3);
+        final var group = new Group(Matrix4.identity());
+        for (int i = 0; i < count; i++) {
+            final var corner = makePoint(random.nextDouble() * 18 - 9, random.nextDouble() * 18 - 9, random.nextDouble() * 18 - 9);
+            group.addShape(new CountingTriangle(corner, corner.add(makeVector(0.3, 0, 0.1)), corner.add(makeVector(0, 0.3, 0.1))));
+        }
+        return group;
+    }
+
+    /**
+     * Get the distances of a ray's hits on a shape.
+     */
+    static List<Double> hits(Shape shape, Ray ray) {
+        return shape.intersect(ray).map(list -> list.stream().map(Intersection::a).toList()).orElse(List.of());
+    }
+
+    /**
+     * Compare the hits of two shapes for a fan of angled rays at a point in time.
+     */
+    static void assertSameHits(Shape expected, Shape actual, double time) {
+        for (int i = -10; i <= 10; i++) {
+            for (int j = -10; j <= 10; j++) {
+                final var ray = new Ray(makePoint(i * 0.97, j * 1.03, -20), makeVector(0.01 * i, -0.01 * j, 1).normalize(), time);
+                assertEquals(hits(expected, ray), hits(actual, ray), ray.toString());
+            }
+        }
+    }
+
+    /**
+     * Compare the hits of two shapes for a fan of angled rays.
+     */
+    static void assertSameHits(Shape expected, Shape actual) {
+        assertSameHits(expected, actual, 0);
+    }
+
+    /**
+     * Compare the hits of two shapes for angled rays and for rays running along the axes.
+     */
+    static void assertSameHitsAlongAxes(Shape expected, Shape actual) {
+        assertSameHits(expected, actual);
+        for (int i = -10; i <= 10; i++) {
+            for (int j = -10; j <= 10; j++) {
+                final var rays = List.of(
+                    new Ray(makePoint(i * 0.97, j * 1.03, -20), makeVector(0, 0, 1)),
+                    new Ray(makePoint(-20, i * 0.97, j * 1.03), makeVector(1, 0, 0)),
+                    new Ray(makePoint(i * 0.97, 20, j * 1.03), makeVector(0, -1, 0)));
+                for (final var ray : rays) {
+                    assertEquals(hits(expected, ray), hits(actual, ray), ray.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the triangle tests made by a grid of rays cast down through a hierarchy.
+     */
+    static int countTests(Shape shape) {
+        CountingTriangle.tests.set(0);
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 40; j++) {
+                shape.intersect(new Ray(makePoint(i * 0.45 - 9 + 0.013, j * 0.45 - 9 + 0.029, -20), makeVector(0.003, 0.002, 1).normalize()));
+            }
+        }
+        return CountingTriangle.tests.get();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Colors;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+
+/**
+ * Tests for lazily built bounding volume hierarchies.
+ */
+public class LazyGroupTest {
+
+    /**
+     * Count the lazy nodes under a shape, and how many of them have been built.
+     */
+    static int[] count(Shape shape) {
+        final int[] counts = new int[2];
+        count(shape, counts);
+        return counts;
+    }
+
+    private static void count(Shape shape, int[] counts) {
+        if (shape instanceof LazyGroup) {
+            final var node = (LazyGroup) shape;
+            counts[0]++;
+            if (!node.isBuilt()) { return; }
+            counts[1]++;
+        }
+        if (shape instanceof Group) {
+            for (final var child : ((Group) shape).children()) { count(child, counts); }
+        }
+    }
+
+    @Test
+    void testLazyBuildMatchesFlatGroup() {
+        final var lazy = new BVHBuilder(4).buildLazy(HierarchyFixtures.spheres(500));
+        assertEquals(1, lazy.children().size());
+        assertFalse(((LazyGroup) lazy.children().get(0)).isBuilt());
+        assertEquals(HierarchyFixtures.spheres(500).bounds(), lazy.bounds());
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(500), lazy);
+    }
+
+    @Test
+    void testOnlyVisitedNodesAreBuilt() {
+        final var lazy = new BVHBuilder(4).buildLazy(HierarchyFixtures.spheres(2000));
+        lazy.intersect(new Ray(makePoint(0.3, 0.2, -20), makeVector(0, 0, 1)));
+        final var afterOneRay = count(lazy);
+        // every visited node is built, its unvisited children are not
+        assertTrue(afterOneRay[1] > 0);
+        assertTrue(afterOneRay[1] < afterOneRay[0]);
+        final var eager = new BVHBuilder(4).build(HierarchyFixtures.spheres(2000));
+        HierarchyFixtures.assertSameHits(eager, lazy);
+        final var afterGrid = count(lazy);
+        assertTrue(afterGrid[1] > afterOneRay[1]);
+        assertTrue(afterOneRay[1] * 20 < afterGrid[0], afterOneRay[1] + " of " + afterGrid[0]);
+    }
+
+    @Test
+    void testLazyBuildIsThreadSafe() {
+        final var flat = HierarchyFixtures.spheres(1000);
+        for (int attempt = 0; attempt < 3; attempt++) {
+            final var lazy = new BVHBuilder(2).buildLazy(HierarchyFixtures.spheres(1000));
+            final List<Ray> rays = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                rays.add(new Ray(makePoint((i % 20) - 9.7, (i / 20) - 9.6, -20), makeVector(0, 0, 1)));
+            }
+            IntStream.range(0, rays.size()).parallel().forEach(i -> {
+                assertEquals(HierarchyFixtures.hits(flat, rays.get(i)), HierarchyFixtures.hits(lazy, rays.get(i)));
+            });
+        }
+    }
+
+    @Test
+    void testPruneDoesNotBuild() {
+        final var group = HierarchyFixtures.spheres(300);
+        final var hidden = new ArrayList<Shape>();
+        for (int i = 0; i < 100; i++) {
+            final var sphere = new Sphere(Matrix4.identity(), Material.color(Colors.red).setShadow(false));
+            hidden.add(sphere);
+            group.addShape(sphere);
+        }
+        final var lazy = new BVHBuilder(4).buildLazy(group);
+        final var pruned = (Group) lazy.prune(s -> s.material().shadow() || s instanceof Group).get();
+        assertEquals(0, count(lazy)[1]);
+        final var root = (LazyGroup) pruned.children().get(0);
+        assertEquals(300, root.children().size());
+        assertTrue(hidden.stream().noneMatch(shape -> root.childrenContains(shape)));
+        HierarchyFixtures.assertSameHits(HierarchyFixtures.spheres(300), pruned);
+        assertThrows(UnsupportedOperationException.class, () -> root.addShape(new Sphere(Matrix4.identity())));
+    }
+
+    @Test
+    void testQueriesWhileBuilding() {
+        final var lazy = new BVHBuilder(2).buildLazy(HierarchyFixtures.spheres(1000));
+        final var root = (LazyGroup) lazy.children().get(0);
+        final List<Shape> shapes = new ArrayList<>(root.children());
+        IntStream.range(0, 400).parallel().forEach(i -> {
+            if (i % 2 == 0) {
+                lazy.intersect(new Ray(makePoint((i % 40) / 2 - 9.7, (i / 40) * 2 - 9.6, -20), makeVector(0, 0, 1)));
+            } else {
+                // the nodes being built must not hide shapes from the queries running alongside them
+                final var shape = shapes.get(i);
+                assertTrue(root.childrenContains(shape));
+                final var pruned = (LazyGroup) root.prune(s -> s != shape).get();
+                assertEquals(999, pruned.children().size());
+                assertFalse(pruned.childrenContains(shape));
+            }
+        });
+        assertTrue(root.isBuilt());
+        assertEquals(root, root.prune(s -> true).get());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Intersection;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.LinearMotionShape;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests for motion blur bounding volume hierarchies.
+ */
+public class MotionGroupTest {
+
+    /**
+     * A moving shape that counts how many times rays reach it.
+     */
+    static class CountingMotionShape extends LinearMotionShape {
+        static int tests = 0;
+
+        CountingMotionShape(Shape internal, Tuple velocity) { super(Matrix4.identity(), internal, velocity); }
+
+        @Override
+        public Optional<List<Intersection>> intersect(Ray ray, Predicate<Shape> inclusionCondition) {
+            tests++;
+            return super.intersect(ray, inclusionCondition);
+        }
+    }
+
+    /**
+     * Make a group of small spheres that each move a long way during the exposure.
+     */
+    static Group movers(int count) {
+        final var random = new Random(11);
+        final var group = new Group(Matrix4.identity());
+        for (int i = 0; i < count; i++) {
+            final double x = random.nextDouble() * 20 - 10, y = random.nextDouble() * 20 - 10, z = random.nextDouble() * 20 - 10;
+            final var sphere = new Sphere(Transforms.identity().scale(0.2).translate(x, y, z).assemble());
+            final var velocity = makeVector(random.nextDouble() * 16 - 8, random.nextDouble() * 16 - 8, random.nextDouble() * 4 - 2);
+            group.addShape(new CountingMotionShape(sphere, velocity));
+        }
+        return group;
+    }
+
+    static final double[] times = { 0, 0.13, 0.5, 0.77, 1 };
+
+    static int countTests(Shape shape) {
+        CountingMotionShape.tests = 0;
+        for (final double time : times) {
+            for (int i = -10; i <= 10; i++) {
+                for (int j = -10; j <= 10; j++) {
+                    shape.intersect(new Ray(makePoint(i * 0.97, j * 1.03, -20), makeVector(0, 0, 1), time));
+                }
+            }
+        }
+        return CountingMotionShape.tests;
+    }
+
+    static void assertSameHits(Shape expected, Shape actual) {
+        for (final double time : times) { HierarchyFixtures.assertSameHits(expected, actual, time); }
+    }
+
+    @Test
+    void testMotionHierarchyMatchesFlatGroup() {
+        final var flat = movers(300);
+        flat.bakeExposureDuration(1);
+        final var motion = new BVHBuilder(4).buildMotion(movers(300), 1, MotionGroup.defaultSegments);
+        assertTrue(motion.children().stream().allMatch(child -> child instanceof MotionGroup));
+        assertSameHits(flat, motion);
+    }
+
+    @Test
+    void testMotionHierarchyVisitsFewerShapes() {
+        final var plain = movers(1000);
+        plain.bakeExposureDuration(1);
+        new BVHBuilder(4).build(plain);
+        final var motion = new BVHBuilder(4).buildMotion(movers(1000), 1, 8);
+        final int plainTests = countTests(plain), motionTests = countTests(motion);
+        assertTrue(motionTests * 3 < plainTests, "motion hierarchy tests " + motionTests + " plain hierarchy tests " + plainTests);
+    }
+
+    @Test
+    void testKeyedBoundsContainChildren() {
+        final var motion = new BVHBuilder(4).buildMotion(movers(200), 1, 3);
+        final var node = (MotionGroup) motion.children().get(0);
+        for (int step = 0; step <= 20; step++) {
+            final double time = step / 20.0;
+            final var box = node.bounds(time);
+            for (final var child : node.children()) {
+                final var childBox = child.bounds(time).transform(child.transform());
+                assertTrue(box.contains(childBox.minimum()) && box.contains(childBox.maximum()), "time " + time);
+            }
+        }
+        // outside the exposure the node falls back to the volume swept over the whole exposure
+        assertEquals(node.bounds(), node.bounds(2));
+    }
+
+    @Test
+    void testRebakingRekeysNodes() {
+        final var node = new MotionGroup(1, 2);
+        node.addShape(new LinearMotionShape(Matrix4.identity(), new Sphere(Matrix4.identity()), makeVector(10, 0, 0)));
+        node.addShape(new Sphere(Transforms.identity().translate(0, 5, 0).assemble()));
+        node.bakeExposureDuration(1);
+        assertEquals(new BoundingBox(makePoint(-1, -1, -1), makePoint(1, 6, 1)), node.bounds(0));
+        assertEquals(new BoundingBox(makePoint(-1, -1, -1), makePoint(11, 6, 1)), node.bounds(1));
+        node.bakeExposureDuration(0.5);
+        assertEquals(new BoundingBox(makePoint(-1, -1, -1), makePoint(6, 6, 1)), node.bounds(0.5));
+        assertEquals(new BoundingBox(makePoint(-1, -1, -1), makePoint(6, 6, 1)), node.bounds());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.FloatHelp;
+import com.BudgiePanic.rendering.util.Material;
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.BoundingBox;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests for groups culled by an oriented bounding box.
+ */
+public class OrientedGroupTest {
+
+    /**
+     * Fill a group with a diagonal row of small spheres, from the origin to (10, 10, 0).
+     */
+    static void addStick(Group group) {
+        for (int i = 0; i <= 20; i++) {
+            group.addShape(new Sphere(Transforms.identity().scale(0.25).translate(i * 0.5, i * 0.5, 0).assemble()));
+        }
+    }
+
+    static double volume(BoundingBox box) {
+        return (box.maximum().x - box.minimum().x) * (box.maximum().y - box.minimum().y) * (box.maximum().z - box.minimum().z);
+    }
+
+    @Test
+    void testFitFollowsPrincipalAxis() {
+        var group = new OrientedGroup(Matrix4.identity());
+        addStick(group);
+        group.fit();
+        // one axis of the frame runs along the stick
+        var along = makeVector(1, 1, 0).normalize();
+        var found = false;
+        for (int column = 0; column < 3; column++) {
+            var axis = group.frame().multiply(Tuple.makeVector(column == 0 ? 1 : 0, column == 1 ? 1 : 0, column == 2 ? 1 : 0));
+            if (FloatHelp.compareFloat(Math.abs(axis.dot(along)), 1) == 0) { found = true; }
+        }
+        assertTrue(found);
+        assertTrue(volume(group.orientedBounds()) < volume(group.bounds()) * 0.2);
+    }
+
+    @Test
+    void testFitKeepsIdentityForAlignedShapes() {
+        var group = new OrientedGroup(Matrix4.identity());
+        for (int i = 0; i < 10; i++) {
+            group.addShape(new Sphere(Transforms.identity().translate(i * 2, 0, 0).assemble()));
+        }
+        group.fit();
+        assertEquals(Matrix4.identity(), group.frame());
+        var empty = new OrientedGroup(Matrix4.identity());
+        empty.fit();
+        assertEquals(Matrix4.identity(), empty.frame());
+    }
+
+    @Test
+    void testOrientedBoxCullsRays() {
+        var oriented = new OrientedGroup(Matrix4.identity());
+        addStick(oriented);
+        oriented.fit();
+        var plain = new Group(Matrix4.identity());
+        addStick(plain);
+        // passes through the empty corner of the axis aligned box
+        var miss = new Ray(makePoint(8, 2, -5), makeVector(0, 0, 1));
+        assertTrue(plain.boundsIntersect(miss));
+        assertFalse(oriented.boundsIntersect(miss));
+        assertTrue(oriented.intersect(miss).isEmpty());
+        var hits = List.of(
+            new Ray(makePoint(5, 5, -5), makeVector(0, 0, 1)),
+            new Ray(makePoint(-5, 0.1, 0), makeVector(1, 0, 0)),
+            new Ray(makePoint(20, 20, 0.1), makeVector(-1, -1, 0))
+        );
+        for (var ray : hits) {
+            var expected = plain.intersect(ray);
+            var result = oriented.intersect(ray);
+            assertTrue(expected.isPresent());
+            assertEquals(expected.get().stream().map(i -> i.a()).toList(), result.get().stream().map(i -> i.a()).toList());
+        }
+    }
+
+    @Test
+    void testOrientedBoxGrowsWithNewShapes() {
+        var group = new OrientedGroup(Matrix4.identity());
+        addStick(group);
+        group.fit();
+        var ray = new Ray(makePoint(8, 2, -5), makeVector(0, 0, 1));
+        assertTrue(group.intersect(ray).isEmpty());
+        var shape = new Sphere(Transforms.identity().translate(8, 2, 0).assemble());
+        group.addShape(shape);
+        var result = group.intersect(ray);
+        assertTrue(result.isPresent());
+        assertSame(shape, result.get().get(0).shape());
+        group.removeShape(shape);
+        assertTrue(group.intersect(ray).isEmpty());
+    }
+
+    @Test
+    void testOrientedBoundsOfNestedGroups() {
+        // a stick baked into an identity group under a turned group, fitting walks into both
+        var stick = new Group(Matrix4.identity());
+        addStick(stick);
+        var group = new OrientedGroup(Matrix4.identity());
+        group.addShape(stick);
+        group.fit();
+        assertTrue(volume(group.orientedBounds()) < volume(group.bounds()) * 0.2);
+    }
+
+    @Test
+    void testPruneKeepsFrame() {
+        var group = new OrientedGroup(Matrix4.identity());
+        addStick(group);
+        var glass = new Sphere(Transforms.identity().translate(9, 9, 0).assemble(), Material.defaultMaterial().setShadow(false));
+        group.addShape(glass);
+        group.fit();
+        var pruned = group.prune(s -> s.material().shadow());
+        assertTrue(pruned.isPresent());
+        assertTrue(pruned.get() instanceof OrientedGroup);
+        var copy = (OrientedGroup) pruned.get();
+        assertEquals(group.frame(), copy.frame());
+        assertEquals(21, copy.children().size());
+        assertFalse(copy.children().contains(glass));
+    }
+
+    @Test
+    void testSetFrameRejectsNull() {
+        assertThrows(IllegalArgumentException.class, () -> new OrientedGroup(Matrix4.identity()).setFrame(null));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static com.BudgiePanic.rendering.util.Tuple.makePoint;
+import static com.BudgiePanic.rendering.util.Tuple.makeVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.scene.World;
+import com.BudgiePanic.rendering.util.intersect.Ray;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Cube;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.shape.SmoothTriangle;
+import com.BudgiePanic.rendering.util.shape.Sphere;
+import com.BudgiePanic.rendering.util.shape.Triangle;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests for groups with children packed by type.
+ */
+public class PackedShapesTest {
+
+    /**
+     * A sphere subclass, which must not be packed because it could change the intersection test.
+     */
+    static class OtherSphere extends Sphere {
+        OtherSphere(Matrix4 transform) { super(transform); }
+    }
+
+    /**
+     * A mix of every kind of shape the packing treats differently.
+     */
+    static Group mixed() {
+        final var random = new Random(5);
+        final var group = new Group(Matrix4.identity());
+        for (int i = 0; i < 60; i++) {
+            final double x = random.nextDouble() * 18 - 9, y = random.nextDouble() * 18 - 9, z = random.nextDouble() * 18 - 9;
+            final var corner = makePoint(x, y, z);
+            final var transform = Transforms.identity().rotateZ(random.nextDouble()).scale(0.2 + random.nextDouble(), 0.5, 0.7).translate(x, y, z).assemble();
+            switch (i % 6) {
+                case 0 -> group.addShape(new Sphere(transform));
+                case 1 -> group.addShape(new Triangle(corner, corner.add(makeVector(1.5, 0, 0.2)), corner.add(makeVector(0, 1.5, 0.3))));
+                case 2 -> group.addShape(new SmoothTriangle(corner, corner.add(makeVector(1.5, 0.1, 0)), corner.add(makeVector(0.2, 1.5, 0)),
+                    makeVector(0, 0, -1), makeVector(0, 0.1, -1).normalize(), makeVector(0.1, 0, -1).normalize()));
+                case 3 -> group.addShape(new Triangle(makePoint(0, 0, 0), makePoint(1, 0, 0), makePoint(0, 1, 0), transform));
+                case 4 -> group.addShape(new Cube(transform));
+                default -> group.addShape(new OtherSphere(transform));
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Describe the intersections of a shape by distance, shape type and uv coordinates.
+     * Shapes from two copies of a scene are not equal, their materials hold different normal bump functions.
+     */
+    static List<String> intersections(Shape shape, Ray ray) {
+        return shape.intersect(ray).orElse(List.of()).stream()
+            .map(intersection -> intersection.a() + " " + intersection.shape().getClass().getSimpleName() + " " + intersection.uv())
+            .sorted().toList();
+    }
+
+    /**
+     * Check that every group under a shape holding packable children is packed.
+     */
+    static boolean allPacked(Shape shape) {
+        if (!(shape instanceof Group)) { return true; }
+        final var group = (Group) shape;
+        final boolean packable = PackedShapes.of(group.children()).isPresent();
+        return (!packable || group.packed.isPresent()) && group.children().stream().allMatch(PackedShapesTest::allPacked);
+    }
+
+    @Test
+    void testPackedGroupFindsSameIntersections() {
+        final var flat = mixed();
+        final var packed = mixed();
+        packed.pack();
+        assertTrue(packed.packed.isPresent());
+        for (int i = -10; i <= 10; i++) {
+            for (int j = -10; j <= 10; j++) {
+                final var ray = new Ray(makePoint(i * 0.97, j * 1.03, -20), makeVector(0.01 * i, -0.01 * j, 1).normalize());
+                final var expected = intersections(flat, ray);
+                final var actual = intersections(packed, ray);
+                assertEquals(HierarchyFixtures.hits(flat, ray), HierarchyFixtures.hits(packed, ray), ray.toString());
+                assertEquals(expected, actual, ray.toString());
+            }
+        }
+    }
+
+    @Test
+    void testPackingSortsByType() {
+        final var packed = PackedShapes.of(mixed().children()).get();
+        // spheres and untransformed triangles are packed, transformed triangles, cubes and sphere subclasses are not
+        assertEquals(10, packed.spheres.length);
+        assertEquals(20, packed.triangles.length);
+        assertEquals(30, packed.others.length);
+        assertTrue(PackedShapes.of(List.of(new Cube(Matrix4.identity()))).isEmpty());
+    }
+
+    @Test
+    void testChangingChildrenDiscardsPacking() {
+        final var group = mixed();
+        group.pack();
+        group.addShape(new Sphere(Matrix4.identity()));
+        assertTrue(group.packed.isEmpty());
+        group.pack();
+        group.removeShape(group.children().get(0));
+        assertTrue(group.packed.isEmpty());
+    }
+
+    @Test
+    void testCompilePacksNestedGroups() {
+        final var world = new World();
+        final var root = new Group(Matrix4.identity());
+        final var nested = mixed();
+        root.addShape(nested);
+        world.addShape(root);
+        new BVHBuilder(4).build(nested);
+        world.compile();
+        assertTrue(allPacked(root));
+        HierarchyFixtures.assertSameHits(mixed(), nested);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.shape.composite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Pair;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+import com.BudgiePanic.rendering.util.shape.Plane;
+import com.BudgiePanic.rendering.util.shape.Shape;
+import com.BudgiePanic.rendering.util.transform.Transforms;
+
+/**
+ * Tests for wide bounding volume hierarchies.
+ */
+public class WideBVHGroupTest {
+
+    static final List<Pair<Integer, Integer>> formats = List.of(new Pair<>(4, 8), new Pair<>(4, 16), new Pair<>(8, 8), new Pair<>(8, 16));
+
+    static WideBVHGroup wide(Group group) { return (WideBVHGroup) group.children().get(0); }
+
+    /**
+     * Count the groups in a hierarchy built over shapes that are not groups.
+     */
+    static int binaryNodes(Shape shape) {
+        if (!(shape instanceof Group)) { return 0; }
+        int count = 1;
+        for (final var child : ((Group) shape).children()) { count += binaryNodes(child); }
+        return count;
+    }
+
+    /**
+     * Check that the box of every slot contains the bounds of every child below the slot.
+     */
+    static void assertSlotsContainChildren(WideBVHGroup group, int node, double[] box) {
+        for (int slot = 0; slot < group.width; slot++) {
+            final int link = group.links[node * group.width + slot];
+            if (link == WideBVHGroup.empty) { break; }
+            final double[] slotBox = group.slotBounds(node, slot);
+            for (int axis = 0; axis < 3; axis++) {
+                assertTrue(slotBox[axis] >= box[axis] - 1e-6 && slotBox[axis + 3] <= box[axis + 3] + 1e-6, "slot reaches out of its node");
+            }
+            if (link >= 0) {
+                assertSlotsContainChildren(group, link, slotBox);
+                continue;
+            }
+            for (int item = group.leaves[~link]; item < group.leaves[~link + 1]; item++) {
+                final int child = group.items[item];
+                for (int axis = 0; axis < 3; axis++) {
+                    assertTrue(slotBox[axis] <= group.childBounds[child * 6 + axis], "slot does not contain its child");
+                    assertTrue(slotBox[axis + 3] >= group.childBounds[child * 6 + axis + 3], "slot does not contain its child");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testWideHierarchyMatchesFlatGroup() {
+        for (final var format : formats) {
+            final var builder = new WideBVHBuilder(new BVHBuilder(4), format.a(), format.b());
+            HierarchyFixtures.assertSameHitsAlongAxes(HierarchyFixtures.particles(500), builder.build(HierarchyFixtures.particles(500)));
+            HierarchyFixtures.assertSameHitsAlongAxes(HierarchyFixtures.slivers(300), builder.build(HierarchyFixtures.slivers(300)));
+        }
+    }
+
+    @Test
+    void testWideHierarchyOfSpatialSplits() {
+        // spatial splits list a shape in several leaves, the mailbox tests it once
+        final var builder = new WideBVHBuilder(BVHBuilder.spatial(2), 8, 8);
+        HierarchyFixtures.assertSameHitsAlongAxes(HierarchyFixtures.slivers(300), builder.build(HierarchyFixtures.slivers(300)));
+    }
+
+    @Test
+    void testSlotsContainChildren() {
+        for (final var format : formats) {
+            final var group = wide(new WideBVHBuilder(new BVHBuilder(4), format.a(), format.b()).build(HierarchyFixtures.particles(2000)));
+            assertSlotsContainChildren(group, 0, group.box);
+        }
+    }
+
+    @Test
+    void testWideHierarchyHasFewerNodes() {
+        final int binaryCount = binaryNodes(new BVHBuilder(4).build(HierarchyFixtures.particles(2000)));
+        final var four = wide(new WideBVHBuilder(new BVHBuilder(4), 4, 8).build(HierarchyFixtures.particles(2000)));
+        final var eight = wide(new WideBVHBuilder(new BVHBuilder(4), 8, 8).build(HierarchyFixtures.particles(2000)));
+        assertTrue(four.nodeCount() * 2 < binaryCount, four.nodeCount() + " vs " + binaryCount);
+        assertTrue(eight.nodeCount() < four.nodeCount(), eight.nodeCount() + " vs " + four.nodeCount());
+    }
+
+    @Test
+    void testQuantizationFootprint() {
+        final var small = wide(new WideBVHBuilder(new BVHBuilder(4), 4, 8).build(HierarchyFixtures.particles(2000)));
+        final var large = wide(new WideBVHBuilder(new BVHBuilder(4), 4, 16).build(HierarchyFixtures.particles(2000)));
+        assertEquals(small.nodeCount(), large.nodeCount());
+        assertTrue(small.footprint() < large.footprint());
+        // well under the size of a group object per node
+        assertTrue(small.footprint() < small.nodeCount() * 160L);
+    }
+
+    @Test
+    void testWideHierarchyOfUnboundedShapes() {
+        final List<Shape> planes = List.of(new Plane(Matrix4.identity()), new Plane(Transforms.identity().translate(0, 2, 0).assemble()));
+        final var flat = new Group(Matrix4.identity());
+        planes.forEach(flat::addShape);
+        final var index = new WideBVHGroup(planes, new BVHBuilder(4), 4, 8);
+        assertEquals(0, index.nodeCount());
+        HierarchyFixtures.assertSameHitsAlongAxes(flat, index);
+    }
+
+    @Test
+    void testWideHierarchyRejectsBadFormats() {
+        final List<Shape> shapes = HierarchyFixtures.particles(10).children();
+        assertThrows(IllegalArgumentException.class, () -> new WideBVHBuilder(new BVHBuilder(4), 2, 8));
+        assertThrows(IllegalArgumentException.class, () -> new WideBVHBuilder(new BVHBuilder(4), 4, 12));
+        assertThrows(IllegalArgumentException.class, () -> new WideBVHBuilder(null, 4, 8));
+        assertThrows(IllegalArgumentException.class, () -> new WideBVHGroup(shapes, new BVHBuilder(4), 16, 8));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023-2024 Benjamin Sanson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package com.BudgiePanic.rendering.util.transform;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.BudgiePanic.rendering.util.Tuple;
+import com.BudgiePanic.rendering.util.matrix.Matrix4;
+
+/**
+ * Tests for the time varying transforms.
+ * 
+ * @author BudgiePanic
+ */
+public class TransformCurveTest {
+
+    @Test
+    void testConstantCurve() {
+        var transform = Translation.makeTranslationMatrix(1, 2, 3);
+        var curve = TransformCurve.constant(transform);
+        assertEquals(transform, curve.at(0));
+        assertEquals(transform, curve.at(10));
+    }
+
+    @Test
+    void testLinearCurve() {
+        var curve = TransformCurve.linear(Matrix4.identity(), Translation.makeTranslationMatrix(4, 0, -2), 2);
+        assertEquals(Tuple.makePoint(0, 0, 0), curve.at(0).multiply(Tuple.makePoint()));
+        assertEquals(Tuple.makePoint(2, 0, -1), curve.at(1).multiply(Tuple.makePoint()));
+        // the curve stops at the end transform
+        assertEquals(Tuple.makePoint(4, 0, -2), curve.at(5).multiply(Tuple.makePoint()));
+        assertThrows(IllegalArgumentException.class, () -> TransformCurve.linear(Matrix4.identity(), Matrix4.identity(), 0));
+    }
+
+    @Test
+    void testTurntableCurve() {
+        var curve = TransformCurve.turntable(Matrix4.identity(), 4);
+        var point = Tuple.makePoint(0, 0, 1);
+        assertEquals(Tuple.makePoint(1, 0, 0), curve.at(1).multiply(point));
+        assertEquals(Tuple.makePoint(0, 0, -1), curve.at(2).multiply(point));
+        assertEquals(point, curve.at(4).multiply(point));
+    }
+}